@@ -101,6 +101,20 @@ public class EventProcessorAdminService extends AbstractAdmin {
         }
     }
 
+    public void swapActiveExecutionPlan(String executionPlan, String name)
+            throws AxisFault {
+        EventProcessorService eventProcessorService = EventProcessorAdminValueHolder.getEventProcessorService();
+        try {
+            eventProcessorService.swapActiveExecutionPlan(executionPlan, name);
+        } catch (ExecutionPlanConfigurationException e) {
+            log.error(e.getMessage(), e);
+            throw new AxisFault(e.getMessage(), e);
+        } catch (ExecutionPlanDependencyValidationException e) {
+            log.error(e.getMessage(), e);
+            throw new AxisFault(e.getMessage(), e);
+        }
+    }
+
     public void editInactiveExecutionPlan(String executionPlan, String fileName)
             throws AxisFault {
         EventProcessorService eventProcessorService = EventProcessorAdminValueHolder.getEventProcessorService();
@@ -310,6 +324,16 @@ public class EventProcessorAdminService extends AbstractAdmin {
         }
     }
 
+    public String[] getEventTraces(String executionPlanName) throws AxisFault {
+        EventProcessorService eventProcessorService = EventProcessorAdminValueHolder.getEventProcessorService();
+        if (eventProcessorService != null) {
+            List<String> eventTraces = eventProcessorService.getEventTraces(executionPlanName);
+            return eventTraces.toArray(new String[eventTraces.size()]);
+        } else {
+            throw new AxisFault("Event processor is not loaded.");
+        }
+    }
+
     public void setStatisticsEnabled(String executionPlanName, boolean isEnabled) throws AxisFault {
         EventProcessorService eventProcessorService = EventProcessorAdminValueHolder.getEventProcessorService();
         if (eventProcessorService != null) {
@@ -15,6 +15,7 @@
  */
 package org.wso2.carbon.event.processor.common.storm.component;
 
+import backtype.storm.metric.api.IMetric;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.BasicOutputCollector;
 import backtype.storm.topology.OutputFieldsDeclarer;
@@ -22,6 +23,8 @@ import backtype.storm.topology.base.BaseBasicBolt;
 import backtype.storm.tuple.Tuple;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
+import org.wso2.carbon.event.processor.common.transport.FlowControlMetrics;
+import org.wso2.carbon.event.processor.common.transport.TransportFactory;
 import org.wso2.carbon.event.processor.common.util.AsyncEventPublisher;
 import org.wso2.carbon.event.processor.manager.commons.utils.Utils;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
@@ -39,6 +42,7 @@ import java.util.*;
  */
 public class EventPublisherBolt extends BaseBasicBolt {
     private transient Logger log = Logger.getLogger(EventPublisherBolt.class);
+    private static final int METRICS_TIME_BUCKET_SIZE = 60;
     /**
      * All stream definitions processed
      */
@@ -115,7 +119,11 @@ public class EventPublisherBolt extends BaseBasicBolt {
     @Override
     public void prepare(Map stormConf, TopologyContext context) {
         super.prepare(stormConf, context);
+        TransportFactory.configure(stormConf);
         init();
+        context.registerMetric("cep-publisher-blocked-ms", new FlowControlMetric(true), METRICS_TIME_BUCKET_SIZE);
+        context.registerMetric("cep-publisher-credit-starvations", new FlowControlMetric(false),
+                METRICS_TIME_BUCKET_SIZE);
     }
 
     private void init() {
@@ -181,4 +189,29 @@ public class EventPublisherBolt extends BaseBasicBolt {
             log.error(logPrefix + "Error starting event publisher bolt: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Reports the time the publisher was blocked by flow control, or the number of times it ran out of credits, in
+     * each time bucket.
+     */
+    private class FlowControlMetric implements IMetric {
+        private final boolean isBlockedTime;
+        private long lastValue;
+
+        FlowControlMetric(boolean isBlockedTime) {
+            this.isBlockedTime = isBlockedTime;
+        }
+
+        @Override
+        public Object getValueAndReset() {
+            if (asyncEventPublisher == null) {
+                return 0L;
+            }
+            FlowControlMetrics metrics = asyncEventPublisher.getFlowControlMetrics();
+            long value = isBlockedTime ? metrics.getBlockedTimeMillis() : metrics.getCreditStarvationCount();
+            long delta = value - lastValue;
+            lastValue = value;
+            return delta;
+        }
+    }
 }
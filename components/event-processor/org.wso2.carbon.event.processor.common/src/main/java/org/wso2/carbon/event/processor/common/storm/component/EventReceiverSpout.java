@@ -15,6 +15,7 @@
  */
 package org.wso2.carbon.event.processor.common.storm.component;
 
+import backtype.storm.metric.api.IMetric;
 import backtype.storm.spout.SpoutOutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.OutputFieldsDeclarer;
@@ -27,10 +28,10 @@ import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.wso2.carbon.event.processor.common.storm.event.Event;
 import org.wso2.carbon.event.processor.common.storm.manager.service.StormManagerService;
+import org.wso2.carbon.event.processor.common.transport.EventServer;
+import org.wso2.carbon.event.processor.common.transport.TransportFactory;
 import org.wso2.carbon.event.processor.common.util.ThroughputProbe;
 import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
-import org.wso2.carbon.event.processor.manager.commons.transport.server.TCPEventServer;
-import org.wso2.carbon.event.processor.manager.commons.transport.server.TCPEventServerConfig;
 import org.wso2.carbon.event.processor.manager.commons.utils.HostAndPort;
 import org.wso2.carbon.event.processor.manager.commons.utils.Utils;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
@@ -49,6 +50,7 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class EventReceiverSpout extends BaseRichSpout implements StreamCallback {
     private static transient Logger log = Logger.getLogger(EventReceiverSpout.class);
+    private static final int METRICS_TIME_BUCKET_SIZE = 60;
     /**
      * Listening port of the thrift receiver
      */
@@ -60,7 +62,7 @@ public class EventReceiverSpout extends BaseRichSpout implements StreamCallback
      * Siddhi stream definitions of all incoming streams. Required to declare output fields
      */
     private List<StreamDefinition> incomingStreamDefinitions;
-    private TCPEventServer tcpEventServer;
+    private EventServer eventServer;
 
     /**
      * Stream IDs of incoming streams
@@ -113,7 +115,7 @@ public class EventReceiverSpout extends BaseRichSpout implements StreamCallback
         // Declaring all incoming streams as output streams because this spouts role is to pass through all the incoming events as tuples.
         for (StreamDefinition siddhiStreamDefinition : incomingStreamDefinitions) {
             List<String> attributeList = new ArrayList<>(Arrays.asList(siddhiStreamDefinition.getAttributeNameArray()));
-            attributeList.add(0, "_timestamp");
+            attributeList.add("_timestamp");          // timestamp is emitted after the event data
             Fields fields = new Fields(attributeList);
             outputFieldsDeclarer.declareStream(siddhiStreamDefinition.getId(), fields);
             incomingStreamIDs.add(siddhiStreamDefinition.getId());
@@ -123,6 +125,7 @@ public class EventReceiverSpout extends BaseRichSpout implements StreamCallback
 
     @Override
     public void open(Map map, TopologyContext topologyContext, SpoutOutputCollector spoutOutputCollector) {
+        TransportFactory.configure(map);
         this.spoutOutputCollector = spoutOutputCollector;
         this.storedEvents = new LinkedBlockingQueue<Event>(stormDeploymentConfig.getStormSpoutBufferSize());
 
@@ -132,15 +135,23 @@ public class EventReceiverSpout extends BaseRichSpout implements StreamCallback
         inputThroughputProbe.startSampling();
         outputThroughputProbe.startSampling();
 
+        topologyContext.registerMetric("cep-receiver-queued-events", new IMetric() {
+            @Override
+            public Object getValueAndReset() {
+                return storedEvents.size();
+            }
+        }, METRICS_TIME_BUCKET_SIZE);
+
         try {
             thisHostIp = Utils.findAddress("localhost");
-            listeningPort = findPort(thisHostIp);
-            TCPEventServerConfig configs = new TCPEventServerConfig(thisHostIp, listeningPort);
-            tcpEventServer = new TCPEventServer(configs, this, null);
+            // The streams are added before registering with the manager, which lets the publishers connect
+            eventServer = TransportFactory.startServer(thisHostIp, stormDeploymentConfig.getTransportMinPort(),
+                    stormDeploymentConfig.getTransportMaxPort(), this, null,
+                    stormDeploymentConfig.getStormSpoutBufferSize());
             for (StreamDefinition siddhiStreamDefinition : incomingStreamDefinitions) {
-                tcpEventServer.addStreamDefinition(siddhiStreamDefinition);
+                eventServer.addStreamDefinition(siddhiStreamDefinition);
             }
-            tcpEventServer.start();
+            listeningPort = eventServer.getPort();
             log.info(logPrefix + "EventReceiverSpout starting to listen for events on port " + listeningPort);
             Thread thread = new Thread(new Registrar());
             thread.start();
@@ -153,6 +164,7 @@ public class EventReceiverSpout extends BaseRichSpout implements StreamCallback
     public void nextTuple() {
         Event event = storedEvents.poll();
         if (event != null) {
+            eventServer.releaseCapacity(1);
             final String siddhiStreamName = event.getStreamId();
             if (incomingStreamIDs.contains(siddhiStreamName)) {
                 Object[] eventData = Arrays.copyOf(event.getData(), event.getData().length + 1);
@@ -170,15 +182,6 @@ public class EventReceiverSpout extends BaseRichSpout implements StreamCallback
 
     }
 
-    private int findPort(String host) throws Exception {
-        for (int i = stormDeploymentConfig.getTransportMinPort(); i <= stormDeploymentConfig.getTransportMaxPort(); i++) {
-            if (!Utils.isPortUsed(i, host)) {
-                return i;
-            }
-        }
-        throw new Exception("Cannot find free port in range " + stormDeploymentConfig.getTransportMinPort() + "~" + stormDeploymentConfig.getTransportMaxPort());
-    }
-
 
     @Override
     public void receive(String streamId, long timestamp, Object[] eventData, Map<String, String> arbitraryMapData) {
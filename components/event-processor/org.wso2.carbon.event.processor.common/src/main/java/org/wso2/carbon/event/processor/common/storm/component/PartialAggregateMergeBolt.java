@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.storm.component;
+
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+import org.wso2.siddhi.query.compiler.SiddhiCompiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges the partial aggregates of a hot key, which has been split across two Siddhi bolt tasks by the
+ * {@link org.wso2.carbon.event.processor.common.storm.grouping.SkewAwareFieldsGrouping}.
+ * <p/>
+ * The partial aggregators emit their events followed by the timestamp and whether the events expired from the window
+ * of the task. Whenever a partial aggregate of a current event arrives, the partial aggregates of that key are merged
+ * by a {@link PartialAggregateMerger} and emitted on the same stream, without the expiry flag, so the downstream
+ * components receive the same events as if the key was processed by a single task.
+ */
+public class PartialAggregateMergeBolt extends BaseBasicBolt {
+
+    /**
+     * How each attribute of the aggregated stream is merged.
+     */
+    public enum MergeFunction {KEY, SUM, COUNT, MIN, MAX}
+
+    /**
+     * Number of keys emitted by a single task whose partial aggregate is kept, in case they get split.
+     */
+    private static final int MAX_UNSPLIT_KEYS = 10000;
+
+    private transient Logger log = Logger.getLogger(PartialAggregateMergeBolt.class);
+
+    private final String streamDefinition;
+    private final MergeFunction[] mergeFunctions;
+    private final String logPrefix;
+
+    private transient String streamId;
+    private transient PartialAggregateMerger merger;
+
+    /**
+     * @param name              name of the component
+     * @param streamDefinition  definition of the aggregated stream, consumed from the partial aggregators and emitted
+     * @param mergeFunctions    merge function of each attribute of the stream, exactly one attribute is the key
+     */
+    public PartialAggregateMergeBolt(String name, String streamDefinition, MergeFunction[] mergeFunctions,
+                                     String executionPlanName, int tenantId) {
+        this.streamDefinition = streamDefinition;
+        this.mergeFunctions = mergeFunctions;
+        this.logPrefix = "[" + tenantId + ":" + executionPlanName + ":" + name + "] ";
+        init();
+    }
+
+    /**
+     * Bolt get saved and reloaded, this to redo the configurations.
+     */
+    private void init() {
+        log = Logger.getLogger(PartialAggregateMergeBolt.class);
+        streamId = SiddhiCompiler.parseStreamDefinition(streamDefinition).getId();
+        merger = new PartialAggregateMerger(mergeFunctions, MAX_UNSPLIT_KEYS);
+    }
+
+    @Override
+    public void execute(Tuple tuple, BasicOutputCollector collector) {
+        if (merger == null) {
+            init();
+        }
+        Object[] values = tuple.getValues().toArray();
+        boolean isExpired = (Boolean) values[values.length - 1];
+        Object[] dataArray = Arrays.copyOf(values, values.length - 1);      // timestamp is the last element
+
+        Object[] merged = merger.merge(tuple.getSourceTask(), dataArray, isExpired);
+        if (merged != null) {
+            collector.emit(streamId, Arrays.asList(merged));
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(logPrefix + "Merged " + (isExpired ? "expired " : "") + "partial aggregate "
+                    + Arrays.deepToString(dataArray) + " of task " + tuple.getSourceTask() + " : "
+                    + Arrays.deepToString(merged) + ", split keys: " + merger.getSplitKeyCount());
+        }
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        StreamDefinition siddhiDefinition = SiddhiCompiler.parseStreamDefinition(streamDefinition);
+        List<String> list = new ArrayList<String>();
+        for (Attribute attribute : siddhiDefinition.getAttributeList()) {
+            list.add(attribute.getName());
+        }
+        list.add("_timestamp");
+        declarer.declareStream(siddhiDefinition.getId(), new Fields(list));
+        log.info(logPrefix + "Declaring output field for stream :" + siddhiDefinition.getId());
+    }
+}
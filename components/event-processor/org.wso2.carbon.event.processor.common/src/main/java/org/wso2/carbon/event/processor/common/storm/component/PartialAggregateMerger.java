@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.storm.component;
+
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMergeBolt.MergeFunction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Merges the partial aggregates of the keys split across tasks, as done by the {@link PartialAggregateMergeBolt}.
+ * <p/>
+ * The latest partial aggregate of each task is kept only for the keys which have been emitted by more than one task.
+ * The keys emitted by a single task are passed through, and only the latest partial aggregate of the most recently
+ * updated of them is kept, in case they get split later. A partial aggregate which no longer contributes to the merged
+ * aggregate, e.g. when all the events of the key expired from the window of the task, is dropped.
+ * <p/>
+ * Partial aggregates emitted as events expired from the window of a task replace the previous partial aggregate of
+ * the task without being emitted, as a single task would not emit them either.
+ */
+public class PartialAggregateMerger {
+
+    private final MergeFunction[] mergeFunctions;
+    private final int keyIndex;
+    private final Map<Object, Map<Integer, Object[]>> splitKeys = new HashMap<Object, Map<Integer, Object[]>>();
+    private final Map<Object, TaskPartialAggregate> unsplitKeys;
+
+    /**
+     * @param mergeFunctions merge function of each attribute, exactly one attribute is the key
+     * @param maxUnsplitKeys number of keys emitted by a single task whose partial aggregate is kept
+     */
+    public PartialAggregateMerger(MergeFunction[] mergeFunctions, final int maxUnsplitKeys) {
+        this.mergeFunctions = mergeFunctions;
+        this.keyIndex = Arrays.asList(mergeFunctions).indexOf(MergeFunction.KEY);
+        this.unsplitKeys = new LinkedHashMap<Object, TaskPartialAggregate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, TaskPartialAggregate> eldest) {
+                return size() > maxUnsplitKeys;
+            }
+        };
+    }
+
+    /**
+     * @param task      task which emitted the partial aggregate
+     * @param partial   the attributes of the partial aggregate, followed by any other values which are copied from it
+     *                  to the merged aggregate
+     * @param isExpired whether the partial aggregate was emitted as events expired from the window of the task
+     * @return the merged aggregate to be emitted, or null if nothing is to be emitted
+     */
+    public Object[] merge(int task, Object[] partial, boolean isExpired) {
+        Object key = partial[keyIndex];
+        boolean isContributing = isContributing(partial);
+        Map<Integer, Object[]> partials = splitKeys.get(key);
+        if (partials == null) {
+            TaskPartialAggregate unsplitPartial = unsplitKeys.get(key);
+            if (unsplitPartial == null || unsplitPartial.task == task) {
+                if (isContributing) {
+                    unsplitKeys.put(key, new TaskPartialAggregate(task, partial));
+                } else {
+                    unsplitKeys.remove(key);
+                }
+                return isExpired ? null : partial;
+            }
+            unsplitKeys.remove(key);
+            partials = new HashMap<Integer, Object[]>(4);
+            partials.put(unsplitPartial.task, unsplitPartial.partial);
+            splitKeys.put(key, partials);
+        }
+
+        if (isContributing) {
+            partials.put(task, partial);
+        } else {
+            partials.remove(task);
+        }
+        if (partials.size() < 2) {
+            splitKeys.remove(key);
+            for (Map.Entry<Integer, Object[]> entry : partials.entrySet()) {
+                unsplitKeys.put(key, new TaskPartialAggregate(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (isExpired) {
+            return null;
+        }
+
+        Object[] merged = Arrays.copyOf(partial, partial.length);
+        for (int i = 0; i < mergeFunctions.length; i++) {
+            if (mergeFunctions[i] != MergeFunction.KEY) {
+                merged[i] = merge(mergeFunctions[i], i, partials);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return number of keys whose partial aggregates are kept
+     */
+    public int size() {
+        return splitKeys.size() + unsplitKeys.size();
+    }
+
+    /**
+     * @return number of keys currently split across tasks
+     */
+    public int getSplitKeyCount() {
+        return splitKeys.size();
+    }
+
+    /**
+     * @return false if merging the partial aggregate cannot change the merged aggregate, i.e. its sums and counts are
+     * zero and its minimums and maximums are not set
+     */
+    private boolean isContributing(Object[] partial) {
+        for (int i = 0; i < mergeFunctions.length; i++) {
+            Object value = partial[i];
+            if (mergeFunctions[i] == MergeFunction.KEY || value == null) {
+                continue;
+            }
+            if (mergeFunctions[i] == MergeFunction.MIN || mergeFunctions[i] == MergeFunction.MAX ||
+                    ((Number) value).doubleValue() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object merge(MergeFunction mergeFunction, int index, Map<Integer, Object[]> partials) {
+        Object result = null;
+        for (Object[] partial : partials.values()) {
+            Object value = partial[index];
+            if (value == null) {
+                continue;
+            }
+            if (result == null) {
+                result = value;
+            } else if (mergeFunction == MergeFunction.SUM || mergeFunction == MergeFunction.COUNT) {
+                result = add((Number) result, (Number) value);
+            } else {
+                int comparison = compare(result, value);
+                if ((mergeFunction == MergeFunction.MAX && comparison < 0) ||
+                        (mergeFunction == MergeFunction.MIN && comparison > 0)) {
+                    result = value;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Number add(Number first, Number second) {
+        if (first instanceof Double || first instanceof Float || second instanceof Double || second instanceof Float) {
+            return first.doubleValue() + second.doubleValue();
+        }
+        return first.longValue() + second.longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object first, Object second) {
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+
+    private static class TaskPartialAggregate {
+        private final int task;
+        private final Object[] partial;
+
+        private TaskPartialAggregate(int task, Object[] partial) {
+            this.task = task;
+            this.partial = partial;
+        }
+    }
+}
@@ -60,6 +60,10 @@ public class SiddhiBolt extends BaseBasicBolt {
      * Queries to be executed in Siddhi.
      */
     private String query;
+    /**
+     * Output streams of partial aggregates, emitted with their expired events and an expiry flag after the timestamp.
+     */
+    private List<String> partialOutputStreamIds;
 
     private BasicOutputCollector collector;
     private String logPrefix;
@@ -78,9 +82,22 @@ public class SiddhiBolt extends BaseBasicBolt {
      */
     public SiddhiBolt(String name, List<String> inputStreamDefinitions, String query,
                       List<String> outputSiddhiDefinitions, String executionPlanName, int tenantId) {
+        this(name, inputStreamDefinitions, query, outputSiddhiDefinitions, new ArrayList<String>(0), executionPlanName,
+                tenantId);
+    }
+
+    /**
+     * Bolt which runs the Siddhi engine, some of whose output streams are partial aggregates.
+     *
+     * @param partialOutputStreamIds - The output streams consumed by a {@link PartialAggregateMergeBolt}
+     */
+    public SiddhiBolt(String name, List<String> inputStreamDefinitions, String query,
+                      List<String> outputSiddhiDefinitions, List<String> partialOutputStreamIds,
+                      String executionPlanName, int tenantId) {
         this.inputStreamDefinitions = inputStreamDefinitions;
         this.query = query;
         this.outputStreamDefinitions = outputSiddhiDefinitions;
+        this.partialOutputStreamIds = partialOutputStreamIds;
         this.name = name;
         this.logPrefix = "[" + tenantId + ":" + executionPlanName + ":" + name + "] ";
         init();
@@ -105,6 +122,7 @@ public class SiddhiBolt extends BaseBasicBolt {
 
         for (String outputStreamDefinition : outputStreamDefinitions) {
             final StreamDefinition outputSiddhiDefinition = SiddhiCompiler.parseStreamDefinition(outputStreamDefinition);
+            final boolean isPartialOutputStream = partialOutputStreamIds.contains(outputSiddhiDefinition.getId());
             if (log.isDebugEnabled()) {
                 log.debug(logPrefix + " Adding callback for stream: " + outputSiddhiDefinition.getId());
             }
@@ -113,8 +131,12 @@ public class SiddhiBolt extends BaseBasicBolt {
                 @Override
                 public void receive(Event[] events) {
                     for (Event event : events) {
-                        Object[] eventData = Arrays.copyOf(event.getData(), event.getData().length + 1);
+                        Object[] eventData = Arrays.copyOf(event.getData(),
+                                event.getData().length + (isPartialOutputStream ? 2 : 1));
                         eventData[event.getData().length] = event.getTimestamp();
+                        if (isPartialOutputStream) {
+                            eventData[event.getData().length + 1] = event.isExpired();
+                        }
                         collector.emit(outputSiddhiDefinition.getId(), Arrays.asList(eventData));
 
                         if (log.isDebugEnabled()) {
@@ -177,10 +199,13 @@ public class SiddhiBolt extends BaseBasicBolt {
                 throw new RuntimeException(logPrefix + "Cannot find exported stream : " + siddhiOutputDefinition.getId());
             }
             List<String> list = new ArrayList<String>();
-            list.add(0,"_timestamp");
             for (Attribute attribute : siddhiOutputDefinition.getAttributeList()) {
                 list.add(attribute.getName());
             }
+            list.add("_timestamp");          // timestamp is emitted after the event data
+            if (partialOutputStreamIds.contains(siddhiOutputDefinition.getId())) {
+                list.add("_expired");
+            }
             Fields fields = new Fields(list);
             declarer.declareStream(siddhiOutputDefinition.getId(), fields);
             log.info(logPrefix + "Declaring output field for stream :" + siddhiOutputDefinition.getId());
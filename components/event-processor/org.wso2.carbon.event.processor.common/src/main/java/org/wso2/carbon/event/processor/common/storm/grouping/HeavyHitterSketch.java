@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.storm.grouping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch which tracks the most frequent keys of a stream using a fixed number of counters. The estimated
+ * count of a tracked key over-estimates its true count by at most the count of the counter it replaced, so every
+ * key whose share is above 1/capacity is guaranteed to be tracked.
+ * <p/>
+ * Counts are halved by {@link #decay()} so that the sketch follows keys which become hot, or cool down, over time.
+ * Not thread safe, each emitting executor keeps its own sketch.
+ */
+public class HeavyHitterSketch {
+
+    private final int capacity;
+    private final Map<Object, long[]> counters;
+    private long total = 0;
+
+    /**
+     * @param capacity number of keys tracked
+     */
+    public HeavyHitterSketch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity of the sketch should be positive, but found " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<Object, long[]>(capacity * 2);
+    }
+
+    /**
+     * Counts an occurrence of the key.
+     *
+     * @return estimated count of the key
+     */
+    public long offer(Object key) {
+        total++;
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            return ++counter[0];
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new long[]{1});
+            return 1;
+        }
+        // Replace the key with the minimum count, the new key inherits its count as the error bound.
+        Object minKey = null;
+        long[] minCounter = null;
+        for (Map.Entry<Object, long[]> entry : counters.entrySet()) {
+            if (minCounter == null || entry.getValue()[0] < minCounter[0]) {
+                minKey = entry.getKey();
+                minCounter = entry.getValue();
+            }
+        }
+        counters.remove(minKey);
+        minCounter[0]++;
+        counters.put(key, minCounter);
+        return minCounter[0];
+    }
+
+    /**
+     * @return estimated count of the key, 0 if the key is not tracked
+     */
+    public long getEstimatedCount(Object key) {
+        long[] counter = counters.get(key);
+        return counter == null ? 0 : counter[0];
+    }
+
+    /**
+     * @return estimated fraction of the offered keys which were equal to the given key
+     */
+    public double getEstimatedShare(Object key) {
+        return total == 0 ? 0 : (double) getEstimatedCount(key) / total;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param limit maximum number of keys to return
+     * @return tracked keys with their estimated counts, most frequent first
+     */
+    public List<Map.Entry<Object, Long>> getTopKeys(int limit) {
+        List<Map.Entry<Object, Long>> topKeys = new ArrayList<Map.Entry<Object, Long>>(counters.size());
+        for (Map.Entry<Object, long[]> entry : counters.entrySet()) {
+            topKeys.add(new HashMap.SimpleImmutableEntry<Object, Long>(entry.getKey(), entry.getValue()[0]));
+        }
+        Collections.sort(topKeys, new Comparator<Map.Entry<Object, Long>>() {
+            @Override
+            public int compare(Map.Entry<Object, Long> first, Map.Entry<Object, Long> second) {
+                return second.getValue().compareTo(first.getValue());
+            }
+        });
+        return topKeys.size() > limit ? topKeys.subList(0, limit) : topKeys;
+    }
+
+    /**
+     * Halves all the counts, dropping the keys whose count becomes zero.
+     */
+    public void decay() {
+        total /= 2;
+        List<Object> emptyKeys = new ArrayList<Object>();
+        for (Map.Entry<Object, long[]> entry : counters.entrySet()) {
+            entry.getValue()[0] /= 2;
+            if (entry.getValue()[0] == 0) {
+                emptyKeys.add(entry.getKey());
+            }
+        }
+        for (Object key : emptyKeys) {
+            counters.remove(key);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.storm.grouping;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.grouping.CustomStreamGrouping;
+import backtype.storm.task.WorkerTopologyContext;
+import org.apache.log4j.Logger;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fields grouping on a single partitioning field which detects key skew on the edge it is used on.
+ * <p/>
+ * The emitting executor samples the keys into a {@link HeavyHitterSketch}. A key is hot when its share of the edge
+ * is above half of the fair share of a consumer task. When hot key splitting is enabled, which the query plan builder
+ * does only for consumers whose output can be merged by a {@link org.wso2.carbon.event.processor.common.storm
+ * .component.PartialAggregateMergeBolt}, events of a hot key are sent to the less loaded of two candidate tasks
+ * (partial key grouping). All other keys are always sent to their first candidate, as with the storm fields grouping.
+ * <p/>
+ * The load imbalance of the consumer tasks and the hot keys are reported per edge, periodically, in the log.
+ */
+public class SkewAwareFieldsGrouping implements CustomStreamGrouping {
+
+    private static final int SKETCH_CAPACITY = 64;
+    private static final int SAMPLE_INTERVAL = 4;                   // one in N keys is offered to the sketch
+    private static final int DECAY_INTERVAL = 10000;                // sketch counts are halved every N samples
+    private static final int MIN_SAMPLES = 1000;                    // samples needed before a key can be hot
+    private static final double HOT_KEY_SHARE = 0.5;                // fraction of the fair share of a task
+    private static final long REPORT_INTERVAL_MILLIS = 60000;
+    private static final double REPORTED_IMBALANCE = 1.5;           // max/avg task load reported as skew
+    private static final int REPORTED_KEYS = 3;
+
+    private static final long serialVersionUID = 1L;
+    private static Logger log = Logger.getLogger(SkewAwareFieldsGrouping.class);
+
+    private final String partitionField;
+    private final boolean splitHotKeys;
+    private final String edgeName;
+
+    private transient int keyIndex;
+    private transient List<List<Integer>> targetTasks;
+    private transient long[] taskLoads;
+    private transient HeavyHitterSketch sketch;
+    private transient long tupleCount;
+    private transient long splitTupleCount;
+    private transient long lastReportTime;
+
+    /**
+     * @param partitionField field the events are partitioned on
+     * @param splitHotKeys   whether events of a hot key can be sent to two tasks
+     * @param edgeName       name of the edge used when reporting skew, e.g. [tenant:plan] publisher -> consumer
+     */
+    public SkewAwareFieldsGrouping(String partitionField, boolean splitHotKeys, String edgeName) {
+        this.partitionField = partitionField;
+        this.splitHotKeys = splitHotKeys;
+        this.edgeName = edgeName;
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        keyIndex = context.getComponentOutputFields(stream).fieldIndex(partitionField);
+        List<Integer> sortedTasks = new ArrayList<Integer>(targetTasks);
+        Collections.sort(sortedTasks);
+        this.targetTasks = new ArrayList<List<Integer>>(sortedTasks.size());
+        for (Integer task : sortedTasks) {
+            this.targetTasks.add(Collections.singletonList(task));
+        }
+        taskLoads = new long[sortedTasks.size()];
+        sketch = new HeavyHitterSketch(SKETCH_CAPACITY);
+        lastReportTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public List<Integer> chooseTasks(int taskId, List<Object> values) {
+        Object key = values.get(keyIndex);
+        int hash = key == null ? 0 : key.hashCode();
+        int numTasks = taskLoads.length;
+        int target = candidate(hash, numTasks);
+
+        if (++tupleCount % SAMPLE_INTERVAL == 0) {
+            sketch.offer(key);
+            if (sketch.getTotal() >= DECAY_INTERVAL) {
+                sketch.decay();
+            }
+        }
+        if (splitHotKeys && numTasks > 1 && isHot(key, numTasks)) {
+            int secondTarget = candidate(hash ^ 0x5bd1e995, numTasks);
+            if (secondTarget == target) {
+                secondTarget = (target + 1) % numTasks;
+            }
+            if (taskLoads[secondTarget] < taskLoads[target]) {
+                target = secondTarget;
+            }
+            splitTupleCount++;
+        }
+        taskLoads[target]++;
+
+        if ((tupleCount & 0x3FF) == 0 && System.currentTimeMillis() - lastReportTime >= REPORT_INTERVAL_MILLIS) {
+            reportSkew(numTasks);
+        }
+        return targetTasks.get(target);
+    }
+
+    private boolean isHot(Object key, int numTasks) {
+        return sketch.getTotal() >= MIN_SAMPLES && sketch.getEstimatedShare(key) >= HOT_KEY_SHARE / numTasks;
+    }
+
+    /**
+     * Maps the hash to a task, mixing the bits first as the hash codes of numbers and short strings are not spread.
+     */
+    private static int candidate(int hash, int numTasks) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % numTasks;
+    }
+
+    private void reportSkew(int numTasks) {
+        long max = 0;
+        long sum = 0;
+        for (int i = 0; i < numTasks; i++) {
+            max = Math.max(max, taskLoads[i]);
+            sum += taskLoads[i];
+            taskLoads[i] = 0;
+        }
+        double imbalance = sum == 0 ? 1 : (double) max * numTasks / sum;
+
+        StringBuilder hotKeys = new StringBuilder();
+        DecimalFormat formatter = new DecimalFormat("0.0");
+        for (Map.Entry<Object, Long> entry : sketch.getTopKeys(REPORTED_KEYS)) {
+            if (isHot(entry.getKey(), numTasks)) {
+                hotKeys.append(hotKeys.length() == 0 ? "" : ", ").append(entry.getKey()).append("=")
+                        .append(formatter.format(100 * sketch.getEstimatedShare(entry.getKey()))).append("%");
+            }
+        }
+        String report = "Key skew on edge " + edgeName + " [field: " + partitionField + ", tasks: " + numTasks
+                + ", max/avg task load: " + formatter.format(imbalance) + ", hot keys: {" + hotKeys + "}, split events: "
+                + splitTupleCount + (splitHotKeys ? "" : " (hot key splitting disabled)") + "]";
+        if (imbalance >= REPORTED_IMBALANCE || hotKeys.length() > 0) {
+            log.info(report);
+        } else if (log.isDebugEnabled()) {
+            log.debug(report);
+        }
+        splitTupleCount = 0;
+        lastReportTime = System.currentTimeMillis();
+    }
+}
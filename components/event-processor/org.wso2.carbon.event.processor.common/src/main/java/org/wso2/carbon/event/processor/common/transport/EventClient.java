@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport;
+
+import java.io.IOException;
+
+/**
+ * Client sending events to an {@link EventServer}, used by the CEP receivers and the event publisher bolts.
+ */
+public interface EventClient {
+
+    /**
+     * @param flush whether the events buffered by the client should be written out
+     * @throws IOException if the connection to the server failed
+     */
+    void sendEvent(String streamId, long timestamp, Object[] data, boolean flush) throws IOException;
+
+    /**
+     * @return endpoint of the server in host:port format
+     */
+    String getHostUrl();
+
+    /**
+     * Closes the connection without flushing the buffered events, after a failure.
+     */
+    void terminate();
+
+    void shutdown();
+}
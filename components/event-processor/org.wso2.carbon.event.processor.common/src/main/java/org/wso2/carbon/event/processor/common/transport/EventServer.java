@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport;
+
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.IOException;
+
+/**
+ * Server receiving the events sent by {@link EventClient}s, used by the event receiver spouts and the CEP publishers.
+ */
+public interface EventServer {
+
+    /**
+     * Adds a stream the server can receive events of. Events of unknown streams are discarded.
+     */
+    void addStreamDefinition(StreamDefinition streamDefinition);
+
+    /**
+     * @throws java.net.BindException if the server binds its port while starting, and the port is in use
+     */
+    void start() throws IOException;
+
+    /**
+     * @return port the server listens on, which is only known once started if it was created with port 0
+     */
+    int getPort();
+
+    /**
+     * Signals that events passed to the stream callback have been consumed, so that the server can let the clients
+     * send as many more. Servers without flow control ignore it.
+     */
+    void releaseCapacity(int eventCount);
+
+    void shutdown();
+}
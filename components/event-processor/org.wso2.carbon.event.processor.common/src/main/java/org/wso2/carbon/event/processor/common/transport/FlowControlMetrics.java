@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time an event publisher spent blocked waiting for credits from its receiver, and the number of times it ran out of
+ * credits. Kept by the publisher across the connections it makes, so that the totals survive reconnects.
+ */
+public class FlowControlMetrics {
+
+    private final AtomicLong blockedTimeNanos = new AtomicLong();
+    private final AtomicLong creditStarvationCount = new AtomicLong();
+
+    public void recordStarvation(long blockedNanos) {
+        creditStarvationCount.incrementAndGet();
+        blockedTimeNanos.addAndGet(blockedNanos);
+    }
+
+    public long getBlockedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedTimeNanos.get());
+    }
+
+    public long getCreditStarvationCount() {
+        return creditStarvationCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "blocked for " + getBlockedTimeMillis() + "ms in " + getCreditStarvationCount() + " credit starvations";
+    }
+}
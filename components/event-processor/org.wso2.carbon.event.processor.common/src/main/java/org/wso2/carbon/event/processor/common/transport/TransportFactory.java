@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventClient;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventServer;
+import org.wso2.carbon.event.processor.common.util.PortAllocator;
+import org.wso2.carbon.event.processor.manager.commons.transport.client.ConnectionFailureHandler;
+import org.wso2.carbon.event.processor.manager.commons.transport.client.TCPEventPublisher;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.ConnectionCallback;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.TCPEventServer;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.TCPEventServerConfig;
+import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.BindException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the servers and clients of the transport between the CEP workers and the storm components. The TCP
+ * transport is used unless the NIO transport is enabled with {@value #NIO_TRANSPORT_ENABLED} in storm.yaml, which is
+ * read by the CEP nodes and passed to the storm components as the topology configuration, so that both ends agree.
+ * The system property of the same name can be used where storm.yaml is not read.
+ * <p/>
+ * NIO clients send through a shared memory ring when the server is on the same host, unless disabled with
+ * {@value #SHARED_MEMORY_ENABLED}. The rings are created in {@value #SHARED_MEMORY_DIRECTORY}, which must be the same
+ * directory for all the nodes of the host.
+ */
+public final class TransportFactory {
+
+    public static final String NIO_TRANSPORT_ENABLED = "cep.transport.nio.enabled";
+    public static final String SHARED_MEMORY_ENABLED = "cep.transport.shm.enabled";
+    public static final String SHARED_MEMORY_DIRECTORY = "cep.transport.shm.dir";
+    public static final String SHARED_MEMORY_RING_SIZE = "cep.transport.shm.ring.size";
+    private static final int DEFAULT_RING_SIZE = 4 * 1024 * 1024;
+    private static final Logger log = Logger.getLogger(TransportFactory.class);
+
+    private static volatile boolean isNioEnabled = Boolean.getBoolean(NIO_TRANSPORT_ENABLED);
+    private static volatile boolean isSharedMemoryEnabled =
+            !"false".equalsIgnoreCase(System.getProperty(SHARED_MEMORY_ENABLED));
+    private static volatile File sharedMemoryDirectory = new File(System.getProperty(SHARED_MEMORY_DIRECTORY,
+            System.getProperty("java.io.tmpdir") + File.separator + "cep-transport"));
+    private static volatile int ringSize = Integer.getInteger(SHARED_MEMORY_RING_SIZE, DEFAULT_RING_SIZE);
+
+    private TransportFactory() {
+    }
+
+    /**
+     * @param conf storm.yaml of a CEP node, or the topology configuration of a storm component
+     */
+    public static void configure(Map conf) {
+        if (conf != null && conf.containsKey(NIO_TRANSPORT_ENABLED)) {
+            boolean enabled = Boolean.parseBoolean(String.valueOf(conf.get(NIO_TRANSPORT_ENABLED)));
+            if (enabled != isNioEnabled) {
+                log.info((enabled ? "Enabling" : "Disabling") + " NIO event transport");
+            }
+            isNioEnabled = enabled;
+        }
+        if (conf != null && conf.containsKey(SHARED_MEMORY_ENABLED)) {
+            isSharedMemoryEnabled = Boolean.parseBoolean(String.valueOf(conf.get(SHARED_MEMORY_ENABLED)));
+        }
+        if (conf != null && conf.containsKey(SHARED_MEMORY_DIRECTORY)) {
+            sharedMemoryDirectory = new File(String.valueOf(conf.get(SHARED_MEMORY_DIRECTORY)));
+        }
+        if (conf != null && conf.containsKey(SHARED_MEMORY_RING_SIZE)) {
+            ringSize = Integer.parseInt(String.valueOf(conf.get(SHARED_MEMORY_RING_SIZE)));
+        }
+    }
+
+    public static boolean isNioEnabled() {
+        return isNioEnabled;
+    }
+
+    /**
+     * @param connectionCallback notified when clients connect and disconnect, can be null
+     * @param capacity           number of events the stream callback can hold until it releases them, to limit the
+     *                           clients to, or 0 for no flow control. Only the NIO transport supports flow control.
+     */
+    public static EventServer createServer(String host, int port, StreamCallback streamCallback,
+                                           ConnectionCallback connectionCallback, int capacity) {
+        if (isNioEnabled) {
+            return new NioEventServer(host, port, streamCallback, connectionCallback, capacity);
+        }
+        return new TcpEventServerAdapter(new TCPEventServer(new TCPEventServerConfig(host, port), streamCallback,
+                connectionCallback), port);
+    }
+
+    /**
+     * Creates and starts a server listening on a port of the range. The NIO server binds its port while starting,
+     * so it listens on an ephemeral port when the range starts at 0, and is started on another free port of the range
+     * if the chosen port is taken before it binds. The TCP server binds on its own thread, hence its port is only
+     * checked to be free before it is started.
+     *
+     * @param minPort lower bound of the port range, or 0 to listen on an ephemeral port
+     * @param maxPort upper bound of the port range
+     * @return the started server, which listens on {@link EventServer#getPort()}
+     * @throws IOException if no port of the range can be bound
+     */
+    public static EventServer startServer(String host, int minPort, int maxPort, StreamCallback streamCallback,
+                                          ConnectionCallback connectionCallback, int capacity) throws IOException {
+        boolean isNio = isNioEnabled;
+        int attempts = minPort > 0 ? maxPort - minPort + 1 : 1;
+        for (int attempt = 1; ; attempt++) {
+            int port = isNio && minPort <= 0 ? 0 : PortAllocator.findAvailablePort(host, minPort, maxPort);
+            EventServer server = isNio ? new NioEventServer(host, port, streamCallback, connectionCallback, capacity) :
+                    createServer(host, port, streamCallback, connectionCallback, capacity);
+            try {
+                server.start();
+                return server;
+            } catch (BindException e) {
+                if (attempt >= attempts) {
+                    throw e;
+                }
+                log.debug("Port " + port + " was taken before the event server could bind it, trying another port");
+            }
+        }
+    }
+
+    /**
+     * Connects to the server at the endpoint.
+     *
+     * @param endpoint           server in host:port format
+     * @param connectionCallback notified when the connection is established and closed, can be null
+     * @param failureHandler     notified when the TCP client detects a broken connection while idle
+     * @param flowControlMetrics metrics to record the time the client is blocked by flow control in
+     * @throws IOException if the server cannot be connected to
+     */
+    public static EventClient createClient(String endpoint, DistributedConfiguration config,
+                                           Set<StreamDefinition> streams, ConnectionCallback connectionCallback,
+                                           ConnectionFailureHandler failureHandler,
+                                           FlowControlMetrics flowControlMetrics) throws IOException {
+        if (isNioEnabled) {
+            NioEventClient client = new NioEventClient(endpoint, connectionCallback,
+                    isSharedMemoryEnabled ? sharedMemoryDirectory : null, ringSize, flowControlMetrics);
+            for (StreamDefinition streamDefinition : streams) {
+                client.addStreamDefinition(streamDefinition);
+            }
+            return client;
+        }
+        TCPEventPublisher publisher = new TCPEventPublisher(endpoint, config.constructTransportPublisherConfig(), true,
+                connectionCallback);
+        for (StreamDefinition streamDefinition : streams) {
+            publisher.addStreamDefinition(streamDefinition);
+        }
+        publisher.registerConnectionFailureHandler(failureHandler);
+        return new TcpEventClientAdapter(publisher);
+    }
+
+    private static class TcpEventServerAdapter implements EventServer {
+        private final TCPEventServer server;
+        private final int port;
+
+        TcpEventServerAdapter(TCPEventServer server, int port) {
+            this.server = server;
+            this.port = port;
+        }
+
+        @Override
+        public void addStreamDefinition(StreamDefinition streamDefinition) {
+            server.addStreamDefinition(streamDefinition);
+        }
+
+        @Override
+        public void start() throws IOException {
+            server.start();
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public void releaseCapacity(int eventCount) {
+        }
+
+        @Override
+        public void shutdown() {
+            server.shutdown();
+        }
+    }
+
+    private static class TcpEventClientAdapter implements EventClient {
+        private final TCPEventPublisher publisher;
+
+        TcpEventClientAdapter(TCPEventPublisher publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void sendEvent(String streamId, long timestamp, Object[] data, boolean flush) throws IOException {
+            publisher.sendEvent(streamId, timestamp, data, flush);
+        }
+
+        @Override
+        public String getHostUrl() {
+            return publisher.getHostUrl();
+        }
+
+        @Override
+        public void terminate() {
+            publisher.terminate();
+        }
+
+        @Override
+        public void shutdown() {
+            publisher.shutdown();
+        }
+    }
+}
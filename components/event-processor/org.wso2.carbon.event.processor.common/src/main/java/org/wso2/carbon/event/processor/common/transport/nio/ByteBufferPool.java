@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the direct buffers the connections of {@link NioEventServer}s read into, shared by all servers of the JVM.
+ */
+public final class ByteBufferPool {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    private ByteBufferPool() {
+    }
+
+    public static ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooledBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer acquired from the pool. Buffers of other sizes are left to the garbage collector.
+     */
+    public static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+            return;
+        }
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            buffers.offer(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
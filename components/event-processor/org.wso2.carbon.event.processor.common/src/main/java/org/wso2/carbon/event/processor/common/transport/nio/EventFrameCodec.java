@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Binary format of the frames exchanged by {@link NioEventClient} and {@link NioEventServer}.
+ * <p/>
+ * Every frame starts with its length (int, excluding the length itself) and its type (byte). An events frame carries a
+ * batch of events of one stream:
+ * <pre>
+ * [length:int][type:byte = EVENTS][stream id length:short][stream id:UTF-8][event count:int]
+ *     ([timestamp:long]([present:byte][value])*)*
+ * </pre>
+ * Values are encoded according to the attribute types of the stream, which both ends know from the stream
+ * definitions they were given. Strings are encoded as their UTF-8 length (int) followed by the bytes.
+ * <p/>
+ * A client on the same host as the server can offer to send the frames through a {@link SharedMemoryRing} instead,
+ * which the server answers with an accept or reject frame:
+ * <pre>
+ * [length:int][type:byte = SHARED_MEMORY_OFFER][path length:short][path:UTF-8][capacity:int]
+ * [length:int][type:byte = SHARED_MEMORY_ACCEPT | SHARED_MEMORY_REJECT]
+ * </pre>
+ * The server grants the client the number of events it may send, first on connect and then as its receiver frees
+ * capacity. Servers without flow control grant {@link #UNLIMITED_CREDITS} on connect.
+ * <pre>
+ * [length:int][type:byte = CREDIT][credits:int]
+ * </pre>
+ */
+public final class EventFrameCodec {
+
+    public static final byte EVENTS = 1;
+    public static final byte SHARED_MEMORY_OFFER = 2;
+    public static final byte SHARED_MEMORY_ACCEPT = 3;
+    public static final byte SHARED_MEMORY_REJECT = 4;
+    public static final byte CREDIT = 5;
+    public static final int UNLIMITED_CREDITS = -1;
+    public static final int LENGTH_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte PRESENT = 1;
+
+    private EventFrameCodec() {
+    }
+
+    public static Attribute.Type[] getAttributeTypes(StreamDefinition streamDefinition) {
+        List<Attribute> attributes = streamDefinition.getAttributeList();
+        Attribute.Type[] types = new Attribute.Type[attributes.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = attributes.get(i).getType();
+        }
+        return types;
+    }
+
+    /**
+     * Writes the header of an events frame, whose length and event count are set by {@link #endEventsFrame}.
+     *
+     * @return position of the frame in the buffer
+     */
+    public static int beginEventsFrame(ByteBuffer buffer, byte[] streamId) {
+        int frameStart = buffer.position();
+        buffer.putInt(0);
+        buffer.put(EVENTS);
+        buffer.putShort((short) streamId.length);
+        buffer.put(streamId);
+        buffer.putInt(0);
+        return frameStart;
+    }
+
+    public static void endEventsFrame(ByteBuffer buffer, int frameStart, int streamIdLength, int eventCount) {
+        buffer.putInt(frameStart, buffer.position() - frameStart - LENGTH_SIZE);
+        buffer.putInt(frameStart + LENGTH_SIZE + 1 + 2 + streamIdLength, eventCount);
+    }
+
+    /**
+     * @throws java.nio.BufferOverflowException if the event does not fit in the remaining space of the buffer
+     * @throws IOException                      if an attribute has a type which cannot be sent
+     */
+    public static void encodeEvent(ByteBuffer buffer, Attribute.Type[] types, long timestamp, Object[] data)
+            throws IOException {
+        buffer.putLong(timestamp);
+        for (int i = 0; i < types.length; i++) {
+            Object value = data[i];
+            if (value == null) {
+                buffer.put(NULL);
+                continue;
+            }
+            buffer.put(PRESENT);
+            switch (types[i]) {
+                case INT:
+                    buffer.putInt((Integer) value);
+                    break;
+                case LONG:
+                    buffer.putLong((Long) value);
+                    break;
+                case FLOAT:
+                    buffer.putFloat((Float) value);
+                    break;
+                case DOUBLE:
+                    buffer.putDouble((Double) value);
+                    break;
+                case BOOL:
+                    buffer.put((Boolean) value ? (byte) 1 : (byte) 0);
+                    break;
+                case STRING:
+                    byte[] bytes = ((String) value).getBytes(UTF_8);
+                    buffer.putInt(bytes.length);
+                    buffer.put(bytes);
+                    break;
+                default:
+                    throw new IOException("Attributes of type " + types[i] + " cannot be sent");
+            }
+        }
+    }
+
+    public static Object[] decodeEventData(ByteBuffer buffer, Attribute.Type[] types) throws IOException {
+        Object[] data = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            if (buffer.get() == NULL) {
+                continue;
+            }
+            switch (types[i]) {
+                case INT:
+                    data[i] = buffer.getInt();
+                    break;
+                case LONG:
+                    data[i] = buffer.getLong();
+                    break;
+                case FLOAT:
+                    data[i] = buffer.getFloat();
+                    break;
+                case DOUBLE:
+                    data[i] = buffer.getDouble();
+                    break;
+                case BOOL:
+                    data[i] = buffer.get() == 1;
+                    break;
+                case STRING:
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    data[i] = new String(bytes, UTF_8);
+                    break;
+                default:
+                    throw new IOException("Attributes of type " + types[i] + " cannot be received");
+            }
+        }
+        return data;
+    }
+
+    public static ByteBuffer encodeSharedMemoryOffer(String path, int capacity) {
+        byte[] pathBytes = path.getBytes(UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + 1 + 2 + pathBytes.length + 4);
+        buffer.putInt(buffer.capacity() - LENGTH_SIZE);
+        buffer.put(SHARED_MEMORY_OFFER);
+        buffer.putShort((short) pathBytes.length);
+        buffer.put(pathBytes);
+        buffer.putInt(capacity);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes a frame without content, such as the reply to a shared memory offer.
+     */
+    public static ByteBuffer encodeControlFrame(byte type) {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + 1);
+        buffer.putInt(1);
+        buffer.put(type);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer encodeCredit(int credits) {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + 1 + 4);
+        buffer.putInt(1 + 4);
+        buffer.put(CREDIT);
+        buffer.putInt(credits);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes a stream id or a path.
+     */
+    public static String decodeShortString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
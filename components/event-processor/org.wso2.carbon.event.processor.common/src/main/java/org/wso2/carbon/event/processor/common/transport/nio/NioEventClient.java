@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.event.processor.common.transport.EventClient;
+import org.wso2.carbon.event.processor.common.transport.FlowControlMetrics;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.ConnectionCallback;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client sending events to a {@link NioEventServer}. Consecutive events of a stream are batched into one frame, and
+ * the frames are buffered and written when the caller flushes or the buffer is full.
+ * <p/>
+ * When the server is on the same host, the frames are written to a {@link SharedMemoryRing} offered to the server
+ * on connect, falling back to the socket if the server rejects it.
+ * <p/>
+ * The client only sends as many events as the server granted it credits for. When it runs out of credits it flushes
+ * the buffered events and blocks until the server grants more, which is recorded in the {@link FlowControlMetrics}.
+ */
+public class NioEventClient implements EventClient {
+
+    private static final Logger log = Logger.getLogger(NioEventClient.class);
+    private static final int NEGOTIATION_TIMEOUT = 10000;
+    private static final int CONTROL_READ_TIMEOUT = 1000;
+    private static final long CREDIT_WAIT_WARN_INTERVAL = 30000;
+    private static final long RING_HEARTBEAT_TIMEOUT = 5000;
+    private static final long RING_FULL_PARK_NANOS = 50000;
+
+    private final String hostUrl;
+    private final ConnectionCallback connectionCallback;
+    private final Map<String, StreamInfo> streams = new ConcurrentHashMap<String, StreamInfo>();
+    private final SocketChannel channel;
+    private final InputStream controlInput;
+    private final ByteBuffer controlBuffer = ByteBuffer.allocate(64);
+    private final FlowControlMetrics flowControlMetrics;
+    private ByteBuffer buffer = ByteBuffer.allocate(ByteBufferPool.BUFFER_SIZE);
+    private SharedMemoryRing ring;
+    private long credits;
+    private boolean isUnlimited;
+    private volatile boolean isShutdown = false;
+
+    private StreamInfo frameStream;
+    private int frameStart;
+    private int frameEventCount;
+
+    /**
+     * @param hostUrl            endpoint of the server in host:port format
+     * @param connectionCallback notified when the connection is established and closed, can be null
+     * @throws IOException if the server cannot be connected to
+     */
+    public NioEventClient(String hostUrl, ConnectionCallback connectionCallback) throws IOException {
+        this(hostUrl, connectionCallback, null, 0, new FlowControlMetrics());
+    }
+
+    /**
+     * @param hostUrl               endpoint of the server in host:port format
+     * @param connectionCallback    notified when the connection is established and closed, can be null
+     * @param sharedMemoryDirectory directory to create a shared memory ring in when the server is on the same host,
+     *                              or null to always send through TCP
+     * @param ringCapacity          capacity of the shared memory ring in bytes
+     * @param flowControlMetrics    metrics to record the time blocked waiting for credits in
+     * @throws IOException if the server cannot be connected to
+     */
+    public NioEventClient(String hostUrl, ConnectionCallback connectionCallback, File sharedMemoryDirectory,
+                          int ringCapacity, FlowControlMetrics flowControlMetrics) throws IOException {
+        this.hostUrl = hostUrl;
+        this.connectionCallback = connectionCallback;
+        this.flowControlMetrics = flowControlMetrics;
+        int separator = hostUrl.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IOException("Invalid endpoint " + hostUrl + ", expected host:port");
+        }
+        InetSocketAddress address = new InetSocketAddress(hostUrl.substring(0, separator),
+                Integer.parseInt(hostUrl.substring(separator + 1)));
+        channel = SocketChannel.open(address);
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSoTimeout(CONTROL_READ_TIMEOUT);
+            controlInput = channel.socket().getInputStream();
+            readInitialCredits();
+            if (sharedMemoryDirectory != null && isLocal(address.getAddress())) {
+                negotiateSharedMemory(sharedMemoryDirectory, ringCapacity);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (connectionCallback != null) {
+            connectionCallback.onCepReceiverConnect();
+        }
+    }
+
+    public void addStreamDefinition(StreamDefinition streamDefinition) {
+        streams.put(streamDefinition.getId(), new StreamInfo(streamDefinition));
+    }
+
+    @Override
+    public synchronized void sendEvent(String streamId, long timestamp, Object[] data, boolean flush)
+            throws IOException {
+        StreamInfo stream = streams.get(streamId);
+        if (stream == null) {
+            throw new IOException("Stream " + streamId + " is not defined for endpoint " + hostUrl);
+        }
+        if (!isUnlimited) {
+            if (credits == 0) {
+                awaitCredits();
+            }
+            credits--;
+        }
+        if (frameStream != null && frameStream != stream) {
+            endFrame();
+        }
+        while (true) {
+            int eventStart = buffer.position();
+            boolean isNewFrame = frameStream == null;
+            try {
+                if (isNewFrame) {
+                    frameStart = EventFrameCodec.beginEventsFrame(buffer, stream.streamIdBytes);
+                    frameStream = stream;
+                }
+                EventFrameCodec.encodeEvent(buffer, stream.types, timestamp, data);
+                frameEventCount++;
+                break;
+            } catch (BufferOverflowException e) {
+                buffer.position(eventStart);
+                if (isNewFrame) {
+                    frameStream = null;
+                }
+                if (eventStart > 0) {
+                    endFrame();
+                    write();
+                } else {
+                    growBuffer();
+                }
+            }
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        endFrame();
+        if (buffer.position() > 0) {
+            write();
+        }
+    }
+
+    public boolean isSharedMemoryUsed() {
+        return ring != null;
+    }
+
+    @Override
+    public String getHostUrl() {
+        return hostUrl;
+    }
+
+    @Override
+    public void terminate() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Error closing connection to " + hostUrl + ", " + e.getMessage(), e);
+        }
+        if (ring != null) {
+            ring.delete();
+        }
+        if (connectionCallback != null) {
+            connectionCallback.onCepReceiverDisconnect();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        try {
+            flush();
+        } catch (IOException e) {
+            log.warn("Couldn't flush buffered events to " + hostUrl + " before shutdown, " + e.getMessage());
+        }
+        terminate();
+    }
+
+    private void endFrame() {
+        if (frameStream != null) {
+            EventFrameCodec.endEventsFrame(buffer, frameStart, frameStream.streamIdBytes.length, frameEventCount);
+            frameStream = null;
+            frameEventCount = 0;
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        if (ring != null) {
+            writeToRing();
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        if (buffer.capacity() > ByteBufferPool.BUFFER_SIZE) {
+            buffer = ByteBuffer.allocate(ByteBufferPool.BUFFER_SIZE);
+        } else {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Waits for the server to free space in the ring while it is full, as long as the server keeps polling the ring.
+     */
+    private void writeToRing() throws IOException {
+        while (buffer.hasRemaining()) {
+            if (ring.write(buffer) > 0) {
+                continue;
+            }
+            if (ring.isConsumerClosed()) {
+                throw new IOException("Server " + hostUrl + " closed shared memory ring " + ring.getFile());
+            }
+            if (System.currentTimeMillis() - ring.getLastHeartbeat() > RING_HEARTBEAT_TIMEOUT) {
+                throw new IOException("Server " + hostUrl + " stopped polling shared memory ring " + ring.getFile());
+            }
+            LockSupport.parkNanos(RING_FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Offers the server a ring to send the events through instead of the socket, and waits for the answer. The
+     * server rejects the ring if it cannot map it, for example when it is not on the same host after all.
+     */
+    private void negotiateSharedMemory(File directory, int ringCapacity) throws IOException {
+        SharedMemoryRing offeredRing;
+        try {
+            offeredRing = SharedMemoryRing.create(directory, ringCapacity);
+        } catch (IOException e) {
+            log.warn("Cannot create shared memory ring in " + directory + ", sending events to " + hostUrl +
+                    " through TCP. " + e.getMessage());
+            return;
+        }
+        try {
+            ByteBuffer offer = EventFrameCodec.encodeSharedMemoryOffer(offeredRing.getFile().getAbsolutePath(),
+                    offeredRing.getCapacity());
+            while (offer.hasRemaining()) {
+                channel.write(offer);
+            }
+            byte reply;
+            long deadline = System.currentTimeMillis() + NEGOTIATION_TIMEOUT;
+            do {
+                reply = readControlFrameBefore(deadline);
+            } while (reply == EventFrameCodec.CREDIT);
+            if (reply == EventFrameCodec.SHARED_MEMORY_ACCEPT) {
+                ring = offeredRing;
+                log.info("Sending events to " + hostUrl + " through shared memory ring " + ring.getFile());
+            } else {
+                offeredRing.delete();
+                log.info("Server " + hostUrl + " rejected shared memory ring, sending events through TCP");
+            }
+        } catch (IOException e) {
+            offeredRing.delete();
+            throw e;
+        }
+    }
+
+    private void readInitialCredits() throws IOException {
+        long deadline = System.currentTimeMillis() + NEGOTIATION_TIMEOUT;
+        byte type = readControlFrameBefore(deadline);
+        if (type != EventFrameCodec.CREDIT) {
+            throw new IOException("Expected initial credits from " + hostUrl + ", received frame type " + type);
+        }
+    }
+
+    /**
+     * Flushes the buffered events, whose credits are already used, and reads the frames of the server until it
+     * grants credits.
+     */
+    private void awaitCredits() throws IOException {
+        flush();
+        long startTime = System.nanoTime();
+        long lastWarnTime = System.currentTimeMillis();
+        try {
+            while (credits == 0 && !isUnlimited) {
+                if (isShutdown) {
+                    throw new IOException("Client of " + hostUrl + " is shutdown while waiting for credits");
+                }
+                try {
+                    readControlFrame();
+                } catch (SocketTimeoutException e) {
+                    if (System.currentTimeMillis() - lastWarnTime >= CREDIT_WAIT_WARN_INTERVAL) {
+                        lastWarnTime = System.currentTimeMillis();
+                        log.warn("Waiting for " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime) +
+                                "s for credits from " + hostUrl + ", the receiver is not consuming events");
+                    }
+                }
+            }
+        } finally {
+            flowControlMetrics.recordStarvation(System.nanoTime() - startTime);
+        }
+    }
+
+    private byte readControlFrameBefore(long deadline) throws IOException {
+        while (true) {
+            try {
+                return readControlFrame();
+            } catch (SocketTimeoutException e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IOException("Timed out waiting for " + hostUrl + " to respond");
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a frame sent by the server, keeping the bytes read so far when the read times out.
+     *
+     * @return type of the frame
+     */
+    private byte readControlFrame() throws IOException {
+        while (true) {
+            if (controlBuffer.position() >= EventFrameCodec.LENGTH_SIZE) {
+                int frameLength = controlBuffer.getInt(0);
+                if (frameLength <= 0 || frameLength > controlBuffer.capacity() - EventFrameCodec.LENGTH_SIZE) {
+                    throw new IOException("Invalid frame length " + frameLength + " received from " + hostUrl);
+                }
+                if (controlBuffer.position() >= EventFrameCodec.LENGTH_SIZE + frameLength) {
+                    controlBuffer.flip();
+                    controlBuffer.position(EventFrameCodec.LENGTH_SIZE);
+                    byte type = controlBuffer.get();
+                    if (type == EventFrameCodec.CREDIT) {
+                        int granted = controlBuffer.getInt();
+                        if (granted == EventFrameCodec.UNLIMITED_CREDITS) {
+                            isUnlimited = true;
+                        } else {
+                            credits += granted;
+                        }
+                    }
+                    controlBuffer.position(EventFrameCodec.LENGTH_SIZE + frameLength);
+                    controlBuffer.compact();
+                    return type;
+                }
+            }
+            int read = controlInput.read(controlBuffer.array(), controlBuffer.position(), controlBuffer.remaining());
+            if (read < 0) {
+                throw new EOFException("Connection closed by " + hostUrl);
+            }
+            controlBuffer.position(controlBuffer.position() + read);
+        }
+    }
+
+    private static boolean isLocal(InetAddress address) {
+        try {
+            return address.isLoopbackAddress() || address.isAnyLocalAddress() ||
+                    NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Makes room for an event larger than the buffer, keeping the contents of the buffer.
+     */
+    private void growBuffer() throws IOException {
+        if (buffer.capacity() >= EventFrameCodec.MAX_FRAME_SIZE) {
+            throw new IOException("Event exceeds the maximum frame size of " + EventFrameCodec.MAX_FRAME_SIZE +
+                    " bytes");
+        }
+        ByteBuffer largerBuffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, EventFrameCodec.MAX_FRAME_SIZE));
+        buffer.flip();
+        largerBuffer.put(buffer);
+        buffer = largerBuffer;
+    }
+
+    private static class StreamInfo {
+        private final byte[] streamIdBytes;
+        private final Attribute.Type[] types;
+
+        StreamInfo(StreamDefinition streamDefinition) {
+            this.streamIdBytes = streamDefinition.getId().getBytes(EventFrameCodec.UTF_8);
+            this.types = EventFrameCodec.getAttributeTypes(streamDefinition);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.event.processor.common.transport.EventServer;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.ConnectionCallback;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event server reading the frames of {@link NioEventClient}s with non blocking I/O on the shared threads of the
+ * {@link NioReactor}, instead of a thread per connection. Frames are read into pooled direct buffers and the events
+ * are decoded and passed to the stream callback in batches.
+ * <p/>
+ * Clients on the same host can send their frames through a {@link SharedMemoryRing} instead of the socket, which
+ * then only signals the end of the connection. Such rings are drained by the {@link SharedMemoryPoller}.
+ * <p/>
+ * The stream callback runs on a shared I/O or poller thread and should not block for long, as that stalls the other
+ * connections of the thread. Receivers which queue the events can enable flow control with the capacity of their
+ * queue. The server then grants each client credits for the events it may send, out of the capacity not already
+ * granted or taken by queued events, and grants more as the receiver {@link #releaseCapacity releases} capacity. The
+ * capacity is shared evenly between the connected clients, so that the callback never has to block.
+ */
+public class NioEventServer implements EventServer {
+
+    private static final Logger log = Logger.getLogger(NioEventServer.class);
+
+    private final String host;
+    private volatile int port;
+    private final StreamCallback streamCallback;
+    private final ConnectionCallback connectionCallback;
+    private final Map<String, Attribute.Type[]> streamAttributeTypes = new ConcurrentHashMap<String, Attribute.Type[]>();
+    private final Set<Connection> connections =
+            Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+    private final int capacity;
+    private final int grantThreshold;
+    private final AtomicInteger ungrantedCapacity;
+
+    private ServerSocketChannel serverChannel;
+    private Executor acceptorExecutor;
+
+    public NioEventServer(String host, int port, StreamCallback streamCallback,
+                          ConnectionCallback connectionCallback) {
+        this(host, port, streamCallback, connectionCallback, 0);
+    }
+
+    /**
+     * @param capacity number of events the stream callback can hold until they are released, or 0 to let the
+     *                 clients send without flow control
+     */
+    public NioEventServer(String host, int port, StreamCallback streamCallback,
+                          ConnectionCallback connectionCallback, int capacity) {
+        this.host = host;
+        this.port = port;
+        this.streamCallback = streamCallback;
+        this.connectionCallback = connectionCallback;
+        this.capacity = capacity;
+        this.grantThreshold = Math.max(1, capacity / 16);
+        this.ungrantedCapacity = new AtomicInteger(capacity);
+    }
+
+    @Override
+    public void addStreamDefinition(StreamDefinition streamDefinition) {
+        streamAttributeTypes.put(streamDefinition.getId(), EventFrameCodec.getAttributeTypes(streamDefinition));
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(host, port));
+            serverChannel.configureBlocking(false);
+            port = serverChannel.socket().getLocalPort();
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+        acceptorExecutor = NioReactor.getInstance().register(serverChannel, SelectionKey.OP_ACCEPT, new Acceptor());
+        log.info("NIO event server started on " + host + ":" + port);
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void releaseCapacity(int eventCount) {
+        if (capacity > 0 && ungrantedCapacity.addAndGet(eventCount) >= grantThreshold) {
+            for (Connection connection : connections) {
+                connection.scheduleGrant();
+            }
+        }
+    }
+
+    /**
+     * @return share of the capacity each client can hold credits for
+     */
+    private int getWindow() {
+        return Math.max(1, capacity / Math.max(1, connections.size()));
+    }
+
+    /**
+     * Takes up to the requested capacity out of the capacity not granted yet.
+     */
+    private int takeCapacity(int requested) {
+        while (true) {
+            int ungranted = ungrantedCapacity.get();
+            int taken = Math.min(requested, ungranted);
+            if (taken <= 0 || ungrantedCapacity.compareAndSet(ungranted, ungranted - taken)) {
+                return Math.max(taken, 0);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (serverChannel != null) {
+            acceptorExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeQuietly(serverChannel);
+                }
+            });
+        }
+        for (final Connection connection : connections) {
+            Executor ioExecutor = connection.ioExecutor;
+            if (ioExecutor == null) {
+                connection.onClose();
+                continue;
+            }
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    connection.onClose();
+                }
+            });
+        }
+        log.info("NIO event server on " + host + ":" + port + " shutdown");
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Error closing channel, " + e.getMessage(), e);
+        }
+    }
+
+    private class Acceptor implements NioReactor.ChannelHandler {
+
+        @Override
+        public void onRegistered(SelectionKey key) {
+        }
+
+        @Override
+        public void onReady(SelectionKey key) throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    log.error("Couldn't accept connection from " + channel.socket().getRemoteSocketAddress(), e);
+                    closeQuietly(channel);
+                    continue;
+                }
+                Connection connection = new Connection(channel);
+                connections.add(connection);
+                connection.ioExecutor = NioReactor.getInstance().register(channel, SelectionKey.OP_READ, connection);
+                if (connectionCallback != null) {
+                    connectionCallback.onPublisherBoltConnect();
+                }
+            }
+        }
+
+        @Override
+        public void onClose() {
+            log.info("NIO event server on " + host + ":" + port + " stopped accepting connections");
+        }
+    }
+
+    private class Connection implements NioReactor.ChannelHandler {
+        private final SocketChannel channel;
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
+        private final FrameReader frameReader = new FrameReader(this);
+        private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<ByteBuffer>();
+        private final AtomicInteger outstandingCredits = new AtomicInteger();
+        private final AtomicBoolean isGrantPending = new AtomicBoolean(false);
+        private final Runnable grantTask = new Runnable() {
+            @Override
+            public void run() {
+                isGrantPending.set(false);
+                try {
+                    grantCredits(false);
+                } catch (IOException e) {
+                    log.error("Couldn't grant credits to " + channel.socket().getRemoteSocketAddress() +
+                            ", closing connection", e);
+                    onClose();
+                }
+            }
+        };
+        private volatile Executor ioExecutor;
+        private SelectionKey key;
+        private RingConsumer ringConsumer;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void onRegistered(SelectionKey key) {
+            this.key = key;
+            try {
+                grantCredits(true);
+            } catch (IOException e) {
+                log.error("Couldn't grant credits to " + channel.socket().getRemoteSocketAddress() +
+                        ", closing connection", e);
+                onClose();
+            }
+        }
+
+        @Override
+        public void onReady(SelectionKey key) throws IOException {
+            if (key.isWritable()) {
+                writePending();
+            }
+            if (key.isReadable()) {
+                if (channel.read(frameReader.getBuffer()) < 0) {
+                    key.cancel();
+                    onClose();
+                    return;
+                }
+                frameReader.readFrames();
+            }
+        }
+
+        void readFrame(ByteBuffer frame) throws IOException {
+            byte type = frame.get();
+            if (type == EventFrameCodec.EVENTS) {
+                readEvents(frame);
+            } else if (type == EventFrameCodec.SHARED_MEMORY_OFFER && ringConsumer == null) {
+                String path = EventFrameCodec.decodeShortString(frame);
+                acceptSharedMemory(path, frame.getInt());
+            } else {
+                throw new IOException("Unexpected frame type " + type + " received from " +
+                        channel.socket().getRemoteSocketAddress());
+            }
+        }
+
+        private void readEvents(ByteBuffer frame) throws IOException {
+            String streamId = EventFrameCodec.decodeShortString(frame);
+            int eventCount = frame.getInt();
+            if (capacity > 0) {
+                outstandingCredits.addAndGet(-eventCount);
+            }
+            Attribute.Type[] types = streamAttributeTypes.get(streamId);
+            if (types == null) {
+                log.warn("Discarding " + eventCount + " events of unknown stream " + streamId);
+                releaseCapacity(eventCount);
+                return;
+            }
+            for (int i = 0; i < eventCount; i++) {
+                long timestamp = frame.getLong();
+                streamCallback.receive(streamId, timestamp, EventFrameCodec.decodeEventData(frame, types), null);
+            }
+        }
+
+        /**
+         * Maps the ring offered by a client of the same host. The client keeps sending through TCP if the ring
+         * cannot be mapped, for example when it is on another host after all.
+         */
+        private void acceptSharedMemory(String path, int capacity) throws IOException {
+            try {
+                ringConsumer = new RingConsumer(this, SharedMemoryRing.open(new File(path), capacity));
+            } catch (IOException e) {
+                log.warn("Cannot map shared memory ring " + path + " offered by " +
+                        channel.socket().getRemoteSocketAddress() + ", receiving through TCP. " + e.getMessage());
+                send(EventFrameCodec.encodeControlFrame(EventFrameCodec.SHARED_MEMORY_REJECT));
+                return;
+            }
+            SharedMemoryPoller.getInstance().add(ringConsumer);
+            send(EventFrameCodec.encodeControlFrame(EventFrameCodec.SHARED_MEMORY_ACCEPT));
+            log.info("Receiving events from " + channel.socket().getRemoteSocketAddress() +
+                    " through shared memory ring " + path);
+        }
+
+        /**
+         * Grants credits on the I/O thread of the connection, if the client has used half of its window.
+         */
+        void scheduleGrant() {
+            Executor executor = ioExecutor;
+            if (executor != null && outstandingCredits.get() <= getWindow() / 2 &&
+                    isGrantPending.compareAndSet(false, true)) {
+                executor.execute(grantTask);
+            }
+        }
+
+        /**
+         * Tops up the credits of the client to its window. Called on the I/O thread.
+         *
+         * @param isInitial whether this is the grant on connect, which is sent even without credits
+         */
+        private void grantCredits(boolean isInitial) throws IOException {
+            if (isClosed.get()) {
+                return;
+            }
+            if (capacity == 0) {
+                if (isInitial) {
+                    send(EventFrameCodec.encodeCredit(EventFrameCodec.UNLIMITED_CREDITS));
+                }
+                return;
+            }
+            int granted = takeCapacity(getWindow() - outstandingCredits.get());
+            if (granted > 0 || isInitial) {
+                outstandingCredits.addAndGet(granted);
+                send(EventFrameCodec.encodeCredit(granted));
+            }
+        }
+
+        /**
+         * Writes the frame, or queues it until the channel is writable. Called on the I/O thread.
+         */
+        void send(ByteBuffer frame) throws IOException {
+            if (pendingWrites.isEmpty()) {
+                channel.write(frame);
+                if (!frame.hasRemaining()) {
+                    return;
+                }
+            }
+            pendingWrites.add(frame);
+            if (key != null) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void writePending() throws IOException {
+            ByteBuffer frame;
+            while ((frame = pendingWrites.peek()) != null) {
+                channel.write(frame);
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                pendingWrites.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public void onClose() {
+            if (isClosed.compareAndSet(false, true)) {
+                closeQuietly(channel);
+                frameReader.release();
+                if (ringConsumer != null) {
+                    SharedMemoryPoller.getInstance().remove(ringConsumer);
+                }
+                connections.remove(this);
+                int unusedCredits = outstandingCredits.getAndSet(0);
+                if (unusedCredits > 0) {
+                    releaseCapacity(unusedCredits);
+                }
+                if (connectionCallback != null) {
+                    connectionCallback.onPublisherBoltDisconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the frames of a connection out of the byte stream of its socket or of its shared memory ring.
+     */
+    private static class FrameReader {
+        private final Connection connection;
+        private ByteBuffer buffer = ByteBufferPool.acquire();
+
+        FrameReader(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return buffer to read more bytes into
+         */
+        ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * Handles the complete frames read into the buffer, keeping the partial frame at the start of the buffer.
+         */
+        void readFrames() throws IOException {
+            buffer.flip();
+            while (buffer.remaining() >= EventFrameCodec.LENGTH_SIZE) {
+                int frameLength = buffer.getInt(buffer.position());
+                if (frameLength <= 0 || frameLength > EventFrameCodec.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length " + frameLength + " received from " +
+                            connection.channel.socket().getRemoteSocketAddress());
+                }
+                if (buffer.remaining() < EventFrameCodec.LENGTH_SIZE + frameLength) {
+                    break;
+                }
+                int frameEnd = buffer.position() + EventFrameCodec.LENGTH_SIZE + frameLength;
+                buffer.position(buffer.position() + EventFrameCodec.LENGTH_SIZE);
+                ByteBuffer frame = buffer.slice();
+                frame.limit(frameLength);
+                buffer.position(frameEnd);
+                connection.readFrame(frame);
+            }
+            prepareForNextRead();
+        }
+
+        /**
+         * Frames larger than the pooled buffers are read into a dedicated buffer, which is given up once the frame
+         * is read.
+         */
+        private void prepareForNextRead() {
+            int required = buffer.remaining() >= EventFrameCodec.LENGTH_SIZE ?
+                    EventFrameCodec.LENGTH_SIZE + buffer.getInt(buffer.position()) : 0;
+            if (required > buffer.capacity()) {
+                ByteBuffer largeBuffer = ByteBuffer.allocate(required);
+                largeBuffer.put(buffer);
+                ByteBufferPool.release(buffer);
+                buffer = largeBuffer;
+            } else if (!buffer.hasRemaining() && buffer.capacity() != ByteBufferPool.BUFFER_SIZE) {
+                buffer = ByteBufferPool.acquire();
+            } else {
+                buffer.compact();
+            }
+        }
+
+        void release() {
+            ByteBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads the frames a client sends through a shared memory ring, on the thread of the {@link SharedMemoryPoller}.
+     */
+    private static class RingConsumer implements SharedMemoryPoller.Pollable {
+        private final Connection connection;
+        private final SharedMemoryRing ring;
+        private final FrameReader frameReader;
+
+        RingConsumer(Connection connection, SharedMemoryRing ring) {
+            this.connection = connection;
+            this.ring = ring;
+            this.frameReader = new FrameReader(connection);
+        }
+
+        @Override
+        public boolean poll() {
+            if (ring.read(frameReader.getBuffer()) == 0) {
+                return false;
+            }
+            try {
+                frameReader.readFrames();
+            } catch (IOException e) {
+                log.error("Invalid data in shared memory ring " + ring.getFile() + ", closing connection from " +
+                        connection.channel.socket().getRemoteSocketAddress(), e);
+                SharedMemoryPoller.getInstance().remove(this);
+                connection.ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.onClose();
+                    }
+                });
+            }
+            return true;
+        }
+
+        @Override
+        public void heartbeat(long currentTime) {
+            ring.heartbeat(currentTime);
+        }
+
+        @Override
+        public void onRemoved() {
+            ring.closeConsumer();
+            frameReader.release();
+        }
+    }
+}
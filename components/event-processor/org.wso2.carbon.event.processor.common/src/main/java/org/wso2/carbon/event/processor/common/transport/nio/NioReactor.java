@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small fixed set of selector threads doing the I/O of all the {@link NioEventServer}s of the JVM, so that the number
+ * of threads doesn't grow with the number of execution plans and connections. Channels are assigned to the threads
+ * round robin. The number of threads can be set with the {@value #IO_THREADS} system property.
+ */
+public class NioReactor {
+
+    public static final String IO_THREADS = "cep.transport.nio.io.threads";
+    private static final Logger log = Logger.getLogger(NioReactor.class);
+
+    private static NioReactor instance;
+
+    private final IoThread[] ioThreads;
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    private NioReactor(int threadCount) throws IOException {
+        ioThreads = new IoThread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            ioThreads[i] = new IoThread("NioEventServer-io-" + i);
+            ioThreads[i].start();
+        }
+    }
+
+    public static synchronized NioReactor getInstance() throws IOException {
+        if (instance == null) {
+            int defaultThreadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            instance = new NioReactor(Math.max(1, Integer.getInteger(IO_THREADS, defaultThreadCount)));
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the channel with the selector of one of the I/O threads.
+     *
+     * @return executor running tasks on the I/O thread of the channel, between selections
+     */
+    public Executor register(SelectableChannel channel, int interestOps, ChannelHandler handler) {
+        IoThread ioThread = ioThreads[(nextThread.getAndIncrement() & Integer.MAX_VALUE) % ioThreads.length];
+        ioThread.register(channel, interestOps, handler);
+        return ioThread;
+    }
+
+    /**
+     * Handles the readiness of a channel, on its I/O thread.
+     */
+    public interface ChannelHandler {
+
+        /**
+         * Called once the channel is registered, before it is selected.
+         */
+        void onRegistered(SelectionKey key);
+
+        /**
+         * @throws IOException to close the channel
+         */
+        void onReady(SelectionKey key) throws IOException;
+
+        /**
+         * Called once the channel is closed after a failure.
+         */
+        void onClose();
+    }
+
+    private static class IoThread extends Thread implements Executor {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        IoThread(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void register(final SelectableChannel channel, final int interestOps, final ChannelHandler handler) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handler.onRegistered(channel.register(selector, interestOps, handler));
+                    } catch (ClosedChannelException e) {
+                        handler.onClose();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        handle(key);
+                    }
+                } catch (Throwable e) {
+                    log.error("Error in NIO event server I/O thread " + getName(), e);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            ChannelHandler handler = (ChannelHandler) key.attachment();
+            try {
+                if (key.isValid()) {
+                    handler.onReady(key);
+                }
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing channel " + key.channel() + " after failure, " + e.getMessage(), e);
+                }
+                key.cancel();
+                try {
+                    key.channel().close();
+                } catch (IOException ignored) {
+                    // Already failed
+                }
+                handler.onClose();
+            }
+        }
+    }
+}
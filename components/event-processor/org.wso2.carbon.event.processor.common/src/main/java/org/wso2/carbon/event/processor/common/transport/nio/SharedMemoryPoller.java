@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single thread draining the {@link SharedMemoryRing}s of all the {@link NioEventServer}s of the JVM. The thread
+ * spins briefly when the rings are empty, then yields, then parks for progressively longer up to
+ * {@value #MAX_PARK_NANOS} nanoseconds.
+ */
+public class SharedMemoryPoller implements Runnable {
+
+    private static final Logger log = Logger.getLogger(SharedMemoryPoller.class);
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long MAX_PARK_NANOS = 1000000;
+    private static final long HEARTBEAT_INTERVAL = 100;
+
+    private static SharedMemoryPoller instance;
+
+    private final List<Pollable> pollables = new ArrayList<Pollable>();
+    private final Queue<Pollable> added = new ConcurrentLinkedQueue<Pollable>();
+    private final Queue<Pollable> removed = new ConcurrentLinkedQueue<Pollable>();
+    private final Thread thread;
+
+    private SharedMemoryPoller() {
+        thread = new Thread(this, "NioEventServer-shm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized SharedMemoryPoller getInstance() {
+        if (instance == null) {
+            instance = new SharedMemoryPoller();
+        }
+        return instance;
+    }
+
+    public void add(Pollable pollable) {
+        added.add(pollable);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops polling, {@link Pollable#onRemoved()} is then called on the poller thread.
+     */
+    public void remove(Pollable pollable) {
+        removed.add(pollable);
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        int idleCount = 0;
+        long parkNanos = 1000;
+        long lastHeartbeat = 0;
+        while (true) {
+            Pollable pollable;
+            while ((pollable = added.poll()) != null) {
+                pollables.add(pollable);
+            }
+            while ((pollable = removed.poll()) != null) {
+                if (pollables.remove(pollable)) {
+                    pollable.onRemoved();
+                }
+            }
+            long currentTime = System.currentTimeMillis();
+            boolean isHeartbeatDue = currentTime - lastHeartbeat >= HEARTBEAT_INTERVAL;
+            if (isHeartbeatDue) {
+                lastHeartbeat = currentTime;
+            }
+            boolean isWorkDone = false;
+            for (Pollable current : pollables) {
+                try {
+                    isWorkDone |= current.poll();
+                    if (isHeartbeatDue) {
+                        current.heartbeat(currentTime);
+                    }
+                } catch (Throwable e) {
+                    log.error("Error while polling shared memory ring, " + e.getMessage(), e);
+                }
+            }
+            if (isWorkDone) {
+                idleCount = 0;
+                parkNanos = 1000;
+            } else if (++idleCount > SPIN_TRIES + YIELD_TRIES) {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            } else if (idleCount > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Consumer of a ring, called on the poller thread.
+     */
+    public interface Pollable {
+
+        /**
+         * @return whether any data was consumed
+         */
+        boolean poll();
+
+        void heartbeat(long currentTime);
+
+        void onRemoved();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.transport.nio;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Single producer, single consumer byte ring in a memory mapped file, used by a {@link NioEventClient} to pass
+ * frames to a {@link NioEventServer} in another JVM of the same host without going through the network stack.
+ * <p/>
+ * The file starts with a header holding the positions of the producer and the consumer, each on its own cache line,
+ * followed by the data region. Positions only grow, and are published with ordered writes after the data they cover,
+ * so each side only ever reads what the other side has completely written. The consumer also publishes a heartbeat,
+ * from which the producer can tell that the consumer is gone when the ring stays full.
+ */
+public class SharedMemoryRing {
+
+    private static final int WRITE_POSITION_OFFSET = 0;
+    private static final int READ_POSITION_OFFSET = 64;
+    private static final int HEARTBEAT_OFFSET = 128;
+    private static final int CONSUMER_CLOSED_OFFSET = 136;
+    private static final int HEADER_SIZE = 192;
+
+    private static final Unsafe unsafe;
+    private static final long bufferAddressOffset;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            bufferAddressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final File file;
+    private final int capacity;
+    private final int mask;
+    private final MappedByteBuffer mappedBuffer;
+    private final ByteBuffer data;
+    private final long headerAddress;
+
+    private long position;
+
+    private SharedMemoryRing(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() != HEADER_SIZE + capacity) {
+                throw new IOException("Shared memory ring " + file + " is not of capacity " + capacity);
+            }
+            mappedBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+        } finally {
+            randomAccessFile.close();
+        }
+        headerAddress = unsafe.getLong(mappedBuffer, bufferAddressOffset);
+        mappedBuffer.position(HEADER_SIZE);
+        data = mappedBuffer.slice();
+    }
+
+    /**
+     * Creates a ring file in the directory, for the producer.
+     *
+     * @param capacity size of the data region, rounded up to a power of two
+     */
+    public static SharedMemoryRing create(File directory, int capacity) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create shared memory directory " + directory);
+        }
+        int ringCapacity = Integer.highestOneBit(Math.max(capacity, 1024) - 1) << 1;
+        File file = File.createTempFile("cep-ring-", ".shm", directory);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(HEADER_SIZE + ringCapacity);
+        } finally {
+            randomAccessFile.close();
+        }
+        try {
+            return new SharedMemoryRing(file, ringCapacity);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a ring file created by a producer, for the consumer.
+     */
+    public static SharedMemoryRing open(File file, int capacity) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("Shared memory ring " + file + " does not exist");
+        }
+        SharedMemoryRing ring = new SharedMemoryRing(file, capacity);
+        ring.position = ring.getReadPosition();
+        ring.heartbeat(System.currentTimeMillis());
+        return ring;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Copies as much of the source as fits in the free space of the ring, and publishes it to the consumer.
+     *
+     * @return number of bytes written, 0 if the ring is full
+     */
+    public int write(ByteBuffer source) {
+        int free = capacity - (int) (position - getReadPosition());
+        int length = Math.min(source.remaining(), free);
+        if (length == 0) {
+            return 0;
+        }
+        int index = (int) (position & mask);
+        int firstPart = Math.min(length, capacity - index);
+        copy(source, firstPart, data, index);
+        if (firstPart < length) {
+            copy(source, length - firstPart, data, 0);
+        }
+        position += length;
+        unsafe.putOrderedLong(null, headerAddress + WRITE_POSITION_OFFSET, position);
+        return length;
+    }
+
+    /**
+     * Copies as much of the published data as fits in the destination, and releases the space to the producer.
+     *
+     * @return number of bytes read, 0 if the ring is empty
+     */
+    public int read(ByteBuffer destination) {
+        int available = (int) (unsafe.getLongVolatile(null, headerAddress + WRITE_POSITION_OFFSET) - position);
+        int length = Math.min(available, destination.remaining());
+        if (length == 0) {
+            return 0;
+        }
+        int index = (int) (position & mask);
+        int firstPart = Math.min(length, capacity - index);
+        ByteBuffer source = data.duplicate();
+        source.limit(index + firstPart).position(index);
+        destination.put(source);
+        if (firstPart < length) {
+            source.limit(length - firstPart).position(0);
+            destination.put(source);
+        }
+        position += length;
+        unsafe.putOrderedLong(null, headerAddress + READ_POSITION_OFFSET, position);
+        return length;
+    }
+
+    public void heartbeat(long currentTime) {
+        unsafe.putOrderedLong(null, headerAddress + HEARTBEAT_OFFSET, currentTime);
+    }
+
+    public long getLastHeartbeat() {
+        return unsafe.getLongVolatile(null, headerAddress + HEARTBEAT_OFFSET);
+    }
+
+    public void closeConsumer() {
+        unsafe.putIntVolatile(null, headerAddress + CONSUMER_CLOSED_OFFSET, 1);
+    }
+
+    public boolean isConsumerClosed() {
+        return unsafe.getIntVolatile(null, headerAddress + CONSUMER_CLOSED_OFFSET) != 0;
+    }
+
+    /**
+     * Deletes the ring file. The mapping stays valid until the ring is garbage collected.
+     */
+    public void delete() {
+        file.delete();
+    }
+
+    private long getReadPosition() {
+        return unsafe.getLongVolatile(null, headerAddress + READ_POSITION_OFFSET);
+    }
+
+    private static void copy(ByteBuffer source, int length, ByteBuffer destination, int index) {
+        ByteBuffer part = source.duplicate();
+        part.limit(part.position() + length);
+        ByteBuffer target = destination.duplicate();
+        target.position(index);
+        target.put(part);
+        source.position(source.position() + length);
+    }
+}
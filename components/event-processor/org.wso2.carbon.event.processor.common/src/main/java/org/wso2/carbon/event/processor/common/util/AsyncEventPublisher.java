@@ -30,8 +30,10 @@ import org.apache.thrift.transport.TTransportException;
 import org.wso2.carbon.event.processor.common.storm.manager.service.StormManagerService;
 import org.wso2.carbon.event.processor.common.storm.manager.service.exception.EndpointNotFoundException;
 import org.wso2.carbon.event.processor.common.storm.manager.service.exception.NotStormCoordinatorException;
+import org.wso2.carbon.event.processor.common.transport.EventClient;
+import org.wso2.carbon.event.processor.common.transport.FlowControlMetrics;
+import org.wso2.carbon.event.processor.common.transport.TransportFactory;
 import org.wso2.carbon.event.processor.manager.commons.transport.client.ConnectionFailureHandler;
-import org.wso2.carbon.event.processor.manager.commons.transport.client.TCPEventPublisher;
 import org.wso2.carbon.event.processor.manager.commons.transport.server.ConnectionCallback;
 import org.wso2.carbon.event.processor.manager.commons.utils.HostAndPort;
 import org.wso2.carbon.event.processor.manager.commons.utils.Utils;
@@ -46,7 +48,7 @@ import java.util.concurrent.Executors;
 
 /**
  * Sending events asynchronously from "CEP Receiver" -> "Storm Receiver" and
- * "Storm Publisher" -> "CEP Publisher" using TCPEventPublisher. This will
+ * "Storm Publisher" -> "CEP Publisher" using the event client of TransportFactory. This will
  * discover and connect to the endpoint(i.e. Storm Receiver/CEP Publisher) to
  * send events by talking to "Storm Management" service using EndpointConnectionCreator.
  */
@@ -70,13 +72,14 @@ public class AsyncEventPublisher implements EventHandler<AsynchronousEventBuffer
 
     private ConnectionCallback connectionCallback;
 
-    private TCPEventPublisher tcpEventPublisher = null;
+    private EventClient tcpEventPublisher = null;
     private EndpointConnectionCreator endpointConnectionCreator;
 
     private boolean shutdown = false;
 
     private ThroughputProbe inputThroughputProbe;
     private ThroughputProbe publishThroughputProbe;
+    private final FlowControlMetrics flowControlMetrics = new FlowControlMetrics();
 
     /**
      * @param connectionCallback is a callback, invoked on connect() and disconnect() methods of TCPEventPublisher. Set to null if the callback is not needed.
@@ -217,6 +220,13 @@ public class AsyncEventPublisher implements EventHandler<AsynchronousEventBuffer
         finalize();
     }
 
+    /**
+     * @return time spent waiting for the receiver to grant credits, across all connections of this publisher
+     */
+    public FlowControlMetrics getFlowControlMetrics() {
+        return flowControlMetrics;
+    }
+
     @Override
     public void onConnectionFail(Exception e) {
         if (log.isDebugEnabled()) {
@@ -319,8 +329,8 @@ public class AsyncEventPublisher implements EventHandler<AsynchronousEventBuffer
          * @param retryAttempts maximum number of retry attempts. 0 means retry for ever.
          * @return Returns TCPEvent publisher to talk to endpoint or null if reaches maximum number of attempts without succeeding
          */
-        public TCPEventPublisher connectToEndpoint(String endpoint, int retryAttempts) {
-            TCPEventPublisher tcpEventPublisher = null;
+        public EventClient connectToEndpoint(String endpoint, int retryAttempts) {
+            EventClient tcpEventPublisher = null;
             int attemptCount = 0;
             do {
                 synchronized (AsyncEventPublisher.this) {
@@ -331,13 +341,12 @@ public class AsyncEventPublisher implements EventHandler<AsynchronousEventBuffer
                 }
 
                 try {
-                    tcpEventPublisher = new TCPEventPublisher(endpoint, stormDeploymentConfig.constructTransportPublisherConfig(), true, connectionCallback);
+                    tcpEventPublisher = TransportFactory.createClient(endpoint, stormDeploymentConfig, streams,
+                            connectionCallback, AsyncEventPublisher.this, flowControlMetrics);
                     StringBuilder streamsIDs = new StringBuilder();
                     for (StreamDefinition siddhiStreamDefinition : streams) {
-                        tcpEventPublisher.addStreamDefinition(siddhiStreamDefinition);
                         streamsIDs.append(siddhiStreamDefinition.getId() + ",");
                     }
-                    tcpEventPublisher.registerConnectionFailureHandler(AsyncEventPublisher.this);
                     log.info(logPrefix + "Connected to " + destinationTypeString + " at " + endpoint + " for the Stream(s) " + streamsIDs.toString());
                 } catch (IOException e) {
                     log.info(logPrefix + "Cannot connect to " + destinationTypeString + " at " + endpoint + ", " + e.getMessage());
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.common.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the listening ports of the event servers of the event receiver spouts and the CEP publishers, see
+ * {@link org.wso2.carbon.event.processor.common.transport.TransportFactory#startServer}.
+ * <p/>
+ * TCPEventServer binds its server socket on its own thread and doesn't report failures to bind, so the port is chosen
+ * before the server is started. The NIO server reports them, and is started again on another port of the range. A port is checked by binding a server socket to it, which is a local call unlike
+ * connecting to it, and each search starts after the port last handed out by this JVM, at a random point of the range
+ * for the first search. Therefore the spouts opened together by a storm worker, and the workers on the same host, try
+ * different ports instead of all scanning up from the lowest port of the range.
+ */
+public class PortAllocator {
+
+    private static final AtomicInteger nextOffset = new AtomicInteger(new Random().nextInt(Integer.MAX_VALUE));
+
+    private PortAllocator() {
+    }
+
+    /**
+     * @param host    address the server will listen on
+     * @param minPort lower bound of the port range, or 0 to let the OS pick an ephemeral port
+     * @param maxPort upper bound of the port range
+     * @return a port which could be bound on the host
+     * @throws IOException if no port of the range can be bound
+     */
+    public static int findAvailablePort(String host, int minPort, int maxPort) throws IOException {
+        if (minPort <= 0) {
+            return bind(host, 0);
+        }
+        int rangeSize = maxPort - minPort + 1;
+        for (int i = 0; i < rangeSize; i++) {
+            int port = minPort + (nextOffset.getAndIncrement() & Integer.MAX_VALUE) % rangeSize;
+            try {
+                return bind(host, port);
+            } catch (IOException e) {
+                // Port in use, trying the next one
+            }
+        }
+        throw new IOException("Cannot find free port in range " + minPort + "~" + maxPort);
+    }
+
+    private static int bind(String host, int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        try {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(host, port));
+            return serverSocket.getLocalPort();
+        } finally {
+            serverSocket.close();
+        }
+    }
+}
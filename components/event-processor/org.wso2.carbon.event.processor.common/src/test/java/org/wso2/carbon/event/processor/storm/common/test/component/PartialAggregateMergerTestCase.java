@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.storm.common.test.component;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMergeBolt.MergeFunction;
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMerger;
+
+import java.util.Arrays;
+
+public class PartialAggregateMergerTestCase {
+
+    private static final MergeFunction[] MERGE_FUNCTIONS =
+            new MergeFunction[]{MergeFunction.KEY, MergeFunction.SUM, MergeFunction.COUNT, MergeFunction.MAX};
+
+    @Test
+    public void testMergeSplitKey() {
+        PartialAggregateMerger merger = new PartialAggregateMerger(MERGE_FUNCTIONS, 100);
+        assertMerged(new Object[]{"IBM", 10.0, 1L, 10.0}, merger.merge(1, partial("IBM", 10.0, 1L, 10.0), false));
+        assertMerged(new Object[]{"IBM", 30.0, 2L, 20.0}, merger.merge(1, partial("IBM", 30.0, 2L, 20.0), false));
+        Assert.assertEquals(0, merger.getSplitKeyCount());
+
+        assertMerged(new Object[]{"IBM", 35.0, 3L, 20.0}, merger.merge(2, partial("IBM", 5.0, 1L, 5.0), false));
+        assertMerged(new Object[]{"IBM", 65.0, 4L, 30.0}, merger.merge(1, partial("IBM", 60.0, 3L, 30.0), false));
+        Assert.assertEquals(1, merger.getSplitKeyCount());
+
+        // The key cooled down and is only sent to the first task, whose running aggregate keeps being merged
+        assertMerged(new Object[]{"IBM", 66.0, 5L, 30.0}, merger.merge(1, partial("IBM", 61.0, 4L, 30.0), false));
+    }
+
+    @Test
+    public void testWindowExpiry() {
+        PartialAggregateMerger merger = new PartialAggregateMerger(MERGE_FUNCTIONS, 100);
+        merger.merge(1, partial("IBM", 10.0, 1L, 10.0), false);
+        assertMerged(new Object[]{"IBM", 110.0, 2L, 100.0}, merger.merge(2, partial("IBM", 100.0, 1L, 100.0), false));
+
+        // The window of the second task expired, which is not emitted, and its partial aggregate is no longer merged
+        Assert.assertNull(merger.merge(2, partial("IBM", 0.0, 0L, null), true));
+        Assert.assertEquals(0, merger.getSplitKeyCount());
+        assertMerged(new Object[]{"IBM", 30.0, 2L, 20.0}, merger.merge(1, partial("IBM", 30.0, 2L, 20.0), false));
+
+        // Events partially expired from the window of a task replace its partial aggregate
+        assertMerged(new Object[]{"IBM", 80.0, 3L, 50.0}, merger.merge(2, partial("IBM", 50.0, 1L, 50.0), false));
+        Assert.assertNull(merger.merge(1, partial("IBM", 20.0, 1L, 20.0), true));
+        assertMerged(new Object[]{"IBM", 90.0, 3L, 50.0}, merger.merge(2, partial("IBM", 70.0, 2L, 50.0), false));
+
+        Assert.assertNull(merger.merge(1, partial("IBM", 0.0, 0L, null), true));
+        Assert.assertNull(merger.merge(2, partial("IBM", 0.0, 0L, null), true));
+        Assert.assertEquals(0, merger.size());
+    }
+
+    @Test
+    public void testBoundedUnsplitKeys() {
+        PartialAggregateMerger merger = new PartialAggregateMerger(MERGE_FUNCTIONS, 100);
+        for (int i = 0; i < 1000; i++) {
+            assertMerged(new Object[]{"KEY" + i, 1.0, 1L, 1.0}, merger.merge(i % 4, partial("KEY" + i, 1.0, 1L, 1.0),
+                    false));
+        }
+        Assert.assertEquals(100, merger.size());
+        Assert.assertEquals(0, merger.getSplitKeyCount());
+    }
+
+    private Object[] partial(String key, Double sum, Long count, Double max) {
+        return new Object[]{key, sum, count, max, System.currentTimeMillis()};
+    }
+
+    private void assertMerged(Object[] expected, Object[] merged) {
+        Assert.assertNotNull(merged);
+        Assert.assertEquals(Arrays.asList(expected), Arrays.asList(merged).subList(0, expected.length));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.storm.common.test.server;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.common.transport.FlowControlMetrics;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventClient;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventServer;
+import org.wso2.carbon.event.processor.common.util.PortAllocator;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FlowControlTestCase {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int CAPACITY = 10;
+
+    private static final StreamDefinition STOCK_STREAM = StreamDefinition.id("StockStream")
+            .attribute("volume", Attribute.Type.LONG);
+
+    @Test
+    public void testClientSendsWithinCredits() throws Exception {
+        final LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<Object[]>();
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, new StreamCallback() {
+            @Override
+            public void receive(String streamId, long timestamp, Object[] data, Map<String, String> arbitraryMapData) {
+                queue.add(data);
+            }
+        }, null, CAPACITY);
+        server.addStreamDefinition(STOCK_STREAM);
+        server.start();
+
+        FlowControlMetrics metrics = new FlowControlMetrics();
+        final NioEventClient client = new NioEventClient(HOST + ":" + port, null, null, 0, metrics);
+        client.addStreamDefinition(STOCK_STREAM);
+        final int eventCount = 25;
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < eventCount; i++) {
+                        client.sendEvent("StockStream", i, new Object[]{(long) i}, true);
+                    }
+                } catch (Exception e) {
+                    error.set(e);
+                }
+            }
+        });
+        try {
+            sender.start();
+            // Without credits the sender cannot get past the first CAPACITY events
+            for (int i = 0; i < 100 && queue.size() < CAPACITY; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(CAPACITY, queue.size());
+            Assert.assertTrue(sender.isAlive());
+
+            for (int i = 0; i < eventCount; i++) {
+                Object[] data = queue.poll(5, TimeUnit.SECONDS);
+                Assert.assertNotNull(data);
+                Assert.assertEquals((long) i, data[0]);
+                server.releaseCapacity(1);
+                Assert.assertTrue(queue.size() <= CAPACITY);
+            }
+            sender.join(5000);
+            Assert.assertNull(error.get());
+            Assert.assertFalse(sender.isAlive());
+            Assert.assertTrue(metrics.getCreditStarvationCount() > 0);
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testCapacitySharedBetweenClients() throws Exception {
+        final LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<Object[]>();
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, new StreamCallback() {
+            @Override
+            public void receive(String streamId, long timestamp, Object[] data, Map<String, String> arbitraryMapData) {
+                queue.add(data);
+            }
+        }, null, CAPACITY);
+        server.addStreamDefinition(STOCK_STREAM);
+        server.start();
+
+        NioEventClient first = new NioEventClient(HOST + ":" + port, null);
+        NioEventClient second = new NioEventClient(HOST + ":" + port, null);
+        first.addStreamDefinition(STOCK_STREAM);
+        second.addStreamDefinition(STOCK_STREAM);
+        try {
+            for (int i = 0; i < CAPACITY; i++) {
+                first.sendEvent("StockStream", i, new Object[]{(long) i}, true);
+            }
+            for (int i = 0; i < 20 && queue.size() < CAPACITY; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(CAPACITY, queue.size());
+            queue.clear();
+            server.releaseCapacity(CAPACITY);
+
+            // The second client gets its share of the released capacity
+            for (int i = 0; i < CAPACITY / 2; i++) {
+                second.sendEvent("StockStream", i, new Object[]{(long) i}, true);
+            }
+            for (int i = 0; i < 20 && queue.size() < CAPACITY / 2; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(CAPACITY / 2, queue.size());
+        } finally {
+            first.shutdown();
+            second.shutdown();
+            server.shutdown();
+        }
+    }
+}
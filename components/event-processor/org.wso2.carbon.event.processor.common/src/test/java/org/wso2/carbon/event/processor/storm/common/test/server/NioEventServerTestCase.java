@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.storm.common.test.server;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventClient;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventServer;
+import org.wso2.carbon.event.processor.common.util.PortAllocator;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class NioEventServerTestCase {
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final StreamDefinition STOCK_STREAM = StreamDefinition.id("StockStream")
+            .attribute("symbol", Attribute.Type.STRING)
+            .attribute("price", Attribute.Type.FLOAT)
+            .attribute("volume", Attribute.Type.LONG)
+            .attribute("active", Attribute.Type.BOOL);
+    private static final StreamDefinition COUNT_STREAM = StreamDefinition.id("CountStream")
+            .attribute("count", Attribute.Type.INT)
+            .attribute("average", Attribute.Type.DOUBLE);
+
+    @Test
+    public void testEventsOfSeveralStreams() throws Exception {
+        CollectingStreamCallback callback = new CollectingStreamCallback();
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, callback, null);
+        server.addStreamDefinition(STOCK_STREAM);
+        server.addStreamDefinition(COUNT_STREAM);
+        server.start();
+        NioEventClient client = new NioEventClient(HOST + ":" + port, null);
+        try {
+            client.addStreamDefinition(STOCK_STREAM);
+            client.addStreamDefinition(COUNT_STREAM);
+            client.sendEvent("StockStream", 1L, new Object[]{"WSO2", 55.6f, 100L, true}, false);
+            client.sendEvent("StockStream", 2L, new Object[]{null, 57.2f, null, false}, false);
+            client.sendEvent("CountStream", 3L, new Object[]{2, 56.4}, false);
+            client.sendEvent("StockStream", 4L, new Object[]{"IBM", 75.1f, 200L, true}, true);
+
+            List<String> events = callback.waitForEvents(4);
+            Assert.assertEquals(Arrays.asList(
+                    "StockStream:[WSO2, 55.6, 100, true]@1",
+                    "StockStream:[null, 57.2, null, false]@2",
+                    "CountStream:[2, 56.4]@3",
+                    "StockStream:[IBM, 75.1, 200, true]@4"), events);
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchesLargerThanBuffers() throws Exception {
+        CollectingStreamCallback callback = new CollectingStreamCallback();
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, callback, null);
+        server.addStreamDefinition(STOCK_STREAM);
+        server.start();
+        NioEventClient client = new NioEventClient(HOST + ":" + port, null);
+        try {
+            client.addStreamDefinition(STOCK_STREAM);
+            char[] chars = new char[200 * 1024];
+            Arrays.fill(chars, 'x');
+            String largeSymbol = new String(chars);
+            int eventCount = 10000;
+            for (int i = 0; i < eventCount; i++) {
+                String symbol = i % 1000 == 0 ? largeSymbol : "S" + i;
+                client.sendEvent("StockStream", i, new Object[]{symbol, 1.0f, (long) i, true}, i % 3000 == 0);
+            }
+            client.flush();
+
+            List<String> events = callback.waitForEvents(eventCount);
+            Assert.assertEquals(eventCount, events.size());
+            for (int i = 0; i < eventCount; i++) {
+                String symbol = i % 1000 == 0 ? largeSymbol : "S" + i;
+                Assert.assertEquals("StockStream:[" + symbol + ", 1.0, " + i + ", true]@" + i, events.get(i));
+            }
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUndefinedStream() throws Exception {
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, new CollectingStreamCallback(), null);
+        server.start();
+        NioEventClient client = new NioEventClient(HOST + ":" + port, null);
+        try {
+            client.sendEvent("StockStream", 1L, new Object[]{"WSO2", 55.6f, 100L, true}, true);
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testEphemeralPort() throws Exception {
+        CollectingStreamCallback callback = new CollectingStreamCallback();
+        NioEventServer server = new NioEventServer(HOST, 0, callback, null);
+        server.addStreamDefinition(COUNT_STREAM);
+        server.start();
+        NioEventClient client = new NioEventClient(HOST + ":" + server.getPort(), null);
+        try {
+            Assert.assertTrue(server.getPort() > 0);
+            NioEventServer otherServer = new NioEventServer(HOST, server.getPort(), callback, null);
+            try {
+                otherServer.start();
+                Assert.fail("Started a server on a port in use");
+            } catch (BindException e) {
+                // Expected, as the port is bound by the first server
+            }
+
+            client.addStreamDefinition(COUNT_STREAM);
+            client.sendEvent("CountStream", 1L, new Object[]{1, 1.0}, true);
+            Assert.assertEquals(Collections.singletonList("CountStream:[1, 1.0]@1"), callback.waitForEvents(1));
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    private static class CollectingStreamCallback implements StreamCallback {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void receive(String streamId, long timestamp, Object[] data, Map<String, String> arbitraryMapData) {
+            events.add(streamId + ":" + Arrays.deepToString(data) + "@" + timestamp);
+        }
+
+        List<String> waitForEvents(int count) throws InterruptedException {
+            for (int i = 0; i < 100 && events.size() < count; i++) {
+                Thread.sleep(100);
+            }
+            synchronized (events) {
+                return new ArrayList<String>(events);
+            }
+        }
+    }
+}
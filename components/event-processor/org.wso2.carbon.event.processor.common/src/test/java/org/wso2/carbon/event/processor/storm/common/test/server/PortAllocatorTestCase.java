@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.wso2.carbon.event.processor.storm.common.test.server;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.common.util.PortAllocator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PortAllocatorTestCase {
+
+    private static final String HOST = "127.0.0.1";
+
+    @Test
+    public void testSkipsPortsInUse() throws IOException {
+        ServerSocket usedSocket = new ServerSocket();
+        usedSocket.bind(new InetSocketAddress(HOST, 0));
+        try {
+            int usedPort = usedSocket.getLocalPort();
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(usedPort + 1, PortAllocator.findAvailablePort(HOST, usedPort, usedPort + 1));
+            }
+        } finally {
+            usedSocket.close();
+        }
+    }
+
+    @Test
+    public void testConsecutiveSearchesStartAtDifferentPorts() throws IOException {
+        int minPort = 15000;
+        int maxPort = 15009;
+        Set<Integer> ports = new HashSet<Integer>();
+        for (int i = 0; i < 3; i++) {
+            ports.add(PortAllocator.findAvailablePort(HOST, minPort, maxPort));
+        }
+        Assert.assertEquals(3, ports.size());
+    }
+
+    @Test
+    public void testEphemeralPort() throws IOException {
+        Assert.assertTrue(PortAllocator.findAvailablePort(HOST, 0, 0) > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoFreePort() throws IOException {
+        ServerSocket usedSocket = new ServerSocket();
+        usedSocket.bind(new InetSocketAddress(HOST, 0));
+        try {
+            PortAllocator.findAvailablePort(HOST, usedSocket.getLocalPort(), usedSocket.getLocalPort());
+        } finally {
+            usedSocket.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.storm.common.test.server;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.common.transport.FlowControlMetrics;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventClient;
+import org.wso2.carbon.event.processor.common.transport.nio.NioEventServer;
+import org.wso2.carbon.event.processor.common.transport.nio.SharedMemoryRing;
+import org.wso2.carbon.event.processor.common.util.PortAllocator;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SharedMemoryTransportTestCase {
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final StreamDefinition STOCK_STREAM = StreamDefinition.id("StockStream")
+            .attribute("symbol", Attribute.Type.STRING)
+            .attribute("volume", Attribute.Type.LONG);
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("cep-shm-test", "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRingWrapsAround() throws IOException {
+        SharedMemoryRing producer = SharedMemoryRing.create(directory, 1024);
+        SharedMemoryRing consumer = SharedMemoryRing.open(producer.getFile(), producer.getCapacity());
+        ByteBuffer source = ByteBuffer.allocate(700);
+        ByteBuffer destination = ByteBuffer.allocate(700);
+        for (int round = 0; round < 5; round++) {
+            source.clear();
+            while (source.hasRemaining()) {
+                source.put((byte) (round + source.position()));
+            }
+            source.flip();
+            Assert.assertEquals(700, producer.write(source));
+
+            destination.clear();
+            Assert.assertEquals(700, consumer.read(destination));
+            Assert.assertEquals(0, consumer.read(ByteBuffer.allocate(10)));
+            destination.flip();
+            for (int i = 0; i < 700; i++) {
+                Assert.assertEquals((byte) (round + i), destination.get(i));
+            }
+        }
+        ByteBuffer full = ByteBuffer.allocate(2048);
+        Assert.assertEquals(1024, producer.write(full));
+        Assert.assertEquals(0, producer.write(full));
+    }
+
+    @Test
+    public void testEventsThroughSharedMemory() throws Exception {
+        CountingStreamCallback callback = new CountingStreamCallback();
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, callback, null);
+        server.addStreamDefinition(STOCK_STREAM);
+        server.start();
+        NioEventClient client = new NioEventClient(HOST + ":" + port, null, directory, 16 * 1024,
+                new FlowControlMetrics());
+        try {
+            Assert.assertTrue(client.isSharedMemoryUsed());
+            client.addStreamDefinition(STOCK_STREAM);
+            char[] chars = new char[40 * 1024];
+            Arrays.fill(chars, 'x');
+            String largeSymbol = new String(chars);
+            int eventCount = 50000;
+            long expectedVolume = 0;
+            for (int i = 0; i < eventCount; i++) {
+                client.sendEvent("StockStream", i, new Object[]{i % 5000 == 0 ? largeSymbol : "S", (long) i},
+                        i % 100 == 0);
+                expectedVolume += i;
+            }
+            client.flush();
+            for (int i = 0; i < 100 && callback.count.get() < eventCount; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(eventCount, callback.count.get());
+            Assert.assertEquals(expectedVolume, callback.volume.get());
+            Assert.assertEquals(10, callback.largeSymbols.get());
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testTcpWithoutSharedMemoryDirectory() throws Exception {
+        CountingStreamCallback callback = new CountingStreamCallback();
+        int port = PortAllocator.findAvailablePort(HOST, 0, 0);
+        NioEventServer server = new NioEventServer(HOST, port, callback, null);
+        server.addStreamDefinition(STOCK_STREAM);
+        server.start();
+        NioEventClient client = new NioEventClient(HOST + ":" + port, null, null, 0, new FlowControlMetrics());
+        try {
+            Assert.assertFalse(client.isSharedMemoryUsed());
+            client.addStreamDefinition(STOCK_STREAM);
+            client.sendEvent("StockStream", 1L, new Object[]{"WSO2", 10L}, true);
+            for (int i = 0; i < 100 && callback.count.get() < 1; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(1, callback.count.get());
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    private static class CountingStreamCallback implements StreamCallback {
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong volume = new AtomicLong();
+        private final AtomicInteger largeSymbols = new AtomicInteger();
+
+        @Override
+        public void receive(String streamId, long timestamp, Object[] data, Map<String, String> arbitraryMapData) {
+            volume.addAndGet((Long) data[1]);
+            if (((String) data[0]).length() > 1) {
+                largeSymbols.incrementAndGet();
+            }
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core;
+
+/**
+ * Settings of the ring in which the events imported by an execution plan are queued, when the plan is deployed with
+ * the async annotation. Events are then processed by the workers of the ring rather than by the threads of the
+ * receivers, so a slow plan does not hold up the other plans importing the same streams.
+ */
+public class AsyncIngestionConfiguration {
+
+    public enum WaitStrategy {
+        BLOCKING("blocking"), SLEEPING("sleeping"), YIELDING("yielding"), BUSY_SPIN("busy.spin");
+
+        private final String name;
+
+        WaitStrategy(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return null if there is no wait strategy with the name
+         */
+        public static WaitStrategy fromName(String name) {
+            for (WaitStrategy waitStrategy : values()) {
+                if (waitStrategy.name.equalsIgnoreCase(name)) {
+                    return waitStrategy;
+                }
+            }
+            return null;
+        }
+    }
+
+    public enum Overflow {
+        BLOCK("block"), DROP("drop");
+
+        private final String name;
+
+        Overflow(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return null if there is no overflow policy with the name
+         */
+        public static Overflow fromName(String name) {
+            for (Overflow overflow : values()) {
+                if (overflow.name.equalsIgnoreCase(name)) {
+                    return overflow;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final int bufferSize;
+    private final int workers;
+    private final WaitStrategy waitStrategy;
+    private final Overflow overflow;
+
+    /**
+     * @param bufferSize   number of events, or batches of events, the ring holds; a power of 2
+     * @param workers      threads taking events off the ring; events are processed in the order they were received
+     *                     only with a single worker
+     * @param waitStrategy how the workers wait for events
+     * @param overflow     whether receivers wait, or the events are dropped, while the ring is full
+     */
+    public AsyncIngestionConfiguration(int bufferSize, int workers, WaitStrategy waitStrategy, Overflow overflow) {
+        this.bufferSize = bufferSize;
+        this.workers = workers;
+        this.waitStrategy = waitStrategy;
+        this.overflow = overflow;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AsyncIngestionConfiguration that = (AsyncIngestionConfiguration) o;
+        return bufferSize == that.bufferSize && workers == that.workers && waitStrategy == that.waitStrategy &&
+                overflow == that.overflow;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bufferSize;
+        result = 31 * result + workers;
+        result = 31 * result + waitStrategy.hashCode();
+        result = 31 * result + overflow.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "buffer.size: " + bufferSize + ", workers: " + workers + ", wait.strategy: " + waitStrategy.getName() +
+                ", overflow: " + overflow.getName();
+    }
+}
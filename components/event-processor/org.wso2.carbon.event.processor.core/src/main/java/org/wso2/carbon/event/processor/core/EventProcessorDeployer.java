@@ -28,14 +28,29 @@ import org.wso2.carbon.event.processor.core.exception.ExecutionPlanConfiguration
 import org.wso2.carbon.event.processor.core.exception.ExecutionPlanDependencyValidationException;
 import org.wso2.carbon.event.processor.core.internal.CarbonEventProcessorService;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlan;
+import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConfigurationFilesystemInvoker;
+import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
+import org.wso2.carbon.event.processor.core.internal.util.ParallelDeploymentScheduler;
+import org.wso2.carbon.event.processor.core.internal.util.WaitingExecutionPlanIndex;
 import org.wso2.carbon.event.processor.core.internal.util.helper.EventProcessorHelper;
+import org.wso2.siddhi.query.api.annotation.Element;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+import org.wso2.siddhi.query.api.util.AnnotationHelper;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -49,6 +64,11 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
     private ConfigurationContext configurationContext;
     private Set<String> deployedExecutionPlanFilePaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private Set<String> unDeployedExecutionPlanFilePaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean isStartupDeploymentDone = false;
+    // < file path, error in deploying the file at startup >, reported when the file is deployed by axis2
+    private Map<String, Throwable> startupDeploymentErrors = new ConcurrentHashMap<String, Throwable>();
+    // < file path, content saved without redeploying the file >, whose redeployment by axis2 is skipped
+    private Map<String, String> updatedExecutionPlanFiles = new ConcurrentHashMap<String, String>();
 
     public void init(ConfigurationContext configurationContext) {
         this.configurationContext = configurationContext;
@@ -56,7 +76,8 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
     }
 
     /**
-     * Reads the query-plan.siddhiql and deploys it.
+     * Reads the query-plan.siddhiql and deploys it. The first call deploys all the execution plans of the directory
+     * concurrently, and the following calls for those files only report the outcome.
      *
      * @param deploymentFileData information about query plan
      * @throws org.apache.axis2.deployment.DeploymentException
@@ -64,7 +85,16 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
     public void deploy(DeploymentFileData deploymentFileData) throws DeploymentException {
         try {
             String path = deploymentFileData.getAbsolutePath();
-            if (!deployedExecutionPlanFilePaths.contains(path)) {
+            if (!isStartupDeploymentDone) {
+                deployStartupExecutionPlans(deploymentFileData.getFile().getParentFile());
+            }
+            Throwable startupDeploymentError = startupDeploymentErrors.remove(path);
+            if (startupDeploymentError != null) {
+                throw new DeploymentException("Execution plan not deployed properly.", startupDeploymentError);
+            }
+            if (isUpdatedExecutionPlanFile(path, true)) {
+                log.debug("Execution plan file is already deployed with its updated content :" + path);
+            } else if (!deployedExecutionPlanFilePaths.contains(path)) {
                 try {
                     processDeploy(deploymentFileData);
                 } catch (ExecutionPlanConfigurationException e) {
@@ -92,7 +122,9 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
      */
     public void undeploy(String filePath) throws DeploymentException {
         try {
-            if (!unDeployedExecutionPlanFilePaths.contains(filePath)) {
+            if (isUpdatedExecutionPlanFile(filePath, false)) {
+                log.debug("Execution plan file is being redeployed with its updated content :" + filePath);
+            } else if (!unDeployedExecutionPlanFilePaths.contains(filePath)) {
                 processUndeploy(filePath);
             } else {
                 log.debug("Execution plan file is already undeployed :" + filePath);
@@ -105,19 +137,123 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
 
     }
 
+    /**
+     * Deploys the execution plans found in the directory when the server starts, on a bounded pool, in the order of
+     * the dependencies among them through their imported and exported streams. The deployed files are skipped when
+     * axis2 deploys them afterwards.
+     */
+    private synchronized void deployStartupExecutionPlans(File directory) {
+        if (isStartupDeploymentDone) {
+            return;
+        }
+        // Plans read for their dependencies stay compiled until they are deployed, whatever their number
+        EventProcessorHelper.pinCompiledExecutionPlans();
+        try {
+            File[] files = directory != null ? directory.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(EventProcessorConstants.SIDDHIQL_EXTENSION);
+                }
+            }) : null;
+            if (files == null || files.length < 2) {
+                return;
+            }
+            List<ParallelDeploymentScheduler.PlanInfo> plans = new ArrayList<ParallelDeploymentScheduler.PlanInfo>();
+            for (File file : files) {
+                plans.add(getPlanInfo(file.getAbsolutePath()));
+            }
+
+            final int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+            int threadCount = Integer.getInteger(EventProcessorConstants.STARTUP_DEPLOYMENT_THREADS, Math.min(
+                    Runtime.getRuntime().availableProcessors(), EventProcessorConstants.DEFAULT_MAX_STARTUP_DEPLOYMENT_THREADS));
+            long startTime = System.currentTimeMillis();
+            Map<ParallelDeploymentScheduler.PlanInfo, Long> readinessTimes = new ParallelDeploymentScheduler(
+                    Math.max(1, threadCount)).deploy(plans, new ParallelDeploymentScheduler.DeploymentTask() {
+                @Override
+                public void deploy(ParallelDeploymentScheduler.PlanInfo plan) throws Exception {
+                    String path = plan.getFilePath();
+                    try {
+                        PrivilegedCarbonContext.startTenantFlow();
+                        PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId, true);
+                        deployExecutionPlanFile(new DeploymentFileData(new File(path)));
+                        deployedExecutionPlanFilePaths.add(path);
+                    } catch (Exception e) {
+                        startupDeploymentErrors.put(path, e);
+                        throw e;
+                    } finally {
+                        PrivilegedCarbonContext.endTenantFlow();
+                    }
+                }
+            });
+            if (log.isDebugEnabled()) {
+                for (Map.Entry<ParallelDeploymentScheduler.PlanInfo, Long> entry : readinessTimes.entrySet()) {
+                    log.debug("Execution plan file " + new File(entry.getKey().getFilePath()).getName() +
+                            " ready in " + entry.getValue() + " ms from the start of the deployment.");
+                }
+            }
+            log.info("Deployed " + files.length + " execution plan files of tenant " + tenantId + " in " +
+                    (System.currentTimeMillis() - startTime) + " ms using " + threadCount + " threads, " +
+                    startupDeploymentErrors.size() + " failed.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while deploying the execution plans at startup, the rest will be deployed one by " +
+                    "one.", e);
+        } finally {
+            EventProcessorHelper.unpinCompiledExecutionPlans();
+            isStartupDeploymentDone = true;
+        }
+    }
+
+    /**
+     * Reads the name and the imported and exported streams of the execution plan. Invalid plans are returned without
+     * them, so that they are deployed without waiting for any other plan and get their errors reported.
+     */
+    private ParallelDeploymentScheduler.PlanInfo getPlanInfo(String path) {
+        List<String> importedStreamIds = new ArrayList<String>();
+        List<String> exportedStreamIds = new ArrayList<String>();
+        try {
+            CompiledExecutionPlan compiledExecutionPlan = EventProcessorHelper.getCompiledExecutionPlan(readFile(path));
+            for (StreamDefinition streamDefinition :
+                    compiledExecutionPlan.getParsedExecutionPlan().getStreamDefinitionMap().values()) {
+                Element importElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_IMPORT,
+                        null, streamDefinition.getAnnotations());
+                Element exportElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_EXPORT,
+                        null, streamDefinition.getAnnotations());
+                if (importElement != null) {
+                    importedStreamIds.add(importElement.getValue());
+                }
+                if (exportElement != null) {
+                    exportedStreamIds.add(exportElement.getValue());
+                }
+            }
+            return new ParallelDeploymentScheduler.PlanInfo(path, compiledExecutionPlan.getName(), importedStreamIds,
+                    exportedStreamIds);
+        } catch (Exception e) {
+            return new ParallelDeploymentScheduler.PlanInfo(path, null, Collections.<String>emptyList(),
+                    Collections.<String>emptyList());
+        }
+    }
+
     public synchronized void processDeploy(DeploymentFileData deploymentFileData)
             throws ExecutionPlanConfigurationException {
+        deployExecutionPlanFile(deploymentFileData);
+    }
+
+    private void deployExecutionPlanFile(DeploymentFileData deploymentFileData)
+            throws ExecutionPlanConfigurationException {
         // can't be null at this point
         CarbonEventProcessorService carbonEventProcessorService = EventProcessorValueHolder.getEventProcessorService();
 
         File executionPlanFile = deploymentFileData.getFile();
-        boolean isEditable = !executionPlanFile.getAbsolutePath().contains(File.separator + "carbonapps" + File.separator);
+        boolean isEditable = isEditable(executionPlanFile);
         int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
         ExecutionPlanConfigurationFile executionPlanConfigurationFile = new ExecutionPlanConfigurationFile();
         if (!carbonEventProcessorService.isExecutionPlanFileAlreadyExist(executionPlanFile.getName())) {
             String executionPlanName = "";
+            String executionPlan = null;
+            long startTime = System.currentTimeMillis();
             try {
-                String executionPlan = readFile(deploymentFileData.getAbsolutePath());
+                executionPlan = readFile(deploymentFileData.getAbsolutePath());
                 EventProcessorHelper.validateExecutionPlan(executionPlan);
 
                 executionPlanName = EventProcessorHelper.getExecutionPlanName(executionPlan);
@@ -128,12 +264,14 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
                 executionPlanConfigurationFile.setFilePath(deploymentFileData.getAbsolutePath());
                 carbonEventProcessorService.addExecutionPlanConfigurationFile(executionPlanConfigurationFile);
 
-                log.info("Execution plan is deployed successfully and in active state  : " + executionPlanName);
+                log.info("Execution plan is deployed successfully and in active state  : " + executionPlanName + ", in " +
+                        (System.currentTimeMillis() - startTime) + " ms");
 
             } catch (ExecutionPlanDependencyValidationException ex) {
                 executionPlanConfigurationFile.setDependency(ex.getDependency());
                 executionPlanConfigurationFile.setDeploymentStatusMessage(ex.getMessage());
                 executionPlanConfigurationFile.setStatus(ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY);
+                executionPlanConfigurationFile.setExecutionPlan(executionPlan);
                 executionPlanConfigurationFile.setExecutionPlanName(executionPlanName);
                 executionPlanConfigurationFile.setFileName(deploymentFileData.getName());
                 executionPlanConfigurationFile.setFilePath(deploymentFileData.getAbsolutePath());
@@ -160,6 +298,64 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
 
     }
 
+    /**
+     * Activates the execution plans waiting for the resolved dependencies from their content kept in memory, instead
+     * of undeploying and redeploying their files. Plans found to be waiting for another dependency are held back for
+     * that one.
+     *
+     * @param resolvedDependencyKeys keys of the resolved dependencies, see {@link WaitingExecutionPlanIndex#getKey}
+     */
+    public synchronized void activateWaitingExecutionPlans(Collection<String> resolvedDependencyKeys) {
+        CarbonEventProcessorService carbonEventProcessorService = EventProcessorValueHolder.getEventProcessorService();
+        for (ExecutionPlanConfigurationFile executionPlanConfigurationFile :
+                carbonEventProcessorService.removeWaitingExecutionPlanConfigurationFiles(resolvedDependencyKeys)) {
+            try {
+                String executionPlan = executionPlanConfigurationFile.getExecutionPlan();
+                if (executionPlan == null) {
+                    executionPlan = readFile(executionPlanConfigurationFile.getFilePath());
+                }
+                EventProcessorHelper.validateExecutionPlan(executionPlan);
+                String executionPlanName = EventProcessorHelper.getExecutionPlanName(executionPlan);
+                carbonEventProcessorService.addExecutionPlan(executionPlan,
+                        isEditable(new File(executionPlanConfigurationFile.getFilePath())));
+                executionPlanConfigurationFile.setExecutionPlanName(executionPlanName);
+                carbonEventProcessorService.updateExecutionPlanConfigurationFile(executionPlanConfigurationFile,
+                        ExecutionPlanConfigurationFile.Status.DEPLOYED, null, "");
+
+                log.info("Execution plan is activated successfully and in active state  : " + executionPlanName);
+            } catch (ExecutionPlanDependencyValidationException ex) {
+                carbonEventProcessorService.updateExecutionPlanConfigurationFile(executionPlanConfigurationFile,
+                        ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY, ex.getDependency(), ex.getMessage());
+
+                log.info("Execution plan activation held back and in inactive state : " +
+                        executionPlanConfigurationFile.getFileName() + ", Dependency validation exception: " +
+                        ex.getMessage());
+            } catch (Exception ex) {
+                carbonEventProcessorService.updateExecutionPlanConfigurationFile(executionPlanConfigurationFile,
+                        ExecutionPlanConfigurationFile.Status.ERROR, null, ex.getMessage());
+
+                log.error("Execution plan is not activated and in inactive state : " +
+                        executionPlanConfigurationFile.getFileName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Swaps the runtime of an active execution plan with a runtime of the edited execution plan, and saves the edited
+     * execution plan without redeploying it.
+     *
+     * @return false if the execution plan cannot be swapped and is left unchanged
+     */
+    public synchronized boolean swapExecutionPlan(String executionPlan, String executionPlanName, String fileName)
+            throws ExecutionPlanConfigurationException {
+        CarbonEventProcessorService carbonEventProcessorService = EventProcessorValueHolder.getEventProcessorService();
+        if (!carbonEventProcessorService.swapExecutionPlanRuntime(executionPlan, executionPlanName)) {
+            return false;
+        }
+        EventProcessorConfigurationFilesystemInvoker.update(executionPlan, executionPlanName, fileName);
+        return true;
+    }
+
     public synchronized void processUndeploy(String filePath) {
 
         String fileName = new File(filePath).getName();
@@ -167,7 +363,8 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
         int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
         CarbonEventProcessorService carbonEventProcessorService = EventProcessorValueHolder.getEventProcessorService();
         AxisConfiguration axisConfiguration = configurationContext.getAxisConfiguration();
-        carbonEventProcessorService.removeExecutionPlanConfigurationFile(fileName);
+        // A file which still exists is being updated, and axis2 deploys it again right after undeploying it
+        carbonEventProcessorService.removeExecutionPlanConfigurationFile(fileName, new File(filePath).exists());
     }
 
     public void setDirectory(String directory) {
@@ -182,6 +379,10 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
         processUndeploy(filePath);
     }
 
+    private boolean isEditable(File executionPlanFile) {
+        return !executionPlanFile.getAbsolutePath().contains(File.separator + "carbonapps" + File.separator);
+    }
+
     private String readFile(String path) throws ExecutionPlanConfigurationException {
         BufferedReader br = null;
         try {
@@ -218,6 +419,44 @@ public class EventProcessorDeployer extends AbstractDeployer implements EventPro
         return unDeployedExecutionPlanFilePaths;
     }
 
+    /**
+     * Skips the redeployment of the file by axis2, as long as the file has the given content. Used when the content
+     * of a deployed execution plan has already been applied without redeploying it.
+     */
+    public void addUpdatedExecutionPlanFile(String filePath, String executionPlan) {
+        updatedExecutionPlanFiles.put(filePath, executionPlan);
+    }
+
+    public void removeUpdatedExecutionPlanFile(String filePath) {
+        updatedExecutionPlanFiles.remove(filePath);
+    }
+
+    /**
+     * Whether axis2 is redeploying the file because of the content saved by
+     * {@link #addUpdatedExecutionPlanFile(String, String)}. The file is forgotten once it is deleted or changed again,
+     * so that it is deployed or undeployed as usual even when the expected redeployment never happened.
+     *
+     * @param isDeploy true when the file is being deployed, which completes its redeployment
+     */
+    private boolean isUpdatedExecutionPlanFile(String filePath, boolean isDeploy) {
+        String executionPlan = updatedExecutionPlanFiles.get(filePath);
+        if (executionPlan == null) {
+            return false;
+        }
+        boolean isUnchanged;
+        try {
+            File file = new File(filePath);
+            isUnchanged = file.exists() && Arrays.equals(executionPlan.getBytes("UTF-8"),
+                    Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            isUnchanged = false;
+        }
+        if (!isUnchanged || isDeploy) {
+            updatedExecutionPlanFiles.remove(filePath);
+        }
+        return isUnchanged;
+    }
+
     @Override
     public void processDeployment(DeploymentFileData deploymentFileData) throws Exception {
         processDeploy(deploymentFileData);
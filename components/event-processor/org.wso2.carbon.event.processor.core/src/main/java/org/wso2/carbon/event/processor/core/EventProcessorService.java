@@ -59,6 +59,19 @@ public interface EventProcessorService {
                                         String executionPlanName)
             throws ExecutionPlanConfigurationException, ExecutionPlanDependencyValidationException;
 
+    /**
+     * Edits an active execution plan by swapping in a runtime of the edited execution plan, so that no event is
+     * dropped and its state is kept where the edit allows it. Falls back to
+     * {@link #editActiveExecutionPlan(String, String)} when the edit changes the name, the imported or exported
+     * streams, or the async settings, or when the execution plan runs on more than one runtime.
+     *
+     * @param executionPlan     the execution plan as a string
+     * @param executionPlanName the name of the execution plan
+     */
+    public void swapActiveExecutionPlan(String executionPlan,
+                                        String executionPlanName)
+            throws ExecutionPlanConfigurationException, ExecutionPlanDependencyValidationException;
+
 
     /**
      * Edits execution plan from the system
@@ -143,6 +156,14 @@ public interface EventProcessorService {
     public void setStatisticsEnabled(String executionPlanName, boolean isEnabled)
             throws ExecutionPlanConfigurationException;
 
+    /**
+     * Returns the most recent of the events sampled while tracing the execution plan, oldest first.
+     *
+     * @param executionPlanName the name of the execution plan
+     * @return the traced events, or an empty list if the execution plan is not active
+     */
+    public List<String> getEventTraces(String executionPlanName);
+
 
     /**
      * Validates a given execution plan. returns true if valid.
@@ -15,9 +15,15 @@
  */
 package org.wso2.carbon.event.processor.core;
 
+import org.wso2.carbon.event.processor.core.internal.listener.AbstractSiddhiInputEventDispatcher;
+import org.wso2.carbon.event.processor.core.internal.listener.AsyncInputEventBuffer;
+import org.wso2.carbon.event.processor.core.internal.listener.SiddhiOutputStreamListener;
+import org.wso2.carbon.event.processor.core.internal.local.LocalQueryPlanRuntime;
+import org.wso2.carbon.event.processor.core.internal.storm.SiddhiStormHybridEventPublisher;
 import org.wso2.carbon.event.processor.core.internal.storm.SiddhiStormOutputEventListener;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.StormStatusMapListener;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.StormStatusMonitor;
+import org.wso2.carbon.event.processor.core.internal.util.EventTracer;
 import org.wso2.carbon.event.stream.core.EventProducer;
 import org.wso2.carbon.event.stream.core.SiddhiEventConsumer;
 import org.wso2.siddhi.core.ExecutionPlanRuntime;
@@ -35,6 +41,10 @@ public class ExecutionPlan {
     private SiddhiStormOutputEventListener stormOutputListener;
     private StormStatusMonitor stormStatusMonitor;
     private StormStatusMapListener stormStatusMapListener;
+    private LocalQueryPlanRuntime localQueryPlanRuntime;
+    private SiddhiStormHybridEventPublisher stormHybridEventPublisher;
+    private AsyncInputEventBuffer asyncInputEventBuffer;
+    private final EventTracer eventTracer;
 
 
     public ExecutionPlan(String name, ExecutionPlanRuntime executionPlanRuntime,
@@ -42,6 +52,8 @@ public class ExecutionPlan {
         this.executionPlanRuntime = executionPlanRuntime;
         this.executionPlanConfiguration = executionPlanConfiguration;
         this.name = name;
+        this.eventTracer = EventTracer.createEventTracer();
+        this.eventTracer.start();
     }
 
     public String getName() {
@@ -69,6 +81,40 @@ public class ExecutionPlan {
         this.executionPlanConfiguration = executionPlanConfiguration;
     }
 
+    /**
+     * Switches event tracing of the running execution plan on or off, without redeploying it.
+     */
+    public void setTracingEnabled(boolean isEnabled) {
+        executionPlanConfiguration.setTracingEnabled(isEnabled);
+        for (SiddhiEventConsumer siddhiEventConsumer : siddhiEventConsumers) {
+            if (siddhiEventConsumer instanceof AbstractSiddhiInputEventDispatcher) {
+                ((AbstractSiddhiInputEventDispatcher) siddhiEventConsumer).setTracingEnabled(isEnabled);
+            }
+        }
+        for (EventProducer eventProducer : eventProducers) {
+            if (eventProducer instanceof SiddhiOutputStreamListener) {
+                ((SiddhiOutputStreamListener) eventProducer).setTracingEnabled(isEnabled);
+            }
+        }
+    }
+
+    /**
+     * Switches statistics of the running execution plan on or off, without redeploying it.
+     */
+    public void setStatisticsEnabled(boolean isEnabled) {
+        executionPlanConfiguration.setStatisticsEnabled(isEnabled);
+        for (SiddhiEventConsumer siddhiEventConsumer : siddhiEventConsumers) {
+            if (siddhiEventConsumer instanceof AbstractSiddhiInputEventDispatcher) {
+                ((AbstractSiddhiInputEventDispatcher) siddhiEventConsumer).setStatisticsEnabled(isEnabled);
+            }
+        }
+        for (EventProducer eventProducer : eventProducers) {
+            if (eventProducer instanceof SiddhiOutputStreamListener) {
+                ((SiddhiOutputStreamListener) eventProducer).setStatisticsEnabled(isEnabled);
+            }
+        }
+    }
+
     public void setStormStatusMonitor(StormStatusMonitor stormStatusMonitor) {
         this.stormStatusMonitor = stormStatusMonitor;
     }
@@ -77,6 +123,26 @@ public class ExecutionPlan {
         this.stormStatusMapListener = stormStatusMapListener;
     }
 
+    public LocalQueryPlanRuntime getLocalQueryPlanRuntime() {
+        return localQueryPlanRuntime;
+    }
+
+    public void setLocalQueryPlanRuntime(LocalQueryPlanRuntime localQueryPlanRuntime) {
+        this.localQueryPlanRuntime = localQueryPlanRuntime;
+    }
+
+    /**
+     * Ring the imported events are queued in, with its queue depth and overflow counts, or null if the events are
+     * processed by the receiving threads
+     */
+    public AsyncInputEventBuffer getAsyncInputEventBuffer() {
+        return asyncInputEventBuffer;
+    }
+
+    public void setAsyncInputEventBuffer(AsyncInputEventBuffer asyncInputEventBuffer) {
+        this.asyncInputEventBuffer = asyncInputEventBuffer;
+    }
+
     public void shutdown() {
         if (stormOutputListener != null) {
             stormOutputListener.shutdown();
@@ -90,18 +156,41 @@ public class ExecutionPlan {
         if(stormStatusMapListener != null){
             stormStatusMapListener.removeEntryListener();
         }
+        if (localQueryPlanRuntime != null) {
+            localQueryPlanRuntime.shutdown();
+        }
+        if (stormHybridEventPublisher != null) {
+            stormHybridEventPublisher.shutdown();
+        }
+        if (asyncInputEventBuffer != null) {
+            asyncInputEventBuffer.shutdown();
+        }
         executionPlanRuntime.shutdown();
+        eventTracer.stop();
     }
 
     public void addProducer(EventProducer producer) {
+        if (producer instanceof SiddhiOutputStreamListener) {
+            ((SiddhiOutputStreamListener) producer).setEventTracer(eventTracer);
+        }
         eventProducers.add(producer);
     }
 
     public void addConsumer(SiddhiEventConsumer eventConsumer) {
+        if (eventConsumer instanceof AbstractSiddhiInputEventDispatcher) {
+            ((AbstractSiddhiInputEventDispatcher) eventConsumer).setEventTracer(eventTracer);
+        }
         siddhiEventConsumers.add(eventConsumer);
 
     }
 
+    /**
+     * Sampled events traced by the input dispatchers and output listeners of the plan
+     */
+    public EventTracer getEventTracer() {
+        return eventTracer;
+    }
+
     public List<EventProducer> getEventProducers() {
         return eventProducers;
     }
@@ -113,4 +202,8 @@ public class ExecutionPlan {
     public void addStormOutputListener(SiddhiStormOutputEventListener stormOutputListener) {
         this.stormOutputListener = stormOutputListener;
     }
+
+    public void setStormHybridEventPublisher(SiddhiStormHybridEventPublisher stormHybridEventPublisher) {
+        this.stormHybridEventPublisher = stormHybridEventPublisher;
+    }
 }
@@ -24,10 +24,13 @@ public class ExecutionPlanConfiguration {
     private String description;
     private boolean isTracingEnabled;
     private boolean isStatisticsEnabled;
+    private boolean isLocalParallelExecutionEnabled;
+    private boolean isHybridExecutionEnabled;
     private List<StreamConfiguration> importedStreams;
     private List<StreamConfiguration> exportedStreams;
     private String executionPlan;
     private boolean editable;
+    private AsyncIngestionConfiguration asyncIngestionConfiguration;
 
     public ExecutionPlanConfiguration() {
         importedStreams = new Vector<StreamConfiguration>();
@@ -90,6 +93,29 @@ public class ExecutionPlanConfiguration {
         isStatisticsEnabled = statisticsEnabled;
     }
 
+    /**
+     * Whether the execution groups of the plan run in parallel on this node, as in the storm query plan
+     */
+    public boolean isLocalParallelExecutionEnabled() {
+        return isLocalParallelExecutionEnabled;
+    }
+
+    public void setLocalParallelExecutionEnabled(boolean localParallelExecutionEnabled) {
+        isLocalParallelExecutionEnabled = localParallelExecutionEnabled;
+    }
+
+    /**
+     * Whether the cheap execution groups at the edges of the plan run on the CEP workers in distributed mode, with
+     * only the other execution groups running on storm
+     */
+    public boolean isHybridExecutionEnabled() {
+        return isHybridExecutionEnabled;
+    }
+
+    public void setHybridExecutionEnabled(boolean hybridExecutionEnabled) {
+        isHybridExecutionEnabled = hybridExecutionEnabled;
+    }
+
     public void setEditable(boolean editable) {
         this.editable = editable;
     }
@@ -97,4 +123,15 @@ public class ExecutionPlanConfiguration {
     public boolean isEditable() {
         return editable;
     }
+
+    /**
+     * Settings of the ring the imported events are queued in, or null if they are processed by the receiving threads
+     */
+    public AsyncIngestionConfiguration getAsyncIngestionConfiguration() {
+        return asyncIngestionConfiguration;
+    }
+
+    public void setAsyncIngestionConfiguration(AsyncIngestionConfiguration asyncIngestionConfiguration) {
+        this.asyncIngestionConfiguration = asyncIngestionConfiguration;
+    }
 }
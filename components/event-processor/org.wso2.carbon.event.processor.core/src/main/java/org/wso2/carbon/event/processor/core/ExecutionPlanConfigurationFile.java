@@ -38,6 +38,9 @@ public class ExecutionPlanConfigurationFile {
 
     private String deploymentStatusMessage="";
 
+    // Content of the file, kept while the plan is waiting for a dependency so that it can be activated from memory
+    private String executionPlan;
+
     public ExecutionPlanConfigurationFile() {
     }
 
@@ -81,4 +84,12 @@ public class ExecutionPlanConfigurationFile {
         this.deploymentStatusMessage = deploymentStatusMessage;
     }
 
+    public String getExecutionPlan() {
+        return executionPlan;
+    }
+
+    public void setExecutionPlan(String executionPlan) {
+        this.executionPlan = executionPlan;
+    }
+
 }
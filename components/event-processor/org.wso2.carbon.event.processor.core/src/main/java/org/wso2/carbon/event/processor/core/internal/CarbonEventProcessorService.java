@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.event.processor.core.EventProcessorDeployer;
 import org.wso2.carbon.event.processor.core.EventProcessorService;
 import org.wso2.carbon.event.processor.core.ExecutionPlan;
 import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
@@ -29,20 +30,33 @@ import org.wso2.carbon.event.processor.core.StreamConfiguration;
 import org.wso2.carbon.event.processor.core.exception.ExecutionPlanConfigurationException;
 import org.wso2.carbon.event.processor.core.exception.ExecutionPlanDependencyValidationException;
 import org.wso2.carbon.event.processor.core.exception.StormDeploymentException;
+import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
 import org.wso2.carbon.event.processor.core.internal.listener.AbstractSiddhiInputEventDispatcher;
+import org.wso2.carbon.event.processor.core.internal.listener.AsyncInputEventBuffer;
+import org.wso2.carbon.event.processor.core.internal.listener.LocalInputEventDispatcher;
 import org.wso2.carbon.event.processor.core.internal.listener.SiddhiInputEventDispatcher;
 import org.wso2.carbon.event.processor.core.internal.listener.SiddhiOutputStreamListener;
+import org.wso2.carbon.event.processor.core.internal.storm.SiddhiStormHybridEventPublisher;
 import org.wso2.carbon.event.processor.core.internal.storm.SiddhiStormInputEventDispatcher;
 import org.wso2.carbon.event.processor.core.internal.storm.SiddhiStormOutputEventListener;
+import org.wso2.carbon.event.processor.core.internal.local.LocalQueryPlanRuntime;
 import org.wso2.carbon.event.processor.core.internal.storm.StormTopologyManager;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.StormStatusMapListener;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.StormStatusMonitor;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.exception.DeploymentStatusMonitorException;
+import org.wso2.carbon.event.processor.core.internal.storm.util.HybridQueryPlan;
+import org.wso2.carbon.event.processor.core.internal.storm.util.StormQueryPlanBuilder;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConfigurationFilesystemInvoker;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlan;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorUtil;
+import org.wso2.carbon.event.processor.core.internal.util.EventTracer;
+import org.wso2.carbon.event.processor.core.internal.util.ExecutionPlanStreamIndex;
+import org.wso2.carbon.event.processor.core.internal.util.WaitingExecutionPlanIndex;
 import org.wso2.carbon.event.processor.core.internal.util.helper.EventProcessorHelper;
+import org.wso2.carbon.event.processor.core.internal.util.helper.ExecutionPlanSwapValidator;
+import org.wso2.carbon.event.processor.core.internal.util.helper.StreamDefinitionExtractor;
 import org.wso2.carbon.event.processor.core.util.DistributedModeConstants;
 import org.wso2.carbon.event.processor.core.util.ExecutionPlanStatusHolder;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
@@ -57,25 +71,41 @@ import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.query.api.annotation.Element;
 import org.wso2.siddhi.query.api.definition.AbstractDefinition;
 import org.wso2.siddhi.query.api.util.AnnotationHelper;
-import org.wso2.siddhi.query.compiler.SiddhiCompiler;
 import org.wso2.siddhi.query.compiler.exception.SiddhiParserException;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CarbonEventProcessorService implements EventProcessorService {
     private static final Log log = LogFactory.getLog(CarbonEventProcessorService.class);
     // deployed query plans
-    private Map<Integer, ConcurrentHashMap<String, ExecutionPlan>> tenantSpecificExecutionPlans;
+    private ConcurrentHashMap<Integer, ConcurrentHashMap<String, ExecutionPlan>> tenantSpecificExecutionPlans;
     // not distinguishing between deployed vs failed here.
-    private Map<Integer, List<ExecutionPlanConfigurationFile>> tenantSpecificExecutionPlanFiles;
+    private ConcurrentHashMap<Integer, List<ExecutionPlanConfigurationFile>> tenantSpecificExecutionPlanFiles;
+    // < tenant id, index of the active execution plans by stream >
+    private ConcurrentHashMap<Integer, ExecutionPlanStreamIndex> tenantSpecificStreamIndexes;
+    // < tenant id, index of the execution plan files waiting for dependencies >
+    private ConcurrentHashMap<Integer, WaitingExecutionPlanIndex> tenantSpecificWaitingPlanIndexes;
+    // < tenant id, keys of the dependencies resolved since the last activation >
+    private ConcurrentHashMap<Integer, Set<String>> tenantSpecificResolvedDependencies;
+    private final AtomicBoolean isActivationScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService activationScheduler;
     private ManagementModeInfo managementInfo;
 
 //    private List<String> importDefinitions;              //old code block kept for reference
@@ -84,6 +114,17 @@ public class CarbonEventProcessorService implements EventProcessorService {
     public CarbonEventProcessorService() {
         tenantSpecificExecutionPlans = new ConcurrentHashMap<Integer, ConcurrentHashMap<String, ExecutionPlan>>();
         tenantSpecificExecutionPlanFiles = new ConcurrentHashMap<Integer, List<ExecutionPlanConfigurationFile>>();
+        tenantSpecificStreamIndexes = new ConcurrentHashMap<Integer, ExecutionPlanStreamIndex>();
+        tenantSpecificWaitingPlanIndexes = new ConcurrentHashMap<Integer, WaitingExecutionPlanIndex>();
+        tenantSpecificResolvedDependencies = new ConcurrentHashMap<Integer, Set<String>>();
+        activationScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ExecutionPlanActivator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
 
@@ -91,10 +132,8 @@ public class CarbonEventProcessorService implements EventProcessorService {
     public void deployExecutionPlan(String executionPlan)
             throws ExecutionPlanDependencyValidationException, ExecutionPlanConfigurationException {
         //validate execution plan
-        org.wso2.siddhi.query.api.ExecutionPlan parsedExecutionPlan;
         try {
-            parsedExecutionPlan = SiddhiCompiler.parse(executionPlan);
-            String executionPlanName = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null, parsedExecutionPlan.getAnnotations()).getValue();
+            String executionPlanName = EventProcessorHelper.getCompiledExecutionPlan(executionPlan).getName();
 
             if (!(isExecutionPlanAlreadyExist(executionPlanName))) {
                 throw new ExecutionPlanConfigurationException(executionPlanName + " already registered as an execution in this tenant");
@@ -148,8 +187,7 @@ public class CarbonEventProcessorService implements EventProcessorService {
                                         String executionPlanName)
             throws ExecutionPlanConfigurationException, ExecutionPlanDependencyValidationException {
         EventProcessorHelper.validateExecutionPlan(executionPlan);
-        org.wso2.siddhi.query.api.ExecutionPlan parsedExecutionPlan = SiddhiCompiler.parse(executionPlan);
-        String newExecutionPlanName = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null, parsedExecutionPlan.getAnnotations()).getValue();
+        String newExecutionPlanName = EventProcessorHelper.getCompiledExecutionPlan(executionPlan).getName();
         if (!(newExecutionPlanName.equals(executionPlanName))) {
             if (!(isExecutionPlanAlreadyExist(newExecutionPlanName))) {
                 throw new ExecutionPlanConfigurationException(newExecutionPlanName + " " +
@@ -172,11 +210,26 @@ public class CarbonEventProcessorService implements EventProcessorService {
         }
     }
 
+    @Override
+    public void swapActiveExecutionPlan(String executionPlan, String executionPlanName)
+            throws ExecutionPlanConfigurationException, ExecutionPlanDependencyValidationException {
+        EventProcessorHelper.validateExecutionPlan(executionPlan);
+        ExecutionPlanConfigurationFile file = getExecutionPlanConfigurationFileByPlanName(executionPlanName);
+        if (file != null && executionPlanName.equals(EventProcessorHelper.getCompiledExecutionPlan(executionPlan).getName())) {
+            EventProcessorDeployer eventProcessorDeployer = (EventProcessorDeployer)
+                    EventProcessorConfigurationFilesystemInvoker.getDeployer(EventProcessorConstants.EP_ELE_DIRECTORY);
+            if (eventProcessorDeployer.swapExecutionPlan(executionPlan, executionPlanName, file.getFileName())) {
+                return;
+            }
+        }
+        log.info("Execution plan " + executionPlanName + " cannot be swapped in place, hence redeploying it");
+        editActiveExecutionPlan(executionPlan, executionPlanName);
+    }
+
     public void editInactiveExecutionPlan(String executionPlan, String filename)
             throws ExecutionPlanConfigurationException, ExecutionPlanDependencyValidationException {
         EventProcessorHelper.validateExecutionPlan(executionPlan);
-        org.wso2.siddhi.query.api.ExecutionPlan parsedExecutionPlan = SiddhiCompiler.parse(executionPlan);
-        String newExecutionPlanName = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null, parsedExecutionPlan.getAnnotations()).getValue();
+        String newExecutionPlanName = EventProcessorHelper.getCompiledExecutionPlan(executionPlan).getName();
         EventProcessorConfigurationFilesystemInvoker.delete(filename);
         EventProcessorConfigurationFilesystemInvoker.save(executionPlan, newExecutionPlanName, filename);
     }
@@ -196,75 +249,23 @@ public class CarbonEventProcessorService implements EventProcessorService {
         SiddhiManager siddhiManager = EventProcessorValueHolder.getSiddhiManager();
         EventProcessorHelper.loadDataSourceConfiguration(siddhiManager);
         ExecutionPlanRuntime executionPlanRuntime = null;
-        org.wso2.siddhi.query.api.ExecutionPlan parsedExecutionPlan = SiddhiCompiler.parse(executionPlan);
-
-        ExecutionPlanConfiguration executionPlanConfiguration = new ExecutionPlanConfiguration();
-        executionPlanConfiguration.setExecutionPlan(executionPlan);
-
-        String executionPlanName = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null, parsedExecutionPlan.getAnnotations()).getValue();   //Element is not null since the plan is a valid one.
-        executionPlanConfiguration.setName(executionPlanName);
-
-        Element executionPlanDescriptionElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_DESCRIPTION, null, parsedExecutionPlan.getAnnotations());
-        if (executionPlanDescriptionElement != null) {
-            String executionPlanDescription = executionPlanDescriptionElement.getValue();
-            executionPlanConfiguration.setDescription(executionPlanDescription);
-        } else {
-            executionPlanConfiguration.setDescription("");
-        }
-
-        Element isTracingEnabledElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_TRACE, null, parsedExecutionPlan.getAnnotations());
-        if (isTracingEnabledElement != null) {
-            String isTracingEnabled = isTracingEnabledElement.getValue();
-            executionPlanConfiguration.setTracingEnabled(Boolean.valueOf(isTracingEnabled));
-        } else {
-            executionPlanConfiguration.setTracingEnabled(false);
-        }
-
-        Element isStatsEnabledElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_STATISTICS, null, parsedExecutionPlan.getAnnotations());
-        if (isStatsEnabledElement != null) {
-            String isStatsEnabled = isStatsEnabledElement.getValue();
-            executionPlanConfiguration.setStatisticsEnabled(Boolean.valueOf(isStatsEnabled));
-        } else {
-            executionPlanConfiguration.setStatisticsEnabled(false);
-        }
-        executionPlanConfiguration.setEditable(isEditable);
+        CompiledExecutionPlan compiledExecutionPlan = EventProcessorHelper.getCompiledExecutionPlan(executionPlan);
+        Map<String, String> importsMap = new HashMap<String, String>();   //<SiddhiStreamName, StreamID>
+        Map<String, String> exportsMap = new HashMap<String, String>();   //<SiddhiStreamName, StreamID>
+        ExecutionPlanConfiguration executionPlanConfiguration = createExecutionPlanConfiguration(compiledExecutionPlan,
+                isEditable, importsMap, exportsMap);
+        String executionPlanName = executionPlanConfiguration.getName();
 
         ConcurrentHashMap<String, ExecutionPlan> tenantExecutionPlans = tenantSpecificExecutionPlans.get(tenantId);
         if (tenantExecutionPlans == null) {
-            tenantExecutionPlans = new ConcurrentHashMap<String, ExecutionPlan>();
-            tenantSpecificExecutionPlans.put(tenantId, tenantExecutionPlans);
+            // Plans of a tenant are deployed concurrently at startup
+            tenantSpecificExecutionPlans.putIfAbsent(tenantId, new ConcurrentHashMap<String, ExecutionPlan>());
+            tenantExecutionPlans = tenantSpecificExecutionPlans.get(tenantId);
         } else if (tenantExecutionPlans.get(executionPlanName) != null) {
             // if an execution plan with the same name already exists, we are not going to override it with this plan.
             throw new ExecutionPlanConfigurationException("Execution plan with the same name already exists. Please remove it and retry.");
         }
 
-        //building Import/Export Map
-        Map<String, String> importsMap = new HashMap<String, String>();   //<SiddhiStreamName, StreamID>
-        Map<String, String> exportsMap = new HashMap<String, String>();   //<SiddhiStreamName, StreamID>
-        for (Map.Entry<String, org.wso2.siddhi.query.api.definition.StreamDefinition> entry : parsedExecutionPlan.getStreamDefinitionMap().entrySet()) {
-
-            String siddhiStreamName = entry.getKey();
-            Element importElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_IMPORT, null, entry.getValue().getAnnotations());
-            Element exportElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_EXPORT, null, entry.getValue().getAnnotations());
-
-            if (importElement != null) {
-                String streamId = importElement.getValue();
-                importsMap.put(siddhiStreamName, streamId);
-                String[] streamIdComponents = streamId.split(EventProcessorConstants.STREAM_SEPARATOR);
-                String streamName = streamIdComponents[0];
-                String streamVersion = streamIdComponents[1];
-                executionPlanConfiguration.addImportedStream(new StreamConfiguration(streamName, streamVersion, siddhiStreamName));
-            }
-            if (exportElement != null) {
-                String streamId = exportElement.getValue();
-                exportsMap.put(siddhiStreamName, streamId);
-                String[] streamIdComponents = streamId.split(EventProcessorConstants.STREAM_SEPARATOR);
-                String streamName = streamIdComponents[0];
-                String streamVersion = streamIdComponents[1];
-                executionPlanConfiguration.addExportedStream(new StreamConfiguration(streamName, streamVersion, siddhiStreamName));
-            }
-        }
-
         Map<String, InputHandler> inputHandlerMap = new ConcurrentHashMap<String,
                 InputHandler>(importsMap.size());
 
@@ -302,10 +303,12 @@ public class CarbonEventProcessorService implements EventProcessorService {
         DistributedConfiguration stormDeploymentConfiguration = EventProcessorValueHolder.getStormDeploymentConfiguration();
 
         try {
-            executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+            executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(
+                    compiledExecutionPlan.getParsedExecutionPlan());
         } catch (Exception e) {
             throw new ExecutionPlanConfigurationException("Invalid query specified, " + e.getMessage(), e);
         }
+        EventProcessorHelper.setRuntimeValidated(compiledExecutionPlan);
 
         if (managementInfo.getMode() == Mode.Distributed) {
             if (stormDeploymentConfiguration != null && stormDeploymentConfiguration.isManagerNode() && EventProcessorValueHolder
@@ -319,6 +322,41 @@ public class CarbonEventProcessorService implements EventProcessorService {
             }
         }
 
+        boolean isDistributedEnabledAndIsWorker = (managementInfo.getMode() == Mode.Distributed && stormDeploymentConfiguration != null
+                && stormDeploymentConfiguration.isWorkerNode());
+
+        // Runs the execution groups of the plan in parallel on this node, instead of in a single Siddhi runtime
+        LocalQueryPlanRuntime localQueryPlanRuntime = null;
+        HybridQueryPlan hybridQueryPlan = null;
+        if (managementInfo.getMode() != Mode.Distributed && executionPlanConfiguration.isLocalParallelExecutionEnabled()) {
+            try {
+                localQueryPlanRuntime = new LocalQueryPlanRuntime(StormQueryPlanBuilder.constructStormQueryPlan(
+                        executionPlanConfiguration, importDefinitions, exportDefinitions), executionPlanName, tenantId,
+                        siddhiManager, EventProcessorConstants.LOCAL_EXECUTOR_BUFFER_SIZE);
+            } catch (StormQueryConstructionException e) {
+                executionPlanRuntime.shutdown();
+                throw new ExecutionPlanConfigurationException("Invalid parallel query specified, " + e.getMessage(), e);
+            }
+        } else if (isDistributedEnabledAndIsWorker && executionPlanConfiguration.isHybridExecutionEnabled()) {
+            // Runs the cheap execution groups at the edges of the plan on this worker, and only the others on storm
+            try {
+                hybridQueryPlan = HybridQueryPlan.split(StormQueryPlanBuilder.constructStormQueryPlan(
+                        executionPlanConfiguration, importDefinitions, exportDefinitions));
+                if (hybridQueryPlan.isHybrid()) {
+                    localQueryPlanRuntime = new LocalQueryPlanRuntime(hybridQueryPlan.getLocalPlan(),
+                            executionPlanName, tenantId, siddhiManager,
+                            EventProcessorConstants.LOCAL_EXECUTOR_BUFFER_SIZE);
+                } else {
+                    hybridQueryPlan = null;
+                }
+            } catch (StormQueryConstructionException e) {
+                executionPlanRuntime.shutdown();
+                throw new ExecutionPlanConfigurationException("Invalid hybrid query specified, " + e.getMessage(), e);
+            }
+        }
+        boolean isStormUsed = isDistributedEnabledAndIsWorker &&
+                (hybridQueryPlan == null || hybridQueryPlan.hasClusterComponents());
+
         for (Map.Entry<String, String> entry : importsMap.entrySet()) {
             inputHandlerMap.put(entry.getValue(), executionPlanRuntime.getInputHandler(entry.getKey()));
         }
@@ -326,16 +364,25 @@ public class CarbonEventProcessorService implements EventProcessorService {
         //Assumption: executionPlan is valid
         ExecutionPlan processorExecutionPlan = new ExecutionPlan(executionPlanName, executionPlanRuntime,
                 executionPlanConfiguration);
+        processorExecutionPlan.setLocalQueryPlanRuntime(localQueryPlanRuntime);
+        // Queues the imported events in a ring of the plan, when it runs in a single Siddhi runtime on this node
+        AsyncInputEventBuffer asyncInputEventBuffer = null;
+        if (executionPlanConfiguration.getAsyncIngestionConfiguration() != null && localQueryPlanRuntime == null &&
+                !isDistributedEnabledAndIsWorker) {
+            asyncInputEventBuffer = new AsyncInputEventBuffer(executionPlanName, tenantId,
+                    executionPlanConfiguration.getAsyncIngestionConfiguration());
+            processorExecutionPlan.setAsyncInputEventBuffer(asyncInputEventBuffer);
+        }
         tenantExecutionPlans.put(executionPlanName, processorExecutionPlan);
-
-        boolean isDistributedEnabledAndIsWorker = (managementInfo.getMode() == Mode.Distributed && stormDeploymentConfiguration != null
-                && stormDeploymentConfiguration.isWorkerNode());
+        getStreamIndex(tenantId).add(executionPlanConfiguration);
 
         StormStatusMonitor stormStatusMonitor = null;
-        if (isDistributedEnabledAndIsWorker) {
+        if (isStormUsed) {
             StormStatusMapListener mapListener = null;
             try {
-                stormStatusMonitor = new StormStatusMonitor(tenantId, executionPlanName, importsMap.size());
+                // Streams crossing into storm from the execution groups of a hybrid plan share a single connection
+                stormStatusMonitor = new StormStatusMonitor(tenantId, executionPlanName,
+                        hybridQueryPlan != null ? 1 : importsMap.size());
                 mapListener = new StormStatusMapListener(executionPlanName, tenantId, stormStatusMonitor);
             } catch (DeploymentStatusMonitorException e) {
                 log.error("Failed to initialize map listener. Reason: " + e.getMessage(), e);
@@ -349,10 +396,23 @@ public class CarbonEventProcessorService implements EventProcessorService {
          * Section to configure outputs
          */
         SiddhiStormOutputEventListener stormOutputListener = null;
-        if (managementInfo.getMode() == Mode.Distributed && managementInfo.getDistributedConfiguration().isWorkerNode()) {
+        if (isStormUsed) {
             stormOutputListener = new SiddhiStormOutputEventListener(executionPlanConfiguration, tenantId,
                     stormDeploymentConfiguration, stormStatusMonitor);
             processorExecutionPlan.addStormOutputListener(stormOutputListener);
+            if (hybridQueryPlan != null) {
+                for (String streamId : hybridQueryPlan.getClusterOutputStreamIds()) {
+                    stormOutputListener.registerLocalQueryPlanStream(
+                            hybridQueryPlan.getClusterOutputStreamDefinition(streamId), localQueryPlanRuntime);
+                }
+                SiddhiStormHybridEventPublisher stormHybridEventPublisher = new SiddhiStormHybridEventPublisher(
+                        hybridQueryPlan, executionPlanConfiguration, tenantId, stormDeploymentConfiguration,
+                        stormStatusMonitor);
+                for (String streamId : hybridQueryPlan.getClusterInputStreamIds()) {
+                    localQueryPlanRuntime.addCallback(streamId, stormHybridEventPublisher.getStreamCallback(streamId));
+                }
+                processorExecutionPlan.setStormHybridEventPublisher(stormHybridEventPublisher);
+            }
         }
 
         for (Map.Entry<String, String> entry : exportsMap.entrySet()) {
@@ -371,7 +431,9 @@ public class CarbonEventProcessorService implements EventProcessorService {
                 //ignored as this will never happen
             }
 
-            if (managementInfo.getMode() == Mode.Distributed && stormDeploymentConfiguration != null && stormDeploymentConfiguration.isWorkerNode()) {
+            if (localQueryPlanRuntime != null) {
+                localQueryPlanRuntime.addCallback(entry.getKey(), streamCallback);
+            } else if (isDistributedEnabledAndIsWorker) {
                 try {
                     StreamDefinition databridgeDefinition = EventProcessorValueHolder.getEventStreamService()
                             .getStreamDefinition(entry.getValue());
@@ -397,7 +459,10 @@ public class CarbonEventProcessorService implements EventProcessorService {
             InputHandler inputHandler = inputHandlerMap.get(entry.getValue());
 
             AbstractSiddhiInputEventDispatcher eventDispatcher;
-            if (isDistributedEnabledAndIsWorker) {
+            if (localQueryPlanRuntime != null) {
+                eventDispatcher = new LocalInputEventDispatcher(entry.getValue(), entry.getKey(),
+                        localQueryPlanRuntime, executionPlanConfiguration, tenantId);
+            } else if (isDistributedEnabledAndIsWorker) {
                 StreamDefinition streamDefinition = null;
                 try {
                     streamDefinition = EventProcessorValueHolder.getEventStreamService().getStreamDefinition
@@ -410,7 +475,7 @@ public class CarbonEventProcessorService implements EventProcessorService {
                         stormDeploymentConfiguration, stormStatusMonitor);
             } else {
                 eventDispatcher = new SiddhiInputEventDispatcher(entry.getValue(),
-                        inputHandler, executionPlanConfiguration, tenantId);
+                        inputHandler, executionPlanConfiguration, tenantId, asyncInputEventBuffer);
             }
             inputEventDispatchers.add(eventDispatcher);
 
@@ -419,6 +484,12 @@ public class CarbonEventProcessorService implements EventProcessorService {
         if (executionPlanRuntime != null) {
             executionPlanRuntime.start();
         }
+        if (localQueryPlanRuntime != null) {
+            localQueryPlanRuntime.start();
+        }
+        if (asyncInputEventBuffer != null) {
+            asyncInputEventBuffer.start();
+        }
 
         for (AbstractSiddhiInputEventDispatcher eventDispatcher : inputEventDispatchers) {
             try {
@@ -436,11 +507,221 @@ public class CarbonEventProcessorService implements EventProcessorService {
 
     }
 
-    public List<StreamDefinition> getSiddhiStreams(String executionPlan) {
+    /**
+     * Replaces the runtime of an active execution plan with a runtime of the edited (valid) execution plan, without
+     * undeploying it. The new runtime is started alongside the active one, then the input dispatchers are blocked
+     * while the state is carried over and they are repointed, so no event is dropped.
+     *
+     * @return false if the execution plan is left unchanged as it cannot be swapped, see
+     * {@link ExecutionPlanSwapValidator#isSwappable}
+     * @throws ExecutionPlanConfigurationException
+     */
+    public boolean swapExecutionPlanRuntime(String executionPlan, String executionPlanName)
+            throws ExecutionPlanConfigurationException {
+        int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+        Map<String, ExecutionPlan> executionPlanMap = tenantSpecificExecutionPlans.get(tenantId);
+        ExecutionPlan processorExecutionPlan = executionPlanMap == null ? null : executionPlanMap.get(executionPlanName);
+        if (processorExecutionPlan == null || managementInfo.getMode() == Mode.Distributed ||
+                processorExecutionPlan.getLocalQueryPlanRuntime() != null) {
+            return false;
+        }
+        ExecutionPlanConfiguration activeConfiguration = processorExecutionPlan.getExecutionPlanConfiguration();
+        CompiledExecutionPlan compiledExecutionPlan = EventProcessorHelper.getCompiledExecutionPlan(executionPlan);
+        ExecutionPlanConfiguration editedConfiguration = createExecutionPlanConfiguration(compiledExecutionPlan,
+                activeConfiguration.isEditable(), new HashMap<String, String>(), new HashMap<String, String>());
+        if (!ExecutionPlanSwapValidator.isSwappable(activeConfiguration, editedConfiguration)) {
+            return false;
+        }
+        List<SiddhiInputEventDispatcher> inputEventDispatchers = new ArrayList<SiddhiInputEventDispatcher>();
+        for (SiddhiEventConsumer eventConsumer : processorExecutionPlan.getSiddhiEventConsumers()) {
+            if (!(eventConsumer instanceof SiddhiInputEventDispatcher)) {
+                return false;
+            }
+            inputEventDispatchers.add((SiddhiInputEventDispatcher) eventConsumer);
+        }
+
         SiddhiManager siddhiManager = EventProcessorValueHolder.getSiddhiManager();
         EventProcessorHelper.loadDataSourceConfiguration(siddhiManager);
-        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
-        Collection<AbstractDefinition> streamDefinitions = executionPlanRuntime.getStreamDefinitionMap().values();
+        ExecutionPlanRuntime executionPlanRuntime;
+        try {
+            executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(
+                    compiledExecutionPlan.getParsedExecutionPlan());
+        } catch (Exception e) {
+            throw new ExecutionPlanConfigurationException("Invalid query specified, " + e.getMessage(), e);
+        }
+        EventProcessorHelper.setRuntimeValidated(compiledExecutionPlan);
+        boolean isStateTransferable = ExecutionPlanSwapValidator.isStateTransferable(
+                EventProcessorHelper.getCompiledExecutionPlan(activeConfiguration.getExecutionPlan()),
+                compiledExecutionPlan);
+
+        ExecutionPlanRuntime activeExecutionPlanRuntime = processorExecutionPlan.getExecutionPlanRuntime();
+        List<SiddhiInputEventDispatcher> lockedDispatchers = new ArrayList<SiddhiInputEventDispatcher>();
+        List<InputHandler> activeInputHandlers = new ArrayList<InputHandler>();
+        long swapStartTime = System.nanoTime();
+        try {
+            for (SiddhiInputEventDispatcher eventDispatcher : inputEventDispatchers) {
+                // Gives up rather than waiting on a dispatcher which is blocked by sending to another one of the plan
+                if (!eventDispatcher.lockForSwap(EventProcessorConstants.EXECUTION_PLAN_SWAP_LOCK_TIMEOUT)) {
+                    executionPlanRuntime.shutdown();
+                    return false;
+                }
+                lockedDispatchers.add(eventDispatcher);
+            }
+            if (isStateTransferable) {
+                try {
+                    executionPlanRuntime.restore(activeExecutionPlanRuntime.snapshot());
+                } catch (RuntimeException e) {
+                    log.error("Could not carry over the state of execution plan " + executionPlanName +
+                            ", hence it is swapped without its state", e);
+                }
+            }
+            // Attaches the output callbacks and starts the timers only now, so that the new runtime neither emits
+            // alongside the active one nor from a state which is yet to be restored
+            for (EventProducer eventProducer : processorExecutionPlan.getEventProducers()) {
+                SiddhiOutputStreamListener streamCallback = (SiddhiOutputStreamListener) eventProducer;
+                executionPlanRuntime.addCallback(streamCallback.getSiddhiStreamName(), streamCallback);
+            }
+            executionPlanRuntime.start();
+            for (SiddhiInputEventDispatcher eventDispatcher : inputEventDispatchers) {
+                InputHandler inputHandler = executionPlanRuntime.getInputHandler(eventDispatcher.getSiddhiStreamId());
+                activeInputHandlers.add(eventDispatcher.getInputHandler());
+                eventDispatcher.setInputHandler(inputHandler);
+            }
+            processorExecutionPlan.setExecutionPlanRuntime(executionPlanRuntime);
+            processorExecutionPlan.setExecutionPlanConfiguration(editedConfiguration);
+            processorExecutionPlan.setTracingEnabled(editedConfiguration.isTracingEnabled());
+            processorExecutionPlan.setStatisticsEnabled(editedConfiguration.isStatisticsEnabled());
+            // Stops the timers of the active runtime, which would otherwise emit alongside the new runtime
+            try {
+                activeExecutionPlanRuntime.shutdown();
+            } catch (RuntimeException e) {
+                log.error("Error while shutting down the swapped out runtime of execution plan " + executionPlanName,
+                        e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executionPlanRuntime.shutdown();
+            return false;
+        } catch (RuntimeException e) {
+            // Leaves the plan on its active runtime, to be redeployed instead
+            log.error("Could not swap the runtime of execution plan " + executionPlanName, e);
+            for (int i = 0; i < activeInputHandlers.size(); i++) {
+                inputEventDispatchers.get(i).setInputHandler(activeInputHandlers.get(i));
+            }
+            try {
+                executionPlanRuntime.shutdown();
+            } catch (RuntimeException ex) {
+                log.error("Error while shutting down the runtime which could not be swapped into execution plan " +
+                        executionPlanName, ex);
+            }
+            return false;
+        } finally {
+            for (SiddhiInputEventDispatcher eventDispatcher : lockedDispatchers) {
+                eventDispatcher.unlockAfterSwap();
+            }
+        }
+        ExecutionPlanStreamIndex streamIndex = getStreamIndex(tenantId);
+        streamIndex.remove(activeConfiguration);
+        streamIndex.add(editedConfiguration);
+        log.info("Execution plan " + executionPlanName + " is swapped " + (isStateTransferable ? "with" : "without") +
+                " its state, and events were held for " + ((System.nanoTime() - swapStartTime) / 1000000) + " ms");
+        return true;
+    }
+
+    /**
+     * Creates the configuration of a valid execution plan from its annotations.
+     *
+     * @param importsMap filled with < siddhi stream name, imported stream id >
+     * @param exportsMap filled with < siddhi stream name, exported stream id >
+     */
+    private ExecutionPlanConfiguration createExecutionPlanConfiguration(CompiledExecutionPlan compiledExecutionPlan,
+                                                                        boolean isEditable,
+                                                                        Map<String, String> importsMap,
+                                                                        Map<String, String> exportsMap)
+            throws ExecutionPlanConfigurationException {
+        org.wso2.siddhi.query.api.ExecutionPlan parsedExecutionPlan = compiledExecutionPlan.getParsedExecutionPlan();
+
+        ExecutionPlanConfiguration executionPlanConfiguration = new ExecutionPlanConfiguration();
+        executionPlanConfiguration.setExecutionPlan(compiledExecutionPlan.getExecutionPlan());
+
+        String executionPlanName = compiledExecutionPlan.getName();   //Name is not null since the plan is a valid one.
+        executionPlanConfiguration.setName(executionPlanName);
+
+        Element executionPlanDescriptionElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_DESCRIPTION, null, parsedExecutionPlan.getAnnotations());
+        if (executionPlanDescriptionElement != null) {
+            String executionPlanDescription = executionPlanDescriptionElement.getValue();
+            executionPlanConfiguration.setDescription(executionPlanDescription);
+        } else {
+            executionPlanConfiguration.setDescription("");
+        }
+
+        Element isTracingEnabledElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_TRACE, null, parsedExecutionPlan.getAnnotations());
+        if (isTracingEnabledElement != null) {
+            String isTracingEnabled = isTracingEnabledElement.getValue();
+            executionPlanConfiguration.setTracingEnabled(Boolean.valueOf(isTracingEnabled));
+        } else {
+            executionPlanConfiguration.setTracingEnabled(false);
+        }
+
+        Element isStatsEnabledElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_STATISTICS, null, parsedExecutionPlan.getAnnotations());
+        if (isStatsEnabledElement != null) {
+            String isStatsEnabled = isStatsEnabledElement.getValue();
+            executionPlanConfiguration.setStatisticsEnabled(Boolean.valueOf(isStatsEnabled));
+        } else {
+            executionPlanConfiguration.setStatisticsEnabled(false);
+        }
+
+        Element isParallelElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_PARALLEL, null, parsedExecutionPlan.getAnnotations());
+        executionPlanConfiguration.setLocalParallelExecutionEnabled(isParallelElement != null &&
+                Boolean.valueOf(isParallelElement.getValue()));
+        Element isHybridElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.DIST,
+                EventProcessorConstants.HYBRID, parsedExecutionPlan.getAnnotations());
+        executionPlanConfiguration.setHybridExecutionEnabled(isHybridElement != null &&
+                Boolean.valueOf(isHybridElement.getValue()));
+        executionPlanConfiguration.setEditable(isEditable);
+        executionPlanConfiguration.setAsyncIngestionConfiguration(
+                EventProcessorHelper.getAsyncIngestionConfiguration(parsedExecutionPlan));
+
+        //building Import/Export Map
+        for (Map.Entry<String, org.wso2.siddhi.query.api.definition.StreamDefinition> entry : parsedExecutionPlan.getStreamDefinitionMap().entrySet()) {
+
+            String siddhiStreamName = entry.getKey();
+            Element importElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_IMPORT, null, entry.getValue().getAnnotations());
+            Element exportElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_EXPORT, null, entry.getValue().getAnnotations());
+
+            if (importElement != null) {
+                String streamId = importElement.getValue();
+                importsMap.put(siddhiStreamName, streamId);
+                String[] streamIdComponents = streamId.split(EventProcessorConstants.STREAM_SEPARATOR);
+                String streamName = streamIdComponents[0];
+                String streamVersion = streamIdComponents[1];
+                executionPlanConfiguration.addImportedStream(new StreamConfiguration(streamName, streamVersion, siddhiStreamName));
+            }
+            if (exportElement != null) {
+                String streamId = exportElement.getValue();
+                exportsMap.put(siddhiStreamName, streamId);
+                String[] streamIdComponents = streamId.split(EventProcessorConstants.STREAM_SEPARATOR);
+                String streamName = streamIdComponents[0];
+                String streamVersion = streamIdComponents[1];
+                executionPlanConfiguration.addExportedStream(new StreamConfiguration(streamName, streamVersion, siddhiStreamName));
+            }
+        }
+        return executionPlanConfiguration;
+    }
+
+    public List<StreamDefinition> getSiddhiStreams(String executionPlan) {
+        ExecutionPlanRuntime executionPlanRuntime = null;
+        org.wso2.siddhi.query.api.ExecutionPlan parsedExecutionPlan =
+                EventProcessorHelper.getCompiledExecutionPlan(executionPlan).getParsedExecutionPlan();
+        Map<String, AbstractDefinition> streamDefinitionMap = StreamDefinitionExtractor.extract(parsedExecutionPlan);
+        if (streamDefinitionMap == null) {
+            // Schema of some query output streams can only be resolved by the Siddhi runtime.
+            SiddhiManager siddhiManager = EventProcessorValueHolder.getSiddhiManager();
+            EventProcessorHelper.loadDataSourceConfiguration(siddhiManager);
+            executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(parsedExecutionPlan);
+            streamDefinitionMap = executionPlanRuntime.getStreamDefinitionMap();
+        }
+        Collection<AbstractDefinition> streamDefinitions = streamDefinitionMap.values();
         List<StreamDefinition> databridgeStreamDefinitions = new ArrayList<StreamDefinition>(streamDefinitions.size());
         for (AbstractDefinition siddhiStreamDef : streamDefinitions) {
             StreamConfiguration streamConfig = new StreamConfiguration(siddhiStreamDef.getId());
@@ -448,7 +729,9 @@ public class CarbonEventProcessorService implements EventProcessorService {
                     (org.wso2.siddhi.query.api.definition.StreamDefinition) siddhiStreamDef, streamConfig);
             databridgeStreamDefinitions.add(databridgeStreamDef);
         }
-        executionPlanRuntime.shutdown();
+        if (executionPlanRuntime != null) {
+            executionPlanRuntime.shutdown();
+        }
         return databridgeStreamDefinitions;
     }
 
@@ -516,11 +799,19 @@ public class CarbonEventProcessorService implements EventProcessorService {
         }
     }
 
-    private void removeExecutionPlanConfiguration(String name) {
+    /**
+     * @param isRedeploying true if the execution plan is being edited, hence will be deployed again right away
+     */
+    private void removeExecutionPlanConfiguration(String name, boolean isRedeploying) {
         int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
         Map<String, ExecutionPlan> executionPlanMap = tenantSpecificExecutionPlans.get(tenantId);
         if (executionPlanMap != null && executionPlanMap.containsKey(name)) {
             ExecutionPlan executionPlan = executionPlanMap.remove(name);
+            getStreamIndex(tenantId).remove(executionPlan.getExecutionPlanConfiguration());
+            // Stops receiving events first, so that the queued events of an async plan can be drained
+            for (SiddhiEventConsumer eventConsumer : executionPlan.getSiddhiEventConsumers()) {
+                EventProcessorValueHolder.getEventStreamService().unsubscribe(eventConsumer);
+            }
             executionPlan.shutdown();
 
             ExecutionPlanConfiguration executionPlanConfiguration = executionPlan.getExecutionPlanConfiguration();
@@ -531,7 +822,8 @@ public class CarbonEventProcessorService implements EventProcessorService {
                 try {
                     // Kill the topology and notify the manager that execution plan is removed.
                     removeExecutionPlanStatusHolder(executionPlanConfiguration.getName(), tenantId); //todo: test in #worker>1 and watch for NPE
-                    EventProcessorValueHolder.getStormTopologyManager().killTopology(executionPlanConfiguration.getName(), tenantId);
+                    EventProcessorValueHolder.getStormTopologyManager().killTopology(executionPlanConfiguration.getName(), tenantId,
+                            isRedeploying);
                     EventProcessorValueHolder.getStormManagerServer().onExecutionPlanRemove(name, tenantId);
                 } catch (Exception e) {
                     log.error(e.getMessage(), e);
@@ -539,10 +831,6 @@ public class CarbonEventProcessorService implements EventProcessorService {
             }
 
             // releasing junction listeners.
-            for (SiddhiEventConsumer eventConsumer : executionPlan.getSiddhiEventConsumers()) {
-                EventProcessorValueHolder.getEventStreamService().unsubscribe(eventConsumer);
-            }
-
             for (EventProducer eventProducer : executionPlan.getEventProducers()) {
                 EventProcessorValueHolder.getEventStreamService().unsubscribe(eventProducer);
             }
@@ -573,26 +861,60 @@ public class CarbonEventProcessorService implements EventProcessorService {
         int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
         List<ExecutionPlanConfigurationFile> executionPlanConfigurationFiles = tenantSpecificExecutionPlanFiles.get(tenantId);
         if (executionPlanConfigurationFiles == null) {
-            executionPlanConfigurationFiles = new CopyOnWriteArrayList<>();
-            tenantSpecificExecutionPlanFiles.put(tenantId, executionPlanConfigurationFiles);
+            tenantSpecificExecutionPlanFiles.putIfAbsent(tenantId, new CopyOnWriteArrayList<ExecutionPlanConfigurationFile>());
+            executionPlanConfigurationFiles = tenantSpecificExecutionPlanFiles.get(tenantId);
         }
         executionPlanConfigurationFiles.add(configurationFile);
+        getWaitingPlanIndex(tenantId).add(configurationFile);
+    }
+
+    /**
+     * Updates the status of a registered execution plan configuration file, and its entry in the waiting plan index.
+     */
+    public void updateExecutionPlanConfigurationFile(ExecutionPlanConfigurationFile configurationFile,
+                                                     ExecutionPlanConfigurationFile.Status status, String dependency,
+                                                     String deploymentStatusMessage) {
+        WaitingExecutionPlanIndex waitingPlanIndex = getWaitingPlanIndex(
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
+        waitingPlanIndex.remove(configurationFile);
+        configurationFile.setStatus(status);
+        configurationFile.setDependency(dependency);
+        configurationFile.setDeploymentStatusMessage(deploymentStatusMessage);
+        if (status == ExecutionPlanConfigurationFile.Status.DEPLOYED ||
+                status == ExecutionPlanConfigurationFile.Status.ERROR) {
+            configurationFile.setExecutionPlan(null);
+        }
+        waitingPlanIndex.add(configurationFile);
+    }
+
+    /**
+     * Removes the files waiting for the resolved dependencies from the waiting plan index, so that they are activated.
+     *
+     * @param resolvedDependencyKeys keys of the resolved dependencies, see {@link WaitingExecutionPlanIndex#getKey}
+     */
+    public List<ExecutionPlanConfigurationFile> removeWaitingExecutionPlanConfigurationFiles(
+            Collection<String> resolvedDependencyKeys) {
+        return getWaitingPlanIndex(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId())
+                .removeWaitingFiles(resolvedDependencyKeys);
     }
 
     /**
      * Just removes the configuration file
      *
-     * @param fileName the filename of the {@link ExecutionPlanConfigurationFile} to be removed
+     * @param fileName      the filename of the {@link ExecutionPlanConfigurationFile} to be removed
+     * @param isRedeploying true if the file is being updated rather than deleted
      */
-    public void removeExecutionPlanConfigurationFile(String fileName) {
+    public void removeExecutionPlanConfigurationFile(String fileName, boolean isRedeploying) {
         List<ExecutionPlanConfigurationFile> executionPlanConfigurationFiles = tenantSpecificExecutionPlanFiles
                 .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
         for (ExecutionPlanConfigurationFile configurationFile : executionPlanConfigurationFiles) {
             if (new File(configurationFile.getFileName()).getName().equals(fileName)) {
                 if (configurationFile.getStatus().equals(ExecutionPlanConfigurationFile.Status.DEPLOYED)) {
-                    removeExecutionPlanConfiguration(configurationFile.getExecutionPlanName());
+                    removeExecutionPlanConfiguration(configurationFile.getExecutionPlanName(), isRedeploying);
                 }
                 executionPlanConfigurationFiles.remove(configurationFile);
+                getWaitingPlanIndex(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId())
+                        .remove(configurationFile);
                 return;
             }
         }
@@ -627,43 +949,14 @@ public class CarbonEventProcessorService implements EventProcessorService {
 
     @Override
     public Map<String, ExecutionPlanConfiguration> getAllExportedStreamSpecificActiveExecutionConfigurations(String streamId) {
-        Map<String, ExecutionPlanConfiguration> configurationMap = new HashMap<String, ExecutionPlanConfiguration>();
-        Map<String, ExecutionPlan> executionPlanMap = tenantSpecificExecutionPlans
-                .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
-        if (executionPlanMap != null) {
-            for (Map.Entry<String, ExecutionPlan> entry : executionPlanMap.entrySet()) {
-
-                List<StreamConfiguration> streamConfigurationList = entry.getValue().getExecutionPlanConfiguration().getExportedStreams();
-                for (StreamConfiguration streamConfiguration : streamConfigurationList) {
-                    String streamNameWithVersion = streamConfiguration.getName() + ":" + streamConfiguration.getVersion();
-                    if (streamNameWithVersion.equals(streamId)) {
-                        configurationMap.put(entry.getKey(), entry.getValue().getExecutionPlanConfiguration());
-                    }
-                }
-            }
-        }
-        return configurationMap;
+        return getStreamIndex(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId())
+                .getExportingPlans(streamId);
     }
 
     @Override
     public Map<String, ExecutionPlanConfiguration> getAllImportedStreamSpecificActiveExecutionConfigurations(String streamId) {
-        Map<String, ExecutionPlanConfiguration> configurationMap = new HashMap<String, ExecutionPlanConfiguration>();
-        Map<String, ExecutionPlan> executionPlanMap = tenantSpecificExecutionPlans
-                .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
-        if (executionPlanMap != null) {
-            for (Map.Entry<String, ExecutionPlan> entry : executionPlanMap.entrySet()) {
-
-                List<StreamConfiguration> streamConfigurationList = entry.getValue().getExecutionPlanConfiguration()
-                        .getImportedStreams();
-                for (StreamConfiguration streamConfiguration : streamConfigurationList) {
-                    String streamNameWithVersion = streamConfiguration.getName() + ":" + streamConfiguration.getVersion();
-                    if (streamNameWithVersion.equals(streamId)) {
-                        configurationMap.put(entry.getKey(), entry.getValue().getExecutionPlanConfiguration());
-                    }
-                }
-            }
-        }
-        return configurationMap;
+        return getStreamIndex(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId())
+                .getImportingPlans(streamId);
     }
 
     @Override
@@ -713,15 +1006,9 @@ public class CarbonEventProcessorService implements EventProcessorService {
                 .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
         if (executionPlans != null) {
             ExecutionPlan processorExecutionPlan = executionPlans.get(executionPlanName);
-            ExecutionPlanConfiguration executionPlanConfiguration = processorExecutionPlan.getExecutionPlanConfiguration();
-            executionPlanConfiguration.setTracingEnabled(isEnabled);
-            String executionPlan = executionPlanConfiguration.getExecutionPlan();
-            String newExecutionPlan = EventProcessorHelper.setExecutionPlanAnnotationName(executionPlan, EventProcessorConstants.ANNOTATION_NAME_TRACE, isEnabled);
-            executionPlanConfiguration.setExecutionPlan(newExecutionPlan);
-            ExecutionPlanConfigurationFile configFile = getExecutionPlanConfigurationFileByPlanName(executionPlanName);
-            String fileName = configFile.getFileName();
-            EventProcessorConfigurationFilesystemInvoker.delete(fileName);
-            EventProcessorConfigurationFilesystemInvoker.save(newExecutionPlan, executionPlanName, fileName);
+            processorExecutionPlan.setTracingEnabled(isEnabled);
+            persistExecutionPlanAnnotation(processorExecutionPlan, EventProcessorConstants.ANNOTATION_NAME_TRACE,
+                    isEnabled);
         }
     }
 
@@ -732,21 +1019,44 @@ public class CarbonEventProcessorService implements EventProcessorService {
                 .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
         if (processorExecutionPlans != null) {
             ExecutionPlan processorExecutionPlan = processorExecutionPlans.get(executionPlanName);
-            ExecutionPlanConfiguration executionPlanConfiguration = processorExecutionPlan.getExecutionPlanConfiguration();
-            executionPlanConfiguration.setStatisticsEnabled(isEnabled);
-            String executionPlan = executionPlanConfiguration.getExecutionPlan();
-            String newExecutionPlan = EventProcessorHelper.setExecutionPlanAnnotationName(executionPlan,
+            processorExecutionPlan.setStatisticsEnabled(isEnabled);
+            persistExecutionPlanAnnotation(processorExecutionPlan,
                     EventProcessorConstants.ANNOTATION_NAME_STATISTICS, isEnabled);
-            executionPlanConfiguration.setExecutionPlan(newExecutionPlan);
-            ExecutionPlanConfigurationFile configFile = getExecutionPlanConfigurationFileByPlanName(executionPlanName);
-            String fileName = configFile.getFileName();
-            EventProcessorConfigurationFilesystemInvoker.delete(fileName);
-            EventProcessorConfigurationFilesystemInvoker.save(newExecutionPlan, executionPlanName, fileName);
         }
     }
 
+    @Override
+    public List<String> getEventTraces(String executionPlanName) {
+        Map<String, ExecutionPlan> executionPlans = tenantSpecificExecutionPlans
+                .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
+        if (executionPlans != null) {
+            ExecutionPlan processorExecutionPlan = executionPlans.get(executionPlanName);
+            if (processorExecutionPlan != null) {
+                return Arrays.asList(processorExecutionPlan.getEventTracer().getTraces());
+            }
+        }
+        return new ArrayList<String>();
+    }
+
+    /**
+     * Writes the changed annotation of a running execution plan to its file, without the file being redeployed.
+     */
+    private void persistExecutionPlanAnnotation(ExecutionPlan processorExecutionPlan, String annotationName,
+                                                boolean isEnabled) throws ExecutionPlanConfigurationException {
+        ExecutionPlanConfiguration executionPlanConfiguration = processorExecutionPlan.getExecutionPlanConfiguration();
+        String newExecutionPlan = EventProcessorHelper.setExecutionPlanAnnotationName(
+                executionPlanConfiguration.getExecutionPlan(), annotationName, isEnabled);
+        executionPlanConfiguration.setExecutionPlan(newExecutionPlan);
+        ExecutionPlanConfigurationFile configFile =
+                getExecutionPlanConfigurationFileByPlanName(processorExecutionPlan.getName());
+        EventProcessorConfigurationFilesystemInvoker.update(newExecutionPlan, processorExecutionPlan.getName(),
+                configFile.getFileName());
+    }
+
     /**
-     * Activate Inactive Execution Plan Configurations
+     * Activate Inactive Execution Plan Configurations. The dependencies resolved within
+     * {@link EventProcessorConstants#EXECUTION_PLAN_ACTIVATION_COALESCE_DELAY} milliseconds are collected, and the plans
+     * waiting for them are then activated in one batch.
      *
      * @param resolvedDependencyId the id of the dependency that was resolved which resulted in triggering this method call
      */
@@ -754,57 +1064,57 @@ public class CarbonEventProcessorService implements EventProcessorService {
             ExecutionPlanConfigurationFile.Status status, String resolvedDependencyId)
             throws ExecutionPlanConfigurationException {
 
-        List<ExecutionPlanConfigurationFile> reloadFileList = new ArrayList<ExecutionPlanConfigurationFile>();
-        if (tenantSpecificExecutionPlanFiles != null && tenantSpecificExecutionPlanFiles.size() > 0) {
-            List<ExecutionPlanConfigurationFile> executionPlanConfigurationFiles = tenantSpecificExecutionPlanFiles
-                    .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
-
-            if (executionPlanConfigurationFiles != null) {
-                for (ExecutionPlanConfigurationFile executionPlanConfigurationFile : executionPlanConfigurationFiles) {
-                    if ((executionPlanConfigurationFile.getStatus().equals(status)) && resolvedDependencyId
-                            .equalsIgnoreCase(executionPlanConfigurationFile.getDependency())) {
-                        reloadFileList.add(executionPlanConfigurationFile);
-                    }
+        int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+        Set<String> resolvedDependencies = tenantSpecificResolvedDependencies.get(tenantId);
+        if (resolvedDependencies == null) {
+            tenantSpecificResolvedDependencies.putIfAbsent(tenantId,
+                    Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+            resolvedDependencies = tenantSpecificResolvedDependencies.get(tenantId);
+        }
+        resolvedDependencies.add(WaitingExecutionPlanIndex.getKey(status, resolvedDependencyId));
+        if (isActivationScheduled.compareAndSet(false, true)) {
+            activationScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    isActivationScheduled.set(false);
+                    activateWaitingExecutionPlans();
                 }
-            }
+            }, EventProcessorConstants.EXECUTION_PLAN_ACTIVATION_COALESCE_DELAY, TimeUnit.MILLISECONDS);
         }
-        for (ExecutionPlanConfigurationFile executionPlanConfigurationFile : reloadFileList) {
+    }
+
+    private void activateWaitingExecutionPlans() {
+        for (Map.Entry<Integer, Set<String>> entry : tenantSpecificResolvedDependencies.entrySet()) {
+            List<String> resolvedDependencyKeys = new ArrayList<String>();
+            Iterator<String> iterator = entry.getValue().iterator();
+            while (iterator.hasNext()) {
+                resolvedDependencyKeys.add(iterator.next());
+                iterator.remove();
+            }
+            if (resolvedDependencyKeys.isEmpty()) {
+                continue;
+            }
             try {
-                EventProcessorConfigurationFilesystemInvoker.reload(executionPlanConfigurationFile.getFilePath());
-            } catch (ExecutionPlanConfigurationException e) {
-                log.error("Exception occurred while trying to deploy the Execution Plan configuration file : " + new
-                        File(executionPlanConfigurationFile.getFileName()).getName() + "," + e.getMessage(), e);
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(entry.getKey(), true);
+                EventProcessorDeployer eventProcessorDeployer = (EventProcessorDeployer)
+                        EventProcessorConfigurationFilesystemInvoker.getDeployer(EventProcessorConstants.EP_ELE_DIRECTORY);
+                eventProcessorDeployer.activateWaitingExecutionPlans(resolvedDependencyKeys);
+            } catch (RuntimeException e) {
+                log.error("Error while activating the execution plans of tenant " + entry.getKey() + " waiting for " +
+                        resolvedDependencyKeys, e);
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
             }
         }
-
     }
 
     public void deactivateActiveExecutionPlanConfigurations(String streamId) {
 
-        List<String> toDeactivateExecutionPlan = new ArrayList<String>();
-        Map<String, ExecutionPlan> executionPlanMap = tenantSpecificExecutionPlans
-                .get(PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
-        if (executionPlanMap != null) {
-            for (ExecutionPlan executionPlan : executionPlanMap.values()) {
-                boolean done = false;
-                for (EventProducer eventProducer : executionPlan.getEventProducers()) {
-                    if (eventProducer.getStreamId().equals(streamId)) {
-                        toDeactivateExecutionPlan.add(executionPlan.getName());
-                        done = true;
-                        break;
-                    }
-                }
-
-                if (!done) {
-                    for (SiddhiEventConsumer eventConsumer : executionPlan.getSiddhiEventConsumers()) {
-                        if (eventConsumer.getStreamId().equals(streamId)) {
-                            toDeactivateExecutionPlan.add(executionPlan.getName());
-                            break;
-                        }
-                    }
-                }
-            }
-        }
+        ExecutionPlanStreamIndex streamIndex = getStreamIndex(PrivilegedCarbonContext.getThreadLocalCarbonContext()
+                .getTenantId());
+        Set<String> toDeactivateExecutionPlan = new HashSet<String>(streamIndex.getExportingPlans(streamId).keySet());
+        toDeactivateExecutionPlan.addAll(streamIndex.getImportingPlans(streamId).keySet());
         if (toDeactivateExecutionPlan.size() > 0) {
             for (String name : toDeactivateExecutionPlan) {
                 ExecutionPlanConfigurationFile executionPlanConfigurationFile = getExecutionPlanConfigurationFileByPlanName(name);
@@ -818,6 +1128,27 @@ public class CarbonEventProcessorService implements EventProcessorService {
         }
     }
 
+    private WaitingExecutionPlanIndex getWaitingPlanIndex(int tenantId) {
+        WaitingExecutionPlanIndex waitingPlanIndex = tenantSpecificWaitingPlanIndexes.get(tenantId);
+        if (waitingPlanIndex == null) {
+            tenantSpecificWaitingPlanIndexes.putIfAbsent(tenantId, new WaitingExecutionPlanIndex());
+            waitingPlanIndex = tenantSpecificWaitingPlanIndexes.get(tenantId);
+        }
+        return waitingPlanIndex;
+    }
+
+    private ExecutionPlanStreamIndex getStreamIndex(int tenantId) {
+        ExecutionPlanStreamIndex streamIndex = tenantSpecificStreamIndexes.get(tenantId);
+        if (streamIndex == null) {
+            streamIndex = new ExecutionPlanStreamIndex();
+            ExecutionPlanStreamIndex existingStreamIndex = tenantSpecificStreamIndexes.putIfAbsent(tenantId, streamIndex);
+            if (existingStreamIndex != null) {
+                streamIndex = existingStreamIndex;
+            }
+        }
+        return streamIndex;
+    }
+
     // gets file by name.
     private ExecutionPlanConfigurationFile getExecutionPlanConfigurationFileByPlanName(String name) {
         List<ExecutionPlanConfigurationFile> executionPlanConfigurationFiles = tenantSpecificExecutionPlanFiles
@@ -886,6 +1217,7 @@ public class CarbonEventProcessorService implements EventProcessorService {
     }
 
     public void shutdown() {
+        activationScheduler.shutdownNow();
 
         for (Map.Entry<Integer, ConcurrentHashMap<String, ExecutionPlan>> executionPlans : tenantSpecificExecutionPlans.entrySet()) {
             for (ExecutionPlan executionPlan : executionPlans.getValue().values()) {
@@ -896,6 +1228,7 @@ public class CarbonEventProcessorService implements EventProcessorService {
                 }
             }
         }
+        EventTracer.shutdown();
         log.info("Successfully shutdown ExecutionPlans");
     }
 
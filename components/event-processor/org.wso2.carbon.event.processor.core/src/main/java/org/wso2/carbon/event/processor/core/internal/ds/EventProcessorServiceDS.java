@@ -30,6 +30,7 @@ import org.wso2.carbon.event.processor.core.internal.CarbonEventProcessorService
 import org.wso2.carbon.event.processor.core.internal.listener.EventStreamListenerImpl;
 import org.wso2.carbon.event.processor.core.internal.storm.StormTopologyManager;
 import org.wso2.carbon.event.processor.core.internal.storm.manager.StormManagerServer;
+import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.StormStatusUpdater;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 import org.wso2.carbon.event.processor.manager.core.EventManagementService;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
@@ -144,6 +145,10 @@ public class EventProcessorServiceDS {
         } catch (RuntimeException e) {
             log.error("Error in stopping Storm Manager Service : " + e.getMessage(), e);
         }
+        if (EventProcessorValueHolder.getStormTopologyManager() != null) {
+            EventProcessorValueHolder.getStormTopologyManager().shutdown();
+        }
+        StormStatusUpdater.shutdown();
         EventProcessorValueHolder.getEventProcessorService().shutdown();
     }
 
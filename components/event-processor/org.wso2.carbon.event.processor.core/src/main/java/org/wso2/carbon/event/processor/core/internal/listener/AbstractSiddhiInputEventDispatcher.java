@@ -17,10 +17,10 @@ package org.wso2.carbon.event.processor.core.internal.listener;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.log4j.Logger;
 import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
+import org.wso2.carbon.event.processor.core.internal.util.EventTracer;
 import org.wso2.carbon.event.stream.core.SiddhiEventConsumer;
 import org.wso2.carbon.metrics.manager.Counter;
 import org.wso2.carbon.metrics.manager.Level;
@@ -31,18 +31,22 @@ import java.util.Arrays;
 
 /**
  * Abstract class for classes which feeds incoming events to Siddhi.
+ * <p/>
+ * The events received are shared by the dispatchers of all the execution plans importing the stream, hence they are
+ * read but never modified.
  */
 public abstract class AbstractSiddhiInputEventDispatcher implements SiddhiEventConsumer {
-    private Logger trace = Logger.getLogger(EventProcessorConstants.EVENT_TRACE_LOGGER);
     private static Log log = LogFactory.getLog(AbstractSiddhiInputEventDispatcher.class);
     protected final String streamId;
     protected String siddhiStreamId;
     protected Object owner;
     protected final int tenantId;
-    private final boolean traceEnabled;
-    private final boolean statisticsEnabled;
+    private final String metricId;
+    private volatile boolean traceEnabled;
+    private volatile boolean statisticsEnabled;
     private Counter eventCounter;
     private String tracerPrefix = "";
+    private volatile EventTracer eventTracer;
 
     public AbstractSiddhiInputEventDispatcher(String streamId, String siddhiStreamId,
                                               ExecutionPlanConfiguration executionPlanConfiguration, int tenantId) {
@@ -50,23 +54,46 @@ public abstract class AbstractSiddhiInputEventDispatcher implements SiddhiEventC
         this.siddhiStreamId = siddhiStreamId;
         this.owner = executionPlanConfiguration;
         this.tenantId = tenantId;
-        this.traceEnabled = executionPlanConfiguration.isTracingEnabled();
-        this.statisticsEnabled = executionPlanConfiguration.isStatisticsEnabled() &&
-                EventProcessorValueHolder.isGlobalStatisticsEnabled();
-        String metricId = EventProcessorConstants.METRIC_PREFIX + EventProcessorConstants.METRIC_DELIMITER +
+        this.metricId = EventProcessorConstants.METRIC_PREFIX + EventProcessorConstants.METRIC_DELIMITER +
                 EventProcessorConstants.METRIC_INFIX_EXECUTION_PLANS + EventProcessorConstants.METRIC_DELIMITER +
                 executionPlanConfiguration.getName() + EventProcessorConstants.METRIC_DELIMITER +
                 EventProcessorConstants.METRIC_INFIX_STREAMS + EventProcessorConstants.METRIC_AGGREGATE_ANNOTATION +
                 EventProcessorConstants.METRIC_DELIMITER + streamId.replaceAll("\\.", "_") +
                 EventProcessorConstants.METRIC_DELIMITER + EventProcessorConstants.METRIC_NAME_INPUT_EVENTS;
-        if (statisticsEnabled) {
-            eventCounter = MetricManager.counter(metricId, Level.INFO, Level.INFO);
-        }
-        if (traceEnabled) {
+        setTracingEnabled(executionPlanConfiguration.isTracingEnabled());
+        setStatisticsEnabled(executionPlanConfiguration.isStatisticsEnabled());
+    }
+
+    /**
+     * Switches event tracing of this dispatcher on or off, while events are being dispatched.
+     */
+    public synchronized void setTracingEnabled(boolean isEnabled) {
+        if (isEnabled && tracerPrefix.isEmpty()) {
             this.tracerPrefix = "TenantId : " + tenantId + ", " + EventProcessorConstants.EVENT_PROCESSOR + " : " +
-                    executionPlanConfiguration.getName() + ", " + EventProcessorConstants.EVENT_STREAM + " : " +
+                    getExecutionPlanName() + ", " + EventProcessorConstants.EVENT_STREAM + " : " +
                     streamId + " (" + siddhiStreamId + "), before processing " + System.getProperty("line.separator");
         }
+        // Written after the prefix, so that a dispatching thread which sees the flag also sees the prefix
+        this.traceEnabled = isEnabled;
+    }
+
+    /**
+     * Sets the tracer of the execution plan, which samples the events traced while tracing is enabled.
+     */
+    public void setEventTracer(EventTracer eventTracer) {
+        this.eventTracer = eventTracer;
+    }
+
+    /**
+     * Switches the event counter of this dispatcher on or off, while events are being dispatched. Statistics stay off
+     * while they are disabled globally.
+     */
+    public synchronized void setStatisticsEnabled(boolean isEnabled) {
+        boolean isCounting = isEnabled && EventProcessorValueHolder.isGlobalStatisticsEnabled();
+        if (isCounting && eventCounter == null) {
+            eventCounter = MetricManager.counter(metricId, Level.INFO, Level.INFO);
+        }
+        this.statisticsEnabled = isCounting;
     }
 
     @Override
@@ -76,27 +103,25 @@ public abstract class AbstractSiddhiInputEventDispatcher implements SiddhiEventC
 
     @Override
     public void consumeEvents(Event[] events) {
-        if (traceEnabled) {
-            trace.info(tracerPrefix + Arrays.deepToString(events));
+        if (traceEnabled && eventTracer != null) {
+            eventTracer.trace(tracerPrefix, events);
         }
-        for (Event event : events) {
-            try {
-                if (statisticsEnabled) {
-                    eventCounter.inc();
-                }
-                sendEvent(event);
-            } catch (InterruptedException e) {
-                log.error("Error in dispatching events " + Arrays.deepToString(events) + " to Siddhi stream :" +
-                        siddhiStreamId);
-            }
+        if (statisticsEnabled) {
+            eventCounter.inc(events.length);
+        }
+        try {
+            sendEvents(events);
+        } catch (InterruptedException e) {
+            log.error("Error in dispatching events " + Arrays.deepToString(events) + " to Siddhi stream :" +
+                    siddhiStreamId);
         }
     }
 
     @Override
     public void consumeEvent(Event event) {
         try {
-            if (traceEnabled) {
-                trace.info(tracerPrefix + event);
+            if (traceEnabled && eventTracer != null) {
+                eventTracer.trace(tracerPrefix, event);
             }
             if (statisticsEnabled) {
                 eventCounter.inc();
@@ -107,6 +132,10 @@ public abstract class AbstractSiddhiInputEventDispatcher implements SiddhiEventC
         }
     }
 
+    public String getSiddhiStreamId() {
+        return siddhiStreamId;
+    }
+
     public String getExecutionPlanName() {
         return ((ExecutionPlanConfiguration) owner).getName();
     }
@@ -119,6 +148,19 @@ public abstract class AbstractSiddhiInputEventDispatcher implements SiddhiEventC
      */
     public abstract void sendEvent(Event event) throws InterruptedException;
 
+    /**
+     * When a batch of events is received this method will be called. Dispatches the events one by one, override to
+     * dispatch the whole batch at once.
+     *
+     * @param events Event objects
+     * @throws InterruptedException
+     */
+    public void sendEvents(Event[] events) throws InterruptedException {
+        for (Event event : events) {
+            sendEvent(event);
+        }
+    }
+
     public void shutdown() {
 
     }
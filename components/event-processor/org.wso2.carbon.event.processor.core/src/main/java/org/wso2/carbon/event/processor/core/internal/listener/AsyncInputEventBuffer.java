@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.listener;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.processor.core.AsyncIngestionConfiguration;
+import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
+import org.wso2.siddhi.core.event.Event;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring in which the events imported by an execution plan are queued by the receiving threads, to be sent to Siddhi by
+ * the workers of the plan. Shared by the {@link SiddhiInputEventDispatcher}s of the plan, so that with a single worker
+ * the events of all the imported streams are processed in the order they were received.
+ * <p/>
+ * Each slot of the ring holds an event, or a batch of events, as received.
+ */
+public class AsyncInputEventBuffer {
+
+    private static final Log log = LogFactory.getLog(AsyncInputEventBuffer.class);
+
+    private final String executionPlanName;
+    private final AsyncIngestionConfiguration configuration;
+    private final ExecutorService executorService;
+    private final Disruptor<EventHolder> disruptor;
+    private final RingBuffer<EventHolder> ringBuffer;
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private final AtomicLong blockedEventCount = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public AsyncInputEventBuffer(final String executionPlanName, final int tenantId,
+                                 AsyncIngestionConfiguration configuration) {
+        this.executionPlanName = executionPlanName;
+        this.configuration = configuration;
+        this.executorService = Executors.newFixedThreadPool(configuration.getWorkers(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AsyncIngestion-" + tenantId + "-" + executionPlanName +
+                        "-thread-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.disruptor = new Disruptor<EventHolder>(new EventFactory<EventHolder>() {
+            @Override
+            public EventHolder newInstance() {
+                return new EventHolder();
+            }
+        }, configuration.getBufferSize(), executorService, ProducerType.MULTI,
+                createWaitStrategy(configuration.getWaitStrategy()));
+        WorkHandler[] workHandlers = new WorkHandler[configuration.getWorkers()];
+        for (int i = 0; i < workHandlers.length; i++) {
+            workHandlers[i] = new EventDispatchHandler();
+        }
+        this.disruptor.handleExceptionsWith(new ExceptionHandler() {
+            @Override
+            public void handleEventException(Throwable throwable, long sequence, Object event) {
+                log.error("Error while processing the events queued for execution plan " +
+                        AsyncInputEventBuffer.this.executionPlanName, throwable);
+            }
+
+            @Override
+            public void handleOnStartException(Throwable throwable) {
+                log.error("Error while starting the workers of execution plan " +
+                        AsyncInputEventBuffer.this.executionPlanName, throwable);
+            }
+
+            @Override
+            public void handleOnShutdownException(Throwable throwable) {
+                log.error("Error while stopping the workers of execution plan " +
+                        AsyncInputEventBuffer.this.executionPlanName, throwable);
+            }
+        });
+        this.disruptor.handleEventsWithWorkerPool(workHandlers);
+        this.ringBuffer = disruptor.getRingBuffer();
+    }
+
+    public void start() {
+        disruptor.start();
+    }
+
+    void publish(SiddhiInputEventDispatcher eventDispatcher, Event event) {
+        long sequence = next(1);
+        if (sequence < 0) {
+            return;
+        }
+        try {
+            EventHolder holder = ringBuffer.get(sequence);
+            holder.eventDispatcher = eventDispatcher;
+            holder.event = event;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    void publish(SiddhiInputEventDispatcher eventDispatcher, Event[] events) {
+        long sequence = next(events.length);
+        if (sequence < 0) {
+            return;
+        }
+        try {
+            EventHolder holder = ringBuffer.get(sequence);
+            holder.eventDispatcher = eventDispatcher;
+            holder.events = events;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Claims the next slot, waiting while the ring is full, or giving up if the events are to be dropped.
+     *
+     * @return sequence of the slot, or -1 if the events are dropped
+     */
+    private long next(int eventCount) {
+        if (closed) {
+            droppedEventCount.addAndGet(eventCount);
+            return -1;
+        }
+        try {
+            return ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            if (configuration.getOverflow() == AsyncIngestionConfiguration.Overflow.DROP) {
+                if (droppedEventCount.getAndAdd(eventCount) == 0) {
+                    log.warn("Dropping events of execution plan " + executionPlanName + " as its buffer of " +
+                            configuration.getBufferSize() + " is full. Further drops are only counted.");
+                }
+                return -1;
+            }
+            blockedEventCount.addAndGet(eventCount);
+            // Waits as RingBuffer.next() does, but gives up once the workers are stopped, which would never free a slot
+            while (!closed) {
+                try {
+                    return ringBuffer.tryNext();
+                } catch (InsufficientCapacityException ignored) {
+                    LockSupport.parkNanos(1);
+                }
+            }
+            droppedEventCount.addAndGet(eventCount);
+            return -1;
+        }
+    }
+
+    /**
+     * @return number of events, or batches of events, waiting in the ring
+     */
+    public long getQueueDepth() {
+        return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+    }
+
+    /**
+     * @return number of events dropped as the ring was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * @return number of events whose receiving thread waited as the ring was full
+     */
+    public long getBlockedEventCount() {
+        return blockedEventCount.get();
+    }
+
+    public AsyncIngestionConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Drops the events published from now on, processes the queued events and stops the workers. The workers are
+     * halted, leaving the rest of the queued events, if they could not be processed within
+     * {@link EventProcessorConstants#ASYNC_SHUTDOWN_TIMEOUT}.
+     */
+    public void shutdown() {
+        closed = true;
+        try {
+            disruptor.shutdown(EventProcessorConstants.ASYNC_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Halting the workers of execution plan " + executionPlanName + " leaving " + getQueueDepth() +
+                    " queued events, as they could not be processed within " +
+                    EventProcessorConstants.ASYNC_SHUTDOWN_TIMEOUT + " ms");
+            disruptor.halt();
+        }
+        executorService.shutdown();
+        if (droppedEventCount.get() > 0 || blockedEventCount.get() > 0) {
+            log.info("Execution plan " + executionPlanName + " dropped " + droppedEventCount.get() + " and blocked " +
+                    blockedEventCount.get() + " events while its buffer was full");
+        }
+    }
+
+    private static WaitStrategy createWaitStrategy(AsyncIngestionConfiguration.WaitStrategy waitStrategy) {
+        switch (waitStrategy) {
+            case SLEEPING:
+                return new SleepingWaitStrategy();
+            case YIELDING:
+                return new YieldingWaitStrategy();
+            case BUSY_SPIN:
+                return new BusySpinWaitStrategy();
+            default:
+                return new BlockingWaitStrategy();
+        }
+    }
+
+    private static class EventDispatchHandler implements WorkHandler<EventHolder> {
+
+        @Override
+        public void onEvent(EventHolder holder) throws Exception {
+            SiddhiInputEventDispatcher eventDispatcher = holder.eventDispatcher;
+            Event event = holder.event;
+            Event[] events = holder.events;
+            holder.eventDispatcher = null;
+            holder.event = null;
+            holder.events = null;
+            if (events != null) {
+                eventDispatcher.dispatchEvents(events);
+            } else {
+                eventDispatcher.dispatchEvent(event);
+            }
+        }
+    }
+
+    static class EventHolder {
+        private SiddhiInputEventDispatcher eventDispatcher;
+        private Event event;
+        private Event[] events;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.listener;
+
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.internal.local.LocalQueryPlanRuntime;
+import org.wso2.siddhi.core.event.Event;
+
+/**
+ * Feed incoming events to the execution groups of an execution plan running on a local query plan runtime
+ */
+public class LocalInputEventDispatcher extends AbstractSiddhiInputEventDispatcher {
+
+    private final LocalQueryPlanRuntime localQueryPlanRuntime;
+
+    public LocalInputEventDispatcher(String streamId, String siddhiStreamId, LocalQueryPlanRuntime localQueryPlanRuntime,
+                                     ExecutionPlanConfiguration executionPlanConfiguration, int tenantId) {
+        super(streamId, siddhiStreamId, executionPlanConfiguration, tenantId);
+        this.localQueryPlanRuntime = localQueryPlanRuntime;
+    }
+
+    @Override
+    public void sendEvent(Event event) throws InterruptedException {
+        localQueryPlanRuntime.send(siddhiStreamId, event.getTimestamp(), event.getData());
+    }
+
+}
@@ -19,6 +19,10 @@ import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.siddhi.core.event.Event;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Feed incoming events to Siddhi engine through Siddhi input handler
  */
@@ -27,16 +31,97 @@ public class SiddhiInputEventDispatcher extends AbstractSiddhiInputEventDispatch
     /**
      * Siddhi Input event handler
      */
-    protected InputHandler inputHandler;
+    protected volatile InputHandler inputHandler;
+
+    /**
+     * Held while sending, and exclusively while the runtime of the execution plan is swapped
+     */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    /**
+     * Queue of the execution plan the events are passed through, or null to send them on the receiving thread
+     */
+    private final AsyncInputEventBuffer asyncInputEventBuffer;
 
     public SiddhiInputEventDispatcher(String streamId, InputHandler inputHandler, ExecutionPlanConfiguration executionPlanConfiguration, int tenantId) {
+        this(streamId, inputHandler, executionPlanConfiguration, tenantId, null);
+    }
+
+    public SiddhiInputEventDispatcher(String streamId, InputHandler inputHandler,
+                                      ExecutionPlanConfiguration executionPlanConfiguration, int tenantId,
+                                      AsyncInputEventBuffer asyncInputEventBuffer) {
         super(streamId, inputHandler.getStreamId(), executionPlanConfiguration, tenantId);
         this.inputHandler = inputHandler;
+        this.asyncInputEventBuffer = asyncInputEventBuffer;
     }
 
     @Override
     public void sendEvent(Event event) throws InterruptedException {
-        inputHandler.send(event.getTimestamp(), event.getData());
+        if (asyncInputEventBuffer != null) {
+            asyncInputEventBuffer.publish(this, event);
+        } else {
+            dispatchEvent(event);
+        }
+    }
+
+    @Override
+    public void sendEvents(Event[] events) throws InterruptedException {
+        if (asyncInputEventBuffer != null) {
+            asyncInputEventBuffer.publish(this, events);
+        } else {
+            dispatchEvents(events);
+        }
+    }
+
+    /**
+     * Hands the received event itself to Siddhi, which only reads it while converting it into a stream event of the
+     * runtime, rather than copying it into a new event for each execution plan importing the stream.
+     */
+    void dispatchEvent(Event event) throws InterruptedException {
+        swapLock.readLock().lock();
+        try {
+            inputHandler.send(event);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hands the whole batch to Siddhi, which converts it into one chunk of stream events.
+     */
+    void dispatchEvents(Event[] events) throws InterruptedException {
+        swapLock.readLock().lock();
+        try {
+            inputHandler.send(events);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Blocks the events until {@link #unlockAfterSwap()}, once the events being sent are processed.
+     *
+     * @param timeout milliseconds to wait for the events being sent
+     * @return false if the events being sent were not processed in time
+     */
+    public boolean lockForSwap(long timeout) throws InterruptedException {
+        return swapLock.writeLock().tryLock(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the following events to the given input handler. Must be called between {@link #lockForSwap(long)} and
+     * {@link #unlockAfterSwap()}.
+     */
+    public void setInputHandler(InputHandler inputHandler) {
+        this.inputHandler = inputHandler;
+    }
+
+    public InputHandler getInputHandler() {
+        return inputHandler;
+    }
+
+    public void unlockAfterSwap() {
+        swapLock.writeLock().unlock();
     }
 
 }
@@ -15,13 +15,13 @@
  */
 package org.wso2.carbon.event.processor.core.internal.listener;
 
-import org.apache.log4j.Logger;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.databridge.commons.StreamDefinition;
 import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorUtil;
+import org.wso2.carbon.event.processor.core.internal.util.EventTracer;
 import org.wso2.carbon.event.stream.core.EventProducer;
 import org.wso2.carbon.event.stream.core.EventProducerCallback;
 import org.wso2.carbon.event.stream.core.exception.EventStreamConfigurationException;
@@ -31,19 +31,20 @@ import org.wso2.carbon.metrics.manager.MetricManager;
 import org.wso2.siddhi.core.event.Event;
 import org.wso2.siddhi.core.stream.output.StreamCallback;
 
-import java.util.Arrays;
 
 public class SiddhiOutputStreamListener extends StreamCallback implements EventProducer {
     protected final String siddhiStreamName;
     protected final int tenantId;
-    protected final boolean traceEnabled;
-    protected final boolean statisticsEnabled;
+    protected volatile boolean traceEnabled;
+    protected volatile boolean statisticsEnabled;
     private final String streamId;
+    private final String executionPlanName;
+    private final String metricId;
     private StreamDefinition streamDefinition;
     protected String tracerPrefix;
+    protected volatile EventTracer eventTracer;
     private Counter eventCounter;
     protected EventProducerCallback eventProducerCallback;
-    private Logger trace = Logger.getLogger(EventProcessorConstants.EVENT_TRACE_LOGGER);
 
     public SiddhiOutputStreamListener(String siddhiStreamName, String streamId,
                                       ExecutionPlanConfiguration executionPlanConfiguration, int tenantId)
@@ -52,23 +53,47 @@ public class SiddhiOutputStreamListener extends StreamCallback implements EventP
         this.tenantId = tenantId;
         this.streamDefinition = EventProcessorValueHolder.getEventStreamService().getStreamDefinition(streamId);
         this.siddhiStreamName = siddhiStreamName;
-        this.traceEnabled = executionPlanConfiguration.isTracingEnabled();
-        this.statisticsEnabled = executionPlanConfiguration.isStatisticsEnabled() &&
-                EventProcessorValueHolder.isGlobalStatisticsEnabled();
-        String metricId = EventProcessorConstants.METRIC_PREFIX + EventProcessorConstants.METRIC_DELIMITER +
+        this.executionPlanName = executionPlanConfiguration.getName();
+        this.metricId = EventProcessorConstants.METRIC_PREFIX + EventProcessorConstants.METRIC_DELIMITER +
                 EventProcessorConstants.METRIC_INFIX_EXECUTION_PLANS + EventProcessorConstants.METRIC_DELIMITER +
-                executionPlanConfiguration.getName() + EventProcessorConstants.METRIC_DELIMITER +
+                executionPlanName + EventProcessorConstants.METRIC_DELIMITER +
                 EventProcessorConstants.METRIC_INFIX_STREAMS + EventProcessorConstants.METRIC_AGGREGATE_ANNOTATION +
                 EventProcessorConstants.METRIC_DELIMITER + streamId.replaceAll("\\.", "_") +
                 EventProcessorConstants.METRIC_DELIMITER + EventProcessorConstants.METRIC_NAME_OUTPUT_EVENTS;
-        if (statisticsEnabled) {
-            eventCounter = MetricManager.counter(metricId, Level.INFO, Level.INFO);
-        }
-        if (traceEnabled) {
+        setTracingEnabled(executionPlanConfiguration.isTracingEnabled());
+        setStatisticsEnabled(executionPlanConfiguration.isStatisticsEnabled());
+    }
+
+    /**
+     * Switches event tracing of this listener on or off, while events are being received.
+     */
+    public synchronized void setTracingEnabled(boolean isEnabled) {
+        if (isEnabled && tracerPrefix == null) {
             this.tracerPrefix = "TenantId : " + tenantId + ", " + EventProcessorConstants.EVENT_PROCESSOR + " : " +
-                    executionPlanConfiguration.getName() + ", " + EventProcessorConstants.EVENT_STREAM + " : " +
+                    executionPlanName + ", " + EventProcessorConstants.EVENT_STREAM + " : " +
                     streamId + " (" + siddhiStreamName + "), after processing " + System.getProperty("line.separator");
         }
+        // Written after the prefix, so that a receiving thread which sees the flag also sees the prefix
+        this.traceEnabled = isEnabled;
+    }
+
+    /**
+     * Sets the tracer of the execution plan, which samples the events traced while tracing is enabled.
+     */
+    public void setEventTracer(EventTracer eventTracer) {
+        this.eventTracer = eventTracer;
+    }
+
+    /**
+     * Switches the event counter of this listener on or off, while events are being received. Statistics stay off
+     * while they are disabled globally.
+     */
+    public synchronized void setStatisticsEnabled(boolean isEnabled) {
+        boolean isCounting = isEnabled && EventProcessorValueHolder.isGlobalStatisticsEnabled();
+        if (isCounting && eventCounter == null) {
+            eventCounter = MetricManager.counter(metricId, Level.INFO, Level.INFO);
+        }
+        this.statisticsEnabled = isCounting;
     }
 
     @Override
@@ -83,8 +108,8 @@ public class SiddhiOutputStreamListener extends StreamCallback implements EventP
             PrivilegedCarbonContext.startTenantFlow();
             PrivilegedCarbonContext privilegedCarbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
             privilegedCarbonContext.setTenantId(this.tenantId);
-            if (traceEnabled) {
-                trace.info(tracerPrefix + Arrays.deepToString(events));
+            if (traceEnabled && eventTracer != null) {
+                eventTracer.trace(tracerPrefix, events);
             }
             if (statisticsEnabled) {
                 eventCounter.inc(events.length);
@@ -108,8 +133,8 @@ public class SiddhiOutputStreamListener extends StreamCallback implements EventP
             PrivilegedCarbonContext.startTenantFlow();
             PrivilegedCarbonContext privilegedCarbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
             privilegedCarbonContext.setTenantId(this.tenantId);
-            if (traceEnabled) {
-                trace.info(tracerPrefix + event);
+            if (traceEnabled && eventTracer != null) {
+                eventTracer.trace(tracerPrefix, event);
             }
             if (statisticsEnabled) {
                 eventCounter.inc();
@@ -127,6 +152,10 @@ public class SiddhiOutputStreamListener extends StreamCallback implements EventP
         return streamId;
     }
 
+    public String getSiddhiStreamName() {
+        return siddhiStreamName;
+    }
+
     @Override
     public void setCallBack(EventProducerCallback eventProducerCallback) {
         this.eventProducerCallback = eventProducerCallback;
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.local;
+
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A component of the query plan run by a {@link LocalQueryPlanRuntime}, the local counterpart of a storm spout or bolt.
+ * Holds the instances of the component and the routes of its output streams.
+ */
+public class LocalComponent {
+
+    private final ComponentInfoHolder componentInfoHolder;
+    private final List<LocalExecutor> executors = new ArrayList<LocalExecutor>();
+    /**
+     * < output stream id, routes to the consumers of the stream >
+     */
+    private final Map<String, List<LocalStreamRoute>> routes = new HashMap<String, List<LocalStreamRoute>>();
+
+    public LocalComponent(ComponentInfoHolder componentInfoHolder) {
+        this.componentInfoHolder = componentInfoHolder;
+    }
+
+    public String getName() {
+        return componentInfoHolder.getComponentName();
+    }
+
+    public ComponentInfoHolder getComponentInfoHolder() {
+        return componentInfoHolder;
+    }
+
+    public List<String> getInputStreamIds() {
+        return Arrays.asList(componentInfoHolder.getInputStreamIds());
+    }
+
+    public List<String> getOutputStreamIds() {
+        return Arrays.asList(componentInfoHolder.getOutputStreamIds());
+    }
+
+    void addExecutor(LocalExecutor executor) {
+        executors.add(executor);
+    }
+
+    List<LocalExecutor> getExecutors() {
+        return executors;
+    }
+
+    void addRoute(String streamId, LocalStreamRoute route) {
+        List<LocalStreamRoute> streamRoutes = routes.get(streamId);
+        if (streamRoutes == null) {
+            streamRoutes = new ArrayList<LocalStreamRoute>();
+            routes.put(streamId, streamRoutes);
+        }
+        streamRoutes.add(route);
+    }
+
+    /**
+     * Routes an output event of the component to all the consumers of the stream.
+     */
+    void emit(String streamId, long timestamp, Object[] data) {
+        List<LocalStreamRoute> streamRoutes = routes.get(streamId);
+        if (streamRoutes != null) {
+            for (LocalStreamRoute route : streamRoutes) {
+                route.route(timestamp, data);
+            }
+        }
+    }
+}
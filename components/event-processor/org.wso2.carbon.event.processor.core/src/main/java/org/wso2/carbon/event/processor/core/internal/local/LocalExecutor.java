@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.local;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * One instance of an execution group of a {@link LocalQueryPlanRuntime}, the local counterpart of a storm task. Events
+ * routed to the instance are queued in its own ring and processed by a single thread, in the order they were routed.
+ * <p/>
+ * The instance of a partial aggregate merger has no Siddhi runtime, and passes the events through. Locally the events
+ * of a key are never split across instances, hence the partial aggregates are already the merged aggregates, and the
+ * partial aggregates emitted for expired events are dropped.
+ */
+public class LocalExecutor implements EventHandler<LocalExecutor.EventHolder> {
+
+    private static final Logger log = Logger.getLogger(LocalExecutor.class);
+
+    private final String name;
+    private final LocalComponent component;
+    private final ExecutionPlanRuntime executionPlanRuntime;
+    private final Map<String, InputHandler> inputHandlers = new HashMap<String, InputHandler>();
+    private final Disruptor<EventHolder> disruptor;
+    private final RingBuffer<EventHolder> ringBuffer;
+
+    /**
+     * @param executionPlanRuntime Siddhi runtime of the queries of the group, or null to pass the events through
+     */
+    public LocalExecutor(String name, LocalComponent component, ExecutionPlanRuntime executionPlanRuntime,
+                         int bufferSize, Executor executor) {
+        this.name = name;
+        this.component = component;
+        this.executionPlanRuntime = executionPlanRuntime;
+        if (executionPlanRuntime != null) {
+            for (final String streamId : component.getOutputStreamIds()) {
+                final boolean isPartialOutputStream =
+                        component.getComponentInfoHolder().isPartialOutputStream(streamId);
+                executionPlanRuntime.addCallback(streamId, new StreamCallback() {
+                    @Override
+                    public void receive(Event[] events) {
+                        for (Event event : events) {
+                            if (isPartialOutputStream && event.isExpired()) {
+                                continue;
+                            }
+                            LocalExecutor.this.component.emit(streamId, event.getTimestamp(), event.getData());
+                        }
+                    }
+                });
+            }
+        }
+        this.disruptor = new Disruptor<EventHolder>(new EventFactory<EventHolder>() {
+            @Override
+            public EventHolder newInstance() {
+                return new EventHolder();
+            }
+        }, bufferSize, executor, ProducerType.MULTI, new BlockingWaitStrategy());
+        this.disruptor.handleEventsWith(this);
+        this.ringBuffer = disruptor.getRingBuffer();
+    }
+
+    public void start() {
+        if (executionPlanRuntime != null) {
+            executionPlanRuntime.start();
+            for (String streamId : component.getInputStreamIds()) {
+                inputHandlers.put(streamId, executionPlanRuntime.getInputHandler(streamId));
+            }
+        }
+        disruptor.start();
+    }
+
+    /**
+     * Queues the event, blocking while the ring of the instance is full.
+     */
+    public void send(String streamId, long timestamp, Object[] data) {
+        long sequence = ringBuffer.next();
+        try {
+            EventHolder holder = ringBuffer.get(sequence);
+            holder.streamId = streamId;
+            holder.timestamp = timestamp;
+            holder.data = data;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    @Override
+    public void onEvent(EventHolder holder, long sequence, boolean endOfBatch) {
+        String streamId = holder.streamId;
+        long timestamp = holder.timestamp;
+        Object[] data = holder.data;
+        holder.data = null;
+        if (executionPlanRuntime == null) {
+            component.emit(streamId, timestamp, data);
+            return;
+        }
+        InputHandler inputHandler = inputHandlers.get(streamId);
+        if (inputHandler == null) {
+            log.warn("[" + name + "] Event received for unknown stream " + streamId + ". Discarding the event.");
+            return;
+        }
+        try {
+            inputHandler.send(timestamp, data);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("[" + name + "] Interrupted while processing an event of stream " + streamId, e);
+        } catch (RuntimeException e) {
+            log.error("[" + name + "] Error while processing an event of stream " + streamId, e);
+        }
+    }
+
+    /**
+     * Processes the queued events and stops the Siddhi runtime.
+     */
+    public void shutdown() {
+        disruptor.shutdown();
+        if (executionPlanRuntime != null) {
+            executionPlanRuntime.shutdown();
+        }
+    }
+
+    static class EventHolder {
+        private String streamId;
+        private long timestamp;
+        private Object[] data;
+    }
+}
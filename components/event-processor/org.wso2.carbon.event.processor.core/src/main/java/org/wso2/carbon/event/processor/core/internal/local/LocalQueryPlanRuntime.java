@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.local;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.StormQueryPlanBuilder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.util.EventProcessorUtil;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the storm query plan of an execution plan within this node, without storm. Each execution group runs as many
+ * Siddhi runtimes as its parallelism, each on its own thread fed by a ring buffer, and the groups are connected by
+ * routes matching the groupings the plan would have in the storm topology. The receiver and publisher components
+ * are replaced by {@link #send} and the stream callbacks of the exported streams.
+ */
+public class LocalQueryPlanRuntime {
+
+    private static final Logger log = Logger.getLogger(LocalQueryPlanRuntime.class);
+
+    private final String logPrefix;
+    private final LocalComponent receiver;
+    private final List<LocalComponent> processors = new ArrayList<LocalComponent>();
+    /**
+     * < exported stream id, route to the callbacks of the stream >
+     */
+    private final Map<String, LocalStreamRoute> exportedStreamRoutes = new HashMap<String, LocalStreamRoute>();
+    private final ExecutorService executorService;
+
+    /**
+     * @param queryPlan  query plan constructed by {@link StormQueryPlanBuilder#constructStormQueryPlan}
+     * @param bufferSize size of the ring buffer of each instance of an execution group, must be a power of 2
+     */
+    public LocalQueryPlanRuntime(TopologyInfoHolder queryPlan, String executionPlanName, int tenantId,
+                                 SiddhiManager siddhiManager, int bufferSize) throws StormQueryConstructionException {
+        this.logPrefix = "[" + tenantId + ":" + executionPlanName + "] ";
+        this.executorService = Executors.newCachedThreadPool(new LocalThreadFactory(executionPlanName, tenantId));
+
+        Map<ComponentInfoHolder, LocalComponent> components = new IdentityHashMap<ComponentInfoHolder, LocalComponent>();
+        LocalComponent receiverComponent = null;
+        for (ComponentInfoHolder componentInfoHolder : queryPlan.getComponents()) {
+            LocalComponent component = new LocalComponent(componentInfoHolder);
+            components.put(componentInfoHolder, component);
+            switch (componentInfoHolder.getComponentType()) {
+                case EVENT_RECEIVER_SPOUT:
+                    receiverComponent = component;
+                    break;
+                case SIDDHI_BOLT:
+                    String query = (componentInfoHolder.getTableDefinitions() != null ?
+                            componentInfoHolder.getTableDefinitions() : "") + componentInfoHolder.getQuery();
+                    String queryExpression = EventProcessorUtil.constructQueryExpression(null,
+                            componentInfoHolder.getInputStreamDefinitionStrings(),
+                            componentInfoHolder.getOutputStreamDefinitionStrings(), query);
+                    for (int i = 0; i < componentInfoHolder.getParallelism(); i++) {
+                        ExecutionPlanRuntime executionPlanRuntime;
+                        try {
+                            executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(queryExpression);
+                        } catch (RuntimeException e) {
+                            throw new StormQueryConstructionException("Invalid queries in execution group '" +
+                                    component.getName() + "', " + e.getMessage(), e);
+                        }
+                        component.addExecutor(new LocalExecutor(logPrefix + component.getName() + "-" + i,
+                                component, executionPlanRuntime, bufferSize, executorService));
+                    }
+                    processors.add(component);
+                    break;
+                case PARTIAL_AGGREGATE_MERGE_BOLT:
+                    for (int i = 0; i < componentInfoHolder.getParallelism(); i++) {
+                        component.addExecutor(new LocalExecutor(logPrefix + component.getName() + "-" + i,
+                                component, null, bufferSize, executorService));
+                    }
+                    processors.add(component);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (receiverComponent == null) {
+            throw new StormQueryConstructionException("No receiver found in the query plan of " + executionPlanName);
+        }
+        this.receiver = receiverComponent;
+
+        connectComponents(queryPlan, components);
+    }
+
+    /**
+     * Adds the routes of the streams between the components, as the storm topology constructor connects them.
+     */
+    private void connectComponents(TopologyInfoHolder queryPlan, Map<ComponentInfoHolder, LocalComponent> components)
+            throws StormQueryConstructionException {
+        for (ComponentInfoHolder consumer : queryPlan.getComponents()) {
+            if (consumer.getComponentType() == ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT) {
+                continue;
+            }
+            boolean isMerger = consumer.getComponentType() ==
+                    ComponentInfoHolder.ComponentType.PARTIAL_AGGREGATE_MERGE_BOLT;
+            boolean isPublisher = consumer.getComponentType() ==
+                    ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT;
+
+            for (String inputStreamId : consumer.getInputStreamIds()) {
+                Set<ComponentInfoHolder> publishingComponents = queryPlan.getPublishingComponents(inputStreamId);
+                if (publishingComponents == null) {
+                    throw new StormQueryConstructionException("No corresponding stream imported for Siddhi stream" +
+                            " : " + inputStreamId);
+                }
+                LocalStreamRoute route;
+                if (isPublisher) {
+                    route = new LocalStreamRoute(inputStreamId);
+                    exportedStreamRoutes.put(inputStreamId, route);
+                } else {
+                    route = new LocalStreamRoute(inputStreamId, components.get(consumer),
+                            getPartitionAttributeIndex(consumer, inputStreamId));
+                }
+                for (ComponentInfoHolder publisher : publishingComponents) {
+                    if (publisher.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT &&
+                            publisher != consumer && publisher.isPartialOutputStream(inputStreamId) == isMerger) {
+                        components.get(publisher).addRoute(inputStreamId, route);
+                        if (log.isDebugEnabled()) {
+                            log.debug(logPrefix + "Connecting components [Consumer:" + consumer.getComponentName() +
+                                    ", Stream:" + inputStreamId + ", Publisher:" + publisher.getComponentName() +
+                                    ", Grouping:" + (route.isPartitioned() ? "Hash" : "Shuffle") + "]");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int getPartitionAttributeIndex(ComponentInfoHolder consumer, String streamId)
+            throws StormQueryConstructionException {
+        String partitionField = consumer.getPartionenedField(streamId);
+        if (partitionField == null) {
+            return -1;
+        }
+        String[] attributeNames = consumer.getInputStreamDefinition(streamId).getAttributeNameArray();
+        for (int i = 0; i < attributeNames.length; i++) {
+            if (partitionField.equals(attributeNames[i])) {
+                return i;
+            }
+        }
+        throw new StormQueryConstructionException("Partitioning attribute '" + partitionField + "' not found in " +
+                "stream '" + streamId + "' of execution group '" + consumer.getComponentName() + "'");
+    }
+
+    /**
+     * Adds a callback for an exported stream. Must be called before {@link #start()}.
+     */
+    public void addCallback(String streamId, StreamCallback callback) {
+        LocalStreamRoute route = exportedStreamRoutes.get(streamId);
+        if (route != null) {
+            route.addCallback(callback);
+        } else {
+            log.warn(logPrefix + "Stream '" + streamId + "' is not exported by the query plan, ignoring its callback");
+        }
+    }
+
+    public void start() {
+        for (LocalComponent processor : processors) {
+            for (LocalExecutor executor : processor.getExecutors()) {
+                executor.start();
+            }
+        }
+    }
+
+    /**
+     * Routes an event of an imported stream to the execution groups consuming it. Blocks while the ring of the
+     * chosen instance is full.
+     */
+    public void send(String streamId, long timestamp, Object[] data) {
+        receiver.emit(streamId, timestamp, data);
+    }
+
+    /**
+     * Stops the execution groups in the order they appear in the query plan, each after processing the events queued
+     * for it.
+     */
+    public void shutdown() {
+        for (LocalComponent processor : processors) {
+            for (LocalExecutor executor : processor.getExecutors()) {
+                executor.shutdown();
+            }
+        }
+        executorService.shutdown();
+    }
+
+    private static class LocalThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+
+        LocalThreadFactory(String executionPlanName, int tenantId) {
+            this.namePrefix = "LocalQueryPlan-" + tenantId + "-" + executionPlanName + "-thread-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.local;
+
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Route of a stream from a component to one consumer, matching the storm grouping of the edge. Events are sent to the
+ * instance chosen by the hash of the partitioning attribute for a fields grouping, or round robin for a shuffle
+ * grouping. The route of an exported stream delivers the events to the stream callbacks of the plan instead.
+ */
+public class LocalStreamRoute {
+
+    private final String streamId;
+    private final LocalComponent consumer;
+    private final int partitionAttributeIndex;
+    private final AtomicInteger nextExecutor = new AtomicInteger();
+    private final List<StreamCallback> callbacks;
+
+    /**
+     * Route to an execution group.
+     *
+     * @param partitionAttributeIndex index of the partitioning attribute in the events, or -1 to shuffle
+     */
+    public LocalStreamRoute(String streamId, LocalComponent consumer, int partitionAttributeIndex) {
+        this.streamId = streamId;
+        this.consumer = consumer;
+        this.partitionAttributeIndex = partitionAttributeIndex;
+        this.callbacks = null;
+    }
+
+    /**
+     * Route of an exported stream to the callbacks of the stream.
+     */
+    public LocalStreamRoute(String streamId) {
+        this.streamId = streamId;
+        this.consumer = null;
+        this.partitionAttributeIndex = -1;
+        this.callbacks = new CopyOnWriteArrayList<StreamCallback>();
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public boolean isPartitioned() {
+        return partitionAttributeIndex >= 0;
+    }
+
+    void addCallback(StreamCallback callback) {
+        callbacks.add(callback);
+    }
+
+    void route(long timestamp, Object[] data) {
+        if (consumer == null) {
+            Event[] events = new Event[]{new Event(timestamp, data)};
+            for (StreamCallback callback : callbacks) {
+                callback.receive(events);
+            }
+            return;
+        }
+        List<LocalExecutor> executors = consumer.getExecutors();
+        int index;
+        if (executors.size() == 1) {
+            index = 0;
+        } else if (partitionAttributeIndex >= 0) {
+            Object key = data[partitionAttributeIndex];
+            index = ((key != null ? key.hashCode() : 0) & Integer.MAX_VALUE) % executors.size();
+        } else {
+            index = (nextExecutor.getAndIncrement() & Integer.MAX_VALUE) % executors.size();
+        }
+        executors.get(index).send(streamId, timestamp, data);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.processor.common.util.AsyncEventPublisher;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.internal.storm.util.HybridQueryPlan;
+import org.wso2.carbon.event.processor.manager.commons.transport.server.ConnectionCallback;
+import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Publishes the streams which cross from the CEP worker into storm in a hybrid query plan, i.e. the outputs of the
+ * execution groups run on this worker and the imported streams consumed on storm, to the event receiver spout. All
+ * such streams of an execution plan share a single connection.
+ */
+public class SiddhiStormHybridEventPublisher {
+    private static final Log log = LogFactory.getLog(SiddhiStormHybridEventPublisher.class);
+
+    private final String logPrefix;
+    private AsyncEventPublisher asyncEventPublisher;
+
+    public SiddhiStormHybridEventPublisher(HybridQueryPlan hybridQueryPlan,
+                                           ExecutionPlanConfiguration executionPlanConfiguration, int tenantId,
+                                           DistributedConfiguration stormDeploymentConfig,
+                                           ConnectionCallback connectionCallback) {
+        this.logPrefix = "[CEP Hybrid Receiver|ExecPlan:" + executionPlanConfiguration.getName() + ", Tenant:" +
+                tenantId + "] ";
+        Set<StreamDefinition> streamDefinitions = new HashSet<StreamDefinition>();
+        for (String streamId : hybridQueryPlan.getClusterInputStreamIds()) {
+            streamDefinitions.add(hybridQueryPlan.getClusterInputStreamDefinition(streamId));
+        }
+        try {
+            asyncEventPublisher = new AsyncEventPublisher(AsyncEventPublisher.DestinationType.STORM_RECEIVER,
+                    streamDefinitions,
+                    stormDeploymentConfig.getManagers(),
+                    executionPlanConfiguration.getName(),
+                    tenantId,
+                    stormDeploymentConfig,
+                    connectionCallback);
+            asyncEventPublisher.initializeConnection(false);
+        } catch (Exception e) {
+            log.error(logPrefix + "Failed to start event publisher", e);
+        }
+    }
+
+    /**
+     * @return callback which publishes the events of the stream to storm, to be added to the local query plan
+     */
+    public StreamCallback getStreamCallback(final String streamId) {
+        return new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                for (Event event : events) {
+                    asyncEventPublisher.sendEvent(event.getData(), event.getTimestamp(), streamId);
+                }
+            }
+        };
+    }
+
+    public void shutdown() {
+        if (asyncEventPublisher != null) {
+            asyncEventPublisher.shutdown();
+        }
+    }
+}
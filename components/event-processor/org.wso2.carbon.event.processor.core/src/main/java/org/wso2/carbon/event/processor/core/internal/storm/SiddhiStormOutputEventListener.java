@@ -22,15 +22,15 @@ import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.wso2.carbon.databridge.commons.thrift.utils.HostAddressFinder;
 import org.wso2.carbon.event.processor.common.storm.manager.service.StormManagerService;
+import org.wso2.carbon.event.processor.common.transport.EventServer;
+import org.wso2.carbon.event.processor.common.transport.TransportFactory;
 import org.wso2.carbon.event.processor.common.util.ThroughputProbe;
 import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.carbon.event.processor.core.internal.listener.SiddhiOutputStreamListener;
+import org.wso2.carbon.event.processor.core.internal.local.LocalQueryPlanRuntime;
 import org.wso2.carbon.event.processor.manager.commons.transport.server.ConnectionCallback;
 import org.wso2.carbon.event.processor.manager.commons.transport.server.StreamCallback;
-import org.wso2.carbon.event.processor.manager.commons.transport.server.TCPEventServer;
-import org.wso2.carbon.event.processor.manager.commons.transport.server.TCPEventServerConfig;
 import org.wso2.carbon.event.processor.manager.commons.utils.HostAndPort;
-import org.wso2.carbon.event.processor.manager.commons.utils.Utils;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
 import org.wso2.siddhi.core.event.Event;
 import org.wso2.siddhi.query.api.definition.StreamDefinition;
@@ -55,7 +55,8 @@ public class SiddhiStormOutputEventListener implements StreamCallback {
     private final DistributedConfiguration stormDeploymentConfig;
     private String thisHostIp;
     private HashMap<String, SiddhiOutputStreamListener> streamNameToOutputStreamListenerMap = new HashMap<>();
-    private TCPEventServer tcpEventServer;
+    private HashMap<String, LocalQueryPlanRuntime> streamNameToLocalQueryPlanRuntimeMap = new HashMap<>();
+    private EventServer eventServer;
     private String logPrefix = "";
     private ExecutorService executorService = Executors.newSingleThreadExecutor();
     private int heartbeatInterval;
@@ -80,10 +81,9 @@ public class SiddhiStormOutputEventListener implements StreamCallback {
         inputThroughputProbe.startSampling();
         try {
             thisHostIp = HostAddressFinder.findAddress("localhost");
-            listeningPort = findPort(thisHostIp);
-            TCPEventServerConfig configs = new TCPEventServerConfig(thisHostIp, listeningPort);
-            tcpEventServer = new TCPEventServer(configs, this, connectionCallback);
-            tcpEventServer.start();
+            eventServer = TransportFactory.startServer(thisHostIp, stormDeploymentConfig.getTransportMinPort(),
+                    stormDeploymentConfig.getTransportMaxPort(), this, connectionCallback, 0);
+            listeningPort = eventServer.getPort();
             executorService.execute(new Registrar());
         } catch (Exception e) {
             log.error(logPrefix + "Failed to start event listener", e);
@@ -94,15 +94,29 @@ public class SiddhiStormOutputEventListener implements StreamCallback {
     public void registerOutputStreamListener(StreamDefinition siddhiStreamDefinition, SiddhiOutputStreamListener outputStreamListener) {
         log.info(logPrefix + "Registering output stream listener for Siddhi stream : " + siddhiStreamDefinition.getId());
         streamNameToOutputStreamListenerMap.put(siddhiStreamDefinition.getId(), outputStreamListener);
-        tcpEventServer.addStreamDefinition(siddhiStreamDefinition);
+        eventServer.addStreamDefinition(siddhiStreamDefinition);
+    }
+
+    /**
+     * Registers a stream sent back from storm to the execution groups run on this worker, in a hybrid query plan.
+     */
+    public void registerLocalQueryPlanStream(StreamDefinition siddhiStreamDefinition,
+                                             LocalQueryPlanRuntime localQueryPlanRuntime) {
+        log.info(logPrefix + "Registering local query plan for Siddhi stream : " + siddhiStreamDefinition.getId());
+        streamNameToLocalQueryPlanRuntimeMap.put(siddhiStreamDefinition.getId(), localQueryPlanRuntime);
+        eventServer.addStreamDefinition(siddhiStreamDefinition);
     }
 
     @Override
     public void receive(String streamId, long timestamp, Object[] eventData, Map<String, String> arbitraryMapData) {
         SiddhiOutputStreamListener outputStreamListener = streamNameToOutputStreamListenerMap.get(streamId);
+        LocalQueryPlanRuntime localQueryPlanRuntime = streamNameToLocalQueryPlanRuntimeMap.get(streamId);
         if (outputStreamListener != null) {
             outputStreamListener.sendEvent(new Event(timestamp, eventData));
             inputThroughputProbe.update();
+        } else if (localQueryPlanRuntime != null) {
+            localQueryPlanRuntime.send(streamId, timestamp, eventData);
+            inputThroughputProbe.update();
         } else {
             log.warn("Cannot find output event listener for stream " + streamId + " in execution plan " + executionPlanConfiguration.getName()
                     + " of tenant " + tenantId + ". Discarding Event:" + streamId +
@@ -110,18 +124,9 @@ public class SiddhiStormOutputEventListener implements StreamCallback {
         }
     }
 
-    private int findPort(String host) throws Exception {
-        for (int i = stormDeploymentConfig.getTransportMinPort(); i <= stormDeploymentConfig.getTransportMaxPort(); i++) {
-            if (!Utils.isPortUsed(i, host)) {
-                return i;
-            }
-        }
-        throw new Exception("Cannot find free port in range " + stormDeploymentConfig.getTransportMinPort() + "~" + stormDeploymentConfig.getTransportMaxPort());
-    }
-
     public void shutdown() {
         executorService.shutdown();
-        tcpEventServer.shutdown();
+        eventServer.shutdown();
     }
 
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm;
+
+import backtype.storm.generated.BoltStats;
+import backtype.storm.generated.ExecutorStats;
+import backtype.storm.generated.ExecutorSummary;
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.generated.TopologyInfo;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.processor.core.exception.StormDeploymentException;
+import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.manager.StormManagerServer;
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyInfoHolder;
+import org.wso2.carbon.event.processor.core.util.DistributedModeConstants;
+
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Periodically reads the load of the Siddhi bolts of the topologies submitted by the {@link StormTopologyManager}
+ * and rebalances bolts which have minParallel/maxParallel hints, within those bounds.
+ * <p/>
+ * A bolt is scaled only after its load has been consistently above (or below) the threshold for
+ * {@link DistributedModeConstants#AUTOSCALER_CONSECUTIVE_OBSERVATIONS} intervals, and a topology is left alone for
+ * {@link DistributedModeConstants#AUTOSCALER_COOLDOWN_INTERVALS} intervals after it has been rebalanced.
+ * <p/>
+ * Shared topologies are not scaled. Plans with autoscalable bolts are never packed into them, and the scaling
+ * decisions are recorded in the status of a single execution plan, which a shared topology does not have.
+ */
+public class StormTopologyAutoScaler implements Runnable {
+
+    private static final Log log = LogFactory.getLog(StormTopologyAutoScaler.class);
+    private static final String STATS_WINDOW = "600";       // Storm keeps executor stats for a 10 min window
+
+    private final StormTopologyManager stormTopologyManager;
+    private final Map<String, Integer> consecutiveObservations = new HashMap<String, Integer>();   // < topology.component, +up/-down >
+    private final Map<String, Integer> cooldowns = new HashMap<String, Integer>();                 // < topology, remaining intervals >
+
+    public StormTopologyAutoScaler(StormTopologyManager stormTopologyManager) {
+        this.stormTopologyManager = stormTopologyManager;
+    }
+
+    @Override
+    public void run() {
+        StormManagerServer stormManagerServer = EventProcessorValueHolder.getStormManagerServer();
+        if (stormManagerServer == null || !stormManagerServer.isStormCoordinator()) {
+            return;
+        }
+        for (Map.Entry<String, TopologyInfoHolder> entry : stormTopologyManager.getSubmittedTopologies().entrySet()) {
+            if (stormTopologyManager.isSharedTopology(entry.getKey())) {
+                continue;
+            }
+            try {
+                scaleTopology(entry.getKey(), entry.getValue());
+            } catch (StormDeploymentException e) {
+                log.error("Error while autoscaling storm topology '" + entry.getKey() + "'", e);
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while autoscaling storm topology '" + entry.getKey() + "'", e);
+            }
+        }
+    }
+
+    private void scaleTopology(String topologyName, TopologyInfoHolder topologyInfoHolder) throws StormDeploymentException {
+        boolean isAutoScalable = false;
+        for (ComponentInfoHolder component : topologyInfoHolder.getComponents()) {
+            isAutoScalable = isAutoScalable || isAutoScalable(component);
+        }
+        if (!isAutoScalable) {
+            return;
+        }
+        Integer cooldown = cooldowns.get(topologyName);
+        if (cooldown != null && cooldown > 0) {
+            cooldowns.put(topologyName, cooldown - 1);
+            return;
+        }
+
+        TopologyInfo topologyInfo = stormTopologyManager.getTopologyInfo(topologyName);
+        if (topologyInfo == null) {
+            return;
+        }
+        Map<String, ComponentLoad> componentLoads = getComponentLoads(topologyInfo);
+
+        Map<String, Integer> executorChanges = new HashMap<String, Integer>();
+        Map<String, String> decisions = new HashMap<String, String>();
+        for (ComponentInfoHolder component : topologyInfoHolder.getComponents()) {
+            ComponentLoad load = componentLoads.get(component.getComponentName());
+            if (!isAutoScalable(component) || load == null) {
+                continue;
+            }
+            int current = component.getParallelism();
+            int target = getTargetParallelism(component, load);
+            String observationKey = topologyName + "." + component.getComponentName();
+            int observations = getObservations(observationKey, current, target);
+            if (Math.abs(observations) >= DistributedModeConstants.AUTOSCALER_CONSECUTIVE_OBSERVATIONS) {
+                executorChanges.put(component.getComponentName(), target);
+                decisions.put(component.getComponentName(), "Scaled '" + component.getComponentName() + "' from "
+                        + current + " to " + target + " executors at " + new Date() + " [max capacity: "
+                        + format(load.maxCapacity) + ", avg execute latency: " + format(load.getAverageLatency())
+                        + " ms, bounds: " + component.getMinParallelism() + "-" + component.getMaxParallelism() + "]");
+                consecutiveObservations.remove(observationKey);
+            }
+        }
+
+        if (!executorChanges.isEmpty() && stormTopologyManager.rebalanceTopology(topologyName, executorChanges)) {
+            cooldowns.put(topologyName, DistributedModeConstants.AUTOSCALER_COOLDOWN_INTERVALS);
+            for (String decision : decisions.values()) {
+                log.info("Autoscaler: " + decision + " of storm topology '" + topologyName + "'");
+                stormTopologyManager.recordScalingDecision(topologyName, decision);
+            }
+        }
+    }
+
+    /**
+     * Computes the parallelism needed to bring the capacity of the component to the target capacity, if the
+     * component is over or under utilized.
+     */
+    int getTargetParallelism(ComponentInfoHolder component, ComponentLoad load) {
+        int current = component.getParallelism();
+        int required = (int) Math.ceil(load.totalCapacity / DistributedModeConstants.AUTOSCALER_TARGET_CAPACITY);
+        int target = current;
+        if (load.maxCapacity > DistributedModeConstants.AUTOSCALER_SCALE_UP_CAPACITY) {
+            target = Math.max(current + 1, required);
+        } else if (load.maxCapacity < DistributedModeConstants.AUTOSCALER_SCALE_DOWN_CAPACITY) {
+            target = Math.min(current - 1, Math.max(1, required));
+        }
+        return Math.max(component.getMinParallelism(), Math.min(component.getMaxParallelism(), target));
+    }
+
+    /**
+     * Counts how many consecutive intervals the component wanted to scale in the same direction.
+     */
+    private int getObservations(String observationKey, int current, int target) {
+        Integer previous = consecutiveObservations.get(observationKey);
+        int observations;
+        if (target > current) {
+            observations = (previous != null && previous > 0) ? previous + 1 : 1;
+        } else if (target < current) {
+            observations = (previous != null && previous < 0) ? previous - 1 : -1;
+        } else {
+            consecutiveObservations.remove(observationKey);
+            return 0;
+        }
+        consecutiveObservations.put(observationKey, observations);
+        return observations;
+    }
+
+    private boolean isAutoScalable(ComponentInfoHolder component) {
+        return component.getComponentType() == ComponentInfoHolder.ComponentType.SIDDHI_BOLT && component.isAutoScalable();
+    }
+
+    private Map<String, ComponentLoad> getComponentLoads(TopologyInfo topologyInfo) {
+        Map<String, ComponentLoad> componentLoads = new HashMap<String, ComponentLoad>();
+        for (ExecutorSummary executorSummary : topologyInfo.get_executors()) {
+            ExecutorStats stats = executorSummary.get_stats();
+            if (stats == null || !stats.get_specific().is_set_bolt()) {
+                continue;
+            }
+            BoltStats boltStats = stats.get_specific().get_bolt();
+            Map<GlobalStreamId, Long> executed = boltStats.get_executed().get(STATS_WINDOW);
+            Map<GlobalStreamId, Double> executeLatency = boltStats.get_execute_ms_avg().get(STATS_WINDOW);
+            if (executed == null || executeLatency == null) {
+                continue;
+            }
+            long executedCount = 0;
+            double executionTime = 0;
+            for (Map.Entry<GlobalStreamId, Long> entry : executed.entrySet()) {
+                Double latency = executeLatency.get(entry.getKey());
+                executedCount += entry.getValue();
+                executionTime += latency == null ? 0 : entry.getValue() * latency;
+            }
+            int windowSecs = Math.max(1, Math.min(executorSummary.get_uptime_secs(), Integer.parseInt(STATS_WINDOW)));
+            double capacity = executionTime / (windowSecs * 1000d);
+
+            ComponentLoad load = componentLoads.get(executorSummary.get_component_id());
+            if (load == null) {
+                load = new ComponentLoad();
+                componentLoads.put(executorSummary.get_component_id(), load);
+            }
+            load.maxCapacity = Math.max(load.maxCapacity, capacity);
+            load.totalCapacity += capacity;
+            load.executedCount += executedCount;
+            load.executionTime += executionTime;
+        }
+        return componentLoads;
+    }
+
+    private String format(double value) {
+        return new DecimalFormat("0.00").format(value);
+    }
+
+    static class ComponentLoad {
+        double maxCapacity;         // capacity of the busiest executor
+        double totalCapacity;       // sum of the capacity of all executors
+        long executedCount;
+        double executionTime;
+
+        double getAverageLatency() {
+            return executedCount == 0 ? 0 : executionTime / executedCount;
+        }
+    }
+}
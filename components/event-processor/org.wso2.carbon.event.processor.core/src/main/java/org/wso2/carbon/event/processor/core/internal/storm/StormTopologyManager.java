@@ -21,7 +21,9 @@ import backtype.storm.generated.InvalidTopologyException;
 import backtype.storm.generated.KillOptions;
 import backtype.storm.generated.Nimbus;
 import backtype.storm.generated.NotAliveException;
+import backtype.storm.generated.RebalanceOptions;
 import backtype.storm.generated.StormTopology;
+import backtype.storm.generated.TopologyInfo;
 import backtype.storm.generated.TopologyInitialStatus;
 import backtype.storm.generated.TopologySummary;
 import backtype.storm.topology.TopologyBuilder;
@@ -34,21 +36,28 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.thrift7.TException;
 import org.json.simple.JSONValue;
 import org.w3c.dom.Document;
+import org.wso2.carbon.event.processor.common.transport.TransportFactory;
 import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.carbon.event.processor.core.exception.ExecutionPlanConfigurationException;
 import org.wso2.carbon.event.processor.core.exception.ServerUnavailableException;
 import org.wso2.carbon.event.processor.core.exception.StormDeploymentException;
 import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.TopologyStatusEntryProcessor;
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.HybridQueryPlan;
+import org.wso2.carbon.event.processor.core.internal.storm.util.SharedTopologyInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.SharedTopologyPacker;
 import org.wso2.carbon.event.processor.core.internal.storm.util.StormQueryPlanBuilder;
 import org.wso2.carbon.event.processor.core.internal.storm.util.StormTopologyConstructor;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyDiff;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyInfoHolder;
 import org.wso2.carbon.event.processor.core.util.DistributedModeConstants;
 import org.wso2.carbon.event.processor.core.util.ExecutionPlanStatusHolder;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
 import org.wso2.carbon.utils.CarbonUtils;
 import org.yaml.snakeyaml.Yaml;
 
-import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -60,9 +69,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -76,8 +91,23 @@ public class StormTopologyManager {
     private String jarLocation;
     private static final Log log = LogFactory.getLog(StormTopologyManager.class);
     private final ConcurrentHashMap<String, TopologySubmitter> toDeployTopologies = new ConcurrentHashMap();
+    private final ConcurrentHashMap<String, TopologyKiller> toKillTopologies = new ConcurrentHashMap<String, TopologyKiller>();
+    /**
+     * Components of the topologies submitted by this manager, used to decide whether an updated topology can be
+     * applied by rebalancing the running one.
+     */
+    private final ConcurrentHashMap<String, TopologyInfoHolder> submittedTopologies = new ConcurrentHashMap<String, TopologyInfoHolder>();
     private TopologyManagerThreadFactory topologyManagerThreadFactory = new TopologyManagerThreadFactory("Storm Deployment");
-    private final int lockTimeout;
+    private final ScheduledExecutorService topologyKillerExecutor =
+            Executors.newSingleThreadScheduledExecutor(new TopologyManagerThreadFactory("Storm Topology Killer"));
+    private ScheduledExecutorService autoScalerExecutor;
+    /**
+     * Packs small execution plans into shared topologies, null unless packing is enabled in storm.yaml.
+     */
+    private SharedTopologyPacker sharedTopologyPacker;
+    private ScheduledExecutorService sharedTopologyExecutor;
+    private final Set<String> pendingSharedTopologyRedeploys =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public StormTopologyManager() {
         String stormConfigDirPath = CarbonUtils.getCarbonConfigDirPath() + File.separator + "cep" + File.separator + "storm";
@@ -94,11 +124,60 @@ public class StormTopologyManager {
         } catch (FileNotFoundException e) {
             log.warn("Error occurred while reading storm configurations using default configurations", e);
         }
+        TransportFactory.configure(stormConfig);
 
         DistributedConfiguration stormDeploymentConfiguration = EventProcessorValueHolder.getStormDeploymentConfiguration();
-        lockTimeout = stormDeploymentConfiguration.getStatusLockTimeout();
 
         jarLocation = stormConfigDirPath + File.separator + EventProcessorValueHolder.getStormDeploymentConfiguration().getJar();
+
+        if (stormDeploymentConfiguration.isManagerNode()) {
+            autoScalerExecutor = Executors.newSingleThreadScheduledExecutor(new TopologyManagerThreadFactory("Storm AutoScaler"));
+            autoScalerExecutor.scheduleWithFixedDelay(new StormTopologyAutoScaler(this),
+                    DistributedModeConstants.AUTOSCALER_INTERVAL, DistributedModeConstants.AUTOSCALER_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+            if (stormConfig != null && Boolean.parseBoolean(String.valueOf(
+                    stormConfig.get(DistributedModeConstants.TOPOLOGY_PACKING_ENABLED)))) {
+                int maxExecutors = DistributedModeConstants.DEFAULT_TOPOLOGY_PACKING_MAX_EXECUTORS;
+                Object maxExecutorsConfig = stormConfig.get(DistributedModeConstants.TOPOLOGY_PACKING_MAX_EXECUTORS);
+                if (maxExecutorsConfig != null) {
+                    maxExecutors = Integer.parseInt(String.valueOf(maxExecutorsConfig));
+                }
+                boolean tenantIsolation = !"false".equalsIgnoreCase(String.valueOf(
+                        stormConfig.get(DistributedModeConstants.TOPOLOGY_PACKING_TENANT_ISOLATION)));
+                sharedTopologyPacker = new SharedTopologyPacker(DistributedModeConstants.SHARED_TOPOLOGY_NAME_PREFIX,
+                        maxExecutors, tenantIsolation);
+                sharedTopologyExecutor = Executors.newSingleThreadScheduledExecutor(
+                        new TopologyManagerThreadFactory("Storm Shared Topology"));
+                log.info("Packing execution plans into shared storm topologies of up to " + maxExecutors
+                        + " executors" + (tenantIsolation ? ", per tenant" : ""));
+            }
+        }
+    }
+
+    /**
+     * Stops the background jobs of the manager, killing the topologies which are pending to be killed right away, so
+     * that they are not left running on the storm cluster.
+     */
+    public void shutdown() {
+        topologyKillerExecutor.shutdownNow();
+        List<String> pendingKills;
+        synchronized (toDeployTopologies) {
+            pendingKills = new ArrayList<String>(toKillTopologies.keySet());
+            toKillTopologies.clear();
+        }
+        for (String topologyName : pendingKills) {
+            try {
+                killTopologyNow(topologyName);
+            } catch (StormDeploymentException e) {
+                log.error("Error while killing storm topology '" + topologyName + "' at shutdown", e);
+            }
+        }
+        if (autoScalerExecutor != null) {
+            autoScalerExecutor.shutdownNow();
+        }
+        if (sharedTopologyExecutor != null) {
+            sharedTopologyExecutor.shutdownNow();
+        }
     }
 
     public List<TopologySummary> getTopologies() throws StormDeploymentException {
@@ -115,29 +194,55 @@ public class StormTopologyManager {
             StormDeploymentException, ExecutionPlanConfigurationException {
         String executionPlanName = configuration.getName();
         TopologyBuilder builder;
+        TopologyInfoHolder topologyInfoHolder;
         String topologyName = getTopologyName(executionPlanName, tenantId);
 
         try {
-            Document document = StormQueryPlanBuilder.constructStormQueryPlanXML(configuration, importStreams, exportStreams);
-            String stormQueryPlan = getStringQueryPlan(document);
+            topologyInfoHolder = StormQueryPlanBuilder.constructStormQueryPlan(configuration, importStreams, exportStreams);
+            HybridQueryPlan hybridQueryPlan = HybridQueryPlan.split(topologyInfoHolder);
+            if (hybridQueryPlan.isHybrid()) {
+                // Only the execution groups which are not run by the CEP workers are deployed on storm
+                if (!hybridQueryPlan.hasClusterComponents()) {
+                    log.info("All execution groups of execution plan '" + executionPlanName + "' of tenant '" +
+                            tenantId + "' run on the CEP workers, no storm topology is deployed");
+                    killTopology(executionPlanName, tenantId);
+                    return;
+                }
+                topologyInfoHolder = hybridQueryPlan.getClusterPlan();
+            }
             if (log.isDebugEnabled()) {
                 log.debug("Following is the generated Storm query plan for execution plan: " + configuration.getName() +
-                        "\n" + stormQueryPlan);
+                        "\n" + getStringQueryPlan(StormQueryPlanBuilder.toXML(topologyInfoHolder)));
             }
-            builder = StormTopologyConstructor.constructTopologyBuilder(stormQueryPlan, executionPlanName, tenantId,
+            builder = StormTopologyConstructor.constructTopologyBuilder(topologyInfoHolder, executionPlanName, tenantId,
                     EventProcessorValueHolder.getStormDeploymentConfiguration());
-        } catch (XMLStreamException e) {
-            throw new StormDeploymentException("Invalid Config for Execution Plan " + executionPlanName + " for tenant " + tenantId, e);
         } catch (TransformerException e) {
             throw new StormDeploymentException("Error while converting to storm query plan string. " +
                     "Execution plan: " + executionPlanName + " Tenant: " + tenantId, e);
         } catch (StormQueryConstructionException e) {
-            throw new StormDeploymentException("Error while converting to XML storm query plan. " +
+            throw new StormDeploymentException("Error while constructing storm query plan. " +
                     "Execution plan: " + executionPlanName + " Tenant: " + tenantId + ". " + e.getMessage(), e);
         }
 
-        TopologySubmitter topologySubmitter = new TopologySubmitter(executionPlanName, builder.createTopology(), tenantId, resubmitRetryInterval);
+        if (sharedTopologyPacker != null) {
+            if (sharedTopologyPacker.isPackable(topologyInfoHolder)) {
+                submitToSharedTopology(executionPlanName, tenantId, topologyInfoHolder);
+                return;
+            }
+            String sharedTopologyName = sharedTopologyPacker.unpack(topologyName);
+            if (sharedTopologyName != null) {
+                log.info("Execution plan '" + executionPlanName + "' of tenant '" + tenantId + "' is no longer packed"
+                        + " into shared storm topology '" + sharedTopologyName + "'");
+                scheduleSharedTopologyRedeploy(sharedTopologyName);
+            }
+        }
+
+        TopologySubmitter topologySubmitter = new TopologySubmitter(executionPlanName, builder.createTopology(),
+                topologyInfoHolder, tenantId, resubmitRetryInterval);
         synchronized (toDeployTopologies) {
+            if (cancelPendingKill(topologyName)) {
+                log.info("Cancelled pending kill of storm topology '" + topologyName + "' as it is being redeployed");
+            }
             toDeployTopologies.put(topologyName, topologySubmitter);
         }
 
@@ -147,13 +252,147 @@ public class StormTopologyManager {
     }
 
     public void killTopology(String executionPlanName, int tenantId) throws StormDeploymentException {
-        try {
+        killTopology(executionPlanName, tenantId, false);
+    }
+
+    /**
+     * Kills the topology of the execution plan. When the execution plan is being redeployed (i.e. edited), the kill
+     * is deferred by {@link DistributedModeConstants#TOPOLOGY_KILL_GRACE_PERIOD}, and cancelled if the same execution
+     * plan gets submitted within that period, so that the running topology is reused where possible.
+     *
+     * @param isRedeploying true if the execution plan is expected to be submitted again right away
+     */
+    public void killTopology(String executionPlanName, int tenantId, boolean isRedeploying)
+            throws StormDeploymentException {
+        String topologyName = getTopologyName(executionPlanName, tenantId);
+        if (sharedTopologyPacker != null) {
+            String sharedTopologyName = sharedTopologyPacker.unpack(topologyName);
+            if (sharedTopologyName != null) {
+                log.info("Scheduled execution plan '" + executionPlanName + "' of tenant '" + tenantId + "' to be "
+                        + "removed from shared storm topology '" + sharedTopologyName + "'");
+                scheduleSharedTopologyRedeploy(sharedTopologyName);
+                return;
+            }
+        }
+        if (!isRedeploying) {
+            synchronized (toDeployTopologies) {
+                toDeployTopologies.remove(topologyName);
+                cancelPendingKill(topologyName);
+            }
+            killTopologyNow(topologyName);
+            return;
+        }
+        synchronized (toDeployTopologies) {
+            toDeployTopologies.remove(topologyName);
+            cancelPendingKill(topologyName);
+            TopologyKiller topologyKiller = new TopologyKiller(topologyName);
+            toKillTopologies.put(topologyName, topologyKiller);
+            topologyKiller.future = topologyKillerExecutor.schedule(topologyKiller,
+                    DistributedModeConstants.TOPOLOGY_KILL_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        log.info("Scheduled storm topology '" + executionPlanName + "' of tenant '" + tenantId + "' to be killed in "
+                + DistributedModeConstants.TOPOLOGY_KILL_GRACE_PERIOD + " ms, unless it is redeployed");
+    }
+
+    /**
+     * Cancels the deferred kill of the topology, if any. Callers hold the lock on {@link #toDeployTopologies}.
+     *
+     * @return true if a kill was pending
+     */
+    private boolean cancelPendingKill(String topologyName) {
+        TopologyKiller topologyKiller = toKillTopologies.remove(topologyName);
+        if (topologyKiller == null) {
+            return false;
+        }
+        topologyKiller.future.cancel(false);
+        return true;
+    }
+
+    /**
+     * Packs the execution plan into a shared topology, with its components namespaced by plan and tenant, and
+     * schedules the affected shared topologies to be redeployed.
+     */
+    private void submitToSharedTopology(String executionPlanName, int tenantId, TopologyInfoHolder topologyInfoHolder)
+            throws StormDeploymentException {
+        String topologyName = getTopologyName(executionPlanName, tenantId);
+        topologyInfoHolder.applyNamespace(SharedTopologyInfoHolder.PackedPlan.getNamespace(executionPlanName, tenantId));
+        Set<String> changedTopologies = sharedTopologyPacker.pack(topologyName,
+                new SharedTopologyInfoHolder.PackedPlan(executionPlanName, tenantId, topologyInfoHolder));
+        log.info("Packed execution plan '" + executionPlanName + "' of tenant '" + tenantId + "' into shared storm " +
+                "topologies " + changedTopologies);
+
+        // The plan may have been deployed as a topology of its own before
+        boolean isDeployedAlone;
+        synchronized (toDeployTopologies) {
+            isDeployedAlone = toDeployTopologies.remove(topologyName) != null ||
+                    submittedTopologies.containsKey(topologyName);
+        }
+        if (isDeployedAlone) {
+            killTopologyNow(topologyName);
+        }
+
+        for (String sharedTopologyName : changedTopologies) {
+            scheduleSharedTopologyRedeploy(sharedTopologyName);
+        }
+    }
+
+    /**
+     * Redeploys the shared topology after {@link DistributedModeConstants#SHARED_TOPOLOGY_REDEPLOY_DELAY}, so that
+     * execution plans added or removed in the meantime are applied together.
+     */
+    private void scheduleSharedTopologyRedeploy(final String sharedTopologyName) {
+        if (pendingSharedTopologyRedeploys.add(sharedTopologyName)) {
+            sharedTopologyExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    pendingSharedTopologyRedeploys.remove(sharedTopologyName);
+                    redeploySharedTopology(sharedTopologyName);
+                }
+            }, DistributedModeConstants.SHARED_TOPOLOGY_REDEPLOY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void redeploySharedTopology(String sharedTopologyName) {
+        SharedTopologyInfoHolder sharedTopology = sharedTopologyPacker.getSharedTopology(sharedTopologyName);
+        if (sharedTopology == null) {
             synchronized (toDeployTopologies) {
-                toDeployTopologies.remove(getTopologyName(executionPlanName, tenantId));
+                toDeployTopologies.remove(sharedTopologyName);
+            }
+            try {
+                killTopologyNow(sharedTopologyName);
+            } catch (StormDeploymentException e) {
+                log.error("Error while killing shared storm topology '" + sharedTopologyName + "'", e);
             }
-            log.info("Killing storm topology '" + executionPlanName + "' of tenant '" + tenantId + "'");
+            return;
+        }
+
+        StormTopology topology;
+        try {
+            topology = StormTopologyConstructor.constructSharedTopologyBuilder(sharedTopology,
+                    EventProcessorValueHolder.getStormDeploymentConfiguration()).createTopology();
+        } catch (StormQueryConstructionException e) {
+            log.error("Error while constructing shared storm topology '" + sharedTopologyName + "' of execution plans "
+                    + sharedTopology.getPlanTopologyNames(), e);
+            return;
+        }
+        TopologySubmitter topologySubmitter = new TopologySubmitter(sharedTopologyName, topology,
+                sharedTopology.getCombinedTopologyInfoHolder(), sharedTopology.getPlanTopologyNames(),
+                EventProcessorValueHolder.getStormDeploymentConfiguration().getTopologySubmitRetryInterval());
+        synchronized (toDeployTopologies) {
+            cancelPendingKill(sharedTopologyName);
+            toDeployTopologies.put(sharedTopologyName, topologySubmitter);
+        }
+        log.info("Redeploying shared storm topology '" + sharedTopologyName + "' with execution plans "
+                + sharedTopology.getPlanTopologyNames());
+        topologyManagerThreadFactory.newThread(topologySubmitter).start();
+    }
+
+    private void killTopologyNow(String topologyName) throws StormDeploymentException {
+        try {
+            log.info("Killing storm topology '" + topologyName + "'");
+            submittedTopologies.remove(topologyName);
             Nimbus.Client client = NimbusClient.getConfiguredClient(stormConfig).getClient();
-            client.killTopologyWithOpts(getTopologyName(executionPlanName, tenantId), new KillOptions()); //provide topology name
+            client.killTopologyWithOpts(topologyName, new KillOptions()); //provide topology name
         } catch (NotAliveException e) {
             // do nothing
         } catch (TException e) {
@@ -161,6 +400,96 @@ public class StormTopologyManager {
         }
     }
 
+    Map<String, TopologyInfoHolder> getSubmittedTopologies() {
+        return submittedTopologies;
+    }
+
+    /**
+     * @return whether the topology packs several execution plans, rather than being the topology of one
+     */
+    boolean isSharedTopology(String topologyName) {
+        return sharedTopologyPacker != null && sharedTopologyPacker.isSharedTopologyName(topologyName);
+    }
+
+    /**
+     * @return runtime information of the topology including executor statistics, or null if it is not running
+     */
+    TopologyInfo getTopologyInfo(String topologyName) throws StormDeploymentException {
+        try {
+            Nimbus.Client client = NimbusClient.getConfiguredClient(stormConfig).getClient();
+            for (TopologySummary topologySummary : client.getClusterInfo().get_topologies()) {
+                if (topologySummary.get_name().equals(topologyName)) {
+                    return client.getTopologyInfo(topologySummary.get_id());
+                }
+            }
+            return null;
+        } catch (NotAliveException e) {
+            return null;
+        } catch (TException e) {
+            throw new StormDeploymentException("Error connecting to storm when getting info of topology '" + topologyName + "'", e);
+        }
+    }
+
+    /**
+     * Changes the number of executors of the given components of a running topology.
+     *
+     * @return false if the topology is being (re)deployed or killed, hence was not rebalanced
+     */
+    boolean rebalanceTopology(String topologyName, Map<String, Integer> executors) throws StormDeploymentException {
+        synchronized (toDeployTopologies) {
+            TopologyInfoHolder submittedTopology = submittedTopologies.get(topologyName);
+            if (submittedTopology == null || toDeployTopologies.containsKey(topologyName) ||
+                    toKillTopologies.containsKey(topologyName)) {
+                return false;
+            }
+            try {
+                RebalanceOptions options = new RebalanceOptions();
+                options.set_wait_secs(DistributedModeConstants.TOPOLOGY_REBALANCE_WAIT_SECS);
+                for (Map.Entry<String, Integer> entry : executors.entrySet()) {
+                    options.put_to_num_executors(entry.getKey(), entry.getValue());
+                }
+                Nimbus.Client client = NimbusClient.getConfiguredClient(stormConfig).getClient();
+                client.rebalance(topologyName, options);
+                for (Map.Entry<String, Integer> entry : executors.entrySet()) {
+                    submittedTopology.getComponent(entry.getKey()).setParallelism(entry.getValue());
+                }
+                return true;
+            } catch (NotAliveException e) {
+                return false;
+            } catch (InvalidTopologyException e) {
+                throw new StormDeploymentException("Storm rejected rebalancing topology '" + topologyName + "'", e);
+            } catch (TException e) {
+                throw new StormDeploymentException("Error connecting to storm when rebalancing topology '" + topologyName + "'", e);
+            }
+        }
+    }
+
+    void recordScalingDecision(String topologyName, String decision) {
+        updateExecutionPlanStatus(topologyName, TopologyStatusEntryProcessor.scalingDecision(decision),
+                "record scaling decision");
+    }
+
+    /**
+     * Applies the update to the status holder of the topology on the member owning it, without locking it.
+     */
+    private static void updateExecutionPlanStatus(String topologyName, TopologyStatusEntryProcessor update,
+                                                  String description) {
+        HazelcastInstance hazelcastInstance = EventProcessorValueHolder.getHazelcastInstance();
+        if (hazelcastInstance != null && hazelcastInstance.getLifecycleService().isRunning()) {
+            IMap<String, ExecutionPlanStatusHolder> executionPlanStatusHolderIMap = hazelcastInstance.getMap(DistributedModeConstants.STORM_STATUS_MAP);
+            try {
+                if (!Boolean.TRUE.equals(executionPlanStatusHolderIMap.executeOnKey(topologyName, update))) {
+                    log.error("Couldn't " + description + " for topology:" + topologyName + " as status object not initialized by manager.");
+                }
+            } catch (RuntimeException e) {
+                log.error("Couldn't " + description + " for topology:" + topologyName, e);
+            }
+        } else {
+            log.error("Couldn't " + description + " for topology:" + topologyName
+                      + " as the hazelcast instance is not active or not available.");
+        }
+    }
+
     private String getStringQueryPlan(Document document) throws TransformerException {
         Transformer transformer = TransformerFactory.newInstance().newTransformer();
         transformer.setOutputProperty(OutputKeys.INDENT, "yes");
@@ -175,15 +504,52 @@ public class StormTopologyManager {
         return (executionPlanName + "[" + tenantId + "]");
     }
 
+    class TopologyKiller implements Runnable {
+        private final String topologyName;
+        private ScheduledFuture<?> future;
+
+        public TopologyKiller(String topologyName) {
+            this.topologyName = topologyName;
+        }
+
+        @Override
+        public void run() {
+            synchronized (toDeployTopologies) {
+                if (toKillTopologies.get(topologyName) != this) {
+                    return;
+                }
+                toKillTopologies.remove(topologyName);
+            }
+            try {
+                killTopologyNow(topologyName);
+            } catch (StormDeploymentException e) {
+                log.error("Error while killing storm topology '" + topologyName + "'", e);
+            }
+        }
+    }
+
     class TopologySubmitter implements Runnable {
         private final String topologyName;
+        /**
+         * Storm topology names of the execution plans deployed by this topology, which key their status holders
+         */
+        private final List<String> planTopologyNames;
         StormTopology topology;
+        TopologyInfoHolder topologyInfoHolder;
         int retryInterval;
 
-        public TopologySubmitter(String executionPlanName, StormTopology topology,
+        public TopologySubmitter(String executionPlanName, StormTopology topology, TopologyInfoHolder topologyInfoHolder,
                                  int tenantId, int resubmitRetryInterval) {
-            this.topologyName = getTopologyName(executionPlanName, tenantId);
+            this(getTopologyName(executionPlanName, tenantId), topology, topologyInfoHolder,
+                    Collections.singletonList(getTopologyName(executionPlanName, tenantId)), resubmitRetryInterval);
+        }
+
+        public TopologySubmitter(String topologyName, StormTopology topology, TopologyInfoHolder topologyInfoHolder,
+                                 List<String> planTopologyNames, int resubmitRetryInterval) {
+            this.topologyName = topologyName;
+            this.planTopologyNames = planTopologyNames;
             this.topology = topology;
+            this.topologyInfoHolder = topologyInfoHolder;
             this.retryInterval = resubmitRetryInterval;
         }
 
@@ -198,7 +564,11 @@ public class StormTopologyManager {
                 }
                 try {
                     if (isTopologyExist()) {
-                        updateExecutionPlanStatusInStorm(topologyName, DistributedModeConstants.TopologyState.CLEANING);
+                        if (tryToUpdateInPlace(jobPrefix)) {
+                            return;
+                        }
+                        submittedTopologies.remove(topologyName);
+                        updateExecutionPlanStatusInStorm(DistributedModeConstants.TopologyState.CLEANING);
                         log.info(jobPrefix + "Killing already existing storm topology '" + topologyName + "' to re-submit");
                         KillOptions options = new KillOptions();
                         options.set_wait_secs(10);
@@ -218,7 +588,7 @@ public class StormTopologyManager {
                             log.info(jobPrefix + "Topology '" + topologyName + "' is not alive to kill");
                         }
                     } else {
-                        updateExecutionPlanStatusInStorm(topologyName, DistributedModeConstants.TopologyState.DEPLOYING);
+                        updateExecutionPlanStatusInStorm(DistributedModeConstants.TopologyState.DEPLOYING);
                         try {
                             String jsonConf = JSONValue.toJSONString(stormConfig);
                             synchronized (toDeployTopologies) {
@@ -227,6 +597,7 @@ public class StormTopologyManager {
                                     Nimbus.Client client = NimbusClient.getConfiguredClient(stormConfig).getClient();
                                     client.submitTopology(topologyName, uploadedJarLocation, jsonConf, topology);
                                     toDeployTopologies.remove(topologyName);
+                                    submittedTopologies.put(topologyName, topologyInfoHolder);
                                     log.info(jobPrefix + "Successfully submitted storm topology '" + topologyName + "'");
                                     waitForTopologyToBeActive(client, jobPrefix, topologyName);
                                     return;
@@ -262,6 +633,90 @@ public class StormTopologyManager {
             }
         }
 
+        /**
+         * Applies the new version of the topology to the running topology without killing it, when only the
+         * parallelism of its components has changed.
+         *
+         * @return true if the running topology is up to date, false if it needs to be killed and re-submitted
+         */
+        private boolean tryToUpdateInPlace(String jobPrefix) throws ServerUnavailableException {
+            TopologyInfoHolder submittedTopology = submittedTopologies.get(topologyName);
+            if (submittedTopology == null) {
+                return false;
+            }
+            TopologyDiff topologyDiff = TopologyDiff.diff(submittedTopology, topologyInfoHolder);
+            if (topologyDiff.isShapeChanged()) {
+                log.info(jobPrefix + "Storm topology '" + topologyName + "' cannot be updated in place, as "
+                        + topologyDiff.getShapeChangeReason());
+                return false;
+            }
+
+            Nimbus.Client client;
+            synchronized (toDeployTopologies) {
+                if (!isToBeDeployed()) {
+                    log.info(jobPrefix + "Aborting Storm deployment of '" + topologyName + "', as current job is outdated.");
+                    return true;
+                }
+                try {
+                    client = NimbusClient.getConfiguredClient(stormConfig).getClient();
+                    if (topologyDiff.isUnchanged()) {
+                        log.info(jobPrefix + "Storm topology '" + topologyName + "' is unchanged, reusing the running topology");
+                    } else {
+                        updateExecutionPlanStatusInStorm(DistributedModeConstants.TopologyState.REBALANCING);
+                        RebalanceOptions options = new RebalanceOptions();
+                        options.set_wait_secs(DistributedModeConstants.TOPOLOGY_REBALANCE_WAIT_SECS);
+                        for (Map.Entry<String, Integer> entry : topologyDiff.getParallelismChanges().entrySet()) {
+                            options.put_to_num_executors(entry.getKey(), entry.getValue());
+                        }
+                        client.rebalance(topologyName, options);
+                        log.info(jobPrefix + "Rebalancing storm topology '" + topologyName + "' with executors "
+                                + topologyDiff.getParallelismChanges());
+                    }
+                    // The running components keep the task counts they were submitted with.
+                    for (ComponentInfoHolder component : topologyInfoHolder.getComponents()) {
+                        component.setNumTasks(submittedTopology.getComponent(component.getComponentName()).getNumTasks());
+                    }
+                    submittedTopologies.put(topologyName, topologyInfoHolder);
+                } catch (NotAliveException e) {
+                    log.info(jobPrefix + "Topology '" + topologyName + "' is not alive to rebalance, re-submitting");
+                    submittedTopologies.remove(topologyName);
+                    return false;
+                } catch (InvalidTopologyException e) {
+                    log.warn(jobPrefix + "Storm rejected rebalancing topology '" + topologyName + "', killing and re-submitting", e);
+                    submittedTopologies.remove(topologyName);
+                    return false;
+                } catch (TException e) {
+                    throw new ServerUnavailableException("Error connecting to storm when trying to rebalance topology '"
+                            + topologyName + "'", e);
+                }
+            }
+
+            // Waits without the lock, so that a rebalance which never completes doesn't hold up other deployments. This
+            // job stays to be deployed meanwhile, so that it is outdated by a later deployment or a kill.
+            boolean isActive;
+            try {
+                isActive = waitForTopologyToBeActive(client, jobPrefix, topologyName,
+                        DistributedModeConstants.TOPOLOGY_REBALANCE_TIMEOUT);
+            } catch (TException e) {
+                throw new ServerUnavailableException("Error connecting to storm when waiting for topology '"
+                        + topologyName + "' to be rebalanced", e);
+            }
+            synchronized (toDeployTopologies) {
+                if (!isToBeDeployed()) {
+                    log.info(jobPrefix + "Storm deployment of '" + topologyName + "' was outdated while rebalancing.");
+                    return true;
+                }
+                if (isActive) {
+                    toDeployTopologies.remove(topologyName);
+                    return true;
+                }
+                log.warn(jobPrefix + "Storm topology '" + topologyName + "' did not become active within "
+                        + DistributedModeConstants.TOPOLOGY_REBALANCE_TIMEOUT + " ms of rebalancing, killing and re-submitting");
+                submittedTopologies.remove(topologyName);
+                return false;
+            }
+        }
+
         private boolean isToBeDeployed() {
             synchronized (toDeployTopologies) {
                 TopologySubmitter existingTopologySubmitter = toDeployTopologies.get(topologyName);
@@ -287,6 +742,17 @@ public class StormTopologyManager {
         }
 
         private void waitForTopologyToBeActive(Nimbus.Client client, String jobPrefix, String topologyName) throws TException {
+            waitForTopologyToBeActive(client, jobPrefix, topologyName, 0);
+        }
+
+        /**
+         * @param timeout milliseconds to wait for the topology to become active, or 0 to wait until it does
+         * @return false if the topology did not become active in time, or this job was outdated while waiting with a
+         * timeout
+         */
+        private boolean waitForTopologyToBeActive(Nimbus.Client client, String jobPrefix, String topologyName,
+                                                  long timeout) throws TException {
+            long deadline = System.currentTimeMillis() + timeout;
             TopologySummary thisTopologySummary = null;
             while(thisTopologySummary == null){
                 List<TopologySummary> topologySummaryList = client.getClusterInfo().get_topologies();
@@ -296,29 +762,41 @@ public class StormTopologyManager {
                     }
                 }
                 if(thisTopologySummary == null){
+                    if (timeout > 0 && (System.currentTimeMillis() > deadline || !isToBeDeployed())) {
+                        return false;
+                    }
                     try {
                         Thread.sleep(2000);
                         log.info(jobPrefix + "Waiting until '" + topologyName + "' has been submitted to Storm cluster");
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
-                        updateExecutionPlanStatusInStorm(topologyName, DistributedModeConstants.TopologyState.UNKNOWN);
+                        updateExecutionPlanStatusInStorm(DistributedModeConstants.TopologyState.UNKNOWN);
                         log.error("Could not verify whether " + topologyName + "' has been submitted to Storm cluster or not" +
                                 " as the verifier got interrupted. Setting distributed deployment status as UNKNOWN");
-                        return;
+                        return true;
                     }
                 }
             }
             while (true) {
                 if (thisTopologySummary.get_status().equals(TopologyInitialStatus.ACTIVE.toString())) {
-                    updateExecutionPlanStatusInStorm(topologyName, DistributedModeConstants.TopologyState.ACTIVE);
+                    updateExecutionPlanStatusInStorm(DistributedModeConstants.TopologyState.ACTIVE);
                     log.info(jobPrefix + "Topology '" + topologyName + "' found to be active in Storm cluster");
-                    return;
+                    return true;
                 } else {
+                    if (timeout > 0 && (System.currentTimeMillis() > deadline || !isToBeDeployed())) {
+                        return false;
+                    }
                     try {
                         log.info(jobPrefix + "Waiting until '" + topologyName + "' becomes active in Storm cluster");
                         Thread.sleep(2000);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
+                        return true;
+                    }
+                    for (TopologySummary topologySummary : client.getClusterInfo().get_topologies()) {
+                        if (topologySummary.get_name().equals(topologyName)) {
+                            thisTopologySummary = topologySummary;
+                        }
                     }
                 }
             }
@@ -340,38 +818,10 @@ public class StormTopologyManager {
             }
         }
 
-        private void updateExecutionPlanStatusInStorm(String stormTopologyName,
-                                                      DistributedModeConstants.TopologyState topologyState) {
-            String executionPlanStatusHolderKey = DistributedModeConstants.STORM_STATUS_MAP + "." + stormTopologyName;
-            HazelcastInstance hazelcastInstance = EventProcessorValueHolder.getHazelcastInstance();
-            if (hazelcastInstance != null && hazelcastInstance.getLifecycleService().isRunning()) {
-                IMap<String, ExecutionPlanStatusHolder> executionPlanStatusHolderIMap = hazelcastInstance.getMap(DistributedModeConstants.STORM_STATUS_MAP);
-                try {
-                    if (executionPlanStatusHolderIMap.tryLock(executionPlanStatusHolderKey, lockTimeout, TimeUnit.MILLISECONDS)) {
-                        try {
-                            ExecutionPlanStatusHolder executionPlanStatusHolder =
-                                    executionPlanStatusHolderIMap.get(stormTopologyName);
-                            if (executionPlanStatusHolder == null) {
-                                log.error("Couldn't update topology status for topology:" + topologyName + " as status object not initialized by manager.");
-                            } else {
-                                executionPlanStatusHolder.setStormTopologyStatus(topologyState);
-                                executionPlanStatusHolderIMap.replace(stormTopologyName, executionPlanStatusHolder);
-                            }
-                        } finally {
-                            executionPlanStatusHolderIMap.unlock(executionPlanStatusHolderKey);
-                        }
-                    } else {
-                        log.error("Couldn't update topology status for topology:" + topologyName
-                                  + " as the hazelcast lock acquisition failed.");
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.error("Couldn't update topology status for topology:" + topologyName
-                              + " as the hazelcast lock acquisition was interrupted.", e);
-                }
-            } else {
-                log.error("Couldn't update topology status for topology:" + topologyName
-                          + " as the hazelcast instance is not active or not available.");
+        private void updateExecutionPlanStatusInStorm(DistributedModeConstants.TopologyState topologyState) {
+            for (String planTopologyName : planTopologyNames) {
+                updateExecutionPlanStatus(planTopologyName, TopologyStatusEntryProcessor.topologyState(topologyState),
+                        "update topology status");
             }
         }
     }
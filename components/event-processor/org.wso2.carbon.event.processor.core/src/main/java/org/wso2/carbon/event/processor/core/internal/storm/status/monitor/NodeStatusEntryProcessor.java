@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.status.monitor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import org.wso2.carbon.event.processor.core.util.ExecutionPlanStatusHolder;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Sets the connection status of one CEP worker node into the status holders of several execution plans. Executed by
+ * Hazelcast on the member owning each entry, so that the status holder is neither locked nor transferred.
+ * <p/>
+ * The connection counts of the node are set rather than incremented, so applying the same update twice is harmless.
+ * A status holder which already has the counts is not written, which would notify the listeners of the other nodes.
+ */
+public class NodeStatusEntryProcessor extends AbstractEntryProcessor<String, ExecutionPlanStatusHolder> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String hostIp;
+    private final Map<String, NodeStatus> nodeStatuses;
+
+    /**
+     * @param hostIp       IP of the worker node
+     * @param nodeStatuses < storm topology name, status of the node for that topology >
+     */
+    public NodeStatusEntryProcessor(String hostIp, Map<String, NodeStatus> nodeStatuses) {
+        this.hostIp = hostIp;
+        this.nodeStatuses = nodeStatuses;
+    }
+
+    /**
+     * @return false if the status holder has not been initialized by the manager yet
+     */
+    @Override
+    public Object process(Map.Entry<String, ExecutionPlanStatusHolder> entry) {
+        ExecutionPlanStatusHolder executionPlanStatusHolder = entry.getValue();
+        NodeStatus nodeStatus = nodeStatuses.get(entry.getKey());
+        if (executionPlanStatusHolder == null || nodeStatus == null) {
+            return Boolean.FALSE;
+        }
+        if (nodeStatus.isSetIn(hostIp, executionPlanStatusHolder)) {
+            return Boolean.TRUE;
+        }
+        executionPlanStatusHolder.setCEPReceiverStatus(hostIp, nodeStatus.connectedCepReceivers,
+                nodeStatus.requiredCepReceivers);
+        executionPlanStatusHolder.setConnectedPublisherBoltsCount(hostIp, nodeStatus.connectedPublisherBolts);
+        entry.setValue(executionPlanStatusHolder);
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Connection status of an execution plan on one worker node.
+     */
+    public static class NodeStatus implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int connectedCepReceivers;
+        private final int requiredCepReceivers;
+        private final int connectedPublisherBolts;
+
+        public NodeStatus(int connectedCepReceivers, int requiredCepReceivers, int connectedPublisherBolts) {
+            this.connectedCepReceivers = connectedCepReceivers;
+            this.requiredCepReceivers = requiredCepReceivers;
+            this.connectedPublisherBolts = connectedPublisherBolts;
+        }
+
+        /**
+         * @return true if the status holder already has this status for the node
+         */
+        boolean isSetIn(String hostIp, ExecutionPlanStatusHolder executionPlanStatusHolder) {
+            return executionPlanStatusHolder.hasNodeStatus(hostIp, connectedCepReceivers, requiredCepReceivers,
+                    connectedPublisherBolts);
+        }
+
+        @Override
+        public String toString() {
+            return "connected CEP receivers: " + connectedCepReceivers + "/" + requiredCepReceivers +
+                    ", connected publisher bolts: " + connectedPublisherBolts;
+        }
+    }
+}
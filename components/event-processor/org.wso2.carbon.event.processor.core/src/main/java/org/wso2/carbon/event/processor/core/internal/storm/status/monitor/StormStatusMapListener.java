@@ -26,6 +26,7 @@ import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolde
 import org.wso2.carbon.event.processor.core.internal.storm.StormTopologyManager;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.exception.DeploymentStatusMonitorException;
 import org.wso2.carbon.event.processor.core.util.DistributedModeConstants;
+import org.wso2.carbon.event.processor.core.util.ExecutionPlanStatusHolder;
 
 public class StormStatusMapListener {
 
@@ -77,14 +78,14 @@ public class StormStatusMapListener {
         @Override
         public void entryAdded(EntryEvent entryEvent) {
             if (!entryEvent.getMember().localMember()) {
-                stormStatusMonitor.hazelcastListenerCallback();
+                stormStatusMonitor.hazelcastListenerCallback((ExecutionPlanStatusHolder) entryEvent.getValue());
             }
         }
 
         @Override
         public void entryUpdated(EntryEvent entryEvent) {
             if (!entryEvent.getMember().localMember()) {
-                stormStatusMonitor.hazelcastListenerCallback();
+                stormStatusMonitor.hazelcastListenerCallback((ExecutionPlanStatusHolder) entryEvent.getValue());
             }
         }
     }
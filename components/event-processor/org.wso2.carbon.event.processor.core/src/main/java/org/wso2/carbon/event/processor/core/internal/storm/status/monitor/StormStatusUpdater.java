@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.status.monitor;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.databridge.commons.thrift.utils.HostAddressFinder;
+import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
+import org.wso2.carbon.event.processor.core.util.DistributedModeConstants;
+import org.wso2.carbon.event.processor.core.util.ExecutionPlanStatusHolder;
+
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Node wide updater of the status of the execution plans deployed in this worker node. The status of all the
+ * {@link StormStatusMonitor}s is written to the Hazelcast status map in one batched entry processor execution,
+ * periodically, and shortly after connections of any execution plan change.
+ */
+public class StormStatusUpdater {
+
+    private static final Log log = LogFactory.getLog(StormStatusUpdater.class);
+
+    private static StormStatusUpdater instance;
+
+    private final Set<StormStatusMonitor> monitors =
+            Collections.newSetFromMap(new ConcurrentHashMap<StormStatusMonitor, Boolean>());
+    private final Set<StormStatusMonitor> changedMonitors =
+            Collections.newSetFromMap(new ConcurrentHashMap<StormStatusMonitor, Boolean>());
+    private final AtomicBoolean isFlushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+    private volatile String hostIp = null;
+
+    private StormStatusUpdater(int updateInterval) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StormStatusUpdater");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                update(new ArrayList<StormStatusMonitor>(monitors));
+            }
+        }, updateInterval, updateInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized StormStatusUpdater getInstance() {
+        if (instance == null) {
+            instance = new StormStatusUpdater(
+                    EventProcessorValueHolder.getStormDeploymentConfiguration().getStatusUpdateInterval());
+        }
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.scheduler.shutdownNow();
+            instance = null;
+        }
+    }
+
+    void register(StormStatusMonitor monitor) {
+        monitors.add(monitor);
+        statusChanged(monitor);
+    }
+
+    void unregister(StormStatusMonitor monitor) {
+        monitors.remove(monitor);
+        changedMonitors.remove(monitor);
+    }
+
+    /**
+     * Schedules the status of the monitor to be written with the other changes of the next
+     * {@link DistributedModeConstants#STATUS_UPDATE_COALESCE_DELAY} milliseconds.
+     */
+    void statusChanged(StormStatusMonitor monitor) {
+        changedMonitors.add(monitor);
+        if (isFlushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    isFlushScheduled.set(false);
+                    List<StormStatusMonitor> changed = new ArrayList<StormStatusMonitor>(changedMonitors.size());
+                    Iterator<StormStatusMonitor> iterator = changedMonitors.iterator();
+                    while (iterator.hasNext()) {
+                        changed.add(iterator.next());
+                        iterator.remove();
+                    }
+                    update(changed);
+                }
+            }, DistributedModeConstants.STATUS_UPDATE_COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return IP of this node, which keys its status in the status holders
+     */
+    String getHostIp() throws SocketException {
+        if (hostIp == null) {
+            hostIp = HostAddressFinder.findAddress("localhost");
+        }
+        return hostIp;
+    }
+
+    private void update(Collection<StormStatusMonitor> monitorsToUpdate) {
+        if (monitorsToUpdate.isEmpty()) {
+            return;
+        }
+        HazelcastInstance hazelcastInstance = EventProcessorValueHolder.getHazelcastInstance();
+        if (hazelcastInstance == null || !hazelcastInstance.getLifecycleService().isRunning()) {
+            log.error("Couldn't update distributed deployment status of " + monitorsToUpdate.size() + " execution " +
+                    "plans as the hazelcast instance is not active or not available.");
+            return;
+        }
+        String hostIp;
+        try {
+            hostIp = getHostIp();
+        } catch (SocketException e) {
+            log.error("Couldn't update distributed deployment status of " + monitorsToUpdate.size() + " execution " +
+                    "plans as the host IP couldn't be found for this node.", e);
+            return;
+        }
+
+        Map<String, NodeStatusEntryProcessor.NodeStatus> nodeStatuses =
+                new HashMap<String, NodeStatusEntryProcessor.NodeStatus>();
+        for (StormStatusMonitor monitor : monitorsToUpdate) {
+            nodeStatuses.put(monitor.getStormTopologyName(), monitor.getNodeStatus());
+        }
+        try {
+            IMap<String, ExecutionPlanStatusHolder> executionPlanStatusHolderIMap =
+                    hazelcastInstance.getMap(DistributedModeConstants.STORM_STATUS_MAP);
+            Map<String, Object> results = executionPlanStatusHolderIMap.executeOnKeys(nodeStatuses.keySet(),
+                    new NodeStatusEntryProcessor(hostIp, nodeStatuses));
+            if (log.isDebugEnabled()) {
+                for (Map.Entry<String, NodeStatusEntryProcessor.NodeStatus> entry : nodeStatuses.entrySet()) {
+                    if (Boolean.TRUE.equals(results.get(entry.getKey()))) {
+                        log.debug("Updated distributed deployment status of topology: " + entry.getKey() + " as "
+                                + entry.getValue() + ", for IP address: " + hostIp);
+                    } else {
+                        log.debug("Couldn't update distributed deployment status of topology: " + entry.getKey()
+                                + " as status object not initialized by manager.");
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Couldn't update distributed deployment status of " + monitorsToUpdate.size() + " execution " +
+                    "plans.", e);
+        }
+    }
+}
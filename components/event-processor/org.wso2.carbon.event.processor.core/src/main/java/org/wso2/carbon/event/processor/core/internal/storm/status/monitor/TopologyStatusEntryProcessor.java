@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.status.monitor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import org.wso2.carbon.event.processor.core.util.DistributedModeConstants;
+import org.wso2.carbon.event.processor.core.util.ExecutionPlanStatusHolder;
+
+import java.util.Map;
+
+/**
+ * Updates the storm topology state, or records a scaling decision, in the status holder of an execution plan on the
+ * member owning the entry.
+ */
+public class TopologyStatusEntryProcessor extends AbstractEntryProcessor<String, ExecutionPlanStatusHolder> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DistributedModeConstants.TopologyState topologyState;
+    private final String scalingDecision;
+
+    private TopologyStatusEntryProcessor(DistributedModeConstants.TopologyState topologyState, String scalingDecision) {
+        this.topologyState = topologyState;
+        this.scalingDecision = scalingDecision;
+    }
+
+    public static TopologyStatusEntryProcessor topologyState(DistributedModeConstants.TopologyState topologyState) {
+        return new TopologyStatusEntryProcessor(topologyState, null);
+    }
+
+    public static TopologyStatusEntryProcessor scalingDecision(String scalingDecision) {
+        return new TopologyStatusEntryProcessor(null, scalingDecision);
+    }
+
+    /**
+     * @return false if the status holder has not been initialized by the manager yet
+     */
+    @Override
+    public Object process(Map.Entry<String, ExecutionPlanStatusHolder> entry) {
+        ExecutionPlanStatusHolder executionPlanStatusHolder = entry.getValue();
+        if (executionPlanStatusHolder == null) {
+            return Boolean.FALSE;
+        }
+        if (topologyState != null) {
+            executionPlanStatusHolder.setStormTopologyStatus(topologyState);
+        }
+        if (scalingDecision != null) {
+            executionPlanStatusHolder.addScalingDecision(scalingDecision);
+        }
+        entry.setValue(executionPlanStatusHolder);
+        return Boolean.TRUE;
+    }
+}
@@ -15,26 +15,46 @@
  */
 package org.wso2.carbon.event.processor.core.internal.storm.util;
 
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMergeBolt;
+import org.wso2.carbon.event.processor.core.internal.util.EventProcessorUtil;
 import org.wso2.siddhi.query.api.definition.StreamDefinition;
 import org.wso2.siddhi.query.compiler.SiddhiCompiler;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * A component (spout or bolt) of the storm query plan. Holds the streams, groupings, queries and parallelism of
+ * the component, and the storm declarer once the component has been added to a topology.
+ */
 public class ComponentInfoHolder {
 
-
-
-    public enum ComponentType {EVENT_RECEIVER_SPOUT, SIDDHI_BOLT, EVENT_PUBLISHER_BOLT;}
+    public enum ComponentType {EVENT_RECEIVER_SPOUT, SIDDHI_BOLT, PARTIAL_AGGREGATE_MERGE_BOLT, EVENT_PUBLISHER_BOLT;}
 
     private ComponentType componentType;
     private String componentName = null;
     private Object declarer;
-    private Map<String, StreamDefinition> inputStreams = new HashMap<String, StreamDefinition>();
+    private Map<String, StreamDefinition> inputStreams = new LinkedHashMap<String, StreamDefinition>();
+    private Map<String, String> inputStreamDefinitions = new LinkedHashMap<String, String>();
     private Map<String, String> inputStreamPartitoningFields = new HashMap<String, String>();
-    private Map<String, StreamDefinition> outputStreams = new HashMap<String, StreamDefinition>();
-    private int parallelism = 1;
+    private Map<String, StreamDefinition> outputStreams = new LinkedHashMap<String, StreamDefinition>();
+    private Map<String, String> outputStreamDefinitions = new LinkedHashMap<String, String>();
+    private volatile int parallelism = 1;
+    private int minParallelism = 1;
+    private int maxParallelism = 1;
+    private int numTasks = 1;
+    private boolean enforceParallelism = false;
     private String query;
+    private String tableDefinitions;
+    private boolean hotKeySplitting = false;
+    private Set<String> partialOutputStreamIds = new HashSet<String>();
+    private PartialAggregateMergeBolt.MergeFunction[] mergeFunctions;
+    private boolean local = false;
 
     public ComponentInfoHolder(String componentName, ComponentType componentType) {
         this.componentName = componentName;
@@ -45,13 +65,117 @@ public class ComponentInfoHolder {
         this.query = query;
     }
 
+    public String getQuery() {
+        return query;
+    }
+
+    public void setTableDefinitions(String tableDefinitions) {
+        this.tableDefinitions = tableDefinitions;
+    }
+
+    public String getTableDefinitions() {
+        return tableDefinitions;
+    }
+
     public void setParallelism(int parallelism) {
         this.parallelism = parallelism;
     }
 
+    /**
+     * Bounds within which the parallelism of the component can be changed at runtime by the autoscaler
+     */
+    public void setParallelismBounds(int minParallelism, int maxParallelism) {
+        this.minParallelism = minParallelism;
+        this.maxParallelism = maxParallelism;
+    }
+
+    public int getMinParallelism() {
+        return minParallelism;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    public boolean isAutoScalable() {
+        return minParallelism < maxParallelism;
+    }
+
+    /**
+     * Number of storm tasks of the component. Storm can only rebalance a running component within this number,
+     * therefore it is fixed when the topology is submitted.
+     */
+    public void setNumTasks(int numTasks) {
+        this.numTasks = numTasks;
+    }
+
+    public int getNumTasks() {
+        return numTasks;
+    }
+
+    public void setEnforceParallelism(boolean enforceParallelism) {
+        this.enforceParallelism = enforceParallelism;
+    }
+
+    public boolean isEnforceParallelism() {
+        return enforceParallelism;
+    }
+
+    /**
+     * Whether events of hot keys can be split across two tasks of the component. Only enabled when the output
+     * streams of the component are merged by a partial aggregate merger.
+     */
+    public void setHotKeySplitting(boolean hotKeySplitting) {
+        this.hotKeySplitting = hotKeySplitting;
+    }
+
+    public boolean isHotKeySplitting() {
+        return hotKeySplitting;
+    }
+
+    /**
+     * Marks an output stream whose events are partial aggregates, which are only consumed by the merger.
+     */
+    public void addPartialOutputStream(String streamId) {
+        partialOutputStreamIds.add(streamId);
+    }
+
+    public boolean isPartialOutputStream(String streamId) {
+        return partialOutputStreamIds.contains(streamId);
+    }
+
+    public List<String> getPartialOutputStreamIds() {
+        return new ArrayList<String>(partialOutputStreamIds);
+    }
+
+    public void setMergeFunctions(PartialAggregateMergeBolt.MergeFunction[] mergeFunctions) {
+        this.mergeFunctions = mergeFunctions;
+    }
+
+    public PartialAggregateMergeBolt.MergeFunction[] getMergeFunctions() {
+        return mergeFunctions;
+    }
+
+    /**
+     * Whether the execution group runs on the CEP workers instead of on storm, in a hybrid query plan.
+     */
+    public void setLocal(boolean local) {
+        this.local = local;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
     public void addInputStream(String streamDefinition) {
         StreamDefinition siddhiStreamDefinition = SiddhiCompiler.parseStreamDefinition(streamDefinition);
         inputStreams.put(siddhiStreamDefinition.getId(), siddhiStreamDefinition);
+        inputStreamDefinitions.put(siddhiStreamDefinition.getId(), streamDefinition);
+    }
+
+    public void addInputStream(StreamDefinition streamDefinition) {
+        inputStreams.put(streamDefinition.getId(), streamDefinition);
+        inputStreamDefinitions.put(streamDefinition.getId(), EventProcessorUtil.getDefinitionString(streamDefinition));
     }
 
     public void addStreamPartitioningField(String streamId, String partitioningField){
@@ -63,6 +187,26 @@ public class ComponentInfoHolder {
     public void addOutputStream(String streamDefinition) {
         StreamDefinition siddhiStreamDefinition = SiddhiCompiler.parseStreamDefinition(streamDefinition);
         outputStreams.put(siddhiStreamDefinition.getId(), siddhiStreamDefinition);
+        outputStreamDefinitions.put(siddhiStreamDefinition.getId(), streamDefinition);
+    }
+
+    public void addOutputStream(StreamDefinition streamDefinition) {
+        outputStreams.put(streamDefinition.getId(), streamDefinition);
+        outputStreamDefinitions.put(streamDefinition.getId(), EventProcessorUtil.getDefinitionString(streamDefinition));
+    }
+
+    /**
+     * @return input stream definitions in SiddhiQL, in the order they were added
+     */
+    public List<String> getInputStreamDefinitionStrings() {
+        return new ArrayList<String>(inputStreamDefinitions.values());
+    }
+
+    /**
+     * @return output stream definitions in SiddhiQL, in the order they were added
+     */
+    public List<String> getOutputStreamDefinitionStrings() {
+        return new ArrayList<String>(outputStreamDefinitions.values());
     }
 
     public String[] getInputStreamIds() {
@@ -70,7 +214,15 @@ public class ComponentInfoHolder {
     }
 
     public String[] getOutputStreamIds() {
-        return outputStreams.keySet().toArray(new String[inputStreams.size()]);
+        return outputStreams.keySet().toArray(new String[outputStreams.size()]);
+    }
+
+    public StreamDefinition getInputStreamDefinition(String streamId) {
+        return inputStreams.get(streamId);
+    }
+
+    public StreamDefinition getOutputStreamDefinition(String streamId) {
+        return outputStreams.get(streamId);
     }
 
     public String getPartionenedField(String streamId){
@@ -85,6 +237,13 @@ public class ComponentInfoHolder {
         return componentName;
     }
 
+    /**
+     * Prefixes the name of the component, so that it is unique within a topology shared by several execution plans.
+     */
+    public void applyNamespace(String namespace) {
+        this.componentName = namespace + componentName;
+    }
+
     public ComponentType getComponentType() {
         return componentType;
     }
@@ -17,18 +17,26 @@ package org.wso2.carbon.event.processor.core.internal.storm.util;
 
 import org.wso2.siddhi.query.api.execution.ExecutionElement;
 
+import java.util.Map;
+
 /**
  * Class to store execution element info
  */
 public class ExecutionElementInfoHolder {
     private ExecutionElement executionElement;
     private ParallelismInfoHolder parallelismInfoHolder;
+    private Map<String, String> inferredPartitionFields;
 
     public ExecutionElementInfoHolder(ExecutionElement executionElement, int parallelism, Boolean isParallelismEnforced) {
         this.executionElement = executionElement;
         this.parallelismInfoHolder = new ParallelismInfoHolder(parallelism, isParallelismEnforced);
     }
 
+    public ExecutionElementInfoHolder(ExecutionElement executionElement, ParallelismInfoHolder parallelismInfoHolder) {
+        this.executionElement = executionElement;
+        this.parallelismInfoHolder = parallelismInfoHolder;
+    }
+
     public ExecutionElement getExecutionElement() {
         return executionElement;
     }
@@ -36,4 +44,16 @@ public class ExecutionElementInfoHolder {
     public ParallelismInfoHolder getParallelismInfoHolder() {
         return parallelismInfoHolder;
     }
+
+    /**
+     * Partitioning attributes inferred from the group by clause or the join condition of a query which is not
+     * inside a partition. See {@link PartitionKeyInferrer}.
+     */
+    public void setInferredPartitionFields(Map<String, String> inferredPartitionFields) {
+        this.inferredPartitionFields = inferredPartitionFields;
+    }
+
+    public Map<String, String> getInferredPartitionFields() {
+        return inferredPartitionFields;
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A query plan split into the part running on storm and the part running on the CEP workers, based on the components
+ * marked local by {@link LocalExecutionAnalyzer}.
+ * <p/>
+ * Each part gets its own receiver and publisher, so that transport edges only exist where the execution crosses
+ * between the workers and storm. The receiver of the cluster plan takes the streams the workers send to storm, and its
+ * publisher the streams storm sends back. The receiver of the local plan takes the imported streams and the streams
+ * sent back by storm, and its publisher the exported streams and the streams sent to storm.
+ */
+public class HybridQueryPlan {
+
+    private final TopologyInfoHolder clusterPlan;
+    private final TopologyInfoHolder localPlan;
+    private final Map<String, StreamDefinition> clusterInputStreams;
+    private final Map<String, StreamDefinition> clusterOutputStreams;
+
+    private HybridQueryPlan(TopologyInfoHolder clusterPlan, TopologyInfoHolder localPlan,
+                            Map<String, StreamDefinition> clusterInputStreams,
+                            Map<String, StreamDefinition> clusterOutputStreams) {
+        this.clusterPlan = clusterPlan;
+        this.localPlan = localPlan;
+        this.clusterInputStreams = clusterInputStreams;
+        this.clusterOutputStreams = clusterOutputStreams;
+    }
+
+    /**
+     * @param queryPlan query plan constructed by {@link StormQueryPlanBuilder#constructStormQueryPlan}
+     * @return the split plan, or a plan running entirely on storm if no component of the query plan is local
+     */
+    public static HybridQueryPlan split(TopologyInfoHolder queryPlan) {
+        ComponentInfoHolder receiver = null;
+        ComponentInfoHolder publisher = null;
+        List<ComponentInfoHolder> localComponents = new ArrayList<ComponentInfoHolder>();
+        List<ComponentInfoHolder> clusterComponents = new ArrayList<ComponentInfoHolder>();
+        for (ComponentInfoHolder component : queryPlan.getComponents()) {
+            switch (component.getComponentType()) {
+                case EVENT_RECEIVER_SPOUT:
+                    receiver = component;
+                    break;
+                case EVENT_PUBLISHER_BOLT:
+                    publisher = component;
+                    break;
+                default:
+                    if (component.isLocal()) {
+                        localComponents.add(component);
+                    } else {
+                        clusterComponents.add(component);
+                    }
+            }
+        }
+        if (localComponents.isEmpty() || receiver == null || publisher == null) {
+            return new HybridQueryPlan(queryPlan, null, Collections.<String, StreamDefinition>emptyMap(),
+                    Collections.<String, StreamDefinition>emptyMap());
+        }
+
+        // Streams produced on the workers and on storm
+        Map<String, StreamDefinition> localStreams = new LinkedHashMap<String, StreamDefinition>();
+        addOutputStreams(localStreams, receiver);
+        Map<String, StreamDefinition> clusterStreams = new LinkedHashMap<String, StreamDefinition>();
+        for (ComponentInfoHolder component : localComponents) {
+            addOutputStreams(localStreams, component);
+        }
+        for (ComponentInfoHolder component : clusterComponents) {
+            addOutputStreams(clusterStreams, component);
+        }
+
+        Map<String, StreamDefinition> clusterInputStreams = new LinkedHashMap<String, StreamDefinition>();
+        for (ComponentInfoHolder component : clusterComponents) {
+            for (String streamId : component.getInputStreamIds()) {
+                if (localStreams.containsKey(streamId)) {
+                    clusterInputStreams.put(streamId, localStreams.get(streamId));
+                }
+            }
+        }
+        Map<String, StreamDefinition> clusterOutputStreams = new LinkedHashMap<String, StreamDefinition>();
+        List<ComponentInfoHolder> clusterOutputConsumers = new ArrayList<ComponentInfoHolder>(localComponents);
+        clusterOutputConsumers.add(publisher);
+        for (ComponentInfoHolder component : clusterOutputConsumers) {
+            for (String streamId : component.getInputStreamIds()) {
+                if (clusterStreams.containsKey(streamId)) {
+                    clusterOutputStreams.put(streamId, clusterStreams.get(streamId));
+                }
+            }
+        }
+
+        TopologyInfoHolder clusterPlan = new TopologyInfoHolder();
+        clusterPlan.addComponent(copyEndpoint(receiver, clusterInputStreams.values()));
+        for (ComponentInfoHolder component : clusterComponents) {
+            clusterPlan.addComponent(component);
+        }
+        clusterPlan.addComponent(copyEndpoint(publisher, clusterOutputStreams.values()));
+        clusterPlan.indexComponents();
+
+        Map<String, StreamDefinition> localInputStreams = new LinkedHashMap<String, StreamDefinition>();
+        addOutputStreams(localInputStreams, receiver);
+        localInputStreams.putAll(clusterOutputStreams);
+        Map<String, StreamDefinition> localOutputStreams = new LinkedHashMap<String, StreamDefinition>();
+        addOutputStreams(localOutputStreams, publisher);
+        localOutputStreams.putAll(clusterInputStreams);
+
+        TopologyInfoHolder localPlan = new TopologyInfoHolder();
+        localPlan.addComponent(copyEndpoint(receiver, localInputStreams.values()));
+        for (ComponentInfoHolder component : localComponents) {
+            localPlan.addComponent(component);
+        }
+        localPlan.addComponent(copyEndpoint(publisher, localOutputStreams.values()));
+        localPlan.indexComponents();
+
+        return new HybridQueryPlan(clusterPlan, localPlan, clusterInputStreams, clusterOutputStreams);
+    }
+
+    private static void addOutputStreams(Map<String, StreamDefinition> streams, ComponentInfoHolder component) {
+        for (String streamId : component.getOutputStreamIds()) {
+            streams.put(streamId, component.getOutputStreamDefinition(streamId));
+        }
+    }
+
+    /**
+     * Creates a receiver or publisher like the given one, passing through the given streams.
+     */
+    private static ComponentInfoHolder copyEndpoint(ComponentInfoHolder endpoint, Collection<StreamDefinition> streams) {
+        ComponentInfoHolder copy = new ComponentInfoHolder(endpoint.getComponentName(), endpoint.getComponentType());
+        copy.setParallelism(endpoint.getParallelism());
+        copy.setParallelismBounds(endpoint.getMinParallelism(), endpoint.getMaxParallelism());
+        copy.setNumTasks(endpoint.getNumTasks());
+        for (StreamDefinition streamDefinition : streams) {
+            copy.addInputStream(streamDefinition);
+            copy.addOutputStream(streamDefinition);
+        }
+        return copy;
+    }
+
+    /**
+     * @return whether some components of the query plan run on the CEP workers
+     */
+    public boolean isHybrid() {
+        return localPlan != null;
+    }
+
+    /**
+     * @return whether some execution groups of the query plan run on storm
+     */
+    public boolean hasClusterComponents() {
+        for (ComponentInfoHolder component : clusterPlan.getComponents()) {
+            if (component.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT &&
+                    component.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return query plan of the storm topology, or the whole query plan if it is not hybrid
+     */
+    public TopologyInfoHolder getClusterPlan() {
+        return clusterPlan;
+    }
+
+    /**
+     * @return query plan run on the CEP workers, null if the query plan is not hybrid
+     */
+    public TopologyInfoHolder getLocalPlan() {
+        return localPlan;
+    }
+
+    /**
+     * @return ids of the streams sent from the CEP workers to storm
+     */
+    public Set<String> getClusterInputStreamIds() {
+        return clusterInputStreams.keySet();
+    }
+
+    public StreamDefinition getClusterInputStreamDefinition(String streamId) {
+        return clusterInputStreams.get(streamId);
+    }
+
+    /**
+     * @return ids of the streams sent from storm back to the CEP workers
+     */
+    public Set<String> getClusterOutputStreamIds() {
+        return clusterOutputStreams.keySet();
+    }
+
+    public StreamDefinition getClusterOutputStreamDefinition(String streamId) {
+        return clusterOutputStreams.get(streamId);
+    }
+}
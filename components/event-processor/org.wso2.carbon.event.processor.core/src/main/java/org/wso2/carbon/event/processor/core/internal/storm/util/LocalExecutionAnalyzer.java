@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
+import org.wso2.siddhi.query.api.annotation.Annotation;
+import org.wso2.siddhi.query.api.execution.ExecutionElement;
+import org.wso2.siddhi.query.api.execution.query.Query;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Filter;
+import org.wso2.siddhi.query.api.execution.query.input.handler.StreamHandler;
+import org.wso2.siddhi.query.api.execution.query.input.stream.SingleInputStream;
+import org.wso2.siddhi.query.api.execution.query.output.stream.InsertIntoStream;
+import org.wso2.siddhi.query.api.execution.query.output.stream.OutputStream;
+import org.wso2.siddhi.query.api.execution.query.selection.OutputAttribute;
+import org.wso2.siddhi.query.api.execution.query.selection.Selector;
+import org.wso2.siddhi.query.api.expression.Expression;
+import org.wso2.siddhi.query.api.expression.Variable;
+import org.wso2.siddhi.query.api.expression.constant.Constant;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which execution groups of a hybrid query plan run on the CEP workers instead of on storm.
+ * <p/>
+ * A group runs locally when it is cheap, i.e. all its queries only filter and project a single stream, without
+ * windows, functions, aggregations, output rate limiting or event tables, and when it is at an edge of the plan, i.e.
+ * it only consumes imported streams, or its output streams are only exported. Moving such groups out of storm saves
+ * the network hop to storm for ingress filters and the hop back for egress projections, while the stateful groups in
+ * the middle of the plan still run on storm. Groups can opt out with {@code @dist(local='false')}.
+ */
+public class LocalExecutionAnalyzer {
+
+    private LocalExecutionAnalyzer() {
+    }
+
+    /**
+     * @param group      query group of the component
+     * @param tableIdSet ids of the event tables of the execution plan
+     * @return whether the group is cheap enough to run on the CEP workers
+     */
+    public static boolean isLocallyExecutable(QueryGroupInfoHolder group, Set<String> tableIdSet) {
+        for (String streamId : group.getInputDefinitionIds()) {
+            if (tableIdSet.contains(streamId)) {
+                return false;
+            }
+        }
+        for (ExecutionElementInfoHolder elementInfoHolder : group.getExecutionElements()) {
+            ExecutionElement element = elementInfoHolder.getExecutionElement();
+            if (!(element instanceof Query) || isLocalExecutionDisabled(element) ||
+                    !isStateless((Query) element, tableIdSet)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the locally executable components at the edges of the query plan local, and moves the others back to
+     * storm, so that events cross between the CEP workers and storm at most once on the way in and once on the way
+     * out.
+     *
+     * @param queryPlan indexed query plan whose locally executable components are marked local
+     */
+    public static void retainEdgeComponents(TopologyInfoHolder queryPlan) {
+        Set<String> importedStreamIds = new HashSet<String>();
+        Set<String> processedStreamIds = new HashSet<String>();
+        for (ComponentInfoHolder component : queryPlan.getComponents()) {
+            if (component.getComponentType() == ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT) {
+                importedStreamIds.addAll(Arrays.asList(component.getOutputStreamIds()));
+            } else if (component.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT) {
+                processedStreamIds.addAll(Arrays.asList(component.getInputStreamIds()));
+            }
+        }
+        for (ComponentInfoHolder component : queryPlan.getComponents()) {
+            if (component.isLocal()) {
+                boolean isIngress = importedStreamIds.containsAll(Arrays.asList(component.getInputStreamIds()));
+                boolean isEgress = true;
+                for (String streamId : component.getOutputStreamIds()) {
+                    if (processedStreamIds.contains(streamId)) {
+                        isEgress = false;
+                        break;
+                    }
+                }
+                component.setLocal(isIngress || isEgress);
+            }
+        }
+    }
+
+    private static boolean isLocalExecutionDisabled(ExecutionElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (annotation.getName().equals(EventProcessorConstants.DIST) &&
+                    "false".equalsIgnoreCase(annotation.getElement(EventProcessorConstants.LOCAL))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStateless(Query query, Set<String> tableIdSet) {
+        if (query.getOutputRate() != null || !(query.getInputStream() instanceof SingleInputStream)) {
+            return false;
+        }
+        SingleInputStream inputStream = (SingleInputStream) query.getInputStream();
+        if (inputStream.getStreamId().startsWith("#") || tableIdSet.contains(inputStream.getStreamId())) {
+            return false;
+        }
+        for (StreamHandler streamHandler : inputStream.getStreamHandlers()) {
+            if (!(streamHandler instanceof Filter)) {
+                return false;
+            }
+        }
+
+        OutputStream outputStream = query.getOutputStream();
+        if (!(outputStream instanceof InsertIntoStream) || outputStream.getId().startsWith("#") ||
+                tableIdSet.contains(outputStream.getId()) || (outputStream.getOutputEventType() != null &&
+                outputStream.getOutputEventType() != OutputStream.OutputEventType.CURRENT_EVENTS)) {
+            return false;
+        }
+
+        Selector selector = query.getSelector();
+        if (selector.getHavingExpression() != null ||
+                (selector.getGroupByList() != null && !selector.getGroupByList().isEmpty())) {
+            return false;
+        }
+        if (selector.getSelectionList() != null) {
+            for (OutputAttribute outputAttribute : selector.getSelectionList()) {
+                Expression expression = outputAttribute.getExpression();
+                if (!(expression instanceof Variable) && !(expression instanceof Constant)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
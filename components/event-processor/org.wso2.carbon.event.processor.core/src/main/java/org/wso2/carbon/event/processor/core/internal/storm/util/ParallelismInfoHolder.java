@@ -21,10 +21,18 @@ package org.wso2.carbon.event.processor.core.internal.storm.util;
 public class ParallelismInfoHolder {
     private int parallelism;
     private Boolean isEnforced;
+    private int minParallelism;
+    private int maxParallelism;
 
     public ParallelismInfoHolder(int parallelism, Boolean isEnforced) {
+        this(parallelism, isEnforced, parallelism, parallelism);
+    }
+
+    public ParallelismInfoHolder(int parallelism, Boolean isEnforced, int minParallelism, int maxParallelism) {
         this.parallelism = parallelism;
         this.isEnforced = isEnforced;
+        this.minParallelism = minParallelism;
+        this.maxParallelism = maxParallelism;
     }
 
     public int getParallelism() {
@@ -34,4 +42,12 @@ public class ParallelismInfoHolder {
     public Boolean getIsEnforced() {
         return isEnforced;
     }
+
+    public int getMinParallelism() {
+        return minParallelism;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
 }
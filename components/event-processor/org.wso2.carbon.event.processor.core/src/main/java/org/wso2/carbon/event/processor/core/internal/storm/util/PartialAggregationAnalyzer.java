@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMergeBolt.MergeFunction;
+import org.wso2.siddhi.query.api.execution.ExecutionElement;
+import org.wso2.siddhi.query.api.execution.partition.Partition;
+import org.wso2.siddhi.query.api.execution.query.Query;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Filter;
+import org.wso2.siddhi.query.api.execution.query.input.handler.StreamHandler;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Window;
+import org.wso2.siddhi.query.api.execution.query.input.stream.SingleInputStream;
+import org.wso2.siddhi.query.api.execution.query.output.stream.InsertIntoStream;
+import org.wso2.siddhi.query.api.execution.query.output.stream.OutputStream;
+import org.wso2.siddhi.query.api.execution.query.selection.OutputAttribute;
+import org.wso2.siddhi.query.api.execution.query.selection.Selector;
+import org.wso2.siddhi.query.api.expression.AttributeFunction;
+import org.wso2.siddhi.query.api.expression.AttributeFunctionExtension;
+import org.wso2.siddhi.query.api.expression.Expression;
+import org.wso2.siddhi.query.api.expression.Variable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether the output of a query group can be computed as partial aggregates on two tasks and merged, which
+ * allows the events of a hot key to be split across two tasks.
+ * <p/>
+ * The group must consist of a single query, or a partition with a single query, which aggregates a single stream
+ * partitioned on a key, without a window or with a time window, and only selects the key and sum, count, min and max
+ * aggregates. The aggregates of such a query on two tasks can be merged exactly, since each task aggregates a disjoint
+ * subset of the events of the key, and its scheduler expires them when they would have expired on a single task.
+ * Other windows are not supported since each task would expire events based on its own subset, e.g. a length window
+ * on its own count, and an external time window only when the task receives a later event, leaving the partial
+ * aggregate of a quiet task stale. The merger learns about the expired events from the partial aggregates the tasks
+ * emit for them.
+ */
+public class PartialAggregationAnalyzer {
+
+    private PartialAggregationAnalyzer() {
+    }
+
+    /**
+     * @param group             query group of the component
+     * @param partitionFieldMap < stream id, partitioning attribute > of the component
+     * @return merge function of each output attribute of the group, or null if the output cannot be merged
+     */
+    public static MergeFunction[] getMergeFunctions(QueryGroupInfoHolder group, Map<String, String> partitionFieldMap) {
+        if (partitionFieldMap == null || partitionFieldMap.size() != 1 || group.getExecutionElements().size() != 1) {
+            return null;
+        }
+        ExecutionElement element = group.getExecutionElements().get(0).getExecutionElement();
+        Query query;
+        if (element instanceof Partition) {
+            List<Query> queries = ((Partition) element).getQueryList();
+            if (queries.size() != 1) {
+                return null;
+            }
+            query = queries.get(0);
+        } else {
+            query = (Query) element;
+        }
+
+        if (!(query.getInputStream() instanceof SingleInputStream)) {
+            return null;
+        }
+        SingleInputStream inputStream = (SingleInputStream) query.getInputStream();
+        String keyAttribute = partitionFieldMap.get(inputStream.getStreamId());
+        if (keyAttribute == null) {
+            return null;
+        }
+        boolean hasWindow = false;
+        for (StreamHandler streamHandler : inputStream.getStreamHandlers()) {
+            if (streamHandler instanceof Window && !hasWindow && isTimeWindow((Window) streamHandler)) {
+                hasWindow = true;
+            } else if (!(streamHandler instanceof Filter)) {
+                return null;
+            }
+        }
+
+        OutputStream outputStream = query.getOutputStream();
+        if (!(outputStream instanceof InsertIntoStream) || outputStream.getId().startsWith("#") ||
+                (outputStream.getOutputEventType() != null &&
+                        outputStream.getOutputEventType() != OutputStream.OutputEventType.CURRENT_EVENTS)) {
+            return null;
+        }
+
+        Selector selector = query.getSelector();
+        if (selector.getHavingExpression() != null) {
+            return null;
+        }
+        List<Variable> groupByList = selector.getGroupByList();
+        if (groupByList != null && !groupByList.isEmpty() && (groupByList.size() != 1 ||
+                !keyAttribute.equals(groupByList.get(0).getAttributeName()))) {
+            return null;
+        }
+        return getMergeFunctions(selector.getSelectionList(), keyAttribute);
+    }
+
+    private static MergeFunction[] getMergeFunctions(List<OutputAttribute> selectionList, String keyAttribute) {
+        if (selectionList == null || selectionList.isEmpty()) {
+            return null;
+        }
+        MergeFunction[] mergeFunctions = new MergeFunction[selectionList.size()];
+        boolean hasKey = false;
+        boolean hasAggregate = false;
+        for (int i = 0; i < selectionList.size(); i++) {
+            Expression expression = selectionList.get(i).getExpression();
+            if (expression instanceof Variable && keyAttribute.equals(((Variable) expression).getAttributeName())) {
+                if (hasKey) {
+                    return null;
+                }
+                mergeFunctions[i] = MergeFunction.KEY;
+                hasKey = true;
+            } else if (expression instanceof AttributeFunction && !(expression instanceof AttributeFunctionExtension)) {
+                mergeFunctions[i] = getMergeFunction(((AttributeFunction) expression).getFunction());
+                if (mergeFunctions[i] == null) {
+                    return null;
+                }
+                hasAggregate = true;
+            } else {
+                return null;
+            }
+        }
+        return hasKey && hasAggregate ? mergeFunctions : null;
+    }
+
+    private static boolean isTimeWindow(Window window) {
+        return (window.getNamespace() == null || window.getNamespace().isEmpty()) && "time".equals(window.getFunction());
+    }
+
+    private static MergeFunction getMergeFunction(String function) {
+        if ("sum".equals(function)) {
+            return MergeFunction.SUM;
+        } else if ("count".equals(function)) {
+            return MergeFunction.COUNT;
+        } else if ("min".equals(function)) {
+            return MergeFunction.MIN;
+        } else if ("max".equals(function)) {
+            return MergeFunction.MAX;
+        }
+        return null;
+    }
+}
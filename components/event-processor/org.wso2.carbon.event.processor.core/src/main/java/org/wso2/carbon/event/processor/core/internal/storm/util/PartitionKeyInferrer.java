@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import org.wso2.siddhi.query.api.execution.query.Query;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Filter;
+import org.wso2.siddhi.query.api.execution.query.input.handler.StreamHandler;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Window;
+import org.wso2.siddhi.query.api.execution.query.input.stream.JoinInputStream;
+import org.wso2.siddhi.query.api.execution.query.input.stream.SingleInputStream;
+import org.wso2.siddhi.query.api.expression.Expression;
+import org.wso2.siddhi.query.api.expression.Variable;
+import org.wso2.siddhi.query.api.expression.condition.And;
+import org.wso2.siddhi.query.api.expression.condition.Compare;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Infers the attributes a query which is not inside a partition can be partitioned on, so that it can run on
+ * several tasks with fields grouping and still produce the same results as on a single task.
+ * <p/>
+ * Keys are inferred from
+ * <ul>
+ * <li>the first attribute of the group by clause of a single stream query, and</li>
+ * <li>an equality between an attribute of each side in the on condition of a join of two streams.</li>
+ * </ul>
+ * Partitioning only preserves the result when each task sees all the events of its keys in the windows, which is
+ * only true for sliding time windows. Queries with other windows, event tables, output rate limiting or patterns are
+ * not partitioned.
+ */
+public class PartitionKeyInferrer {
+
+    private static final List<String> KEY_PRESERVING_WINDOWS = Arrays.asList("time", "externalTime");
+
+    private PartitionKeyInferrer() {
+    }
+
+    /**
+     * @param query      query which is not inside a partition
+     * @param tableIdSet ids of the event tables of the execution plan
+     * @return < stream id, partitioning attribute > of each input stream, or null if the query cannot be partitioned
+     */
+    public static Map<String, String> inferPartitionFields(Query query, Set<String> tableIdSet) {
+        if (query.getOutputRate() != null) {
+            return null;
+        }
+        if (query.getInputStream() instanceof SingleInputStream) {
+            return inferFromGroupBy(query, (SingleInputStream) query.getInputStream());
+        } else if (query.getInputStream() instanceof JoinInputStream) {
+            return inferFromJoin((JoinInputStream) query.getInputStream(), tableIdSet);
+        }
+        return null;
+    }
+
+    private static Map<String, String> inferFromGroupBy(Query query, SingleInputStream inputStream) {
+        List<Variable> groupByList = query.getSelector().getGroupByList();
+        if (groupByList == null || groupByList.isEmpty() || !isKeyPreserving(inputStream)) {
+            return null;
+        }
+        Variable key = groupByList.get(0);
+        if (key.getStreamId() != null && !isReferenceTo(key, inputStream)) {
+            return null;
+        }
+        Map<String, String> partitionFields = new HashMap<String, String>();
+        partitionFields.put(inputStream.getStreamId(), key.getAttributeName());
+        return partitionFields;
+    }
+
+    private static Map<String, String> inferFromJoin(JoinInputStream joinInputStream, Set<String> tableIdSet) {
+        SingleInputStream left = joinInputStream.getLeftInputStream();
+        SingleInputStream right = joinInputStream.getRightInputStream();
+        if (tableIdSet.contains(left.getStreamId()) || tableIdSet.contains(right.getStreamId()) ||
+                !isKeyPreserving(left) || !isKeyPreserving(right)) {
+            return null;
+        }
+        return findEquiJoinKeys(joinInputStream.getOnCompare(), left, right);
+    }
+
+    /**
+     * Finds an equality between an attribute of each side of the join, within the conjunctions of the condition.
+     */
+    private static Map<String, String> findEquiJoinKeys(Expression condition, SingleInputStream left,
+                                                        SingleInputStream right) {
+        if (condition instanceof And) {
+            Map<String, String> partitionFields = findEquiJoinKeys(((And) condition).getLeftExpression(), left, right);
+            return partitionFields != null ? partitionFields :
+                    findEquiJoinKeys(((And) condition).getRightExpression(), left, right);
+        } else if (condition instanceof Compare && ((Compare) condition).getOperator() == Compare.Operator.EQUAL &&
+                ((Compare) condition).getLeftExpression() instanceof Variable &&
+                ((Compare) condition).getRightExpression() instanceof Variable) {
+            Variable first = (Variable) ((Compare) condition).getLeftExpression();
+            Variable second = (Variable) ((Compare) condition).getRightExpression();
+            if (isReferenceTo(first, right) && isReferenceTo(second, left)) {
+                Variable temp = first;
+                first = second;
+                second = temp;
+            }
+            if (isReferenceTo(first, left) && isReferenceTo(second, right)) {
+                if (left.getStreamId().equals(right.getStreamId())) {
+                    // Self join, both sides are the same storm stream and can only be grouped on one attribute
+                    if (!first.getAttributeName().equals(second.getAttributeName())) {
+                        return null;
+                    }
+                }
+                Map<String, String> partitionFields = new HashMap<String, String>();
+                partitionFields.put(left.getStreamId(), first.getAttributeName());
+                partitionFields.put(right.getStreamId(), second.getAttributeName());
+                return partitionFields;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the variable is qualified with the stream id or the reference id of the input stream. Unqualified
+     * attributes of a join cannot be resolved to a side without the stream definitions.
+     */
+    private static boolean isReferenceTo(Variable variable, SingleInputStream inputStream) {
+        String streamId = variable.getStreamId();
+        return streamId != null && (streamId.equals(inputStream.getStreamReferenceId()) ||
+                (inputStream.getStreamReferenceId() == null && streamId.equals(inputStream.getStreamId())));
+    }
+
+    /**
+     * Filters and sliding time windows keep all the events of a key together, irrespective of the other keys.
+     */
+    private static boolean isKeyPreserving(SingleInputStream inputStream) {
+        if (inputStream.getStreamId().startsWith("#")) {
+            return false;
+        }
+        for (StreamHandler streamHandler : inputStream.getStreamHandlers()) {
+            if (streamHandler instanceof Window) {
+                Window window = (Window) streamHandler;
+                if ((window.getNamespace() != null && !window.getNamespace().isEmpty()) ||
+                        !KEY_PRESERVING_WINDOWS.contains(window.getFunction())) {
+                    return false;
+                }
+            } else if (!(streamHandler instanceof Filter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
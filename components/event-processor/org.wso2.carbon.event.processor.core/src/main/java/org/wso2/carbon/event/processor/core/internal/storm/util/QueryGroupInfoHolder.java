@@ -92,6 +92,10 @@ public class QueryGroupInfoHolder {
         executionElements.add(infoHolder);
     }
 
+    public String getGroupId() {
+        return groupId;
+    }
+
     public List<String> getStringQueries() {
         return stringQueries;
     }
@@ -108,6 +112,13 @@ public class QueryGroupInfoHolder {
         return outputDefinitionIds;
     }
 
+    /**
+     * Sets the partitioning attributes of a query group which is not a partition, inferred from its query.
+     */
+    public void setPartitionFieldMap(Map<String, String> partitionFieldMap) {
+        this.partitionFieldMap = partitionFieldMap;
+    }
+
     public Map<String, String> getPartitionFieldMap() {
         return partitionFieldMap;
     }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A storm topology shared by several execution plans. Each execution plan keeps its own spouts and bolts, named
+ * within the namespace of the plan and tenant, while the plans share the workers and ackers of the topology.
+ */
+public class SharedTopologyInfoHolder {
+
+    private final String topologyName;
+
+    /**
+     * < storm topology name of the execution plan, execution plan >
+     */
+    private final Map<String, PackedPlan> plans = new LinkedHashMap<String, PackedPlan>();
+
+    public SharedTopologyInfoHolder(String topologyName) {
+        this.topologyName = topologyName;
+    }
+
+    private SharedTopologyInfoHolder(SharedTopologyInfoHolder sharedTopology) {
+        this.topologyName = sharedTopology.topologyName;
+        this.plans.putAll(sharedTopology.plans);
+    }
+
+    public String getTopologyName() {
+        return topologyName;
+    }
+
+    void addPlan(String planTopologyName, PackedPlan plan) {
+        plans.put(planTopologyName, plan);
+    }
+
+    PackedPlan removePlan(String planTopologyName) {
+        return plans.remove(planTopologyName);
+    }
+
+    boolean isEmpty() {
+        return plans.isEmpty();
+    }
+
+    public Collection<PackedPlan> getPlans() {
+        return plans.values();
+    }
+
+    /**
+     * @return storm topology names of the execution plans, which key their deployment status
+     */
+    public List<String> getPlanTopologyNames() {
+        return new ArrayList<String>(plans.keySet());
+    }
+
+    public int getExecutorCount() {
+        int executorCount = 0;
+        for (PackedPlan plan : plans.values()) {
+            executorCount += plan.getTopologyInfoHolder().getExecutorCount();
+        }
+        return executorCount;
+    }
+
+    /**
+     * @return the components of all the execution plans, to compare the shared topology with its running version
+     */
+    public TopologyInfoHolder getCombinedTopologyInfoHolder() {
+        TopologyInfoHolder combined = new TopologyInfoHolder();
+        for (PackedPlan plan : plans.values()) {
+            for (ComponentInfoHolder component : plan.getTopologyInfoHolder().getComponents()) {
+                combined.addComponent(component);
+            }
+        }
+        return combined;
+    }
+
+    SharedTopologyInfoHolder copy() {
+        return new SharedTopologyInfoHolder(this);
+    }
+
+    /**
+     * The storm query plan of an execution plan packed into a shared topology.
+     */
+    public static class PackedPlan {
+
+        private final String executionPlanName;
+        private final int tenantId;
+        private final TopologyInfoHolder topologyInfoHolder;
+
+        /**
+         * @param topologyInfoHolder query plan of the execution plan, with the components already namespaced
+         */
+        public PackedPlan(String executionPlanName, int tenantId, TopologyInfoHolder topologyInfoHolder) {
+            this.executionPlanName = executionPlanName;
+            this.tenantId = tenantId;
+            this.topologyInfoHolder = topologyInfoHolder;
+        }
+
+        public String getExecutionPlanName() {
+            return executionPlanName;
+        }
+
+        public int getTenantId() {
+            return tenantId;
+        }
+
+        public TopologyInfoHolder getTopologyInfoHolder() {
+            return topologyInfoHolder;
+        }
+
+        /**
+         * @return prefix of the storm component names of the execution plan in a shared topology
+         */
+        public static String getNamespace(String executionPlanName, int tenantId) {
+            return executionPlanName + "." + tenantId + ".";
+        }
+    }
+}
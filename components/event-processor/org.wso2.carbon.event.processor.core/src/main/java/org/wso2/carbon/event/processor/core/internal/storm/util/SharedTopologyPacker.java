@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packs the storm query plans of small execution plans into shared topologies, first fit, so that they don't each
+ * need their own workers and ackers.
+ * <p/>
+ * An execution plan can be packed if it has no autoscalable components and needs at most half the executors of a
+ * shared topology. Plans are packed together with plans of the same tenant only, unless tenant isolation is disabled.
+ */
+public class SharedTopologyPacker {
+
+    private final String topologyNamePrefix;
+    private final int maxExecutors;
+    private final boolean tenantIsolation;
+
+    /**
+     * < shared topology name, shared topology >
+     */
+    private final Map<String, SharedTopologyInfoHolder> sharedTopologies =
+            new LinkedHashMap<String, SharedTopologyInfoHolder>();
+    /**
+     * < storm topology name of the execution plan, shared topology name >
+     */
+    private final Map<String, String> planToSharedTopology = new HashMap<String, String>();
+    private int sharedTopologyCount = 0;
+
+    /**
+     * @param topologyNamePrefix prefix of the names of the shared topologies
+     * @param maxExecutors       maximum number of executors of a shared topology
+     * @param tenantIsolation    whether only plans of the same tenant are packed together
+     */
+    public SharedTopologyPacker(String topologyNamePrefix, int maxExecutors, boolean tenantIsolation) {
+        this.topologyNamePrefix = topologyNamePrefix;
+        this.maxExecutors = maxExecutors;
+        this.tenantIsolation = tenantIsolation;
+    }
+
+    public boolean isPackable(TopologyInfoHolder topologyInfoHolder) {
+        for (ComponentInfoHolder component : topologyInfoHolder.getComponents()) {
+            if (component.isAutoScalable()) {
+                return false;
+            }
+        }
+        return topologyInfoHolder.getExecutorCount() * 2 <= maxExecutors;
+    }
+
+    /**
+     * Packs the execution plan into the first shared topology with enough free executors, replacing its previous
+     * version. The plan stays in its current shared topology if the new version still fits in it.
+     *
+     * @param planTopologyName storm topology name of the execution plan
+     * @return names of the shared topologies which need to be redeployed
+     */
+    public synchronized Set<String> pack(String planTopologyName, SharedTopologyInfoHolder.PackedPlan plan) {
+        Set<String> changedTopologies = new LinkedHashSet<String>();
+        int executorCount = plan.getTopologyInfoHolder().getExecutorCount();
+
+        String currentTopologyName = planToSharedTopology.get(planTopologyName);
+        if (currentTopologyName != null) {
+            SharedTopologyInfoHolder current = sharedTopologies.get(currentTopologyName);
+            current.removePlan(planTopologyName);
+            changedTopologies.add(currentTopologyName);
+            if (current.getExecutorCount() + executorCount <= maxExecutors) {
+                current.addPlan(planTopologyName, plan);
+                return changedTopologies;
+            }
+            planToSharedTopology.remove(planTopologyName);
+            if (current.isEmpty()) {
+                sharedTopologies.remove(currentTopologyName);
+            }
+        }
+
+        SharedTopologyInfoHolder target = null;
+        for (SharedTopologyInfoHolder sharedTopology : sharedTopologies.values()) {
+            if (sharedTopology.getExecutorCount() + executorCount <= maxExecutors &&
+                    (!tenantIsolation || isOfTenant(sharedTopology, plan.getTenantId()))) {
+                target = sharedTopology;
+                break;
+            }
+        }
+        if (target == null) {
+            target = new SharedTopologyInfoHolder(topologyNamePrefix + (++sharedTopologyCount));
+            sharedTopologies.put(target.getTopologyName(), target);
+        }
+        target.addPlan(planTopologyName, plan);
+        planToSharedTopology.put(planTopologyName, target.getTopologyName());
+        changedTopologies.add(target.getTopologyName());
+        return changedTopologies;
+    }
+
+    /**
+     * Removes the execution plan from its shared topology. A shared topology without plans is discarded.
+     *
+     * @param planTopologyName storm topology name of the execution plan
+     * @return name of the shared topology which needs to be redeployed or killed, or null if the plan was not packed
+     */
+    public synchronized String unpack(String planTopologyName) {
+        String sharedTopologyName = planToSharedTopology.remove(planTopologyName);
+        if (sharedTopologyName != null) {
+            SharedTopologyInfoHolder sharedTopology = sharedTopologies.get(sharedTopologyName);
+            sharedTopology.removePlan(planTopologyName);
+            if (sharedTopology.isEmpty()) {
+                sharedTopologies.remove(sharedTopologyName);
+            }
+        }
+        return sharedTopologyName;
+    }
+
+    /**
+     * @return whether the storm topology name is one given to the shared topologies, which is never the name of the
+     * topology of a single execution plan as those end with the tenant id
+     */
+    public boolean isSharedTopologyName(String topologyName) {
+        return topologyName.startsWith(topologyNamePrefix) &&
+                topologyName.substring(topologyNamePrefix.length()).matches("\\d+");
+    }
+
+    public synchronized boolean isPacked(String planTopologyName) {
+        return planToSharedTopology.containsKey(planTopologyName);
+    }
+
+    /**
+     * @return a snapshot of the execution plans of the shared topology, or null if it has no plans anymore
+     */
+    public synchronized SharedTopologyInfoHolder getSharedTopology(String sharedTopologyName) {
+        SharedTopologyInfoHolder sharedTopology = sharedTopologies.get(sharedTopologyName);
+        return sharedTopology != null ? sharedTopology.copy() : null;
+    }
+
+    private static boolean isOfTenant(SharedTopologyInfoHolder sharedTopology, int tenantId) {
+        for (SharedTopologyInfoHolder.PackedPlan plan : sharedTopology.getPlans()) {
+            if (plan.getTenantId() != tenantId) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -17,13 +17,14 @@ package org.wso2.carbon.event.processor.core.internal.storm.util;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMergeBolt.MergeFunction;
 import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
 import org.wso2.carbon.event.processor.core.internal.storm.compiler.SiddhiQLStormQuerySplitter;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
-import org.wso2.carbon.event.processor.core.internal.util.EventProcessorUtil;
-import org.wso2.carbon.event.stream.core.exception.EventStreamConfigurationException;
+import org.wso2.carbon.event.processor.core.internal.util.helper.EventProcessorHelper;
+import org.wso2.carbon.event.processor.core.internal.util.helper.StreamDefinitionExtractor;
 import org.wso2.siddhi.core.ExecutionPlanRuntime;
 import org.wso2.siddhi.query.api.ExecutionPlan;
 import org.wso2.siddhi.query.api.annotation.Annotation;
@@ -40,145 +41,205 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class StormQueryPlanBuilder {
 
     /**
      * Gets Siddhi queries and construct storm query plan which can be used to build a storm topology.
-     * query plan essentially comprise of three main elements. Receiver element, event processor element and
-     * publisher element. Each of that will be constructed in separate methods and integrated here.
+     * query plan essentially comprise of three kinds of components. Receiver component, event processor components
+     * and publisher component. Each of that will be constructed in separate methods and integrated here.
      *
      * @param configuration Execution plan configuration
-     * @return
+     * @return query plan with the components, indexed against the streams they publish
      * @throws StormQueryConstructionException
      */
+    public static TopologyInfoHolder constructStormQueryPlan(ExecutionPlanConfiguration configuration,
+                                                             List<String> importStreams, List<String> exportStreams)
+            throws StormQueryConstructionException {
+        TopologyInfoHolder queryPlan = new TopologyInfoHolder();
+        try {
+            ExecutionPlan executionPlan = EventProcessorHelper.getCompiledExecutionPlan(configuration.getExecutionPlan())
+                    .getParsedExecutionPlan();
+
+            boolean isHybrid = isHybrid(executionPlan.getAnnotations());
+            queryPlan.addComponent(constructReceiverComponent(executionPlan, importStreams));
+            for (ComponentInfoHolder processorComponent : constructProcessorComponents(configuration.getExecutionPlan(),
+                    executionPlan, exportStreams, isHybrid)) {
+                queryPlan.addComponent(processorComponent);
+            }
+            queryPlan.addComponent(constructPublisherComponent(executionPlan, exportStreams));
+            queryPlan.indexComponents();
+            if (isHybrid) {
+                LocalExecutionAnalyzer.retainEdgeComponents(queryPlan);
+            }
+
+            StormQueryPlanValidator.validateQueryPlan(queryPlan);
+        } catch (SiddhiParserException e) {
+            throw new StormQueryConstructionException("Provided Siddhi query contains errors", e);
+        }
+        return queryPlan;
+    }
+
+    /**
+     * Constructs the storm query plan and exports it as XML. Used for debugging and testing, the topology is
+     * constructed from the query plan returned by {@link #constructStormQueryPlan}.
+     */
     public static Document constructStormQueryPlanXML(ExecutionPlanConfiguration configuration,
                                                       List<String> importStreams, List<String> exportStreams)
             throws StormQueryConstructionException {
+        return toXML(constructStormQueryPlan(configuration, importStreams, exportStreams));
+    }
+
+    /**
+     * Exports the query plan as XML.
+     *
+     * @param queryPlan query plan returned by {@link #constructStormQueryPlan}
+     * @return XML document with event-receiver, event-processor and event-publisher elements
+     * @throws StormQueryConstructionException
+     */
+    public static Document toXML(TopologyInfoHolder queryPlan) throws StormQueryConstructionException {
         Document document;
         try {
             DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
             DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
             document = documentBuilder.newDocument();
-            Element rootElement = document.createElement(EventProcessorConstants.STORM_QUERY_PLAN);
-            document.appendChild(rootElement);
-
-            Element receiverElement;
-            List<Element> processorElements;
-            Element publisherElement;
-
-            receiverElement = constructReceiverElement(document, configuration.getExecutionPlan(), importStreams);
-            publisherElement = constructPublisherElement(document, configuration.getExecutionPlan(), exportStreams);
-            processorElements = constructProcessorElement(document, configuration.getExecutionPlan(), importStreams,
-                    exportStreams);
-
-            rootElement.appendChild(receiverElement);
-            for (Element processorElement : processorElements) {
-                rootElement.appendChild(processorElement);
-            }
-            rootElement.appendChild(publisherElement);
-
-            StormQueryPlanValidator.validateQueryPlan(document);
         } catch (ParserConfigurationException e) {
             throw new StormQueryConstructionException("Error when creating storm query configuration.", e);
-        } catch (EventStreamConfigurationException e) {
-            throw new StormQueryConstructionException("Error when retrieving stream definitions in order to create storm " +
-                    "query configuration", e);
-        } catch (SiddhiParserException e) {
-            throw new StormQueryConstructionException("Provided Siddhi query contains errors", e);
+        }
+        Element rootElement = document.createElement(EventProcessorConstants.STORM_QUERY_PLAN);
+        document.appendChild(rootElement);
+
+        for (ComponentInfoHolder component : queryPlan.getComponents()) {
+            Element element;
+            switch (component.getComponentType()) {
+                case EVENT_RECEIVER_SPOUT:
+                    element = document.createElement(EventProcessorConstants.EVENT_RECEIVER);
+                    setAttributes(element, component);
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.STREAMS, component, true));
+                    break;
+                case SIDDHI_BOLT:
+                    element = document.createElement(EventProcessorConstants.EVENT_PROCESSOR_TAG);
+                    setAttributes(element, component);
+                    element.setAttribute(EventProcessorConstants.ENFORCE_PARALLELISM,
+                            String.valueOf(component.isEnforceParallelism()));
+                    element.setAttribute(EventProcessorConstants.MIN_PARALLEL, String.valueOf(component.getMinParallelism()));
+                    element.setAttribute(EventProcessorConstants.MAX_PARALLEL, String.valueOf(component.getMaxParallelism()));
+                    if (component.isLocal()) {
+                        element.setAttribute(EventProcessorConstants.LOCAL, String.valueOf(true));
+                    }
+                    Element tableDefinitions = document.createElement(EventProcessorConstants.TABLE_DEFINITIONS);
+                    tableDefinitions.setTextContent(component.getTableDefinitions());
+                    element.appendChild(tableDefinitions);
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.INPUT_STREAMS, component, true));
+                    Element queries = document.createElement(EventProcessorConstants.QUERIES);
+                    queries.setTextContent(component.getQuery());
+                    element.appendChild(queries);
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.OUTPUT_STREAMS, component, false));
+                    break;
+                case PARTIAL_AGGREGATE_MERGE_BOLT:
+                    element = document.createElement(EventProcessorConstants.EVENT_MERGER);
+                    setAttributes(element, component);
+                    element.setAttribute(EventProcessorConstants.MERGE_FUNCTIONS,
+                            Arrays.toString(component.getMergeFunctions()));
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.INPUT_STREAMS, component, true));
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.OUTPUT_STREAMS, component, false));
+                    break;
+                default:
+                    element = document.createElement(EventProcessorConstants.EVENT_PUBLISHER);
+                    setAttributes(element, component);
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.INPUT_STREAMS, component, true));
+                    element.appendChild(getStreamsElement(document, EventProcessorConstants.OUTPUT_STREAMS, component, false));
+            }
+            rootElement.appendChild(element);
         }
         return document;
     }
 
     /**
-     * Create receiver element. Assume that imported streams contains all the receiver elements.
+     * Create receiver component. Assume that imported streams contains all the receiver streams.
      *
-     * @param document
-     * @param queryExpressions
-     * @param importedStreams  @return
-     * @throws EventStreamConfigurationException
+     * @param executionPlan   parsed execution plan
+     * @param importedStreams imported stream definitions
+     * @return receiver component
      */
-    private static Element constructReceiverElement(Document document, String queryExpressions, List<String> importedStreams)
-            throws EventStreamConfigurationException {
-        Element receiverElement = document.createElement(EventProcessorConstants.EVENT_RECEIVER);
-        receiverElement.setAttribute(EventProcessorConstants.NAME, EventProcessorConstants.EVENT_RECEIVER_SPOUT);
-        ExecutionPlan executionPlan = SiddhiCompiler.parse(queryExpressions);
-        receiverElement.setAttribute(EventProcessorConstants.PARALLEL, String.valueOf(getParallelism(executionPlan.getAnnotations(),
-                EventProcessorConstants.RECEIVER_PARALLELISM)));
-        Element streams = document.createElement(EventProcessorConstants.STREAMS);
+    private static ComponentInfoHolder constructReceiverComponent(ExecutionPlan executionPlan, List<String> importedStreams) {
+        ComponentInfoHolder receiver = new ComponentInfoHolder(EventProcessorConstants.EVENT_RECEIVER_SPOUT,
+                ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT);
+        int parallel = getParallelism(executionPlan.getAnnotations(), EventProcessorConstants.RECEIVER_PARALLELISM);
+        setParallelism(receiver, new ParallelismInfoHolder(parallel, false));
         for (String definition : importedStreams) {
-            Element stream = getStreamElement(document, definition);
-            streams.appendChild(stream);
+            //Receiver only passes through incoming events. Therefore, all input streams are output streams
+            receiver.addInputStream(definition);
+            receiver.addOutputStream(definition);
         }
-        receiverElement.appendChild(streams);
-        return receiverElement;
+        return receiver;
     }
 
     /**
-     * Create publisher element. Assumes that exported streams contains all publisher streams.
+     * Create publisher component. Assumes that exported streams contains all publisher streams.
      *
-     * @param exportedStreams
-     * @return
-     * @throws EventStreamConfigurationException
+     * @param executionPlan   parsed execution plan
+     * @param exportedStreams exported stream definitions
+     * @return publisher component
      */
-    private static Element constructPublisherElement(Document document, String queryExpressions, List<String> exportedStreams)
-            throws EventStreamConfigurationException {
-        Element publisherElement = document.createElement(EventProcessorConstants.EVENT_PUBLISHER);
-        Element publisherInputStream = document.createElement(EventProcessorConstants.INPUT_STREAMS);
-        Element publisherOutputStream = document.createElement(EventProcessorConstants.OUTPUT_STREAMS);
-        publisherElement.setAttribute(EventProcessorConstants.NAME, EventProcessorConstants.EVENT_PUBLISHER_BOLT);
-        ExecutionPlan executionPlan = SiddhiCompiler.parse(queryExpressions);
-        publisherElement.setAttribute(EventProcessorConstants.PARALLEL, String.valueOf(getParallelism(executionPlan.getAnnotations(),
-                EventProcessorConstants.PUBLISHER_PARALLELISM)));
+    private static ComponentInfoHolder constructPublisherComponent(ExecutionPlan executionPlan, List<String> exportedStreams) {
+        ComponentInfoHolder publisher = new ComponentInfoHolder(EventProcessorConstants.EVENT_PUBLISHER_BOLT,
+                ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT);
+        int parallel = getParallelism(executionPlan.getAnnotations(), EventProcessorConstants.PUBLISHER_PARALLELISM);
+        setParallelism(publisher, new ParallelismInfoHolder(parallel, false));
         for (String definition : exportedStreams) {
-            Element stream = getStreamElement(document, definition);
-            publisherOutputStream.appendChild(stream);
-            Element clonedStream = (Element) stream.cloneNode(true);
-            publisherInputStream.appendChild(clonedStream);
+            publisher.addInputStream(definition);
+            publisher.addOutputStream(definition);
         }
-        publisherElement.appendChild(publisherInputStream);
-        publisherElement.appendChild(publisherOutputStream);
-        return publisherElement;
+        return publisher;
     }
 
     /**
-     * Construct and return a list of event-processor elements. Method can handle even if there are definitions
+     * Construct and return a list of event processor components. Method can handle even if there are definitions
      * in the query string. queryList is used to get the map between query object and query string.
      *
-     * @param document
      * @param queryExpressions user provided query string
+     * @param executionPlan    parsed execution plan
+     * @param isHybrid         whether cheap execution groups can be marked to run on the CEP workers
      * @return
      */
-    private static List<Element> constructProcessorElement(Document document, String queryExpressions,
-                                                           List<String> importedStreams, List<String> exportedStreams)
+    private static List<ComponentInfoHolder> constructProcessorComponents(String queryExpressions,
+                                                                          ExecutionPlan executionPlan,
+                                                                          List<String> exportedStreams,
+                                                                          boolean isHybrid)
             throws SiddhiParserException, StormQueryConstructionException {
 
-        ExecutionPlanRuntime executionPlanRuntime = EventProcessorValueHolder.getSiddhiManager().createExecutionPlanRuntime(queryExpressions);
-        Map<String, AbstractDefinition> streamDefinitionMap = executionPlanRuntime.getStreamDefinitionMap();
-        executionPlanRuntime.shutdown();
+        Map<String, AbstractDefinition> streamDefinitionMap = StreamDefinitionExtractor.extract(executionPlan);
+        if (streamDefinitionMap == null) {
+            // Schema of some query output streams can only be resolved by the Siddhi runtime.
+            ExecutionPlanRuntime executionPlanRuntime = EventProcessorValueHolder.getSiddhiManager().createExecutionPlanRuntime(executionPlan);
+            streamDefinitionMap = executionPlanRuntime.getStreamDefinitionMap();
+            executionPlanRuntime.shutdown();
+        }
 
-        List<Element> processorElementList = new ArrayList<Element>();
+        List<ComponentInfoHolder> processorComponents = new ArrayList<ComponentInfoHolder>();
         List<String> stringQueryList = SiddhiQLStormQuerySplitter.split(queryExpressions);
         List<String> eventTableDefinitionList = SiddhiQLStormQuerySplitter.getEventTableList(queryExpressions);
-        ExecutionPlan executionPlan = SiddhiCompiler.parse(queryExpressions);
         List<ExecutionElement> executionElements = executionPlan.getExecutionElementList();
         Set<String> eventTableIdSet = executionPlan.getTableDefinitionMap().keySet();
         Map<String, QueryGroupInfoHolder> groupIdToQueryMap = getGroupIdToQueryMap(eventTableIdSet, executionElements,
-                stringQueryList, exportedStreams);
+                stringQueryList, new ArrayList<String>(exportedStreams));
 
-        for (Map.Entry entry : groupIdToQueryMap.entrySet()) {
-            String name = (String) entry.getKey();
-            QueryGroupInfoHolder infoHolder = (QueryGroupInfoHolder) entry.getValue();
-            ParallelismInfoHolder holder = getParallelismForGroup((String) entry.getKey(),
-                    infoHolder.getExecutionElements());
-            Element processor = document.createElement(EventProcessorConstants.EVENT_PROCESSOR_TAG);
-            setAttributes(processor, name, holder);
+        for (Map.Entry<String, QueryGroupInfoHolder> entry : groupIdToQueryMap.entrySet()) {
+            String name = entry.getKey();
+            QueryGroupInfoHolder infoHolder = entry.getValue();
+            ParallelismInfoHolder holder = getParallelismForGroup(name, infoHolder.getExecutionElements());
+            validateName(name);
+            ComponentInfoHolder processor = new ComponentInfoHolder(name, ComponentInfoHolder.ComponentType.SIDDHI_BOLT);
+            setParallelism(processor, holder);
+            processor.setLocal(isHybrid && LocalExecutionAnalyzer.isLocallyExecutable(infoHolder, eventTableIdSet));
 
             //tables
-            Element tableDefinitions = document.createElement(EventProcessorConstants.TABLE_DEFINITIONS);
             List<String> querySpecificEventTableDefinitionList = new ArrayList<>();
             List<String> querySpecificEventTableIdList = new ArrayList<>();
-            String stringQueries = getQueryString(((QueryGroupInfoHolder) entry.getValue()).getStringQueries());
+            String stringQueries = getQueryString(infoHolder.getStringQueries());
             for (String evenTableId : eventTableIdSet) {
                 if (stringQueries.contains(evenTableId)) {
                     for (String evenTableDefinition : eventTableDefinitionList) {
@@ -189,48 +250,100 @@ public class StormQueryPlanBuilder {
                     }
                 }
             }
-            String stringTableDefinitions = getEventTableDefinitionString(querySpecificEventTableDefinitionList);
-            tableDefinitions.setTextContent(stringTableDefinitions);
-            processor.appendChild(tableDefinitions);
+            processor.setTableDefinitions(getEventTableDefinitionString(querySpecificEventTableDefinitionList));
 
             //streams
             List<String> inputDefinitionIds = new ArrayList<String>(infoHolder.getInputDefinitionIds());
             inputDefinitionIds.removeAll(querySpecificEventTableIdList);
-            Element inputStream = getProcessorInputStream(document, inputDefinitionIds, streamDefinitionMap, infoHolder.getPartitionFieldMap());
-            processor.appendChild(inputStream);
+            addProcessorInputStreams(processor, inputDefinitionIds, streamDefinitionMap, infoHolder.getPartitionFieldMap());
 
             //queries
-            Element queries = document.createElement(EventProcessorConstants.QUERIES);
-            queries.setTextContent(stringQueries);
-            processor.appendChild(queries);
-            Element outputStream = getProcessorOutputStream(document, new ArrayList<String>(((QueryGroupInfoHolder)
-                    entry.getValue()).getOutputDefinitionIds()), streamDefinitionMap);
-            processor.appendChild(outputStream);
-            processorElementList.add(processor);
+            processor.addSiddhiQuery(stringQueries);
+            for (String streamId : infoHolder.getOutputDefinitionIds()) {
+                processor.addOutputStream((StreamDefinition) streamDefinitionMap.get(streamId));
+            }
+            processorComponents.add(processor);
+
+            //hot keys of aggregations which can be merged are split across two tasks
+            if (processor.getNumTasks() > 1 && infoHolder.getOutputDefinitionIds().size() == 1) {
+                MergeFunction[] mergeFunctions = PartialAggregationAnalyzer.getMergeFunctions(infoHolder,
+                        infoHolder.getPartitionFieldMap());
+                if (mergeFunctions != null && emitExpiredPartialAggregates(processor)) {
+                    processorComponents.add(constructMergerComponent(processor, mergeFunctions));
+                }
+            }
         }
-        return processorElementList;
+        return processorComponents;
     }
 
     /**
-     * Method to add attributes to processor element
+     * Makes the query of the processor insert its expired events too, so that the merger gets the partial aggregates
+     * of the tasks whose events expired from their windows.
      *
-     * @param processor
-     * @param name
-     * @param holder
+     * @param processor processor whose only query inserts the current events into its only output stream
+     * @return false if the output of the query could not be found, hence was not changed
      */
-    private static void setAttributes(Element processor, String name, ParallelismInfoHolder holder) throws
-            StormQueryConstructionException {
+    private static boolean emitExpiredPartialAggregates(ComponentInfoHolder processor) {
+        String streamId = processor.getOutputStreamIds()[0];
+        Matcher matcher = Pattern.compile("(?i)\\binsert\\s+(current\\s+events\\s+)?into(\\s+" +
+                Pattern.quote(streamId) + "\\s*;)").matcher(processor.getQuery());
+        if (!matcher.find()) {
+            return false;
+        }
+        processor.addSiddhiQuery(matcher.replaceFirst("insert all events into$2"));
+        return true;
+    }
+
+    /**
+     * Create the component which merges the partial aggregates emitted by the tasks of the processor, and marks the
+     * output stream of the processor as partial.
+     *
+     * @param processor      processor whose only output stream can be merged
+     * @param mergeFunctions merge function of each attribute of the output stream
+     * @return merger component
+     */
+    private static ComponentInfoHolder constructMergerComponent(ComponentInfoHolder processor,
+                                                                MergeFunction[] mergeFunctions) {
+        String streamId = processor.getOutputStreamIds()[0];
+        StreamDefinition streamDefinition = processor.getOutputStreamDefinition(streamId);
+        String keyAttribute = streamDefinition.getAttributeNameArray()[Arrays.asList(mergeFunctions).indexOf(MergeFunction.KEY)];
+
+        ComponentInfoHolder merger = new ComponentInfoHolder(processor.getComponentName() +
+                EventProcessorConstants.MERGER_SUFFIX, ComponentInfoHolder.ComponentType.PARTIAL_AGGREGATE_MERGE_BOLT);
+        setParallelism(merger, new ParallelismInfoHolder(processor.getParallelism(), false));
+        merger.addInputStream(streamDefinition);
+        merger.addStreamPartitioningField(streamId, keyAttribute);
+        merger.addOutputStream(streamDefinition);
+        merger.setMergeFunctions(mergeFunctions);
+
+        processor.setHotKeySplitting(true);
+        processor.addPartialOutputStream(streamId);
+        return merger;
+    }
 
+    /**
+     * Storm UI gives an error when trying to show information of bolts which contains spaces.
+     */
+    private static void validateName(String name) throws StormQueryConstructionException {
         if (name.matches(".*\\s+.*")) {
-            // Storm UI gives an error when trying to show information of bolts which contains spaces.
             throw new StormQueryConstructionException("Query name '" + name + "' is not valid, it must not contain spaces.");
         }
+    }
+
+    private static void setParallelism(ComponentInfoHolder component, ParallelismInfoHolder holder) {
+        component.setParallelism(holder.getParallelism());
+        component.setParallelismBounds(holder.getMinParallelism(), holder.getMaxParallelism());
+        // Creating tasks up to the max parallelism, so that the component can later be scaled up by rebalancing.
+        component.setNumTasks(holder.getMaxParallelism());
+        component.setEnforceParallelism(holder.getIsEnforced());
+    }
 
-        String parallel = String.valueOf(holder.getParallelism());
-        Boolean enforceParallelism = holder.getIsEnforced();
-        processor.setAttribute(EventProcessorConstants.NAME, name);
-        processor.setAttribute(EventProcessorConstants.PARALLEL, parallel);
-        processor.setAttribute(EventProcessorConstants.ENFORCE_PARALLELISM, String.valueOf(enforceParallelism));
+    /**
+     * Method to add attributes to a component element of the XML export
+     */
+    private static void setAttributes(Element element, ComponentInfoHolder component) {
+        element.setAttribute(EventProcessorConstants.NAME, component.getComponentName());
+        element.setAttribute(EventProcessorConstants.PARALLEL, String.valueOf(component.getParallelism()));
     }
 
     /**
@@ -257,15 +370,22 @@ public class StormQueryPlanBuilder {
 
             if (executionElements.get(i) instanceof Query) {
                 Query query = (Query) executionElements.get(i);
-                Boolean enforceParallelism = validateParallelism(query, parallel, stringQueryList.get(i));
+                Map<String, String> inferredPartitionFields = PartitionKeyInferrer.inferPartitionFields(query,
+                        eventTableIdSet);
+                Boolean enforceParallelism = validateParallelism(query, parallel, stringQueryList.get(i),
+                        inferredPartitionFields);
+                ParallelismInfoHolder parallelismInfoHolder = getParallelismInfo(query.getAnnotations(), parallel,
+                        enforceParallelism, stringQueryList.get(i));
+                ExecutionElementInfoHolder elementInfoHolder = new ExecutionElementInfoHolder(query, parallelismInfoHolder);
+                elementInfoHolder.setInferredPartitionFields(inferredPartitionFields);
                 QueryGroupInfoHolder infoHolder = groupIdToQueryMap.get(groupId);
                 if (infoHolder != null) {
-                    infoHolder.addExecutionElement(new ExecutionElementInfoHolder(query, parallel, enforceParallelism));
+                    infoHolder.addExecutionElement(elementInfoHolder);
                     infoHolder.addQueryString(stringQueryList.get(i));
                 } else {
                     infoHolder = new QueryGroupInfoHolder(groupId);
                     infoHolder.addQueryString(stringQueryList.get(i));
-                    infoHolder.addExecutionElement(new ExecutionElementInfoHolder(query, parallel, enforceParallelism));
+                    infoHolder.addExecutionElement(elementInfoHolder);
                     groupIdToQueryMap.put(groupId, infoHolder);
                 }
                 infoHolder.getOutputDefinitionIds().removeAll(eventTableIdSet);
@@ -273,7 +393,7 @@ public class StormQueryPlanBuilder {
             } else {
                 Partition partition = (Partition) executionElements.get(i);
                 for (Query query : partition.getQueryList()) {
-                    validateParallelism(query, -1, stringQueryList.get(i));
+                    validateParallelism(query, -1, stringQueryList.get(i), null);
                 }
                 QueryGroupInfoHolder infoHolder = groupIdToQueryMap.get(groupId);
                 if (infoHolder != null) {
@@ -281,13 +401,16 @@ public class StormQueryPlanBuilder {
                             "Partition or execute group of same name has been defined earlier");
                 } else {
                     infoHolder = new QueryGroupInfoHolder(groupId);
-                    infoHolder.addExecutionElement(new ExecutionElementInfoHolder(partition, parallel, false));
+                    infoHolder.addExecutionElement(new ExecutionElementInfoHolder(partition,
+                            getParallelismInfo(partition.getAnnotations(), parallel, false, stringQueryList.get(i))));
                     infoHolder.addQueryString(stringQueryList.get(i));
                     groupIdToQueryMap.put(groupId, infoHolder);
                 }
             }
         }
 
+        setInferredPartitionFields(groupIdToQueryMap);
+
         exportedStreams.removeAll(eventTableIdSet);
         List<String> exportedStreamIds = new ArrayList<String>(exportedStreams.size());
         for (String definitionString : exportedStreams) {
@@ -299,21 +422,27 @@ public class StormQueryPlanBuilder {
     }
 
     /**
-     * Queries like window and joins can not operate in parallel since they are stateful queries. So we are
-     * validating parallelism of those stateful queries.
+     * Queries like window and joins can not operate in parallel since they are stateful queries, unless they can be
+     * partitioned on the keys inferred from their group by clause or join condition. So we are validating parallelism
+     * of those stateful queries.
      *
-     * @param query       query to be validated
-     * @param parallel    user defined parallelism hint
+     * @param query                   query to be validated
+     * @param parallel                user defined parallelism hint
      * @param queryString
+     * @param inferredPartitionFields partitioning attributes inferred from the query, null if none
      * @throws StormQueryConstructionException
      */
-    private static Boolean validateParallelism(Query query, int parallel,
-                                               String queryString) throws StormQueryConstructionException {
+    private static Boolean validateParallelism(Query query, int parallel, String queryString,
+                                               Map<String, String> inferredPartitionFields)
+            throws StormQueryConstructionException {
         if (parallel != -1) {    //if not a partition
-            if (!(query.getInputStream() instanceof BasicSingleInputStream)) {      //if window/join/pattern query
+            if (inferredPartitionFields != null) {          //if partitioned on group by or join attributes
+                return false;
+            } else if (!(query.getInputStream() instanceof BasicSingleInputStream)) {      //if window/join/pattern query
                 if (parallel > 1) {
                     throw new StormQueryConstructionException("Error in deploying query: " + queryString + " Parallelism has " +
-                            "to be 1 for window, join and pattern queries. Partitioning can be used to facilitate such scenarios");
+                            "to be 1 for window, join and pattern queries, unless they are grouped by or joined on " +
+                            "an attribute with sliding time windows. Partitioning can be used to facilitate such scenarios");
                 } else {
                     return true;
                 }
@@ -332,6 +461,36 @@ public class StormQueryPlanBuilder {
         }
     }
 
+    /**
+     * Partitions query groups of a single query on the keys inferred from the query. Keys are not inferred for
+     * execution groups of several queries, as events of the streams flowing between the queries of the group are not
+     * partitioned. Such groups can only run in parallel when all of their queries are stateless.
+     *
+     * @param groupIdToQueryMap query groups
+     * @throws StormQueryConstructionException
+     */
+    private static void setInferredPartitionFields(Map<String, QueryGroupInfoHolder> groupIdToQueryMap)
+            throws StormQueryConstructionException {
+        for (QueryGroupInfoHolder holder : groupIdToQueryMap.values()) {
+            List<ExecutionElementInfoHolder> elements = holder.getExecutionElements();
+            if (elements.size() == 1) {
+                if (elements.get(0).getInferredPartitionFields() != null) {
+                    holder.setPartitionFieldMap(elements.get(0).getInferredPartitionFields());
+                }
+                continue;
+            }
+            for (int i = 0; i < elements.size(); i++) {
+                ExecutionElementInfoHolder element = elements.get(i);
+                if (element.getInferredPartitionFields() != null && element.getParallelismInfoHolder().getParallelism() > 1) {
+                    throw new StormQueryConstructionException("Error in deploying query: " + holder.getStringQueries().get(i)
+                            + " Parallelism has to be 1 for group by, window, join and pattern queries of execution group "
+                            + holder.getGroupId() + ". Partition keys are only inferred for queries which are not in an" +
+                            " execution group.");
+                }
+            }
+        }
+    }
+
     /**
      * Remove output streams which are only inner streams.
      *
@@ -418,6 +577,60 @@ public class StormQueryPlanBuilder {
         return parallelism;
     }
 
+    /**
+     * Whether the plan is annotated with {@code @Plan:dist(hybrid='true')}
+     */
+    private static boolean isHybrid(List<Annotation> annotations) {
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                if (annotation.getName().equals(EventProcessorConstants.DIST) &&
+                        annotation.getElement(EventProcessorConstants.HYBRID) != null) {
+                    return Boolean.parseBoolean(annotation.getElement(EventProcessorConstants.HYBRID));
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the minParallel and maxParallel hints which bounds the autoscaling of the execution element. Parallelism
+     * of enforced (i.e. window, join and pattern) queries cannot be scaled.
+     *
+     * @param annotations annotations of the execution element
+     * @param parallel    parallelism of the execution element
+     * @param isEnforced  whether the parallelism is enforced
+     * @param queryString query string used in error messages
+     * @return parallelism info of the execution element
+     * @throws StormQueryConstructionException
+     */
+    private static ParallelismInfoHolder getParallelismInfo(List<Annotation> annotations, int parallel,
+                                                            Boolean isEnforced, String queryString)
+            throws StormQueryConstructionException {
+        int minParallel = parallel;
+        int maxParallel = parallel;
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                if (annotation.getName().equals(EventProcessorConstants.DIST)) {
+                    if (annotation.getElement(EventProcessorConstants.MIN_PARALLEL) != null) {
+                        minParallel = Integer.parseInt(annotation.getElement(EventProcessorConstants.MIN_PARALLEL));
+                    }
+                    if (annotation.getElement(EventProcessorConstants.MAX_PARALLEL) != null) {
+                        maxParallel = Integer.parseInt(annotation.getElement(EventProcessorConstants.MAX_PARALLEL));
+                    }
+                }
+            }
+        }
+        if (isEnforced && (minParallel != parallel || maxParallel != parallel)) {
+            throw new StormQueryConstructionException("Error in deploying query: " + queryString + ". Parallelism of " +
+                    "window, join and pattern queries cannot be scaled, remove minParallel and maxParallel hints.");
+        }
+        if (minParallel < 1 || minParallel > parallel || maxParallel < parallel) {
+            throw new StormQueryConstructionException("Error in deploying query: " + queryString + ". Parallelism " +
+                    "hints should satisfy 1 <= minParallel <= parallel <= maxParallel.");
+        }
+        return new ParallelismInfoHolder(parallel, isEnforced, minParallel, maxParallel);
+    }
+
     /**
      * Traverse the annotation and returns the execute group id
      *
@@ -467,60 +680,78 @@ public class StormQueryPlanBuilder {
             executionElementHolders) throws StormQueryConstructionException {
         Boolean isEnforced = false;
         Set<Integer> parallelism = new HashSet<Integer>();
+        int minParallelism = 1;
+        int maxParallelism = Integer.MAX_VALUE;
         for (ExecutionElementInfoHolder element : executionElementHolders) {
             parallelism.add(element.getParallelismInfoHolder().getParallelism());
             if (element.getParallelismInfoHolder().getIsEnforced()) {
                 isEnforced = true;
             }
+            minParallelism = Math.max(minParallelism, element.getParallelismInfoHolder().getMinParallelism());
+            maxParallelism = Math.min(maxParallelism, element.getParallelismInfoHolder().getMaxParallelism());
         }
         if (parallelism.size() == 1) {
-            return new ParallelismInfoHolder(parallelism.iterator().next(), isEnforced);
+            int parallel = parallelism.iterator().next();
+            if (isEnforced) {
+                // A group containing a stateful query cannot be scaled as a whole.
+                minParallelism = parallel;
+                maxParallelism = parallel;
+            }
+            return new ParallelismInfoHolder(parallel, isEnforced, minParallelism, maxParallelism);
         } else {
             throw new StormQueryConstructionException("Parallelism for each query in a query group should be same. " +
                     "Multiple parallel values encountered in query group " + groupId);
         }
     }
 
+
     /**
-     * Create output stream element for event processor element
+     * Add input streams of event processor component, validating the partitioning attributes
      *
      * @param streamIds
      * @param streamDefinitionMap
-     * @return
+     * @param partitionFieldMap
      */
-    private static Element getProcessorOutputStream(Document document, List<String> streamIds,
-                                                    Map<String, AbstractDefinition> streamDefinitionMap) {
-        Element outputStream = document.createElement(EventProcessorConstants.OUTPUT_STREAMS);
+    private static void addProcessorInputStreams(ComponentInfoHolder processor, List<String> streamIds,
+                                                 Map<String, AbstractDefinition> streamDefinitionMap,
+                                                 Map<String, String> partitionFieldMap)
+            throws StormQueryConstructionException {
         for (String streamId : streamIds) {
-            Element stream = getStreamElement(document, EventProcessorUtil.getDefinitionString(streamDefinitionMap
-                    .get(streamId)));
-            outputStream.appendChild(stream);
+            StreamDefinition streamDefinition = (StreamDefinition) streamDefinitionMap.get(streamId);
+            processor.addInputStream(streamDefinition);
+            if (partitionFieldMap != null) {
+                String attribute = partitionFieldMap.get(streamId);
+                if (attribute != null) {
+                    if (!Arrays.asList(streamDefinition.getAttributeNameArray()).contains(attribute)) {
+                        throw new StormQueryConstructionException("All input streams of the partition should have the " +
+                                "partitioning attribute.");
+                    }
+                    processor.addStreamPartitioningField(streamId, attribute);
+                }
+            }
         }
-        return outputStream;
     }
 
     /**
-     * Create input stream element for event processor element
-     *
-     * @param streamIds
-     * @param streamDefinitionMap
-     * @param partitionFieldMap
+     * Create streams element of a component element of the XML export
      */
-    private static Element getProcessorInputStream(Document document, List<String> streamIds,
-                                                   Map<String, AbstractDefinition> streamDefinitionMap, Map<String,
-            String> partitionFieldMap) {
-        Element inputStream = document.createElement(EventProcessorConstants.INPUT_STREAMS);
-        for (String streamId : streamIds) {
-            Element stream = getStreamElement(document, EventProcessorUtil.getDefinitionString(streamDefinitionMap.get(streamId)));
-            if (partitionFieldMap != null) {
-                String attribute = partitionFieldMap.get(streamId);
+    private static Element getStreamsElement(Document document, String elementName, ComponentInfoHolder component,
+                                             boolean isInput) {
+        Element streams = document.createElement(elementName);
+        String[] streamIds = isInput ? component.getInputStreamIds() : component.getOutputStreamIds();
+        List<String> definitions = isInput ? component.getInputStreamDefinitionStrings() :
+                component.getOutputStreamDefinitionStrings();
+        for (int i = 0; i < streamIds.length; i++) {
+            Element stream = getStreamElement(document, definitions.get(i));
+            if (isInput) {
+                String attribute = component.getPartionenedField(streamIds[i]);
                 if (attribute != null) {
                     stream.setAttribute(EventProcessorConstants.PARTITION, attribute);
                 }
             }
-            inputStream.appendChild(stream);
+            streams.appendChild(stream);
         }
-        return inputStream;
+        return streams;
     }
 
     /**
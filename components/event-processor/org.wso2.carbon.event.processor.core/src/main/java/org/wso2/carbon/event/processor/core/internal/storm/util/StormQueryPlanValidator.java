@@ -1,12 +1,8 @@
 package org.wso2.carbon.event.processor.core.internal.storm.util;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
-import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 
-import javax.xml.xpath.*;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -27,112 +23,38 @@ import java.util.Set;
  */
 public class StormQueryPlanValidator {
 
-    private static XPathFactory xPathfactory = XPathFactory.newInstance();
-
     /**
      * Validate the query plan
-     * @param queryPlan XML document of query plan
+     * @param queryPlan query plan constructed by the StormQueryPlanBuilder
      * @throws StormQueryConstructionException
      */
-    public static void validateQueryPlan(Document queryPlan) throws StormQueryConstructionException {
+    public static void validateQueryPlan(TopologyInfoHolder queryPlan) throws StormQueryConstructionException {
        validatePublishingStreams(queryPlan);
     }
 
     /**
      * Validates input streams of event-publisher. Each input stream of event-publisher MUST must be emitted by at least one spout or bolt.
-     * Therefore, each input stream MUST be listed under output-streams of at least one event-processor or under event-receiver
-     * @param queryPlan XML document of query plan
+     * Therefore, each input stream MUST be an output stream of at least one event-processor or of the event-receiver
+     * @param queryPlan query plan constructed by the StormQueryPlanBuilder
      * @throws StormQueryConstructionException
      */
-    private static void validatePublishingStreams(Document queryPlan) throws StormQueryConstructionException {
-        try {
-            Set<String> allEmittedStreams = new HashSet<>();
-            allEmittedStreams.addAll(extractStreamIds(getEventProcessorOutputStreams(queryPlan)));
-            allEmittedStreams.addAll(extractStreamIds(getEventReceiverStreams(queryPlan)));
-
-            for (String publisherInputStream : extractStreamIds(getEventPublisherInputStreams(queryPlan))){
-
-                if (!allEmittedStreams.contains(publisherInputStream)){
-                    throw new StormQueryConstructionException("Event publisher bolt(s) trying to consume stream '" + publisherInputStream + "', but it's " +
-                            "not produced by any bolt/spout.");
-                }
+    private static void validatePublishingStreams(TopologyInfoHolder queryPlan) throws StormQueryConstructionException {
+        Set<String> allEmittedStreams = new HashSet<>();
+        for (ComponentInfoHolder component : queryPlan.getComponents()) {
+            if (component.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT) {
+                allEmittedStreams.addAll(Arrays.asList(component.getOutputStreamIds()));
             }
-        } catch (XPathExpressionException e) {
-            throw new StormQueryConstructionException("Failed to validate query plan. Error :" + e.getMessage());
-        }
-    }
-
-    /**
-     *  Fetch stream definitions of event-receiver element
-     */
-    private static Set<String> getEventReceiverStreams(Document queryPlan) throws XPathExpressionException {
-        XPath xpath = xPathfactory.newXPath();
-        String xPathExpression = "/" + EventProcessorConstants.STORM_QUERY_PLAN + "/" + EventProcessorConstants.EVENT_RECEIVER
-                + "/" + EventProcessorConstants.STREAMS + "/" + EventProcessorConstants.STREAM;
-
-        XPathExpression expr = xpath.compile(xPathExpression);
-        NodeList list = (NodeList) expr.evaluate(queryPlan, XPathConstants.NODESET);
-
-        Set<String> result = new HashSet<>();
-        for (int i = 0; i < list.getLength(); i++){
-            Node node = list.item(i);
-            result.add(node.getTextContent());
         }
 
-        return result;
-    }
-
-    /**
-     *  Fetch all output stream definitions of all event-processor's elements
-     */
-    private static Set<String> getEventProcessorOutputStreams(Document queryPlan) throws XPathExpressionException {
-        XPath xpath = xPathfactory.newXPath();
-        String xPathExpression = "/" + EventProcessorConstants.STORM_QUERY_PLAN + "/" + EventProcessorConstants.EVENT_PROCESSOR_TAG
-                + "/" + EventProcessorConstants.OUTPUT_STREAMS + "/" + EventProcessorConstants.STREAM;
-
-        XPathExpression expr = xpath.compile(xPathExpression);
-        NodeList list = (NodeList) expr.evaluate(queryPlan, XPathConstants.NODESET);
-
-        Set<String> result = new HashSet<>();
-        for (int i = 0; i < list.getLength(); i++){
-            Node node = list.item(i);
-            result.add(node.getTextContent());
-        }
-
-        return result;
-    }
-
-
-    /**
-     *  Fetch input stream definitions of event-publisher element
-     */
-    private static Set<String> getEventPublisherInputStreams(Document queryPlan) throws XPathExpressionException {
-        XPath xpath = xPathfactory.newXPath();
-        String xPathExpression = "/" + EventProcessorConstants.STORM_QUERY_PLAN + "/" + EventProcessorConstants.EVENT_PUBLISHER
-                + "/" + EventProcessorConstants.INPUT_STREAMS + "/" + EventProcessorConstants.STREAM;
-
-        XPathExpression expr = xpath.compile(xPathExpression);
-        NodeList list = (NodeList) expr.evaluate(queryPlan, XPathConstants.NODESET);
-
-        Set<String> result = new HashSet<>();
-        for (int i = 0; i < list.getLength(); i++){
-            Node node = list.item(i);
-            result.add(node.getTextContent());
-        }
-
-        return result;
-    }
-
-    private static Set<String> extractStreamIds(Set<String> streamDefinitions){
-        Set<String> streamIds = new HashSet<>();
-        for (String streamDefinition : streamDefinitions){
-            streamIds.add(extractStreamId(streamDefinition));
+        for (ComponentInfoHolder component : queryPlan.getComponents()) {
+            if (component.getComponentType() == ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT) {
+                for (String publisherInputStream : component.getInputStreamIds()) {
+                    if (!allEmittedStreams.contains(publisherInputStream)) {
+                        throw new StormQueryConstructionException("Event publisher bolt(s) trying to consume stream '" + publisherInputStream + "', but it's " +
+                                "not produced by any bolt/spout.");
+                    }
+                }
+            }
         }
-
-        return streamIds;
-    }
-
-    private static String extractStreamId(String streamDefinition){
-        return streamDefinition.split(" ")[2];
     }
 }
@@ -17,151 +17,111 @@ package org.wso2.carbon.event.processor.core.internal.storm.util;
 
 import backtype.storm.topology.BoltDeclarer;
 import backtype.storm.topology.TopologyBuilder;
-import backtype.storm.tuple.Fields;
-import org.apache.axiom.om.OMAttribute;
-import org.apache.axiom.om.OMElement;
-import org.apache.axiom.om.util.AXIOMUtil;
 import org.apache.log4j.Logger;
 import org.wso2.carbon.event.processor.common.storm.component.EventPublisherBolt;
 import org.wso2.carbon.event.processor.common.storm.component.EventReceiverSpout;
+import org.wso2.carbon.event.processor.common.storm.component.PartialAggregateMergeBolt;
 import org.wso2.carbon.event.processor.common.storm.component.SiddhiBolt;
+import org.wso2.carbon.event.processor.common.storm.grouping.SkewAwareFieldsGrouping;
 import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
 import org.wso2.carbon.event.processor.core.internal.storm.status.monitor.StormStatusHolderInitializer;
-import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 import org.wso2.carbon.event.processor.manager.core.config.DistributedConfiguration;
-import org.wso2.siddhi.query.api.definition.StreamDefinition;
-import org.wso2.siddhi.query.compiler.SiddhiCompiler;
-
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLStreamException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
+
 import java.util.List;
 
 /**
- * Reads the execution plan xml file and construct the Storm topology
+ * Constructs the Storm topology from the storm query plan
+ * <p/>
+ * Unpartitioned edges use local or shuffle grouping when the consumer has no more tasks than the publisher, so that
+ * tuples stay within the worker of the publishing executor instead of being serialized to another worker. Both
+ * groupings keep the order of the tuples between a pair of tasks, and neither orders the tuples of different
+ * publishers, so the change does not affect ordering. With more consumer tasks than publisher tasks, the consumer tasks
+ * in workers without a publisher would be left idle, so shuffle grouping is kept.
  */
 public class StormTopologyConstructor {
 
     private static Logger log = Logger.getLogger(StormTopologyConstructor.class);
 
-    public static TopologyBuilder constructTopologyBuilder(String queryPlanString, String executionPlanName, int tenantId,
-                                                           DistributedConfiguration stormDeploymentConfig)
-            throws XMLStreamException, StormQueryConstructionException {
+    /**
+     * Adds the components of the query plan to a topology and connects them together.
+     *
+     * @param topologyInfoHolder query plan constructed by {@link StormQueryPlanBuilder#constructStormQueryPlan}. The
+     *                           storm declarer of each component is set into it.
+     */
+    public static TopologyBuilder constructTopologyBuilder(TopologyInfoHolder topologyInfoHolder, String executionPlanName,
+                                                           int tenantId, DistributedConfiguration stormDeploymentConfig)
+            throws StormQueryConstructionException {
 
-        OMElement queryPlanElement = AXIOMUtil.stringToOM(queryPlanString);
-        TopologyInfoHolder topologyInfoHolder = new TopologyInfoHolder();
         TopologyBuilder builder = new TopologyBuilder();
-
-        /*
-        Receiver section
-         */
-        Iterator<OMElement> iterator = queryPlanElement.getChildrenWithName(new QName("event-receiver"));
-        while (iterator.hasNext()) {
-            OMElement eventReceiverElement = iterator.next();
-            String name = eventReceiverElement.getAttributeValue(new QName("name"));
-            String parallel = eventReceiverElement.getAttributeValue(new QName("parallel"));
-            ComponentInfoHolder componentInfoHolder = new ComponentInfoHolder(name, ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT);
-
-            List<String> streamDefinitions = getStreamDefinitions(eventReceiverElement.getFirstChildWithName(new QName
-                    ("streams")));
-            for (String streamDefinition : streamDefinitions) {
-                //Receiver only passes through incoming events. Therefore, input all input streams are output streams
-                componentInfoHolder.addInputStream(streamDefinition);
-                componentInfoHolder.addOutputStream(streamDefinition);
+        addToTopology(builder, topologyInfoHolder, executionPlanName, tenantId, stormDeploymentConfig);
+        for (ComponentInfoHolder componentInfoHolder : topologyInfoHolder.getComponents()) {
+            if (componentInfoHolder.getComponentType() == ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT) {
+                StormStatusHolderInitializer.initializeStatusHolder(executionPlanName, tenantId,
+                        componentInfoHolder.getParallelism());
             }
-
-            componentInfoHolder.setDeclarer(builder.setSpout(name, new EventReceiverSpout(stormDeploymentConfig,
-                    streamDefinitions, executionPlanName, tenantId, stormDeploymentConfig.getManagementHeartbeatInterval()),
-                    Integer.parseInt(parallel)));
-            topologyInfoHolder.addComponent(componentInfoHolder);
         }
+        return builder;
+    }
 
-        /*
-        Processor Section
-         */
-        iterator = queryPlanElement.getChildrenWithName(new QName("event-processor"));
-        while (iterator.hasNext()) {
-            OMElement eventProcessorElement = iterator.next();
-            String name = eventProcessorElement.getAttributeValue(new QName(EventProcessorConstants.NAME));
-            String parallel = eventProcessorElement.getAttributeValue(new QName(EventProcessorConstants.PARALLEL));
-            String isEnforced = eventProcessorElement.getAttributeValue(new QName(EventProcessorConstants
-                    .ENFORCE_PARALLELISM));
-            ComponentInfoHolder componentInfoHolder = new ComponentInfoHolder(name, ComponentInfoHolder.ComponentType.SIDDHI_BOLT);
-
-            OMElement inputStreamsElement = eventProcessorElement.getFirstChildWithName(new QName("input-streams"));
-            List<String> inputStreamDefinitions = getStreamDefinitions(inputStreamsElement);
-            for (String streamDefinition : inputStreamDefinitions) {
-                componentInfoHolder.addInputStream(streamDefinition);
-            }
-            // Adding partitioning fields of input streams
-            addPartitionFields(inputStreamsElement, componentInfoHolder);
-
-            OMElement queryElement = eventProcessorElement.getFirstChildWithName(new QName("queries"));
-            OMElement tableDefinitionElement = eventProcessorElement.getFirstChildWithName(new QName("table-definitions"));
-            String queryWithEventTable = "";
-            if (tableDefinitionElement != null) {
-                queryWithEventTable = tableDefinitionElement.getText() + queryElement.getText();
-            }
-            componentInfoHolder.addSiddhiQuery(queryWithEventTable);
+    /**
+     * Adds the components of all the execution plans packed into the shared topology to one topology. The components
+     * of each plan are only connected with the components of the same plan. The status holders of the plans are not
+     * reinitialized, as they have been when the plans were submitted.
+     */
+    public static TopologyBuilder constructSharedTopologyBuilder(SharedTopologyInfoHolder sharedTopology,
+                                                                 DistributedConfiguration stormDeploymentConfig)
+            throws StormQueryConstructionException {
 
-            List<String> outputStreamDefinitions = getStreamDefinitions(eventProcessorElement.getFirstChildWithName(new
-                    QName("output-streams")));
-            for (String streamDefinition : outputStreamDefinitions) {
-                componentInfoHolder.addOutputStream(streamDefinition);
-            }
-            BoltDeclarer declarer = builder.setBolt(name, new SiddhiBolt(name, inputStreamDefinitions,
-                    queryWithEventTable, outputStreamDefinitions, executionPlanName, tenantId),
-                    Integer.parseInt(parallel));
-            //enforcing parallelism
-            if (isEnforced.equals("true")) {
-                declarer.setMaxTaskParallelism(Integer.parseInt(parallel));
-            }
-            componentInfoHolder.setDeclarer(declarer);
-            topologyInfoHolder.addComponent(componentInfoHolder);
+        TopologyBuilder builder = new TopologyBuilder();
+        for (SharedTopologyInfoHolder.PackedPlan plan : sharedTopology.getPlans()) {
+            addToTopology(builder, plan.getTopologyInfoHolder(), plan.getExecutionPlanName(), plan.getTenantId(),
+                    stormDeploymentConfig);
         }
+        return builder;
+    }
 
+    private static void addToTopology(TopologyBuilder builder, TopologyInfoHolder topologyInfoHolder,
+                                      String executionPlanName, int tenantId,
+                                      DistributedConfiguration stormDeploymentConfig)
+            throws StormQueryConstructionException {
 
-        /*
-        Publisher Section
-         */
-        iterator = queryPlanElement.getChildrenWithName(new QName("event-publisher"));
-        while (iterator.hasNext()) {
-            OMElement eventProcessorElement = iterator.next();
-            String name = eventProcessorElement.getAttributeValue(new QName("name"));
-            int parallel = Integer.parseInt(eventProcessorElement.getAttributeValue(new QName("parallel")));
-            ComponentInfoHolder componentInfoHolder = new ComponentInfoHolder(name, ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT);
-
-            OMElement inputStreamsElement = eventProcessorElement.getFirstChildWithName(new QName("input-streams"));
-            List<String> inputStreamDefinitions = getStreamDefinitions(inputStreamsElement);
-            for (String streamDefinition : inputStreamDefinitions) {
-                componentInfoHolder.addInputStream(streamDefinition);
-            }
-            // Publisher might also partition the output. Adding partitioning fields of input streams.
-            addPartitionFields(inputStreamsElement, componentInfoHolder);
-
-            OMElement queryElement = eventProcessorElement.getFirstChildWithName(new QName("queries"));
-            OMElement tableDefinitionElement = eventProcessorElement.getFirstChildWithName(new QName("table-definitions"));
-            String query = "";
-            if (tableDefinitionElement != null) {
-                query = tableDefinitionElement.getText();
-            }
-            if (queryElement != null) {
-                query = query + queryElement.getText();
-                componentInfoHolder.addSiddhiQuery(query);
-            }
-
-            List<String> outputStreamDefinitions = getStreamDefinitions(eventProcessorElement.getFirstChildWithName(new
-                    QName("output-streams")));
-            for (String streamDefinition : outputStreamDefinitions) {
-                componentInfoHolder.addOutputStream(streamDefinition);
+        for (ComponentInfoHolder componentInfoHolder : topologyInfoHolder.getComponents()) {
+            String name = componentInfoHolder.getComponentName();
+            int parallel = componentInfoHolder.getParallelism();
+            List<String> inputStreamDefinitions = componentInfoHolder.getInputStreamDefinitionStrings();
+            List<String> outputStreamDefinitions = componentInfoHolder.getOutputStreamDefinitionStrings();
+
+            switch (componentInfoHolder.getComponentType()) {
+                case EVENT_RECEIVER_SPOUT:
+                    componentInfoHolder.setDeclarer(builder.setSpout(name, new EventReceiverSpout(stormDeploymentConfig,
+                            inputStreamDefinitions, executionPlanName, tenantId,
+                            stormDeploymentConfig.getManagementHeartbeatInterval()), parallel));
+                    break;
+                case SIDDHI_BOLT:
+                    String queryWithEventTable = getQuery(componentInfoHolder);
+                    BoltDeclarer declarer = builder.setBolt(name, new SiddhiBolt(name, inputStreamDefinitions,
+                            queryWithEventTable, outputStreamDefinitions, componentInfoHolder.getPartialOutputStreamIds(),
+                            executionPlanName, tenantId), parallel);
+                    //enforcing parallelism
+                    if (componentInfoHolder.isEnforceParallelism()) {
+                        declarer.setMaxTaskParallelism(parallel);
+                    } else if (componentInfoHolder.getNumTasks() > parallel) {
+                        // Creating tasks up to the max parallelism, so that the bolt can later be scaled up by rebalancing.
+                        declarer.setNumTasks(componentInfoHolder.getNumTasks());
+                    }
+                    componentInfoHolder.setDeclarer(declarer);
+                    break;
+                case PARTIAL_AGGREGATE_MERGE_BOLT:
+                    componentInfoHolder.setDeclarer(builder.setBolt(name, new PartialAggregateMergeBolt(name,
+                            outputStreamDefinitions.get(0), componentInfoHolder.getMergeFunctions(), executionPlanName,
+                            tenantId), parallel));
+                    break;
+                case EVENT_PUBLISHER_BOLT:
+                    componentInfoHolder.setDeclarer(builder.setBolt(name, new EventPublisherBolt(stormDeploymentConfig,
+                            inputStreamDefinitions, outputStreamDefinitions, getQuery(componentInfoHolder),
+                            executionPlanName, tenantId), parallel));
+                    break;
             }
-            componentInfoHolder.setDeclarer(builder.setBolt(name, new EventPublisherBolt(stormDeploymentConfig,
-                    inputStreamDefinitions, outputStreamDefinitions, query, executionPlanName, tenantId),
-                    parallel));
-            topologyInfoHolder.addComponent(componentInfoHolder);
-            StormStatusHolderInitializer.initializeStatusHolder(executionPlanName, tenantId, parallel);
         }
 
         topologyInfoHolder.indexComponents();
@@ -181,16 +141,21 @@ public class StormTopologyConstructor {
                 for (String inputStreamId : componentInfoHolder.getInputStreamIds()) {
                     if (topologyInfoHolder.getPublishingComponents(inputStreamId) != null) {
                         for (ComponentInfoHolder pubComponent : topologyInfoHolder.getPublishingComponents(inputStreamId)) {
-
-                            if (pubComponent.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT &&
-                                    !pubComponent.getComponentName().equals(componentInfoHolder.getComponentName())) {
+                            if (isConnected(pubComponent, componentInfoHolder, inputStreamId)) {
                                 String partitionedField = componentInfoHolder.getPartionenedField(inputStreamId);
                                 String groupingType = "ShuffleGrouping";
-                                if (partitionedField == null) {
+                                if (partitionedField == null && isLocalGroupingAllowed(pubComponent, componentInfoHolder)) {
+                                    groupingType = "LocalOrShuffleGrouping";
+                                    boltDeclarer.localOrShuffleGrouping(pubComponent.getComponentName(), inputStreamId);
+                                } else if (partitionedField == null) {
                                     boltDeclarer.shuffleGrouping(pubComponent.getComponentName(), inputStreamId);
                                 } else {
-                                    groupingType = "FieldGrouping";
-                                    boltDeclarer.fieldsGrouping(pubComponent.getComponentName(), inputStreamId, new Fields(partitionedField));
+                                    boolean splitHotKeys = componentInfoHolder.isHotKeySplitting();
+                                    groupingType = splitHotKeys ? "PartialKeyGrouping" : "FieldGrouping";
+                                    boltDeclarer.customGrouping(pubComponent.getComponentName(), inputStreamId,
+                                            new SkewAwareFieldsGrouping(partitionedField, splitHotKeys, "[" + tenantId
+                                                    + ":" + executionPlanName + "] " + pubComponent.getComponentName()
+                                                    + " -> " + componentInfoHolder.getComponentName() + " (" + inputStreamId + ")"));
                                 }
 
                                 if (log.isDebugEnabled()) {
@@ -208,39 +173,28 @@ public class StormTopologyConstructor {
                 }
             }
         }
+    }
 
-        return builder;
+    /**
+     * Whether tuples of an unpartitioned edge can be kept within the worker of the publisher without leaving consumer
+     * tasks idle. Auto scalable consumers are checked against the number of tasks they can be scaled up to.
+     */
+    public static boolean isLocalGroupingAllowed(ComponentInfoHolder publisher, ComponentInfoHolder consumer) {
+        return publisher.getParallelism() >= Math.max(consumer.getParallelism(), consumer.getNumTasks());
     }
 
-    private static List<String> getStreamDefinitions(OMElement streamsElement) {
-        List<String> streamDefinitions = new ArrayList<String>();
-        Iterator<OMElement> streamIterator = streamsElement.getChildrenWithName(new QName("stream"));
-        while (streamIterator.hasNext()) {
-            OMElement streamElement = streamIterator.next();
-            String streamDefinition = streamElement.getText();
-            streamDefinitions.add(streamDefinition);
-        }
-        return streamDefinitions;
+    private static boolean isConnected(ComponentInfoHolder publisher, ComponentInfoHolder consumer, String streamId) {
+        // Partial aggregates are only consumed by the merger, others consume the merged stream.
+        boolean isMerger = consumer.getComponentType() == ComponentInfoHolder.ComponentType.PARTIAL_AGGREGATE_MERGE_BOLT;
+        return publisher.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_PUBLISHER_BOLT &&
+                consumer.getComponentType() != ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT &&
+                !publisher.getComponentName().equals(consumer.getComponentName()) &&
+                publisher.isPartialOutputStream(streamId) == isMerger;
     }
 
-    /**
-     * Adding stream partitioned fields
-     */
-    private static void addPartitionFields(OMElement streamsElement, ComponentInfoHolder componentInfoHolder) throws
-            StormQueryConstructionException {
-        Iterator<OMElement> streamIterator = streamsElement.getChildrenWithName(new QName(EventProcessorConstants.STREAM));
-        while (streamIterator.hasNext()) {
-            OMElement streamElement = streamIterator.next();
-            OMAttribute partitionAttribute = streamElement.getAttribute(new QName("partition"));
-            if (partitionAttribute != null) {
-                StreamDefinition streamDefinition = SiddhiCompiler.parseStreamDefinition(streamElement.getText());
-                if (!Arrays.asList(streamDefinition.getAttributeNameArray()).contains(partitionAttribute
-                        .getAttributeValue())) {
-                    throw new StormQueryConstructionException("All input streams of the partition should have the " +
-                            "partitioning attribute.");
-                }
-                componentInfoHolder.addStreamPartitioningField(streamDefinition.getId(), partitionAttribute.getAttributeValue());
-            }
-        }
+    private static String getQuery(ComponentInfoHolder componentInfoHolder) {
+        String tableDefinitions = componentInfoHolder.getTableDefinitions();
+        String query = componentInfoHolder.getQuery();
+        return (tableDefinitions != null ? tableDefinitions : "") + (query != null ? query : "");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.storm.util;
+
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares a running storm topology with a newly constructed version of the same execution plan and finds out
+ * whether the new version can be applied to the running topology by only rebalancing its executors.
+ */
+public class TopologyDiff {
+
+    private final boolean shapeChanged;
+    private final String shapeChangeReason;
+    private final Map<String, Integer> parallelismChanges;
+
+    private TopologyDiff(boolean shapeChanged, String shapeChangeReason, Map<String, Integer> parallelismChanges) {
+        this.shapeChanged = shapeChanged;
+        this.shapeChangeReason = shapeChangeReason;
+        this.parallelismChanges = parallelismChanges;
+    }
+
+    /**
+     * Diff the two topologies.
+     *
+     * @param deployed topology which is currently running in the storm cluster
+     * @param updated  topology constructed from the edited execution plan
+     * @return the diff. Shape is considered changed if components, streams, groupings or queries differ, or if the
+     * new parallelism of a component cannot be reached within the task count of the running component.
+     */
+    public static TopologyDiff diff(TopologyInfoHolder deployed, TopologyInfoHolder updated) {
+        Set<String> deployedNames = getComponentNames(deployed);
+        Set<String> updatedNames = getComponentNames(updated);
+        if (!deployedNames.equals(updatedNames)) {
+            return shapeChanged("components changed from " + deployedNames + " to " + updatedNames);
+        }
+
+        Map<String, Integer> parallelismChanges = new HashMap<String, Integer>();
+        for (ComponentInfoHolder updatedComponent : updated.getComponents()) {
+            String name = updatedComponent.getComponentName();
+            ComponentInfoHolder deployedComponent = deployed.getComponent(name);
+
+            if (deployedComponent.getComponentType() != updatedComponent.getComponentType()) {
+                return shapeChanged("type of component '" + name + "' changed");
+            }
+            if (deployedComponent.isEnforceParallelism() != updatedComponent.isEnforceParallelism()) {
+                return shapeChanged("parallelism enforcement of component '" + name + "' changed");
+            }
+            if (!isEqual(deployedComponent.getQuery(), updatedComponent.getQuery()) ||
+                    !isEqual(deployedComponent.getTableDefinitions(), updatedComponent.getTableDefinitions())) {
+                return shapeChanged("queries of component '" + name + "' changed");
+            }
+            if (!isStreamsEqual(deployedComponent, updatedComponent, true) ||
+                    !isStreamsEqual(deployedComponent, updatedComponent, false)) {
+                return shapeChanged("streams of component '" + name + "' changed");
+            }
+            for (String streamId : updatedComponent.getInputStreamIds()) {
+                if (!isEqual(deployedComponent.getPartionenedField(streamId),
+                        updatedComponent.getPartionenedField(streamId))) {
+                    return shapeChanged("grouping of stream '" + streamId + "' into component '" + name + "' changed");
+                }
+            }
+
+            int requiredTasks = Math.max(updatedComponent.getParallelism(), updatedComponent.getMaxParallelism());
+            if (requiredTasks > deployedComponent.getNumTasks()) {
+                return shapeChanged("parallelism of component '" + name + "' (" + requiredTasks
+                        + ") exceeds its task count (" + deployedComponent.getNumTasks() + ")");
+            }
+            if (deployedComponent.getParallelism() != updatedComponent.getParallelism()) {
+                parallelismChanges.put(name, updatedComponent.getParallelism());
+            }
+        }
+        return new TopologyDiff(false, null, parallelismChanges);
+    }
+
+    public boolean isShapeChanged() {
+        return shapeChanged;
+    }
+
+    public String getShapeChangeReason() {
+        return shapeChangeReason;
+    }
+
+    /**
+     * @return < component name, new number of executors > of components whose parallelism changed
+     */
+    public Map<String, Integer> getParallelismChanges() {
+        return parallelismChanges;
+    }
+
+    public boolean isUnchanged() {
+        return !shapeChanged && parallelismChanges.isEmpty();
+    }
+
+    private static TopologyDiff shapeChanged(String reason) {
+        return new TopologyDiff(true, reason, new HashMap<String, Integer>());
+    }
+
+    private static Set<String> getComponentNames(TopologyInfoHolder topologyInfoHolder) {
+        Set<String> names = new HashSet<String>();
+        for (ComponentInfoHolder component : topologyInfoHolder.getComponents()) {
+            names.add(component.getComponentName());
+        }
+        return names;
+    }
+
+    private static boolean isStreamsEqual(ComponentInfoHolder deployed, ComponentInfoHolder updated, boolean input) {
+        String[] deployedIds = input ? deployed.getInputStreamIds() : deployed.getOutputStreamIds();
+        String[] updatedIds = input ? updated.getInputStreamIds() : updated.getOutputStreamIds();
+        if (!new HashSet<String>(Arrays.asList(deployedIds)).equals(new HashSet<String>(Arrays.asList(updatedIds)))) {
+            return false;
+        }
+        for (String streamId : updatedIds) {
+            StreamDefinition deployedDefinition = input ? deployed.getInputStreamDefinition(streamId) :
+                    deployed.getOutputStreamDefinition(streamId);
+            StreamDefinition updatedDefinition = input ? updated.getInputStreamDefinition(streamId) :
+                    updated.getOutputStreamDefinition(streamId);
+            if (!isAttributesEqual(deployedDefinition.getAttributeList(), updatedDefinition.getAttributeList())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAttributesEqual(List<Attribute> deployed, List<Attribute> updated) {
+        if (deployed.size() != updated.size()) {
+            return false;
+        }
+        for (int i = 0; i < deployed.size(); i++) {
+            if (!deployed.get(i).getName().equals(updated.get(i).getName()) ||
+                    deployed.get(i).getType() != updated.get(i).getType()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEqual(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -68,4 +68,33 @@ public class TopologyInfoHolder {
     public ArrayList<ComponentInfoHolder> getComponents(){
         return components;
     }
+
+    /**
+     * Prefixes the names of all the components with the namespace of the execution plan.
+     */
+    public void applyNamespace(String namespace) {
+        for (ComponentInfoHolder component : components) {
+            component.applyNamespace(namespace);
+        }
+    }
+
+    /**
+     * @return total number of executors of the components
+     */
+    public int getExecutorCount() {
+        int executorCount = 0;
+        for (ComponentInfoHolder component : components) {
+            executorCount += component.getParallelism();
+        }
+        return executorCount;
+    }
+
+    public ComponentInfoHolder getComponent(String componentName) {
+        for (ComponentInfoHolder component : components) {
+            if (component.getComponentName().equals(componentName)) {
+                return component;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util;
+
+import org.wso2.siddhi.query.api.ExecutionPlan;
+import org.wso2.siddhi.query.api.annotation.Element;
+import org.wso2.siddhi.query.api.definition.TableDefinition;
+import org.wso2.siddhi.query.api.util.AnnotationHelper;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Result of compiling the text of an execution plan once, shared by every deploy, validate, edit and Storm query plan
+ * construction of the same text. The parsed execution plan must not be modified by its users.
+ */
+public class CompiledExecutionPlan {
+
+    private final String contentHash;
+    private final String executionPlan;
+    private final ExecutionPlan parsedExecutionPlan;
+    private final String name;
+    private final boolean hasExternalTables;
+    private final Set<Integer> runtimeValidatedTenantIds;
+
+    CompiledExecutionPlan(String contentHash, String executionPlan, ExecutionPlan parsedExecutionPlan) {
+        this(contentHash, executionPlan, parsedExecutionPlan, Collections.<Integer>emptySet());
+    }
+
+    private CompiledExecutionPlan(String contentHash, String executionPlan, ExecutionPlan parsedExecutionPlan,
+                                  Set<Integer> runtimeValidatedTenantIds) {
+        this.contentHash = contentHash;
+        this.executionPlan = executionPlan;
+        this.parsedExecutionPlan = parsedExecutionPlan;
+        Element nameElement = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null,
+                parsedExecutionPlan.getAnnotations());
+        this.name = nameElement != null ? nameElement.getValue() : null;
+        boolean hasExternalTables = false;
+        for (TableDefinition tableDefinition : parsedExecutionPlan.getTableDefinitionMap().values()) {
+            if (AnnotationHelper.getAnnotation(EventProcessorConstants.ANNOTATION_FROM,
+                    tableDefinition.getAnnotations()) != null) {
+                hasExternalTables = true;
+            }
+        }
+        this.hasExternalTables = hasExternalTables;
+        this.runtimeValidatedTenantIds = runtimeValidatedTenantIds;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getExecutionPlan() {
+        return executionPlan;
+    }
+
+    public ExecutionPlan getParsedExecutionPlan() {
+        return parsedExecutionPlan;
+    }
+
+    /**
+     * @return name given in @Plan:name('MyPlanName'), or null in its absence
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Execution plans with tables backed by an external store, e.g. an RDBMS data source of the tenant, are never
+     * considered runtime validated, as the store may not be available to another tenant or may have been removed.
+     *
+     * @return whether a Siddhi runtime has been successfully created for the execution plan for the tenant
+     */
+    public boolean isRuntimeValidated(int tenantId) {
+        return !hasExternalTables && runtimeValidatedTenantIds.contains(tenantId);
+    }
+
+    CompiledExecutionPlan runtimeValidated(int tenantId) {
+        Set<Integer> tenantIds = new HashSet<Integer>(runtimeValidatedTenantIds);
+        tenantIds.add(tenantId);
+        return new CompiledExecutionPlan(contentHash, executionPlan, parsedExecutionPlan,
+                Collections.unmodifiableSet(tenantIds));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util;
+
+import org.wso2.siddhi.query.compiler.SiddhiCompiler;
+import org.wso2.siddhi.query.compiler.exception.SiddhiParserException;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the {@link CompiledExecutionPlan}s of the recently deployed or validated execution plan texts,
+ * keyed by the SHA-256 hash of the text. Texts which fail to parse are not cached. Whether a Siddhi runtime could be
+ * created for a text is recorded per tenant, as the data sources it may use are loaded per tenant.
+ * <p/>
+ * While pinned, e.g. during the deployment of the execution plans at server startup, nothing is evicted, so that a
+ * text read before its deployment is not parsed again however many plans are deployed. The cache is trimmed back to
+ * its maximum size when the last pin is released.
+ */
+public class CompiledExecutionPlanCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final int maxSize;
+    private final Map<String, CompiledExecutionPlan> compiledExecutionPlans;
+    private int pinCount;
+
+    public CompiledExecutionPlanCache(final int maxSize) {
+        this.maxSize = maxSize;
+        compiledExecutionPlans = new LinkedHashMap<String, CompiledExecutionPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledExecutionPlan> eldest) {
+                return pinCount == 0 && size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Stops evicting compilations until a matching {@link #unpin()}.
+     */
+    public void pin() {
+        synchronized (compiledExecutionPlans) {
+            pinCount++;
+        }
+    }
+
+    /**
+     * Releases a {@link #pin()}, evicting the least recently used compilations above the maximum size once no pin
+     * is held.
+     */
+    public void unpin() {
+        synchronized (compiledExecutionPlans) {
+            if (pinCount > 0 && --pinCount == 0) {
+                Iterator<String> iterator = compiledExecutionPlans.keySet().iterator();
+                while (compiledExecutionPlans.size() > maxSize && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached compilation of the execution plan, parsing it only if it is not cached.
+     *
+     * @throws SiddhiParserException if the execution plan cannot be parsed
+     */
+    public CompiledExecutionPlan compile(String executionPlan) {
+        String contentHash = getContentHash(executionPlan);
+        CompiledExecutionPlan compiledExecutionPlan;
+        synchronized (compiledExecutionPlans) {
+            compiledExecutionPlan = compiledExecutionPlans.get(contentHash);
+        }
+        if (compiledExecutionPlan != null && compiledExecutionPlan.getExecutionPlan().equals(executionPlan)) {
+            return compiledExecutionPlan;
+        }
+        compiledExecutionPlan = new CompiledExecutionPlan(contentHash, executionPlan,
+                SiddhiCompiler.parse(executionPlan));
+        synchronized (compiledExecutionPlans) {
+            CompiledExecutionPlan existing = compiledExecutionPlans.get(contentHash);
+            if (existing != null && existing.getExecutionPlan().equals(executionPlan)) {
+                return existing;
+            }
+            compiledExecutionPlans.put(contentHash, compiledExecutionPlan);
+        }
+        return compiledExecutionPlan;
+    }
+
+    /**
+     * Records that a Siddhi runtime has been successfully created for the execution plan of the tenant, so that
+     * validating it again for the same tenant does not create another one.
+     */
+    public void setRuntimeValidated(CompiledExecutionPlan compiledExecutionPlan, int tenantId) {
+        if (compiledExecutionPlan.isRuntimeValidated(tenantId)) {
+            return;
+        }
+        synchronized (compiledExecutionPlans) {
+            CompiledExecutionPlan cached = compiledExecutionPlans.get(compiledExecutionPlan.getContentHash());
+            if (cached != null && cached.getExecutionPlan().equals(compiledExecutionPlan.getExecutionPlan())) {
+                compiledExecutionPlans.put(compiledExecutionPlan.getContentHash(), cached.runtimeValidated(tenantId));
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (compiledExecutionPlans) {
+            return compiledExecutionPlans.size();
+        }
+    }
+
+    static String getContentHash(String executionPlan) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] digest = messageDigest.digest(executionPlan.getBytes(UTF_8));
+        char[] hash = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hash[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hash[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(hash);
+    }
+}
@@ -100,6 +100,35 @@ public class EventProcessorConfigurationFilesystemInvoker {
         }
     }
 
+    /**
+     * Saves the edited content of a deployed execution plan file, without redeploying it.
+     */
+    public static void update(String executionPlan, String executionPlanName, String fileName)
+            throws ExecutionPlanConfigurationException {
+        EventProcessorDeployer eventProcessorDeployer = (EventProcessorDeployer) getDeployer(EventProcessorConstants.EP_ELE_DIRECTORY);
+        String filePath = getFilePathFromFilename(fileName);
+        try {
+            OutputStreamWriter writer = null;
+            try {
+                File file = new File(filePath);
+                writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                // The hot deployer redeploys modified files, by undeploying and deploying them
+                eventProcessorDeployer.addUpdatedExecutionPlanFile(filePath, executionPlan);
+                writer.write(executionPlan);
+                log.info("Execution plan configuration for " + executionPlanName + " updated in the filesystem");
+            } finally {
+                if (writer != null) {
+                    writer.flush();
+                    writer.close();
+                }
+            }
+        } catch (IOException e) {
+            eventProcessorDeployer.removeUpdatedExecutionPlanFile(filePath);
+            log.error("Error while updating " + executionPlanName, e);
+            throw new ExecutionPlanConfigurationException("Error while updating ", e);
+        }
+    }
+
     public static void delete(String fileName)
             throws ExecutionPlanConfigurationException {
         try {
@@ -87,6 +87,9 @@ public class EventProcessorConstants {
     public static final String DEFINE_STREAM = "define stream ";
     public static final String EVENT_PUBLISHER = "event-publisher";
     public static final String EVENT_PUBLISHER_BOLT = "EventPublisherBolt";
+    public static final String EVENT_MERGER = "event-merger";
+    public static final String MERGE_FUNCTIONS = "mergeFunctions";
+    public static final String MERGER_SUFFIX = "-merger";
     public static final String PARALLEL = "parallel";
     public static final String RECEIVER_PARALLELISM = "receiverParallelism";
     public static final String PUBLISHER_PARALLELISM = "publisherParallelism";
@@ -95,16 +98,54 @@ public class EventProcessorConstants {
     public static final String DIST = "dist";
     public static final String EXEC_GROUP = "execGroup";
     public static final String ENFORCE_PARALLELISM = "enforceParallel";
+    public static final String MIN_PARALLEL = "minParallel";
+    public static final String MAX_PARALLEL = "maxParallel";
+    // Runs the cheap execution groups at the edges of the plan on the CEP workers, instead of on storm
+    public static final String HYBRID = "hybrid";
+    public static final String LOCAL = "local";
+    // Size of the ring buffer of each instance of an execution group run locally
+    public static final int LOCAL_EXECUTOR_BUFFER_SIZE = 1024;
+    // System property with the number of threads deploying the execution plans of a tenant at startup
+    public static final String STARTUP_DEPLOYMENT_THREADS = "cep.startup.deployment.threads";
+    public static final int DEFAULT_MAX_STARTUP_DEPLOYMENT_THREADS = 8;
+    // Time within which resolved dependencies are collected, before activating the plans waiting for them
+    public static final int EXECUTION_PLAN_ACTIVATION_COALESCE_DELAY = 200;
+    // Number of compiled execution plan texts kept, so that redeploying or validating them again is not recompiled
+    public static final int COMPILED_EXECUTION_PLAN_CACHE_SIZE = 256;
+    // Milliseconds to wait for the events being sent to an execution plan, before swapping its runtime
+    public static final long EXECUTION_PLAN_SWAP_LOCK_TIMEOUT = 1000;
+    // System properties with the 1 in N rate events are traced at, the most events traced per second by each execution
+    // plan, and the number of traced events kept for each execution plan
+    public static final String EVENT_TRACE_SAMPLE_RATE = "cep.trace.sample.rate";
+    public static final String EVENT_TRACE_MAX_PER_SECOND = "cep.trace.max.per.second";
+    public static final String EVENT_TRACE_BUFFER_SIZE = "cep.trace.buffer.size";
+    public static final int DEFAULT_EVENT_TRACE_SAMPLE_RATE = 1;
+    public static final int DEFAULT_EVENT_TRACE_MAX_PER_SECOND = 100;
+    public static final int DEFAULT_EVENT_TRACE_BUFFER_SIZE = 1024;
+    // Milliseconds between formatting the traced events into the trace log
+    public static final long EVENT_TRACE_FORMAT_INTERVAL = 500;
 
     // Annotations, Annotation Names and relevant tokens.
     public static final String ANNOTATION_PLAN = "Plan";
     public static final String ANNOTATION_IMPORT = "Import";
     public static final String ANNOTATION_EXPORT = "Export";
+    public static final String ANNOTATION_FROM = "from";
 
     public static final String ANNOTATION_NAME_NAME = "name";
     public static final String ANNOTATION_NAME_DESCRIPTION = "description";
     public static final String ANNOTATION_NAME_TRACE = "trace";
     public static final String ANNOTATION_NAME_STATISTICS = "statistics";
+    public static final String ANNOTATION_NAME_PARALLEL = "parallel";
+    // Queues the events of the plan in its own ring, as in @Plan:async(buffer.size='1024', workers='1')
+    public static final String ANNOTATION_NAME_ASYNC = "async";
+    public static final String ANNOTATION_ELEMENT_BUFFER_SIZE = "buffer.size";
+    public static final String ANNOTATION_ELEMENT_WORKERS = "workers";
+    public static final String ANNOTATION_ELEMENT_WAIT_STRATEGY = "wait.strategy";
+    public static final String ANNOTATION_ELEMENT_OVERFLOW = "overflow";
+    public static final int DEFAULT_ASYNC_BUFFER_SIZE = 1024;
+    public static final int DEFAULT_ASYNC_WORKERS = 1;
+    // Milliseconds to wait for the queued events of an async execution plan to be processed, when it is removed
+    public static final long ASYNC_SHUTDOWN_TIMEOUT = 10000;
 
     public static final String ANNOTATION_TOKEN_AT = "@";
     public static final String ANNOTATION_TOKEN_COLON = ":";
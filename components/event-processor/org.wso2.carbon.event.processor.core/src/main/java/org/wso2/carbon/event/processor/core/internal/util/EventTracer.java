@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Traces a sample of the events of an execution plan. The receiving threads only keep a reference to the sampled
+ * events in a bounded ring, without locking. The events are formatted and written to the trace log by a background
+ * thread, which also keeps the last formatted events to be read through the admin service.
+ * <p/>
+ * One in every sampleRate events is traced, up to maxPerSecond events each second, counting each event of a batch.
+ * When the ring is full, the oldest events which are not formatted yet are overwritten and counted as lost. The events
+ * are only read, as they are shared with Siddhi, and are released from the ring once formatted.
+ */
+public class EventTracer {
+
+    private static final Log log = LogFactory.getLog(EventTracer.class);
+    private static final Logger trace = Logger.getLogger(EventProcessorConstants.EVENT_TRACE_LOGGER);
+
+    private static final Set<EventTracer> tracers =
+            Collections.newSetFromMap(new ConcurrentHashMap<EventTracer, Boolean>());
+    private static ScheduledExecutorService formatter;
+
+    private final int sampleRate;
+    private final int maxPerSecond;
+    private final int bufferSize;
+    private final AtomicReferenceArray<TraceRecord> records;
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong sampledCount = new AtomicLong();
+    private final AtomicInteger tracedInSecond = new AtomicInteger();
+    private volatile long currentSecond;
+    private final Deque<String> formattedTraces;
+    private long readSequence;
+    private long lostCount;
+
+    /**
+     * @param sampleRate   traces one in every sampleRate events
+     * @param maxPerSecond most events traced each second, or 0 for no limit
+     * @param bufferSize   number of traced events kept, rounded up to a power of 2
+     */
+    public EventTracer(int sampleRate, int maxPerSecond, int bufferSize) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+        this.bufferSize = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        this.records = new AtomicReferenceArray<TraceRecord>(this.bufferSize);
+        this.formattedTraces = new ArrayDeque<String>(this.bufferSize);
+    }
+
+    /**
+     * @return a tracer with the sample rate, limit and buffer size of the system properties, see
+     * {@link EventProcessorConstants#EVENT_TRACE_SAMPLE_RATE}
+     */
+    public static EventTracer createEventTracer() {
+        return new EventTracer(
+                Integer.getInteger(EventProcessorConstants.EVENT_TRACE_SAMPLE_RATE,
+                        EventProcessorConstants.DEFAULT_EVENT_TRACE_SAMPLE_RATE),
+                Integer.getInteger(EventProcessorConstants.EVENT_TRACE_MAX_PER_SECOND,
+                        EventProcessorConstants.DEFAULT_EVENT_TRACE_MAX_PER_SECOND),
+                Integer.getInteger(EventProcessorConstants.EVENT_TRACE_BUFFER_SIZE,
+                        EventProcessorConstants.DEFAULT_EVENT_TRACE_BUFFER_SIZE));
+    }
+
+    /**
+     * Formats the events traced by this tracer in the background, until {@link #stop()}.
+     */
+    public void start() {
+        synchronized (EventTracer.class) {
+            if (formatter == null) {
+                formatter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "EventTraceFormatter");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                formatter.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (EventTracer tracer : tracers) {
+                            try {
+                                tracer.format();
+                            } catch (RuntimeException e) {
+                                log.error("Error while formatting traced events", e);
+                            }
+                        }
+                    }
+                }, EventProcessorConstants.EVENT_TRACE_FORMAT_INTERVAL,
+                        EventProcessorConstants.EVENT_TRACE_FORMAT_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        tracers.add(this);
+    }
+
+    /**
+     * Formats the events already traced, and stops formatting events of this tracer in the background.
+     */
+    public void stop() {
+        tracers.remove(this);
+        format();
+    }
+
+    public static void shutdown() {
+        synchronized (EventTracer.class) {
+            if (formatter != null) {
+                formatter.shutdownNow();
+                formatter = null;
+            }
+        }
+    }
+
+    /**
+     * Traces the event, or the batch of events, if it is sampled.
+     *
+     * @param prefix describes where the events were traced
+     * @param events an event, or an array of events
+     */
+    public void trace(String prefix, Object events) {
+        int eventCount = events instanceof Object[] ? ((Object[]) events).length : 1;
+        if (eventCount == 0) {
+            return;
+        }
+        if (sampleRate > 1) {
+            long count = sampledCount.addAndGet(eventCount);
+            int sampledEventCount = (int) (count / sampleRate - (count - eventCount) / sampleRate);
+            if (sampledEventCount == 0) {
+                return;
+            }
+            if (sampledEventCount < eventCount) {
+                events = sample((Object[]) events, count - eventCount, sampledEventCount);
+                eventCount = sampledEventCount;
+            }
+        }
+        if (maxPerSecond > 0) {
+            long second = System.currentTimeMillis() / 1000;
+            if (second != currentSecond) {
+                // Concurrent resets may let a few more events through in this second
+                currentSecond = second;
+                tracedInSecond.set(0);
+            }
+            int allowedEventCount = maxPerSecond - (tracedInSecond.addAndGet(eventCount) - eventCount);
+            if (allowedEventCount <= 0) {
+                return;
+            }
+            if (allowedEventCount < eventCount) {
+                events = Arrays.copyOf((Object[]) events, allowedEventCount);
+            }
+        }
+        long sequence = writeSequence.getAndIncrement();
+        records.lazySet((int) (sequence & (bufferSize - 1)),
+                new TraceRecord(sequence, System.currentTimeMillis(), prefix, events));
+    }
+
+    /**
+     * @param previousCount number of events counted before the batch
+     * @return the events of the batch which are one in every sampleRate events
+     */
+    private Object[] sample(Object[] events, long previousCount, int sampledEventCount) {
+        Object[] sampledEvents = new Object[sampledEventCount];
+        int index = (int) (sampleRate - 1 - previousCount % sampleRate);
+        for (int i = 0; i < sampledEventCount; i++, index += sampleRate) {
+            sampledEvents[i] = events[index];
+        }
+        return sampledEvents;
+    }
+
+    /**
+     * Formats the events traced since the last call into the trace log and the recent traces.
+     */
+    synchronized void format() {
+        long endSequence = writeSequence.get();
+        if (endSequence - readSequence > bufferSize) {
+            lostCount += endSequence - bufferSize - readSequence;
+            readSequence = endSequence - bufferSize;
+        }
+        for (; readSequence < endSequence; readSequence++) {
+            int index = (int) (readSequence & (bufferSize - 1));
+            TraceRecord record = records.get(index);
+            if (record == null || record.sequence < readSequence) {
+                // Claimed by a receiving thread, which has not stored it yet
+                return;
+            }
+            if (record.sequence > readSequence) {
+                lostCount++;
+                continue;
+            }
+            String formattedTrace = record.format();
+            // Releases the events, unless a receiving thread has already stored a newer record in the slot
+            records.compareAndSet(index, record, null);
+            trace.info(formattedTrace);
+            if (formattedTraces.size() == bufferSize) {
+                formattedTraces.removeFirst();
+            }
+            formattedTraces.addLast(formattedTrace);
+        }
+    }
+
+    /**
+     * @return the most recent traced events, oldest first
+     */
+    public synchronized String[] getTraces() {
+        format();
+        return formattedTraces.toArray(new String[formattedTraces.size()]);
+    }
+
+    /**
+     * @return number of sampled events overwritten before they could be formatted
+     */
+    public synchronized long getLostCount() {
+        return lostCount;
+    }
+
+    private static class TraceRecord {
+        private final long sequence;
+        private final long time;
+        private final String prefix;
+        private final Object events;
+
+        private TraceRecord(long sequence, long time, String prefix, Object events) {
+            this.sequence = sequence;
+            this.time = time;
+            this.prefix = prefix;
+            this.events = events;
+        }
+
+        private String format() {
+            return "Time : " + time + ", " + prefix + (events instanceof Object[] ?
+                    Arrays.deepToString((Object[]) events) : String.valueOf(events));
+        }
+    }
+}
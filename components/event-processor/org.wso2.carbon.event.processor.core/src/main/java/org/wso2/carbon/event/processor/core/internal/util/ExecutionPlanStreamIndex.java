@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util;
+
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.StreamConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the active execution plans of a tenant by the streams they import and export, so that the plans of a
+ * stream are found without going through all the plans of the tenant. Updated when execution plans are deployed and
+ * undeployed. Updates are serialized, lookups are not blocked by them.
+ */
+public class ExecutionPlanStreamIndex {
+
+    // < stream id, < execution plan name, configuration > >
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ExecutionPlanConfiguration>> importingPlans =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, ExecutionPlanConfiguration>>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ExecutionPlanConfiguration>> exportingPlans =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, ExecutionPlanConfiguration>>();
+
+    public synchronized void add(ExecutionPlanConfiguration configuration) {
+        for (StreamConfiguration streamConfiguration : configuration.getImportedStreams()) {
+            add(importingPlans, streamConfiguration.getStreamId(), configuration);
+        }
+        for (StreamConfiguration streamConfiguration : configuration.getExportedStreams()) {
+            add(exportingPlans, streamConfiguration.getStreamId(), configuration);
+        }
+    }
+
+    public synchronized void remove(ExecutionPlanConfiguration configuration) {
+        for (StreamConfiguration streamConfiguration : configuration.getImportedStreams()) {
+            remove(importingPlans, streamConfiguration.getStreamId(), configuration);
+        }
+        for (StreamConfiguration streamConfiguration : configuration.getExportedStreams()) {
+            remove(exportingPlans, streamConfiguration.getStreamId(), configuration);
+        }
+    }
+
+    /**
+     * @param streamId stream id in the form name:version
+     * @return < execution plan name, configuration > of the plans importing the stream
+     */
+    public Map<String, ExecutionPlanConfiguration> getImportingPlans(String streamId) {
+        return copyOf(importingPlans.get(streamId));
+    }
+
+    /**
+     * @param streamId stream id in the form name:version
+     * @return < execution plan name, configuration > of the plans exporting the stream
+     */
+    public Map<String, ExecutionPlanConfiguration> getExportingPlans(String streamId) {
+        return copyOf(exportingPlans.get(streamId));
+    }
+
+    private static void add(ConcurrentHashMap<String, ConcurrentHashMap<String, ExecutionPlanConfiguration>> index,
+                            String streamId, ExecutionPlanConfiguration configuration) {
+        ConcurrentHashMap<String, ExecutionPlanConfiguration> plans = index.get(streamId);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<String, ExecutionPlanConfiguration>();
+            index.put(streamId, plans);
+        }
+        plans.put(configuration.getName(), configuration);
+    }
+
+    private static void remove(ConcurrentHashMap<String, ConcurrentHashMap<String, ExecutionPlanConfiguration>> index,
+                               String streamId, ExecutionPlanConfiguration configuration) {
+        ConcurrentHashMap<String, ExecutionPlanConfiguration> plans = index.get(streamId);
+        if (plans != null) {
+            // Only removes the given configuration, in case the plan has already been redeployed
+            plans.remove(configuration.getName(), configuration);
+            if (plans.isEmpty()) {
+                index.remove(streamId);
+            }
+        }
+    }
+
+    private static Map<String, ExecutionPlanConfiguration> copyOf(Map<String, ExecutionPlanConfiguration> plans) {
+        if (plans == null) {
+            return new HashMap<String, ExecutionPlanConfiguration>();
+        }
+        return new HashMap<String, ExecutionPlanConfiguration>(plans);
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deploys a batch of execution plans concurrently on a bounded pool, such that a plan importing a stream is only
+ * deployed once the plans exporting that stream have been deployed. Plans with the same name are deployed one after
+ * the other, in the order given. Plans in a dependency cycle are deployed once their dependencies outside the cycle
+ * have been deployed.
+ */
+public class ParallelDeploymentScheduler {
+
+    private static final Log log = LogFactory.getLog(ParallelDeploymentScheduler.class);
+
+    private final int threadCount;
+
+    public ParallelDeploymentScheduler(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Deploys the plans and waits until all of them are deployed or failed.
+     *
+     * @param plans          plans to be deployed
+     * @param deploymentTask deploys a single plan
+     * @return time to readiness of each plan, in the order the plans were deployed
+     */
+    public Map<PlanInfo, Long> deploy(List<PlanInfo> plans, final DeploymentTask deploymentTask)
+            throws InterruptedException {
+        final Map<PlanInfo, List<PlanInfo>> dependents = new HashMap<PlanInfo, List<PlanInfo>>();
+        final Map<PlanInfo, AtomicInteger> remainingDependencies = new HashMap<PlanInfo, AtomicInteger>();
+        buildDependencyGraph(plans, dependents, remainingDependencies);
+
+        final Map<PlanInfo, Long> readinessTimes = Collections.synchronizedMap(new LinkedHashMap<PlanInfo, Long>());
+        final CountDownLatch deployedLatch = new CountDownLatch(plans.size());
+        final long startTime = System.currentTimeMillis();
+        final ExecutorService executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ExecutionPlanDeployer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<PlanInfo> independentPlans = new ArrayList<PlanInfo>();
+        for (PlanInfo plan : plans) {
+            if (remainingDependencies.get(plan).get() == 0) {
+                independentPlans.add(plan);
+            }
+        }
+        try {
+            // Independent plans are found before submitting any, as the dependencies of the others drop to 0 meanwhile
+            for (PlanInfo plan : independentPlans) {
+                submit(executorService, plan, deploymentTask, dependents, remainingDependencies, readinessTimes,
+                        deployedLatch, startTime);
+            }
+            deployedLatch.await();
+        } finally {
+            executorService.shutdownNow();
+        }
+        return readinessTimes;
+    }
+
+    private void submit(final ExecutorService executorService, final PlanInfo plan,
+                        final DeploymentTask deploymentTask, final Map<PlanInfo, List<PlanInfo>> dependents,
+                        final Map<PlanInfo, AtomicInteger> remainingDependencies,
+                        final Map<PlanInfo, Long> readinessTimes, final CountDownLatch deployedLatch,
+                        final long startTime) {
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deploymentTask.deploy(plan);
+                } catch (Throwable t) {
+                    log.error("Error in deploying execution plan file " + plan.getFilePath(), t);
+                } finally {
+                    readinessTimes.put(plan, System.currentTimeMillis() - startTime);
+                    // Dependents are deployed irrespective of whether this plan was, as it was in sequential deployment
+                    for (PlanInfo dependent : dependents.get(plan)) {
+                        if (remainingDependencies.get(dependent).decrementAndGet() == 0) {
+                            submit(executorService, dependent, deploymentTask, dependents, remainingDependencies,
+                                    readinessTimes, deployedLatch, startTime);
+                        }
+                    }
+                    deployedLatch.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the dependents and the number of dependencies of each plan, without the dependencies within cycles.
+     */
+    static void buildDependencyGraph(List<PlanInfo> plans, Map<PlanInfo, List<PlanInfo>> dependents,
+                                     Map<PlanInfo, AtomicInteger> remainingDependencies) {
+        Map<String, List<PlanInfo>> exportingPlans = new HashMap<String, List<PlanInfo>>();
+        Map<String, PlanInfo> lastPlanOfName = new HashMap<String, PlanInfo>();
+        Map<PlanInfo, Set<PlanInfo>> dependencies = new LinkedHashMap<PlanInfo, Set<PlanInfo>>();
+        for (PlanInfo plan : plans) {
+            for (String streamId : plan.getExportedStreamIds()) {
+                List<PlanInfo> exporters = exportingPlans.get(streamId);
+                if (exporters == null) {
+                    exporters = new ArrayList<PlanInfo>();
+                    exportingPlans.put(streamId, exporters);
+                }
+                exporters.add(plan);
+            }
+            dependencies.put(plan, new HashSet<PlanInfo>());
+            if (plan.getName() != null) {
+                PlanInfo previousPlan = lastPlanOfName.put(plan.getName(), plan);
+                if (previousPlan != null) {
+                    dependencies.get(plan).add(previousPlan);
+                }
+            }
+        }
+        for (PlanInfo plan : plans) {
+            for (String streamId : plan.getImportedStreamIds()) {
+                List<PlanInfo> exporters = exportingPlans.get(streamId);
+                if (exporters != null) {
+                    dependencies.get(plan).addAll(exporters);
+                }
+            }
+            dependencies.get(plan).remove(plan);
+        }
+        removeCycles(dependencies);
+
+        for (PlanInfo plan : plans) {
+            dependents.put(plan, new ArrayList<PlanInfo>());
+        }
+        for (Map.Entry<PlanInfo, Set<PlanInfo>> entry : dependencies.entrySet()) {
+            remainingDependencies.put(entry.getKey(), new AtomicInteger(entry.getValue().size()));
+            for (PlanInfo dependency : entry.getValue()) {
+                dependents.get(dependency).add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops the dependencies among the plans of each cycle, found as the strongly connected components of the
+     * dependency graph, so that every plan can be deployed. Dependencies on plans outside the cycle are kept.
+     */
+    private static void removeCycles(Map<PlanInfo, Set<PlanInfo>> dependencies) {
+        Map<PlanInfo, Integer> components = new CycleFinder(dependencies).findComponents();
+        for (Map.Entry<PlanInfo, Set<PlanInfo>> entry : dependencies.entrySet()) {
+            Integer component = components.get(entry.getKey());
+            Iterator<PlanInfo> iterator = entry.getValue().iterator();
+            while (iterator.hasNext()) {
+                if (component.equals(components.get(iterator.next()))) {
+                    iterator.remove();
+                    log.warn("Execution plan file " + entry.getKey().getFilePath() + " is in a cycle of execution " +
+                            "plans importing each other's streams. Deploying it without waiting for the cycle.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Tarjan's strongly connected components algorithm.
+     */
+    private static class CycleFinder {
+
+        private final Map<PlanInfo, Set<PlanInfo>> dependencies;
+        private final Map<PlanInfo, Integer> indexes = new HashMap<PlanInfo, Integer>();
+        private final Map<PlanInfo, Integer> lowLinks = new HashMap<PlanInfo, Integer>();
+        private final Map<PlanInfo, Integer> components = new HashMap<PlanInfo, Integer>();
+        private final LinkedList<PlanInfo> stack = new LinkedList<PlanInfo>();
+        private final Set<PlanInfo> onStack = new HashSet<PlanInfo>();
+        private int index = 0;
+        private int componentCount = 0;
+
+        private CycleFinder(Map<PlanInfo, Set<PlanInfo>> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * @return < plan, id of its strongly connected component >
+         */
+        private Map<PlanInfo, Integer> findComponents() {
+            for (PlanInfo plan : dependencies.keySet()) {
+                if (!indexes.containsKey(plan)) {
+                    visit(plan);
+                }
+            }
+            return components;
+        }
+
+        private void visit(PlanInfo plan) {
+            indexes.put(plan, index);
+            lowLinks.put(plan, index);
+            index++;
+            stack.push(plan);
+            onStack.add(plan);
+            for (PlanInfo dependency : dependencies.get(plan)) {
+                if (!indexes.containsKey(dependency)) {
+                    visit(dependency);
+                    lowLinks.put(plan, Math.min(lowLinks.get(plan), lowLinks.get(dependency)));
+                } else if (onStack.contains(dependency)) {
+                    lowLinks.put(plan, Math.min(lowLinks.get(plan), indexes.get(dependency)));
+                }
+            }
+            if (lowLinks.get(plan).equals(indexes.get(plan))) {
+                PlanInfo member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    components.put(member, componentCount);
+                } while (member != plan);
+                componentCount++;
+            }
+        }
+    }
+
+    /**
+     * Deploys a single execution plan.
+     */
+    public interface DeploymentTask {
+        void deploy(PlanInfo plan) throws Exception;
+    }
+
+    /**
+     * Execution plan file with the streams it imports and exports. Equality is by identity, as two files may contain
+     * the same plan.
+     */
+    public static class PlanInfo {
+
+        private final String filePath;
+        private final String name;
+        private final Collection<String> importedStreamIds;
+        private final Collection<String> exportedStreamIds;
+
+        /**
+         * @param filePath          path of the execution plan file
+         * @param name              name of the execution plan, or null if it could not be parsed
+         * @param importedStreamIds ids of the imported streams in the form name:version
+         * @param exportedStreamIds ids of the exported streams in the form name:version
+         */
+        public PlanInfo(String filePath, String name, Collection<String> importedStreamIds,
+                        Collection<String> exportedStreamIds) {
+            this.filePath = filePath;
+            this.name = name;
+            this.importedStreamIds = importedStreamIds;
+            this.exportedStreamIds = exportedStreamIds;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Collection<String> getImportedStreamIds() {
+            return importedStreamIds;
+        }
+
+        public Collection<String> getExportedStreamIds() {
+            return exportedStreamIds;
+        }
+    }
+}
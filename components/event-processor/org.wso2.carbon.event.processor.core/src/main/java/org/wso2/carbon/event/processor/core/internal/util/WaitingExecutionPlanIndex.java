@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util;
+
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfigurationFile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the execution plan files of a tenant which are waiting for a stream or an OSGi service, by the dependency
+ * they are waiting for. Dependencies are matched ignoring case.
+ */
+public class WaitingExecutionPlanIndex {
+
+    // < status:dependency, files waiting for the dependency >
+    private final Map<String, Set<ExecutionPlanConfigurationFile>> waitingFiles =
+            new HashMap<String, Set<ExecutionPlanConfigurationFile>>();
+
+    public static String getKey(ExecutionPlanConfigurationFile.Status status, String dependency) {
+        return status + ":" + dependency.toLowerCase();
+    }
+
+    /**
+     * Adds the file if it is waiting for a dependency.
+     */
+    public synchronized void add(ExecutionPlanConfigurationFile file) {
+        if (!isWaiting(file)) {
+            return;
+        }
+        String key = getKey(file.getStatus(), file.getDependency());
+        Set<ExecutionPlanConfigurationFile> files = waitingFiles.get(key);
+        if (files == null) {
+            files = new LinkedHashSet<ExecutionPlanConfigurationFile>();
+            waitingFiles.put(key, files);
+        }
+        files.add(file);
+    }
+
+    public synchronized void remove(ExecutionPlanConfigurationFile file) {
+        if (!isWaiting(file)) {
+            return;
+        }
+        String key = getKey(file.getStatus(), file.getDependency());
+        Set<ExecutionPlanConfigurationFile> files = waitingFiles.get(key);
+        if (files != null) {
+            files.remove(file);
+            if (files.isEmpty()) {
+                waitingFiles.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the files waiting for any of the dependencies.
+     *
+     * @param keys keys of the resolved dependencies, see {@link #getKey}
+     */
+    public synchronized List<ExecutionPlanConfigurationFile> removeWaitingFiles(Collection<String> keys) {
+        List<ExecutionPlanConfigurationFile> files = new ArrayList<ExecutionPlanConfigurationFile>();
+        for (String key : keys) {
+            Set<ExecutionPlanConfigurationFile> waiting = waitingFiles.remove(key);
+            if (waiting != null) {
+                files.addAll(waiting);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isWaiting(ExecutionPlanConfigurationFile file) {
+        return (file.getStatus() == ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY ||
+                file.getStatus() == ExecutionPlanConfigurationFile.Status.WAITING_FOR_OSGI_SERVICE) &&
+                file.getDependency() != null;
+    }
+}
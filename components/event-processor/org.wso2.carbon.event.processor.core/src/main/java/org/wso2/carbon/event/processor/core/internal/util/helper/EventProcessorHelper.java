@@ -21,9 +21,12 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.databridge.commons.Attribute;
 import org.wso2.carbon.databridge.commons.AttributeType;
 import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.event.processor.core.AsyncIngestionConfiguration;
 import org.wso2.carbon.event.processor.core.exception.ExecutionPlanConfigurationException;
 import org.wso2.carbon.event.processor.core.exception.ExecutionPlanDependencyValidationException;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlan;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlanCache;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 import org.wso2.carbon.event.stream.core.EventStreamService;
 import org.wso2.carbon.event.stream.core.exception.EventStreamConfigurationException;
@@ -32,10 +35,10 @@ import org.wso2.carbon.ndatasource.core.CarbonDataSource;
 import org.wso2.carbon.ndatasource.core.DataSourceManager;
 import org.wso2.siddhi.core.SiddhiManager;
 import org.wso2.siddhi.query.api.ExecutionPlan;
+import org.wso2.siddhi.query.api.annotation.Annotation;
 import org.wso2.siddhi.query.api.annotation.Element;
 import org.wso2.siddhi.query.api.exception.AttributeNotExistException;
 import org.wso2.siddhi.query.api.util.AnnotationHelper;
-import org.wso2.siddhi.query.compiler.SiddhiCompiler;
 
 import javax.sql.DataSource;
 import java.util.ArrayList;
@@ -49,6 +52,39 @@ public class EventProcessorHelper {
 
     private static final Log log = LogFactory.getLog(EventProcessorHelper.class);
 
+    private static final CompiledExecutionPlanCache compiledExecutionPlanCache =
+            new CompiledExecutionPlanCache(EventProcessorConstants.COMPILED_EXECUTION_PLAN_CACHE_SIZE);
+
+    /**
+     * Returns the compilation of the execution plan, which is parsed only once for the same text.
+     *
+     * @param executionPlan execution plan as a string
+     * @throws org.wso2.siddhi.query.compiler.exception.SiddhiParserException if the execution plan cannot be parsed
+     */
+    public static CompiledExecutionPlan getCompiledExecutionPlan(String executionPlan) {
+        return compiledExecutionPlanCache.compile(executionPlan);
+    }
+
+    /**
+     * Keeps every compilation cached until {@link #unpinCompiledExecutionPlans()}, so that the execution plans read
+     * before they are deployed are parsed only once.
+     */
+    public static void pinCompiledExecutionPlans() {
+        compiledExecutionPlanCache.pin();
+    }
+
+    public static void unpinCompiledExecutionPlans() {
+        compiledExecutionPlanCache.unpin();
+    }
+
+    /**
+     * Records that a Siddhi runtime has been successfully created for the execution plan of the current tenant.
+     */
+    public static void setRuntimeValidated(CompiledExecutionPlan compiledExecutionPlan) {
+        compiledExecutionPlanCache.setRuntimeValidated(compiledExecutionPlan,
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
+    }
+
     /**
      * Returns the execution plan name
      *
@@ -56,10 +92,74 @@ public class EventProcessorHelper {
      * @return execution plan name as given in @Plan:name('MyPlanName'). Returns null in the absence of @Plan:name('MyPlanName')
      */
     public static String getExecutionPlanName(String executionPlanAsString) {
-        String executionPlanName = null;
-        ExecutionPlan executionPlan = SiddhiCompiler.parse(executionPlanAsString);
-        executionPlanName = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null, executionPlan.getAnnotations()).getValue();
-        return executionPlanName;
+        return getCompiledExecutionPlan(executionPlanAsString).getName();
+    }
+
+    /**
+     * Returns the settings of the ring the imported events of the plan are queued in, as given in
+     * @Plan:async(buffer.size='1024', workers='1', wait.strategy='blocking', overflow='block'). Omitted elements take
+     * the defaults shown.
+     *
+     * @return null if the plan does not have the async annotation
+     * @throws ExecutionPlanConfigurationException if a setting is invalid
+     */
+    public static AsyncIngestionConfiguration getAsyncIngestionConfiguration(ExecutionPlan parsedExecutionPlan)
+            throws ExecutionPlanConfigurationException {
+        Annotation asyncAnnotation = null;
+        for (Annotation annotation : parsedExecutionPlan.getAnnotations()) {
+            if (EventProcessorConstants.ANNOTATION_NAME_ASYNC.equalsIgnoreCase(annotation.getName())) {
+                asyncAnnotation = annotation;
+            }
+        }
+        if (asyncAnnotation == null) {
+            return null;
+        }
+        int bufferSize = EventProcessorConstants.DEFAULT_ASYNC_BUFFER_SIZE;
+        int workers = EventProcessorConstants.DEFAULT_ASYNC_WORKERS;
+        AsyncIngestionConfiguration.WaitStrategy waitStrategy = AsyncIngestionConfiguration.WaitStrategy.BLOCKING;
+        AsyncIngestionConfiguration.Overflow overflow = AsyncIngestionConfiguration.Overflow.BLOCK;
+        for (Element element : asyncAnnotation.getElements()) {
+            String key = element.getKey();
+            String value = element.getValue() == null ? "" : element.getValue().trim();
+            if (EventProcessorConstants.ANNOTATION_ELEMENT_BUFFER_SIZE.equalsIgnoreCase(key)) {
+                bufferSize = parsePositiveInt(key, value);
+                if (Integer.bitCount(bufferSize) != 1) {
+                    throw new ExecutionPlanConfigurationException("Invalid " + key + " '" + value + "' in " +
+                            "the async annotation. It should be a power of 2");
+                }
+            } else if (EventProcessorConstants.ANNOTATION_ELEMENT_WORKERS.equalsIgnoreCase(key)) {
+                workers = parsePositiveInt(key, value);
+            } else if (EventProcessorConstants.ANNOTATION_ELEMENT_WAIT_STRATEGY.equalsIgnoreCase(key)) {
+                waitStrategy = AsyncIngestionConfiguration.WaitStrategy.fromName(value);
+                if (waitStrategy == null) {
+                    throw new ExecutionPlanConfigurationException("Invalid " + key + " '" + value + "' in " +
+                            "the async annotation. It should be one of blocking, sleeping, yielding or busy.spin");
+                }
+            } else if (EventProcessorConstants.ANNOTATION_ELEMENT_OVERFLOW.equalsIgnoreCase(key)) {
+                overflow = AsyncIngestionConfiguration.Overflow.fromName(value);
+                if (overflow == null) {
+                    throw new ExecutionPlanConfigurationException("Invalid " + key + " '" + value + "' in " +
+                            "the async annotation. It should be either block or drop");
+                }
+            } else {
+                throw new ExecutionPlanConfigurationException("Unknown element '" + key + "' in the async " +
+                        "annotation. Supported elements are buffer.size, workers, wait.strategy and overflow");
+            }
+        }
+        return new AsyncIngestionConfiguration(bufferSize, workers, waitStrategy, overflow);
+    }
+
+    private static int parsePositiveInt(String key, String value) throws ExecutionPlanConfigurationException {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new ExecutionPlanConfigurationException("Invalid " + key + " '" + value + "' in the async annotation. " +
+                "It should be a positive integer");
     }
 
     public static void validateExecutionPlan(String executionPlan)
@@ -72,7 +172,8 @@ public class EventProcessorHelper {
         Pattern databridgeStreamNamePattern = Pattern.compile(EventProcessorConstants.DATABRIDGE_STREAM_REGEX);
         Pattern streamVersionPattern = Pattern.compile(EventProcessorConstants.STREAM_VER_REGEX);
 
-        ExecutionPlan parsedExecPlan = SiddhiCompiler.parse(executionPlan);
+        CompiledExecutionPlan compiledExecutionPlan = getCompiledExecutionPlan(executionPlan);
+        ExecutionPlan parsedExecPlan = compiledExecutionPlan.getParsedExecutionPlan();
         Element element = AnnotationHelper.getAnnotationElement(EventProcessorConstants.ANNOTATION_NAME_NAME, null, parsedExecPlan.getAnnotations());
         if (element == null) {                                                                        // check if plan name is given
             throw new ExecutionPlanConfigurationException("Execution plan name is not given. Please specify execution plan name using the annotation " +
@@ -95,6 +196,7 @@ public class EventProcessorHelper {
         if (planName.trim().contains(" ")) {
             throw new ExecutionPlanConfigurationException("Execution plan name '" + planName + "' contains whitespaces. Please remove whitespaces.");
         }
+        getAsyncIngestionConfiguration(parsedExecPlan);
 
         Map<String, org.wso2.siddhi.query.api.definition.StreamDefinition> streamDefMap = parsedExecPlan.getStreamDefinitionMap();
         for (Map.Entry<String, org.wso2.siddhi.query.api.definition.StreamDefinition> entry : streamDefMap.entrySet()) {
@@ -185,6 +287,10 @@ public class EventProcessorHelper {
             i++;
         }
 
+        if (compiledExecutionPlan.isRuntimeValidated(
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId())) {
+            return;
+        }
         SiddhiManager siddhiManager = EventProcessorValueHolder.getSiddhiManager();
         loadDataSourceConfiguration(siddhiManager);
         try {
@@ -192,6 +298,7 @@ public class EventProcessorHelper {
         } catch (Throwable t) {
             throw new ExecutionPlanConfigurationException(t.getMessage(), t);
         }
+        setRuntimeValidated(compiledExecutionPlan);
     }
 
     private static boolean validateSiddhiStreamWithDatabridgeStream(String streamName, String streamVersion,
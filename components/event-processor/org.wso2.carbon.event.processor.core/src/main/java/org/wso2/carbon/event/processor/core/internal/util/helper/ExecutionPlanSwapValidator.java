@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util.helper;
+
+import org.wso2.carbon.event.processor.core.AsyncIngestionConfiguration;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.StreamConfiguration;
+import org.wso2.carbon.event.processor.core.internal.storm.compiler.SiddhiQLStormQuerySplitter;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlan;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether an edited execution plan can replace the runtime of the active one in place, and whether the state
+ * of the active runtime can be restored into the new one.
+ */
+public class ExecutionPlanSwapValidator {
+
+    private ExecutionPlanSwapValidator() {
+    }
+
+    /**
+     * The input dispatchers and output listeners of the active execution plan are reused by the new runtime, hence
+     * the name, the imported and exported streams, and the settings of the ring they queue events in must be the same.
+     * Tracing and statistics are switched on the reused ones. Execution plans run in parallel locally or on storm are
+     * not swapped.
+     */
+    public static boolean isSwappable(ExecutionPlanConfiguration activeConfiguration,
+                                      ExecutionPlanConfiguration editedConfiguration) {
+        return activeConfiguration.getName().equals(editedConfiguration.getName()) &&
+                !activeConfiguration.isLocalParallelExecutionEnabled() &&
+                !editedConfiguration.isLocalParallelExecutionEnabled() &&
+                isEqual(activeConfiguration.getAsyncIngestionConfiguration(),
+                        editedConfiguration.getAsyncIngestionConfiguration()) &&
+                getStreamMapping(activeConfiguration.getImportedStreams())
+                        .equals(getStreamMapping(editedConfiguration.getImportedStreams())) &&
+                getStreamMapping(activeConfiguration.getExportedStreams())
+                        .equals(getStreamMapping(editedConfiguration.getExportedStreams()));
+    }
+
+    /**
+     * A Siddhi snapshot holds the state of each element of the runtime against an id assigned in the order of the
+     * elements, so it can only be restored into a runtime with the same streams, event tables, queries and
+     * partitions. Edits to annotations of the plan, comments and whitespace keep the state.
+     */
+    public static boolean isStateTransferable(CompiledExecutionPlan activeExecutionPlan,
+                                              CompiledExecutionPlan editedExecutionPlan) {
+        return getStreamSchemas(activeExecutionPlan).equals(getStreamSchemas(editedExecutionPlan)) &&
+                normalize(SiddhiQLStormQuerySplitter.getEventTableList(activeExecutionPlan.getExecutionPlan()))
+                        .equals(normalize(SiddhiQLStormQuerySplitter.getEventTableList(
+                                editedExecutionPlan.getExecutionPlan()))) &&
+                normalize(SiddhiQLStormQuerySplitter.split(activeExecutionPlan.getExecutionPlan()))
+                        .equals(normalize(SiddhiQLStormQuerySplitter.split(editedExecutionPlan.getExecutionPlan())));
+    }
+
+    private static boolean isEqual(AsyncIngestionConfiguration activeConfiguration,
+                                   AsyncIngestionConfiguration editedConfiguration) {
+        return activeConfiguration == null ? editedConfiguration == null :
+                activeConfiguration.equals(editedConfiguration);
+    }
+
+    private static Map<String, String> getStreamMapping(List<StreamConfiguration> streamConfigurations) {
+        Map<String, String> streamMapping = new HashMap<String, String>();
+        for (StreamConfiguration streamConfiguration : streamConfigurations) {
+            streamMapping.put(streamConfiguration.getSiddhiStreamName(), streamConfiguration.getStreamId());
+        }
+        return streamMapping;
+    }
+
+    private static Map<String, List<String>> getStreamSchemas(CompiledExecutionPlan compiledExecutionPlan) {
+        Map<String, List<String>> streamSchemas = new HashMap<String, List<String>>();
+        for (StreamDefinition streamDefinition :
+                compiledExecutionPlan.getParsedExecutionPlan().getStreamDefinitionMap().values()) {
+            List<String> attributes = new ArrayList<String>();
+            for (Attribute attribute : streamDefinition.getAttributeList()) {
+                attributes.add(attribute.getName() + " " + attribute.getType());
+            }
+            streamSchemas.put(streamDefinition.getId(), attributes);
+        }
+        return streamSchemas;
+    }
+
+    private static List<String> normalize(List<String> elements) {
+        List<String> normalizedElements = new ArrayList<String>(elements.size());
+        for (String element : elements) {
+            normalizedElements.add(element.trim().replaceAll("\\s+", " "));
+        }
+        return normalizedElements;
+    }
+}
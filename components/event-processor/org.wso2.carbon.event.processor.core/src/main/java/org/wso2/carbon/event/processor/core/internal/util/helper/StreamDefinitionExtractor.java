@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.event.processor.core.internal.util.helper;
+
+import org.wso2.siddhi.query.api.ExecutionPlan;
+import org.wso2.siddhi.query.api.definition.AbstractDefinition;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.definition.StreamDefinition;
+import org.wso2.siddhi.query.api.execution.ExecutionElement;
+import org.wso2.siddhi.query.api.execution.partition.Partition;
+import org.wso2.siddhi.query.api.execution.query.Query;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Filter;
+import org.wso2.siddhi.query.api.execution.query.input.handler.StreamHandler;
+import org.wso2.siddhi.query.api.execution.query.input.handler.Window;
+import org.wso2.siddhi.query.api.execution.query.input.stream.JoinInputStream;
+import org.wso2.siddhi.query.api.execution.query.input.stream.SingleInputStream;
+import org.wso2.siddhi.query.api.execution.query.output.stream.InsertIntoStream;
+import org.wso2.siddhi.query.api.execution.query.selection.OutputAttribute;
+import org.wso2.siddhi.query.api.expression.AttributeFunction;
+import org.wso2.siddhi.query.api.expression.AttributeFunctionExtension;
+import org.wso2.siddhi.query.api.expression.Expression;
+import org.wso2.siddhi.query.api.expression.Variable;
+import org.wso2.siddhi.query.api.expression.condition.And;
+import org.wso2.siddhi.query.api.expression.condition.Compare;
+import org.wso2.siddhi.query.api.expression.condition.In;
+import org.wso2.siddhi.query.api.expression.condition.IsNull;
+import org.wso2.siddhi.query.api.expression.condition.Not;
+import org.wso2.siddhi.query.api.expression.condition.Or;
+import org.wso2.siddhi.query.api.expression.constant.BoolConstant;
+import org.wso2.siddhi.query.api.expression.constant.DoubleConstant;
+import org.wso2.siddhi.query.api.expression.constant.FloatConstant;
+import org.wso2.siddhi.query.api.expression.constant.IntConstant;
+import org.wso2.siddhi.query.api.expression.constant.LongConstant;
+import org.wso2.siddhi.query.api.expression.constant.StringConstant;
+import org.wso2.siddhi.query.api.expression.math.Add;
+import org.wso2.siddhi.query.api.expression.math.Divide;
+import org.wso2.siddhi.query.api.expression.math.Mod;
+import org.wso2.siddhi.query.api.expression.math.Multiply;
+import org.wso2.siddhi.query.api.expression.math.Subtract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Derives the definitions of all the streams of an execution plan, including the streams which are only defined
+ * implicitly as query outputs, from the parsed query model alone. This avoids creating an ExecutionPlanRuntime, which
+ * allocates windows, junctions and threads, when only the stream definitions are needed.
+ * <p/>
+ * Only the constructs whose output schema can be derived without the Siddhi runtime are supported (filters, windows,
+ * joins, partitions and the built-in aggregate functions). For anything else {@link #extract(ExecutionPlan)} returns
+ * null, and the caller is expected to fall back to creating a runtime.
+ */
+public class StreamDefinitionExtractor {
+
+    private StreamDefinitionExtractor() {
+    }
+
+    /**
+     * Derives the stream definitions of the execution plan.
+     *
+     * @param executionPlan parsed execution plan
+     * @return < stream id, definition > of defined and query output streams (inner streams of partitions and event
+     * tables are excluded), or null if the schema of some stream cannot be derived without creating a runtime
+     */
+    public static Map<String, AbstractDefinition> extract(ExecutionPlan executionPlan) {
+        Map<String, AbstractDefinition> streamDefinitionMap = new LinkedHashMap<String, AbstractDefinition>();
+        streamDefinitionMap.putAll(executionPlan.getStreamDefinitionMap());
+        Map<String, AbstractDefinition> tableDefinitionMap = new HashMap<String, AbstractDefinition>();
+        tableDefinitionMap.putAll(executionPlan.getTableDefinitionMap());
+
+        for (ExecutionElement executionElement : executionPlan.getExecutionElementList()) {
+            if (executionElement instanceof Query) {
+                if (!addOutputDefinition((Query) executionElement, streamDefinitionMap, tableDefinitionMap, null)) {
+                    return null;
+                }
+            } else {
+                Map<String, AbstractDefinition> innerStreamDefinitionMap = new HashMap<String, AbstractDefinition>();
+                for (Query query : ((Partition) executionElement).getQueryList()) {
+                    if (!addOutputDefinition(query, streamDefinitionMap, tableDefinitionMap, innerStreamDefinitionMap)) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return streamDefinitionMap;
+    }
+
+    private static boolean addOutputDefinition(Query query, Map<String, AbstractDefinition> streamDefinitionMap,
+                                               Map<String, AbstractDefinition> tableDefinitionMap,
+                                               Map<String, AbstractDefinition> innerStreamDefinitionMap) {
+        if (!(query.getOutputStream() instanceof InsertIntoStream)) {
+            // Delete and update queries operate on tables and does not define new streams.
+            return true;
+        }
+        String outputStreamId = query.getOutputStream().getId();
+        boolean isInnerStream = isInnerStream(outputStreamId);
+        if (tableDefinitionMap.containsKey(outputStreamId) ||
+                (!isInnerStream && streamDefinitionMap.containsKey(outputStreamId))) {
+            return true;
+        }
+
+        Map<String, List<Attribute>> inputAttributes = new LinkedHashMap<String, List<Attribute>>();
+        if (query.getInputStream() instanceof SingleInputStream) {
+            if (!addInputAttributes((SingleInputStream) query.getInputStream(), streamDefinitionMap, tableDefinitionMap,
+                    innerStreamDefinitionMap, inputAttributes)) {
+                return false;
+            }
+        } else if (query.getInputStream() instanceof JoinInputStream) {
+            JoinInputStream joinInputStream = (JoinInputStream) query.getInputStream();
+            if (!addInputAttributes(joinInputStream.getLeftInputStream(), streamDefinitionMap, tableDefinitionMap,
+                    innerStreamDefinitionMap, inputAttributes) ||
+                    !addInputAttributes(joinInputStream.getRightInputStream(), streamDefinitionMap, tableDefinitionMap,
+                            innerStreamDefinitionMap, inputAttributes)) {
+                return false;
+            }
+        } else {
+            // Output of patterns and sequences depends on the state events, which needs the runtime to resolve.
+            return false;
+        }
+
+        StreamDefinition outputDefinition = StreamDefinition.id(outputStreamId);
+        List<OutputAttribute> selectionList = query.getSelector().getSelectionList();
+        if (selectionList == null || selectionList.isEmpty()) {
+            if (!(query.getInputStream() instanceof SingleInputStream)) {
+                return false;                               // 'select *' of a join
+            }
+            for (Attribute attribute : inputAttributes.values().iterator().next()) {
+                outputDefinition.attribute(attribute.getName(), attribute.getType());
+            }
+        } else {
+            for (OutputAttribute outputAttribute : selectionList) {
+                Attribute.Type type = getType(outputAttribute.getExpression(), inputAttributes);
+                String name = outputAttribute.getRename();
+                if (name == null && outputAttribute.getExpression() instanceof Variable) {
+                    name = ((Variable) outputAttribute.getExpression()).getAttributeName();
+                }
+                if (type == null || name == null) {
+                    return false;
+                }
+                outputDefinition.attribute(name, type);
+            }
+        }
+
+        if (isInnerStream) {
+            if (innerStreamDefinitionMap == null) {
+                return false;
+            }
+            innerStreamDefinitionMap.put(getStreamId(outputStreamId), outputDefinition);
+        } else {
+            streamDefinitionMap.put(outputStreamId, outputDefinition);
+        }
+        return true;
+    }
+
+    private static boolean addInputAttributes(SingleInputStream inputStream, Map<String, AbstractDefinition> streamDefinitionMap,
+                                              Map<String, AbstractDefinition> tableDefinitionMap,
+                                              Map<String, AbstractDefinition> innerStreamDefinitionMap,
+                                              Map<String, List<Attribute>> inputAttributes) {
+        for (StreamHandler streamHandler : inputStream.getStreamHandlers()) {
+            if (!(streamHandler instanceof Filter) && !(streamHandler instanceof Window)) {
+                // Stream functions and processors can add attributes to the stream.
+                return false;
+            }
+        }
+        String streamId = inputStream.getStreamId();
+        AbstractDefinition definition;
+        if (isInnerStream(streamId)) {
+            definition = innerStreamDefinitionMap == null ? null : innerStreamDefinitionMap.get(getStreamId(streamId));
+        } else {
+            definition = streamDefinitionMap.get(streamId);
+            if (definition == null) {
+                definition = tableDefinitionMap.get(streamId);
+            }
+        }
+        if (definition == null) {
+            return false;
+        }
+        inputAttributes.put(streamId, definition.getAttributeList());
+        if (inputStream.getStreamReferenceId() != null) {
+            inputAttributes.put(inputStream.getStreamReferenceId(), definition.getAttributeList());
+        }
+        return true;
+    }
+
+    /**
+     * Derives the return type of the expression, following the type rules of the Siddhi executors.
+     *
+     * @return the type or null if it cannot be derived without the runtime
+     */
+    static Attribute.Type getType(Expression expression, Map<String, List<Attribute>> inputAttributes) {
+        if (expression instanceof Variable) {
+            return getVariableType((Variable) expression, inputAttributes);
+        } else if (expression instanceof StringConstant) {
+            return Attribute.Type.STRING;
+        } else if (expression instanceof IntConstant) {
+            return Attribute.Type.INT;
+        } else if (expression instanceof LongConstant) {
+            return Attribute.Type.LONG;
+        } else if (expression instanceof FloatConstant) {
+            return Attribute.Type.FLOAT;
+        } else if (expression instanceof DoubleConstant) {
+            return Attribute.Type.DOUBLE;
+        } else if (expression instanceof BoolConstant || expression instanceof And || expression instanceof Or ||
+                expression instanceof Not || expression instanceof Compare || expression instanceof IsNull ||
+                expression instanceof In) {
+            return Attribute.Type.BOOL;
+        } else if (expression instanceof Add) {
+            return getMathType(getType(((Add) expression).getLeftValue(), inputAttributes),
+                    getType(((Add) expression).getRightValue(), inputAttributes));
+        } else if (expression instanceof Subtract) {
+            return getMathType(getType(((Subtract) expression).getLeftValue(), inputAttributes),
+                    getType(((Subtract) expression).getRightValue(), inputAttributes));
+        } else if (expression instanceof Multiply) {
+            return getMathType(getType(((Multiply) expression).getLeftValue(), inputAttributes),
+                    getType(((Multiply) expression).getRightValue(), inputAttributes));
+        } else if (expression instanceof Divide) {
+            return getMathType(getType(((Divide) expression).getLeftValue(), inputAttributes),
+                    getType(((Divide) expression).getRightValue(), inputAttributes));
+        } else if (expression instanceof Mod) {
+            return getMathType(getType(((Mod) expression).getLeftValue(), inputAttributes),
+                    getType(((Mod) expression).getRightValue(), inputAttributes));
+        } else if (expression instanceof AttributeFunction && !(expression instanceof AttributeFunctionExtension)) {
+            return getFunctionType((AttributeFunction) expression, inputAttributes);
+        }
+        return null;
+    }
+
+    private static Attribute.Type getVariableType(Variable variable, Map<String, List<Attribute>> inputAttributes) {
+        List<List<Attribute>> candidates = new ArrayList<List<Attribute>>();
+        if (variable.getStreamId() != null) {
+            List<Attribute> attributes = inputAttributes.get(variable.getStreamId());
+            if (attributes == null) {
+                return null;
+            }
+            candidates.add(attributes);
+        } else {
+            candidates.addAll(inputAttributes.values());
+        }
+        Attribute.Type type = null;
+        for (List<Attribute> attributes : candidates) {
+            for (Attribute attribute : attributes) {
+                if (attribute.getName().equals(variable.getAttributeName())) {
+                    if (type != null && type != attribute.getType()) {
+                        return null;                        // ambiguous attribute of a join
+                    }
+                    type = attribute.getType();
+                }
+            }
+        }
+        return type;
+    }
+
+    private static Attribute.Type getFunctionType(AttributeFunction function,
+                                                  Map<String, List<Attribute>> inputAttributes) {
+        String name = function.getFunction();
+        Expression[] parameters = function.getParameters();
+        if ("count".equals(name) || "distinctCount".equals(name)) {
+            return Attribute.Type.LONG;
+        } else if ("avg".equals(name) || "stdDev".equals(name)) {
+            return Attribute.Type.DOUBLE;
+        } else if ("UUID".equals(name)) {
+            return Attribute.Type.STRING;
+        } else if (parameters == null || parameters.length == 0) {
+            return null;
+        }
+        Attribute.Type parameterType = getType(parameters[0], inputAttributes);
+        if (parameterType == null) {
+            return null;
+        }
+        if ("sum".equals(name)) {
+            return (parameterType == Attribute.Type.INT || parameterType == Attribute.Type.LONG) ?
+                    Attribute.Type.LONG : Attribute.Type.DOUBLE;
+        } else if ("max".equals(name) || "min".equals(name) || "coalesce".equals(name)) {
+            return parameterType;
+        }
+        return null;
+    }
+
+    private static Attribute.Type getMathType(Attribute.Type left, Attribute.Type right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (left == Attribute.Type.DOUBLE || right == Attribute.Type.DOUBLE) {
+            return Attribute.Type.DOUBLE;
+        } else if (left == Attribute.Type.FLOAT || right == Attribute.Type.FLOAT) {
+            return Attribute.Type.FLOAT;
+        } else if (left == Attribute.Type.LONG || right == Attribute.Type.LONG) {
+            return Attribute.Type.LONG;
+        } else if (left == Attribute.Type.INT && right == Attribute.Type.INT) {
+            return Attribute.Type.INT;
+        }
+        return null;
+    }
+
+    private static boolean isInnerStream(String streamId) {
+        return streamId != null && streamId.startsWith("#");
+    }
+
+    private static String getStreamId(String streamId) {
+        return isInnerStream(streamId) ? streamId.substring(1) : streamId;
+    }
+}
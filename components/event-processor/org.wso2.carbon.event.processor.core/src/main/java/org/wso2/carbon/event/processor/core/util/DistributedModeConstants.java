@@ -20,6 +20,44 @@ public final class DistributedModeConstants {
 
     public static final String STORM_STATUS_MAP = "org.wso2.cep.org.wso2.carbon.event.processor.core.storm.status.execution.plan.ui";
 
+    /**
+     * Time for which connection changes of the execution plans of a worker node are collected before they are
+     * written to the status map together.
+     */
+    public static final int STATUS_UPDATE_COALESCE_DELAY = 1000;
+
+    /**
+     * Time the topology of an execution plan being edited is kept alive, so that the redeployment of the execution
+     * plan can reuse it by rebalancing instead of re-submitting. Removed execution plans are killed right away.
+     */
+    public static final int TOPOLOGY_KILL_GRACE_PERIOD = 10000;
+    public static final int TOPOLOGY_REBALANCE_WAIT_SECS = 2;
+    /**
+     * Time a rebalanced topology is given to become active again, after which it is killed and re-submitted.
+     */
+    public static final long TOPOLOGY_REBALANCE_TIMEOUT = 120000;
+
+    /**
+     * Packing of small execution plans into shared topologies, enabled and configured through storm.yaml. Changes to
+     * the plans of a shared topology within the redeploy delay are applied with a single redeployment.
+     */
+    public static final String TOPOLOGY_PACKING_ENABLED = "cep.topology.packing.enabled";
+    public static final String TOPOLOGY_PACKING_MAX_EXECUTORS = "cep.topology.packing.max.executors";
+    public static final String TOPOLOGY_PACKING_TENANT_ISOLATION = "cep.topology.packing.tenant.isolation";
+    public static final int DEFAULT_TOPOLOGY_PACKING_MAX_EXECUTORS = 32;
+    public static final String SHARED_TOPOLOGY_NAME_PREFIX = "SharedTopology-";
+    public static final int SHARED_TOPOLOGY_REDEPLOY_DELAY = 5000;
+
+    /**
+     * Autoscaler settings. Capacity is the fraction of time an executor spent executing tuples (as in Storm UI).
+     */
+    public static final int AUTOSCALER_INTERVAL = 60000;
+    public static final double AUTOSCALER_SCALE_UP_CAPACITY = 0.8;
+    public static final double AUTOSCALER_SCALE_DOWN_CAPACITY = 0.3;
+    public static final double AUTOSCALER_TARGET_CAPACITY = 0.6;
+    public static final int AUTOSCALER_CONSECUTIVE_OBSERVATIONS = 3;
+    public static final int AUTOSCALER_COOLDOWN_INTERVALS = 5;
+
     /**
      * These states are different to the states in Storm terminology, except for ACTIVE
      */
@@ -27,6 +65,7 @@ public final class DistributedModeConstants {
         UNKNOWN,            //Topology status has not been queried yet from Storm.
         CLEANING,           //StormTopologyManager is cleaning an existing topology with the same name, to deploy this topology.
         DEPLOYING,          //StormTopologyManager is in the process of deploying this  topology
+        REBALANCING,        //StormTopologyManager is changing the parallelism of the existing topology in place.
         ACTIVE,             //Indicates that the topology was found to be in ACTIVE state (as in Storm terminology) in the storm cluster.
     }
 }
@@ -18,6 +18,7 @@ package org.wso2.carbon.event.processor.core.util;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Map;
 
 /**
@@ -30,8 +31,12 @@ public class ExecutionPlanStatusHolder implements Serializable {
     private final Map<String,Integer> publisherBoltsMap = new HashMap<>();         // < IP , #publisherBolts >
     private final Map<String,Integer[]> cepReceiversMap = new HashMap<>();            // < IP, #pendingReceiverConnections >
 
+    private final LinkedList<String> scalingDecisions = new LinkedList<>();         // most recent last
+
     private int requiredPublisherBoltsCount = 0;
 
+    private static final int MAX_SCALING_DECISIONS = 10;
+
     public ExecutionPlanStatusHolder(int requiredPublisherBolts) {
         this.requiredPublisherBoltsCount = requiredPublisherBolts;
     }
@@ -52,10 +57,32 @@ public class ExecutionPlanStatusHolder implements Serializable {
         cepReceiversMap.put(hostIp,new Integer[]{connected,required});
     }
 
+    /**
+     * @return true if the connection counts of the node are already the given counts
+     */
+    public boolean hasNodeStatus(String hostIp, int connectedCepReceivers, int requiredCepReceivers,
+                                 int connectedPublisherBolts) {
+        Integer[] cepReceiverStatus = cepReceiversMap.get(hostIp);
+        Integer publisherBoltsCount = publisherBoltsMap.get(hostIp);
+        return cepReceiverStatus != null && cepReceiverStatus[0] == connectedCepReceivers &&
+                cepReceiverStatus[1] == requiredCepReceivers && publisherBoltsCount != null &&
+                publisherBoltsCount == connectedPublisherBolts;
+    }
+
     public void setConnectedPublisherBoltsCount(String hostIp, int connectedCount){
         publisherBoltsMap.put(hostIp,connectedCount);
     }
 
+    /**
+     * Records a parallelism change made by the autoscaler, keeping only the most recent decisions.
+     */
+    public void addScalingDecision(String decision){
+        scalingDecisions.add(decision);
+        while (scalingDecisions.size() > MAX_SCALING_DECISIONS) {
+            scalingDecisions.removeFirst();
+        }
+    }
+
     public String getExecutionPlanStatus(){
         String topologyStatus = "Storm topology : " + this.getTopologyState().toString() + "\n";
 
@@ -87,6 +114,15 @@ public class ExecutionPlanStatusHolder implements Serializable {
         } else {
             stormPublishingBoltStatus += boltsConnected + "/" + requiredPublisherBoltsCount + " established\n";
         }
-        return topologyStatus + receiverStatus + stormPublishingBoltStatus;
+
+        //autoscaler decisions
+        String scalingStatus = "";
+        if (!scalingDecisions.isEmpty()) {
+            scalingStatus = "Scaling decisions : \n";
+            for (String decision : scalingDecisions) {
+                scalingStatus += "\t" + decision + "\n";
+            }
+        }
+        return topologyStatus + receiverStatus + stormPublishingBoltStatus + scalingStatus;
     }
 }
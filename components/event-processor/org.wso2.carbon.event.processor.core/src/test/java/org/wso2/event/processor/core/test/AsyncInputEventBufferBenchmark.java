@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.AsyncIngestionConfiguration;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.internal.listener.AsyncInputEventBuffer;
+import org.wso2.carbon.event.processor.core.internal.listener.SiddhiInputEventDispatcher;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+/**
+ * Compares the time taken to receive events for a slow plan through its buffer with the time the plan takes to process
+ * them. Benchmarks are excluded from the unit tests, run with -Dtest=AsyncInputEventBufferBenchmark.
+ */
+public class AsyncInputEventBufferBenchmark {
+    private static final Log log = LogFactory.getLog(AsyncInputEventBufferBenchmark.class);
+
+    private static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "define stream stockStream (symbol string, price double);\n" +
+            "from stockStream select symbol, price insert into outputStream;";
+
+    @Test
+    public void benchmarkSlowPlan() throws Exception {
+        ExecutionPlanRuntime executionPlanRuntime = new SiddhiManager().createExecutionPlanRuntime(EXECUTION_PLAN);
+        executionPlanRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        executionPlanRuntime.start();
+        AsyncInputEventBuffer asyncInputEventBuffer = new AsyncInputEventBuffer("StockPlan", -1234,
+                new AsyncIngestionConfiguration(1024, 1, AsyncIngestionConfiguration.WaitStrategy.BLOCKING,
+                        AsyncIngestionConfiguration.Overflow.BLOCK));
+        ExecutionPlanConfiguration executionPlanConfiguration = new ExecutionPlanConfiguration();
+        executionPlanConfiguration.setName("StockPlan");
+        SiddhiInputEventDispatcher eventDispatcher = new SiddhiInputEventDispatcher("stockStream:1.0.0",
+                executionPlanRuntime.getInputHandler("stockStream"), executionPlanConfiguration, -1234,
+                asyncInputEventBuffer);
+        asyncInputEventBuffer.start();
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            eventDispatcher.consumeEvent(new Event(System.currentTimeMillis(), new Object[]{"IBM", 100.0 + i}));
+        }
+        long receivingTime = System.nanoTime() - startTime;
+        asyncInputEventBuffer.shutdown();
+        long processingTime = System.nanoTime() - startTime;
+        executionPlanRuntime.shutdown();
+
+        log.info("Receiving 100 events for a plan taking 5 ms per event took " + (receivingTime / 1000000) +
+                " ms, while processing them took " + (processingTime / 1000000) + " ms");
+    }
+}
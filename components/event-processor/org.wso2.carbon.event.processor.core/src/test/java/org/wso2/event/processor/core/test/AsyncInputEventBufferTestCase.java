@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.AsyncIngestionConfiguration;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.exception.ExecutionPlanConfigurationException;
+import org.wso2.carbon.event.processor.core.internal.listener.AsyncInputEventBuffer;
+import org.wso2.carbon.event.processor.core.internal.listener.SiddhiInputEventDispatcher;
+import org.wso2.carbon.event.processor.core.internal.util.helper.EventProcessorHelper;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+import org.wso2.siddhi.query.compiler.SiddhiCompiler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncInputEventBufferTestCase {
+    private static final Log log = LogFactory.getLog(AsyncInputEventBufferTestCase.class);
+
+    private static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "define stream stockStream (symbol string, price double);\n" +
+            "from stockStream select symbol, price insert into outputStream;";
+
+    @Test
+    public void testAsyncAnnotation() throws ExecutionPlanConfigurationException {
+        Assert.assertNull(EventProcessorHelper.getAsyncIngestionConfiguration(SiddhiCompiler.parse(EXECUTION_PLAN)));
+
+        AsyncIngestionConfiguration configuration = EventProcessorHelper.getAsyncIngestionConfiguration(
+                SiddhiCompiler.parse("@Plan:async\n" + EXECUTION_PLAN));
+        Assert.assertEquals(new AsyncIngestionConfiguration(1024, 1, AsyncIngestionConfiguration.WaitStrategy.BLOCKING,
+                AsyncIngestionConfiguration.Overflow.BLOCK), configuration);
+
+        configuration = EventProcessorHelper.getAsyncIngestionConfiguration(SiddhiCompiler.parse(
+                "@Plan:async(buffer.size='256', workers='2', wait.strategy='yielding', overflow='drop')\n" +
+                        EXECUTION_PLAN));
+        Assert.assertEquals(256, configuration.getBufferSize());
+        Assert.assertEquals(2, configuration.getWorkers());
+        Assert.assertEquals(AsyncIngestionConfiguration.WaitStrategy.YIELDING, configuration.getWaitStrategy());
+        Assert.assertEquals(AsyncIngestionConfiguration.Overflow.DROP, configuration.getOverflow());
+
+        for (String invalidElement : new String[]{"buffer.size='100'", "workers='0'", "wait.strategy='spinning'",
+                "overflow='discard'", "size='1024'"}) {
+            try {
+                EventProcessorHelper.getAsyncIngestionConfiguration(SiddhiCompiler.parse(
+                        "@Plan:async(" + invalidElement + ")\n" + EXECUTION_PLAN));
+                Assert.fail("Accepted invalid async annotation element " + invalidElement);
+            } catch (ExecutionPlanConfigurationException e) {
+                log.info(e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testSlowPlanDoesNotHoldReceiver() throws Exception {
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final AtomicLong receivedCount = new AtomicLong();
+        ExecutionPlanRuntime executionPlanRuntime = createRuntime(new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                try {
+                    releaseLatch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                receivedCount.addAndGet(events.length);
+            }
+        });
+        AsyncInputEventBuffer asyncInputEventBuffer = new AsyncInputEventBuffer("StockPlan", -1234,
+                new AsyncIngestionConfiguration(1024, 1, AsyncIngestionConfiguration.WaitStrategy.BLOCKING,
+                        AsyncIngestionConfiguration.Overflow.BLOCK));
+        final SiddhiInputEventDispatcher eventDispatcher = createEventDispatcher(executionPlanRuntime,
+                asyncInputEventBuffer);
+        asyncInputEventBuffer.start();
+
+        Thread receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    eventDispatcher.consumeEvent(createEvent(i));
+                }
+            }
+        });
+        receiver.start();
+        // The plan is held until all the events are received
+        receiver.join(10000);
+        Assert.assertFalse(receiver.isAlive());
+        Assert.assertEquals(0, receivedCount.get());
+        Assert.assertTrue(asyncInputEventBuffer.getQueueDepth() > 0);
+
+        releaseLatch.countDown();
+        asyncInputEventBuffer.shutdown();
+        executionPlanRuntime.shutdown();
+        Assert.assertEquals(100, receivedCount.get());
+        Assert.assertEquals(0, asyncInputEventBuffer.getQueueDepth());
+        Assert.assertEquals(0, asyncInputEventBuffer.getBlockedEventCount());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        for (AsyncIngestionConfiguration.Overflow overflow : AsyncIngestionConfiguration.Overflow.values()) {
+            final CountDownLatch releaseLatch = new CountDownLatch(1);
+            final AtomicLong receivedCount = new AtomicLong();
+            ExecutionPlanRuntime executionPlanRuntime = createRuntime(new StreamCallback() {
+                @Override
+                public void receive(Event[] events) {
+                    try {
+                        releaseLatch.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    receivedCount.addAndGet(events.length);
+                }
+            });
+            final AsyncInputEventBuffer asyncInputEventBuffer = new AsyncInputEventBuffer("StockPlan", -1234,
+                    new AsyncIngestionConfiguration(4, 1, AsyncIngestionConfiguration.WaitStrategy.SLEEPING, overflow));
+            final SiddhiInputEventDispatcher eventDispatcher = createEventDispatcher(executionPlanRuntime,
+                    asyncInputEventBuffer);
+            asyncInputEventBuffer.start();
+
+            Thread receiver = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20; i++) {
+                        eventDispatcher.consumeEvent(createEvent(i));
+                    }
+                }
+            });
+            receiver.start();
+            // Wait until the buffer is full, i.e. the receiver blocks or has dropped the events that did not fit
+            long deadline = System.currentTimeMillis() + 10000;
+            while (receiver.isAlive() && asyncInputEventBuffer.getBlockedEventCount() == 0 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            releaseLatch.countDown();
+            receiver.join();
+            asyncInputEventBuffer.shutdown();
+            executionPlanRuntime.shutdown();
+
+            if (overflow == AsyncIngestionConfiguration.Overflow.DROP) {
+                Assert.assertTrue(asyncInputEventBuffer.getDroppedEventCount() > 0);
+                Assert.assertEquals(0, asyncInputEventBuffer.getBlockedEventCount());
+            } else {
+                Assert.assertTrue(asyncInputEventBuffer.getBlockedEventCount() > 0);
+                Assert.assertEquals(0, asyncInputEventBuffer.getDroppedEventCount());
+            }
+            Assert.assertEquals(20, receivedCount.get() + asyncInputEventBuffer.getDroppedEventCount());
+        }
+    }
+
+    private ExecutionPlanRuntime createRuntime(StreamCallback streamCallback) {
+        ExecutionPlanRuntime executionPlanRuntime = new SiddhiManager().createExecutionPlanRuntime(EXECUTION_PLAN);
+        executionPlanRuntime.addCallback("outputStream", streamCallback);
+        executionPlanRuntime.start();
+        return executionPlanRuntime;
+    }
+
+    private SiddhiInputEventDispatcher createEventDispatcher(ExecutionPlanRuntime executionPlanRuntime,
+                                                             AsyncInputEventBuffer asyncInputEventBuffer) {
+        ExecutionPlanConfiguration executionPlanConfiguration = new ExecutionPlanConfiguration();
+        executionPlanConfiguration.setName("StockPlan");
+        return new SiddhiInputEventDispatcher("stockStream:1.0.0", executionPlanRuntime.getInputHandler("stockStream"),
+                executionPlanConfiguration, -1234, asyncInputEventBuffer);
+    }
+
+    private Event createEvent(int i) {
+        return new Event(System.currentTimeMillis(), new Object[]{"IBM", 100.0 + i});
+    }
+}
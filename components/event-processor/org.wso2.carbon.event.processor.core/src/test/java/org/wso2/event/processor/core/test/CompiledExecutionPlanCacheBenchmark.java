@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlanCache;
+
+/**
+ * Compares compiling distinct execution plans with compiling a cached one. Benchmarks are excluded from the unit
+ * tests, run with -Dtest=CompiledExecutionPlanCacheBenchmark.
+ */
+public class CompiledExecutionPlanCacheBenchmark {
+    private static final Log log = LogFactory.getLog(CompiledExecutionPlanCacheBenchmark.class);
+
+    private static final String EXECUTION_PLAN = CompiledExecutionPlanCacheTestCase.EXECUTION_PLAN;
+
+    @Test
+    public void benchmarkCompilation() {
+        int iterations = 1000;
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(10);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cache.compile(EXECUTION_PLAN + "\n-- " + i);
+        }
+        long uncachedTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cache.compile(EXECUTION_PLAN);
+        }
+        long cachedTime = System.nanoTime() - start;
+        log.info("Compiling " + iterations + " execution plans took " + (uncachedTime / 1000000) + " ms, and " +
+                (cachedTime / 1000000) + " ms when cached");
+    }
+}
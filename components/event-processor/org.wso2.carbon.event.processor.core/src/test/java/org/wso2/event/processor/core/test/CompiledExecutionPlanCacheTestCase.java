@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlan;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlanCache;
+
+public class CompiledExecutionPlanCacheTestCase {
+    static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "@Import('stockQuote:1.0.0')\n" +
+            "define stream stockQuote (symbol string, price double);\n" +
+            "@Export('highStockQuote:1.0.0')\n" +
+            "define stream highStockQuote (symbol string, price double);\n" +
+            "from stockQuote[price > 100] select symbol, price insert into highStockQuote;";
+
+    @Test
+    public void testCompiledOnce() {
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(10);
+        CompiledExecutionPlan compiledExecutionPlan = cache.compile(EXECUTION_PLAN);
+
+        Assert.assertEquals("StockPlan", compiledExecutionPlan.getName());
+        Assert.assertEquals(2, compiledExecutionPlan.getParsedExecutionPlan().getStreamDefinitionMap().size());
+        Assert.assertSame(compiledExecutionPlan, cache.compile(new String(EXECUTION_PLAN)));
+        Assert.assertNotSame(compiledExecutionPlan, cache.compile(EXECUTION_PLAN + "\n"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRuntimeValidated() {
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(10);
+        CompiledExecutionPlan compiledExecutionPlan = cache.compile(EXECUTION_PLAN);
+        Assert.assertFalse(compiledExecutionPlan.isRuntimeValidated(1));
+
+        cache.setRuntimeValidated(compiledExecutionPlan, 1);
+        CompiledExecutionPlan validatedExecutionPlan = cache.compile(EXECUTION_PLAN);
+        Assert.assertTrue(validatedExecutionPlan.isRuntimeValidated(1));
+        Assert.assertFalse(validatedExecutionPlan.isRuntimeValidated(2));
+        Assert.assertSame(compiledExecutionPlan.getParsedExecutionPlan(),
+                validatedExecutionPlan.getParsedExecutionPlan());
+
+        cache.setRuntimeValidated(compiledExecutionPlan, 2);
+        Assert.assertTrue(cache.compile(EXECUTION_PLAN).isRuntimeValidated(1));
+        Assert.assertTrue(cache.compile(EXECUTION_PLAN).isRuntimeValidated(2));
+    }
+
+    @Test
+    public void testExternalTablesAlwaysValidated() {
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(10);
+        String executionPlan = EXECUTION_PLAN + "\n@from(eventtable = 'rdbms', datasource.name = 'STOCK_DB', " +
+                "table.name = 'stockQuote')\ndefine table stockTable (symbol string, price double);";
+        cache.setRuntimeValidated(cache.compile(executionPlan), 1);
+        Assert.assertFalse(cache.compile(executionPlan).isRuntimeValidated(1));
+    }
+
+    @Test
+    public void testEviction() {
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(2);
+        CompiledExecutionPlan first = cache.compile(EXECUTION_PLAN);
+        cache.compile(EXECUTION_PLAN + "\n");
+        cache.compile(EXECUTION_PLAN);
+        CompiledExecutionPlan third = cache.compile(EXECUTION_PLAN + "\n\n");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(first, cache.compile(EXECUTION_PLAN));
+        Assert.assertSame(third, cache.compile(EXECUTION_PLAN + "\n\n"));
+    }
+
+    @Test
+    public void testPinned() {
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(2);
+        cache.pin();
+        CompiledExecutionPlan first = cache.compile(EXECUTION_PLAN);
+        cache.compile(EXECUTION_PLAN + "\n");
+        cache.compile(EXECUTION_PLAN + "\n\n");
+        Assert.assertEquals(3, cache.size());
+        Assert.assertSame(first, cache.compile(EXECUTION_PLAN));
+
+        cache.unpin();
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(first, cache.compile(EXECUTION_PLAN));
+        Assert.assertNotSame(first, cache.compile(EXECUTION_PLAN + "\n\n\n"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRepeatedCompilationCached() {
+        CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(10);
+        CompiledExecutionPlan compiledExecutionPlan = cache.compile(EXECUTION_PLAN);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertSame(compiledExecutionPlan, cache.compile(new String(EXECUTION_PLAN)));
+        }
+        Assert.assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.util.EventTracer;
+import org.wso2.siddhi.core.event.Event;
+
+public class EventTracerTestCase {
+
+    private static final String PREFIX = "TenantId : -1234, Execution plan : StockPlan, Input Event : ";
+
+    @Test
+    public void testSampling() {
+        EventTracer eventTracer = new EventTracer(10, 0, 1024);
+        for (int i = 0; i < 1000; i++) {
+            eventTracer.trace(PREFIX, createEvent(i));
+        }
+        Assert.assertEquals(100, eventTracer.getTraces().length);
+        Assert.assertEquals(0, eventTracer.getLostCount());
+    }
+
+    @Test
+    public void testBatchSampling() {
+        EventTracer eventTracer = new EventTracer(10, 0, 1024);
+        for (int i = 0; i < 100; i++) {
+            Event[] events = new Event[7];
+            for (int j = 0; j < events.length; j++) {
+                events[j] = createEvent(i * events.length + j);
+            }
+            eventTracer.trace(PREFIX, events);
+        }
+        String[] traces = eventTracer.getTraces();
+        int tracedEventCount = 0;
+        for (String trace : traces) {
+            tracedEventCount += trace.split("IBM").length - 1;
+        }
+        Assert.assertEquals(70, tracedEventCount);
+        Assert.assertTrue(traces[0].contains("IBM9,"));
+        Assert.assertFalse(traces[0].contains("IBM8,"));
+
+        eventTracer = new EventTracer(1, 5, 1024);
+        Event[] events = new Event[20];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = createEvent(i);
+        }
+        eventTracer.trace(PREFIX, events);
+        eventTracer.trace(PREFIX, events);
+        traces = eventTracer.getTraces();
+        // The events may be traced across a second boundary
+        Assert.assertTrue(traces.length >= 1);
+        Assert.assertTrue(traces[0].contains("IBM4,"));
+        Assert.assertFalse(traces[0].contains("IBM5,"));
+    }
+
+    @Test
+    public void testRateLimit() {
+        EventTracer eventTracer = new EventTracer(1, 5, 1024);
+        for (int i = 0; i < 1000; i++) {
+            eventTracer.trace(PREFIX, createEvent(i));
+        }
+        // The events may be traced across a second boundary
+        int traced = eventTracer.getTraces().length;
+        Assert.assertTrue(traced >= 5);
+        Assert.assertTrue(traced <= 10);
+    }
+
+    @Test
+    public void testBoundedBuffer() {
+        EventTracer eventTracer = new EventTracer(1, 0, 8);
+        for (int i = 0; i < 100; i++) {
+            eventTracer.trace(PREFIX, createEvent(i));
+        }
+        String[] traces = eventTracer.getTraces();
+        Assert.assertEquals(8, traces.length);
+        Assert.assertEquals(92, eventTracer.getLostCount());
+        Assert.assertTrue(traces[7].contains("IBM99"));
+
+        eventTracer.trace(PREFIX, createEvent(100));
+        traces = eventTracer.getTraces();
+        Assert.assertEquals(8, traces.length);
+        Assert.assertTrue(traces[7].contains("IBM100"));
+    }
+
+    @Test
+    public void testFormat() {
+        EventTracer eventTracer = new EventTracer(1, 0, 16);
+        eventTracer.trace(PREFIX, createEvent(1));
+        eventTracer.trace(PREFIX, new Event[]{createEvent(2), createEvent(3)});
+        String[] traces = eventTracer.getTraces();
+        Assert.assertEquals(2, traces.length);
+        Assert.assertTrue(traces[0].startsWith("Time : "));
+        Assert.assertTrue(traces[0].contains(PREFIX));
+        Assert.assertTrue(traces[0].contains("IBM1"));
+        Assert.assertTrue(traces[1].contains("IBM2"));
+        Assert.assertTrue(traces[1].contains("IBM3"));
+    }
+
+    private Event createEvent(int i) {
+        return new Event(System.currentTimeMillis(), new Object[]{"IBM" + i, 100.0 + i});
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.StreamConfiguration;
+import org.wso2.carbon.event.processor.core.internal.util.ExecutionPlanStreamIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ExecutionPlanStreamIndexTestCase {
+    private static final Log log = LogFactory.getLog(ExecutionPlanStreamIndexTestCase.class);
+
+    private static final int PLAN_COUNT = 10000;
+    private static final int IMPORTED_STREAM_COUNT = 100;
+
+    @Test
+    public void testIndexUpdatedOnDeployAndUndeploy() {
+        ExecutionPlanStreamIndex streamIndex = new ExecutionPlanStreamIndex();
+        ExecutionPlanConfiguration planA = createPlan("PlanA", "stockQuote", "highStockQuote");
+        ExecutionPlanConfiguration planB = createPlan("PlanB", "stockQuote", "lowStockQuote");
+        streamIndex.add(planA);
+        streamIndex.add(planB);
+
+        Assert.assertEquals(2, streamIndex.getImportingPlans("stockQuote:1.0.0").size());
+        Assert.assertEquals(planA, streamIndex.getExportingPlans("highStockQuote:1.0.0").get("PlanA"));
+        Assert.assertTrue(streamIndex.getExportingPlans("stockQuote:1.0.0").isEmpty());
+
+        streamIndex.remove(planA);
+        Assert.assertEquals(1, streamIndex.getImportingPlans("stockQuote:1.0.0").size());
+        Assert.assertTrue(streamIndex.getExportingPlans("highStockQuote:1.0.0").isEmpty());
+    }
+
+    @Test
+    public void testRemovingReplacedPlan() {
+        ExecutionPlanStreamIndex streamIndex = new ExecutionPlanStreamIndex();
+        ExecutionPlanConfiguration oldPlan = createPlan("PlanA", "stockQuote", "highStockQuote");
+        ExecutionPlanConfiguration newPlan = createPlan("PlanA", "stockQuote", "highStockQuote");
+        streamIndex.add(oldPlan);
+        streamIndex.add(newPlan);
+        streamIndex.remove(oldPlan);
+        Assert.assertEquals(newPlan, streamIndex.getImportingPlans("stockQuote:1.0.0").get("PlanA"));
+    }
+
+    /**
+     * Compares finding the plans of each stream through the index with going through all the plans, for 10k plans.
+     */
+    @Test
+    public void testLookupBenchmark() {
+        ExecutionPlanStreamIndex streamIndex = new ExecutionPlanStreamIndex();
+        List<ExecutionPlanConfiguration> plans = new ArrayList<ExecutionPlanConfiguration>(PLAN_COUNT);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < PLAN_COUNT; i++) {
+            ExecutionPlanConfiguration plan = createPlan("Plan" + i, "inStream" + (i % IMPORTED_STREAM_COUNT),
+                    "outStream" + i);
+            plans.add(plan);
+            streamIndex.add(plan);
+        }
+        long indexTime = System.nanoTime() - startTime;
+
+        int indexedCount = 0;
+        startTime = System.nanoTime();
+        for (int i = 0; i < IMPORTED_STREAM_COUNT; i++) {
+            indexedCount += streamIndex.getImportingPlans("inStream" + i + ":1.0.0").size();
+        }
+        for (int i = 0; i < IMPORTED_STREAM_COUNT; i++) {
+            indexedCount += streamIndex.getExportingPlans("outStream" + i + ":1.0.0").size();
+        }
+        long indexedLookupTime = System.nanoTime() - startTime;
+
+        int scannedCount = 0;
+        startTime = System.nanoTime();
+        for (int i = 0; i < IMPORTED_STREAM_COUNT; i++) {
+            scannedCount += scan(plans, "inStream" + i + ":1.0.0", true).size();
+        }
+        for (int i = 0; i < IMPORTED_STREAM_COUNT; i++) {
+            scannedCount += scan(plans, "outStream" + i + ":1.0.0", false).size();
+        }
+        long scannedLookupTime = System.nanoTime() - startTime;
+
+        Assert.assertEquals(PLAN_COUNT + IMPORTED_STREAM_COUNT, indexedCount);
+        Assert.assertEquals(scannedCount, indexedCount);
+        log.info("Indexed " + PLAN_COUNT + " plans in " + indexTime / 1000000 + " ms. " + 2 * IMPORTED_STREAM_COUNT +
+                " stream lookups took " + indexedLookupTime / 1000000 + " ms with the index and " +
+                scannedLookupTime / 1000000 + " ms going through all the plans.");
+
+        startTime = System.nanoTime();
+        for (ExecutionPlanConfiguration plan : plans) {
+            streamIndex.remove(plan);
+        }
+        log.info("Removed " + PLAN_COUNT + " plans from the index in " + (System.nanoTime() - startTime) / 1000000 +
+                " ms.");
+        Assert.assertTrue(streamIndex.getImportingPlans("inStream0:1.0.0").isEmpty());
+    }
+
+    /**
+     * Finds the plans of a stream the way it was done before the index.
+     */
+    private Map<String, ExecutionPlanConfiguration> scan(List<ExecutionPlanConfiguration> plans, String streamId,
+                                                         boolean isImported) {
+        Map<String, ExecutionPlanConfiguration> configurationMap = new HashMap<String, ExecutionPlanConfiguration>();
+        for (ExecutionPlanConfiguration plan : plans) {
+            for (StreamConfiguration streamConfiguration : isImported ? plan.getImportedStreams() :
+                    plan.getExportedStreams()) {
+                String streamNameWithVersion = streamConfiguration.getName() + ":" + streamConfiguration.getVersion();
+                if (streamNameWithVersion.equals(streamId)) {
+                    configurationMap.put(plan.getName(), plan);
+                }
+            }
+        }
+        return configurationMap;
+    }
+
+    private ExecutionPlanConfiguration createPlan(String name, String importedStream, String exportedStream) {
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.setName(name);
+        configuration.addImportedStream(new StreamConfiguration(importedStream, "1.0.0"));
+        configuration.addExportedStream(new StreamConfiguration(exportedStream, "1.0.0"));
+        return configuration;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.StreamConfiguration;
+import org.wso2.carbon.event.processor.core.internal.util.CompiledExecutionPlanCache;
+import org.wso2.carbon.event.processor.core.internal.util.helper.ExecutionPlanSwapValidator;
+
+public class ExecutionPlanSwapValidatorTestCase {
+
+    private static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "@Plan:description('Finds high stock prices')\n" +
+            "@Import('stockQuote:1.0.0')\n" +
+            "define stream stockQuote (symbol string, price double);\n" +
+            "@Export('highStockQuote:1.0.0')\n" +
+            "define stream highStockQuote (symbol string, avgPrice double);\n" +
+            "from stockQuote#window.time(1 min) select symbol, avg(price) as avgPrice group by symbol " +
+            "insert into highStockQuote;";
+
+    private final CompiledExecutionPlanCache cache = new CompiledExecutionPlanCache(10);
+
+    @Test
+    public void testStateTransferable() {
+        String editedExecutionPlan = EXECUTION_PLAN.replace("Finds high stock prices", "Averages stock prices")
+                .replace(" group by", "\n    group by");
+        Assert.assertTrue(ExecutionPlanSwapValidator.isStateTransferable(cache.compile(EXECUTION_PLAN),
+                cache.compile(editedExecutionPlan)));
+    }
+
+    @Test
+    public void testStateNotTransferable() {
+        Assert.assertFalse(ExecutionPlanSwapValidator.isStateTransferable(cache.compile(EXECUTION_PLAN),
+                cache.compile(EXECUTION_PLAN.replace("1 min", "5 min"))));
+        Assert.assertFalse(ExecutionPlanSwapValidator.isStateTransferable(cache.compile(EXECUTION_PLAN),
+                cache.compile(EXECUTION_PLAN + "\nfrom stockQuote[price > 100] select * insert into expensiveStock;")));
+    }
+
+    @Test
+    public void testSwappable() {
+        ExecutionPlanConfiguration activeConfiguration = createConfiguration("highStockQuote");
+        Assert.assertTrue(ExecutionPlanSwapValidator.isSwappable(activeConfiguration,
+                createConfiguration("highStockQuote")));
+        Assert.assertFalse(ExecutionPlanSwapValidator.isSwappable(activeConfiguration,
+                createConfiguration("lowStockQuote")));
+
+        ExecutionPlanConfiguration tracedConfiguration = createConfiguration("highStockQuote");
+        tracedConfiguration.setTracingEnabled(true);
+        tracedConfiguration.setStatisticsEnabled(true);
+        Assert.assertTrue(ExecutionPlanSwapValidator.isSwappable(activeConfiguration, tracedConfiguration));
+
+        ExecutionPlanConfiguration parallelConfiguration = createConfiguration("highStockQuote");
+        parallelConfiguration.setLocalParallelExecutionEnabled(true);
+        Assert.assertFalse(ExecutionPlanSwapValidator.isSwappable(activeConfiguration, parallelConfiguration));
+    }
+
+    private ExecutionPlanConfiguration createConfiguration(String exportedStreamName) {
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.setName("StockPlan");
+        configuration.addImportedStream(new StreamConfiguration("stockQuote", "1.0.0", "stockQuote"));
+        configuration.addExportedStream(new StreamConfiguration(exportedStreamName, "1.0.0", "highStockQuote"));
+        return configuration;
+    }
+}
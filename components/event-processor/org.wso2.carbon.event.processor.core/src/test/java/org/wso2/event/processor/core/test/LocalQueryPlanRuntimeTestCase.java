@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.StreamConfiguration;
+import org.wso2.carbon.event.processor.core.internal.local.LocalQueryPlanRuntime;
+import org.wso2.carbon.event.processor.core.internal.storm.util.StormQueryPlanBuilder;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalQueryPlanRuntimeTestCase {
+
+    private static final String stockQuotes = "define stream stockQuote ( price int, symbol string );";
+    private static final String highStockQuotes = "define stream highStockQuote ( price int, symbol string );";
+    private static final String totalStockQuotes = "define stream totalStockQuote ( symbol string, total long, count long );";
+
+    @Test
+    public void testPartitionedAggregation() throws Exception {
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.addImportedStream(new StreamConfiguration("test1", "1.0.0", "stockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test2", "1.0.0", "totalStockQuote"));
+        configuration.setExecutionPlan(stockQuotes + highStockQuotes + totalStockQuotes +
+                "@name('query1') @dist(parallel='3') from stockQuote[price > 10] select price, symbol " +
+                "insert into highStockQuote;" +
+                "@name('query2') @dist(parallel='2') partition with (symbol of highStockQuote) begin " +
+                "from highStockQuote select symbol, sum(price) as total, count() as count " +
+                "insert into totalStockQuote; end;");
+
+        LocalQueryPlanRuntime runtime = new LocalQueryPlanRuntime(StormQueryPlanBuilder.constructStormQueryPlan(
+                configuration, Arrays.asList(stockQuotes), Arrays.asList(totalStockQuotes)), "ExecutionPlan", -1234,
+                new SiddhiManager(), 64);
+        final Map<String, Object[]> latestTotals = new ConcurrentHashMap<String, Object[]>();
+        final AtomicInteger outputCount = new AtomicInteger();
+        runtime.addCallback("totalStockQuote", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                for (Event event : events) {
+                    latestTotals.put((String) event.getData(0), event.getData());
+                    outputCount.incrementAndGet();
+                }
+            }
+        });
+        runtime.start();
+
+        String[] symbols = new String[]{"IBM", "WSO2", "ORCL", "MSFT"};
+        Map<String, Long> expectedTotals = new HashMap<String, Long>();
+        Map<String, Long> expectedCounts = new HashMap<String, Long>();
+        int expectedOutputCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            String symbol = symbols[i % symbols.length];
+            int price = i % 30;
+            runtime.send("stockQuote", i, new Object[]{price, symbol});
+            if (price > 10) {
+                Long total = expectedTotals.get(symbol);
+                expectedTotals.put(symbol, (total == null ? 0 : total) + price);
+                Long count = expectedCounts.get(symbol);
+                expectedCounts.put(symbol, (count == null ? 0 : count) + 1);
+                expectedOutputCount++;
+            }
+        }
+
+        // Filtered events reach the aggregation out of order, hence only the final totals are compared
+        for (int i = 0; i < 100 && outputCount.get() < expectedOutputCount; i++) {
+            Thread.sleep(50);
+        }
+        runtime.shutdown();
+
+        Assert.assertEquals(expectedOutputCount, outputCount.get());
+        for (String symbol : symbols) {
+            Assert.assertEquals(expectedTotals.get(symbol), latestTotals.get(symbol)[1]);
+            Assert.assertEquals(expectedCounts.get(symbol), latestTotals.get(symbol)[2]);
+        }
+    }
+}
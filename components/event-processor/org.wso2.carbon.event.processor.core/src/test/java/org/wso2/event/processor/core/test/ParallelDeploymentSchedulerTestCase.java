@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.util.ParallelDeploymentScheduler;
+import org.wso2.carbon.event.processor.core.internal.util.ParallelDeploymentScheduler.PlanInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelDeploymentSchedulerTestCase {
+
+    @Test
+    public void testDependencyOrder() throws Exception {
+        PlanInfo importer = plan("importer.siddhiql", "Importer", "filtered:1.0.0", "alerts:1.0.0");
+        PlanInfo exporter = plan("exporter.siddhiql", "Exporter", "raw:1.0.0", "filtered:1.0.0");
+        PlanInfo independent = plan("independent.siddhiql", "Independent", "other:1.0.0", "otherOut:1.0.0");
+        final List<String> deployed = Collections.synchronizedList(new ArrayList<String>());
+
+        Map<PlanInfo, Long> readinessTimes = new ParallelDeploymentScheduler(4).deploy(
+                Arrays.asList(importer, exporter, independent), new ParallelDeploymentScheduler.DeploymentTask() {
+                    @Override
+                    public void deploy(PlanInfo plan) throws Exception {
+                        Thread.sleep(50);
+                        deployed.add(plan.getName());
+                    }
+                });
+
+        Assert.assertEquals(3, readinessTimes.size());
+        Assert.assertEquals(3, deployed.size());
+        Assert.assertTrue(deployed.indexOf("Exporter") < deployed.indexOf("Importer"));
+    }
+
+    @Test
+    public void testConcurrentDeployment() throws Exception {
+        List<PlanInfo> plans = new ArrayList<PlanInfo>();
+        for (int i = 0; i < 8; i++) {
+            plans.add(plan("plan" + i + ".siddhiql", "Plan" + i, "in" + i + ":1.0.0", "out" + i + ":1.0.0"));
+        }
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        new ParallelDeploymentScheduler(4).deploy(plans, new ParallelDeploymentScheduler.DeploymentTask() {
+            @Override
+            public void deploy(PlanInfo plan) throws Exception {
+                int current = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                Thread.sleep(50);
+                running.decrementAndGet();
+            }
+        });
+
+        Assert.assertTrue(maxRunning.get() > 1);
+        Assert.assertTrue(maxRunning.get() <= 4);
+    }
+
+    @Test
+    public void testFailuresAndCycles() throws Exception {
+        PlanInfo first = plan("first.siddhiql", "First", "b:1.0.0", "a:1.0.0");
+        PlanInfo second = plan("second.siddhiql", "Second", "a:1.0.0", "b:1.0.0");
+        PlanInfo dependent = plan("dependent.siddhiql", "Dependent", "b:1.0.0", "c:1.0.0");
+        PlanInfo invalid = new PlanInfo("invalid.siddhiql", null, Collections.<String>emptyList(),
+                Collections.<String>emptyList());
+        PlanInfo sameName = plan("first-copy.siddhiql", "First", "x:1.0.0", "y:1.0.0");
+        final List<String> deployed = Collections.synchronizedList(new ArrayList<String>());
+
+        Map<PlanInfo, Long> readinessTimes = new ParallelDeploymentScheduler(2).deploy(
+                Arrays.asList(first, second, dependent, invalid, sameName),
+                new ParallelDeploymentScheduler.DeploymentTask() {
+                    @Override
+                    public void deploy(PlanInfo plan) throws Exception {
+                        deployed.add(plan.getFilePath());
+                        if (plan.getName() == null) {
+                            throw new Exception("Invalid execution plan");
+                        }
+                    }
+                });
+
+        Assert.assertEquals(5, readinessTimes.size());
+        Assert.assertEquals(5, deployed.size());
+        Assert.assertTrue(deployed.indexOf("first.siddhiql") < deployed.indexOf("first-copy.siddhiql"));
+    }
+
+    private PlanInfo plan(String filePath, String name, String importedStreamId, String exportedStreamId) {
+        return new PlanInfo(filePath, name, Collections.singletonList(importedStreamId),
+                Collections.singletonList(exportedStreamId));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.SharedTopologyInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.SharedTopologyPacker;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyInfoHolder;
+
+import java.util.Set;
+
+public class SharedTopologyPackerTestCase {
+
+    @Test
+    public void testFirstFitPacking() {
+        SharedTopologyPacker packer = new SharedTopologyPacker("Shared-", 8, true);
+        Assert.assertEquals("Shared-1", pack(packer, "PlanA", -1234, 4).iterator().next());
+        Assert.assertEquals("Shared-1", pack(packer, "PlanB", -1234, 2).iterator().next());
+        Assert.assertEquals("Shared-2", pack(packer, "PlanC", -1234, 4).iterator().next());
+        Assert.assertEquals("Shared-1", pack(packer, "PlanD", -1234, 2).iterator().next());
+        Assert.assertEquals(4, packer.getSharedTopology("Shared-2").getExecutorCount());
+        Assert.assertEquals(3, packer.getSharedTopology("Shared-1").getPlanTopologyNames().size());
+    }
+
+    @Test
+    public void testTenantIsolation() {
+        SharedTopologyPacker packer = new SharedTopologyPacker("Shared-", 8, true);
+        pack(packer, "PlanA", 1, 2);
+        Assert.assertEquals("Shared-2", pack(packer, "PlanA", 2, 2).iterator().next());
+
+        packer = new SharedTopologyPacker("Shared-", 8, false);
+        pack(packer, "PlanA", 1, 2);
+        Assert.assertEquals("Shared-1", pack(packer, "PlanA", 2, 2).iterator().next());
+    }
+
+    @Test
+    public void testRepackAndUnpack() {
+        SharedTopologyPacker packer = new SharedTopologyPacker("Shared-", 8, true);
+        pack(packer, "PlanA", -1234, 4);
+        pack(packer, "PlanB", -1234, 4);
+
+        // An edited plan stays in its shared topology while it fits
+        Set<String> changed = pack(packer, "PlanA", -1234, 3);
+        Assert.assertEquals(1, changed.size());
+        Assert.assertTrue(changed.contains("Shared-1"));
+
+        // Otherwise it moves, and both shared topologies are redeployed
+        changed = pack(packer, "PlanA", -1234, 5);
+        Assert.assertEquals(2, changed.size());
+        Assert.assertTrue(changed.contains("Shared-1"));
+        Assert.assertTrue(changed.contains("Shared-2"));
+        Assert.assertEquals(4, packer.getSharedTopology("Shared-1").getExecutorCount());
+
+        Assert.assertEquals("Shared-2", packer.unpack("PlanA[-1234]"));
+        Assert.assertNull(packer.getSharedTopology("Shared-2"));
+        Assert.assertEquals("Shared-1", packer.unpack("PlanB[-1234]"));
+        Assert.assertNull(packer.getSharedTopology("Shared-1"));
+        Assert.assertNull(packer.unpack("PlanB[-1234]"));
+        Assert.assertFalse(packer.isPacked("PlanA[-1234]"));
+    }
+
+    @Test
+    public void testPackable() {
+        SharedTopologyPacker packer = new SharedTopologyPacker("Shared-", 8, true);
+        Assert.assertTrue(packer.isPackable(constructTopology("PlanA", -1234, 4)));
+        Assert.assertFalse(packer.isPackable(constructTopology("PlanA", -1234, 5)));
+
+        TopologyInfoHolder autoScalable = constructTopology("PlanA", -1234, 2);
+        autoScalable.getComponents().get(0).setParallelismBounds(1, 4);
+        Assert.assertFalse(packer.isPackable(autoScalable));
+    }
+
+    @Test
+    public void testNamespacedComponents() {
+        SharedTopologyPacker packer = new SharedTopologyPacker("Shared-", 8, true);
+        pack(packer, "PlanA", -1234, 2);
+        pack(packer, "PlanB", -1234, 2);
+
+        TopologyInfoHolder combined = packer.getSharedTopology("Shared-1").getCombinedTopologyInfoHolder();
+        Assert.assertEquals(2, combined.getComponents().size());
+        Assert.assertNotNull(combined.getComponent("PlanA.-1234.FilterBolt"));
+        Assert.assertNotNull(combined.getComponent("PlanB.-1234.FilterBolt"));
+    }
+
+    @Test
+    public void testSharedTopologyName() {
+        SharedTopologyPacker packer = new SharedTopologyPacker("Shared-", 8, true);
+        Assert.assertTrue(packer.isSharedTopologyName(pack(packer, "PlanA", -1234, 2).iterator().next()));
+        Assert.assertFalse(packer.isSharedTopologyName("PlanA[-1234]"));
+        Assert.assertFalse(packer.isSharedTopologyName("Shared-1[-1234]"));
+    }
+
+    private Set<String> pack(SharedTopologyPacker packer, String executionPlanName, int tenantId, int executors) {
+        return packer.pack(executionPlanName + "[" + tenantId + "]", new SharedTopologyInfoHolder.PackedPlan(
+                executionPlanName, tenantId, constructTopology(executionPlanName, tenantId, executors)));
+    }
+
+    private TopologyInfoHolder constructTopology(String executionPlanName, int tenantId, int executors) {
+        TopologyInfoHolder topologyInfoHolder = new TopologyInfoHolder();
+        ComponentInfoHolder bolt = new ComponentInfoHolder("FilterBolt", ComponentInfoHolder.ComponentType.SIDDHI_BOLT);
+        bolt.setParallelism(executors);
+        bolt.setParallelismBounds(executors, executors);
+        topologyInfoHolder.addComponent(bolt);
+        topologyInfoHolder.applyNamespace(SharedTopologyInfoHolder.PackedPlan.getNamespace(executionPlanName, tenantId));
+        return topologyInfoHolder;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.internal.listener.SiddhiInputEventDispatcher;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares dispatching batches with dispatching their events one by one, and the allocations of sharing an event
+ * among plans with copying it for each. Benchmarks are excluded from the unit tests, run with
+ * -Dtest=SiddhiInputEventDispatcherBenchmark.
+ */
+public class SiddhiInputEventDispatcherBenchmark {
+    private static final Log log = LogFactory.getLog(SiddhiInputEventDispatcherBenchmark.class);
+
+    private static final int EVENT_COUNT = 200000;
+    private static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "define stream stockStream (symbol string, price double, volume long);\n" +
+            "from stockStream[price > 10] select symbol, price insert into highPriceStream;";
+    private static final int PLAN_COUNT = 50;
+
+    @Test
+    public void benchmarkBatchDispatch() {
+        for (int batchSize : new int[]{1, 10, 100}) {
+            // Warm up both paths
+            measure(batchSize, false);
+            measure(batchSize, true);
+            long unrolledTime = measure(batchSize, false);
+            long batchedTime = measure(batchSize, true);
+            log.info("Dispatching " + EVENT_COUNT + " events in batches of " + batchSize + " took " +
+                    (unrolledTime / 1000000) + " ms one by one (" + (EVENT_COUNT * 1000000000L / unrolledTime) +
+                    " events/s), and " + (batchedTime / 1000000) + " ms as batches (" +
+                    (EVENT_COUNT * 1000000000L / batchedTime) + " events/s)");
+        }
+    }
+
+    @Test
+    public void benchmarkSharedEventAllocation() throws InterruptedException {
+        // None of the events pass the filter, so only the allocations of taking the events in are measured
+        String executionPlan = EXECUTION_PLAN.replace("price > 10", "price > 1000000");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        List<ExecutionPlanRuntime> executionPlanRuntimes = new ArrayList<ExecutionPlanRuntime>();
+        List<InputHandler> inputHandlers = new ArrayList<InputHandler>();
+        List<SiddhiInputEventDispatcher> eventDispatchers = new ArrayList<SiddhiInputEventDispatcher>();
+        for (int i = 0; i < PLAN_COUNT; i++) {
+            ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+            executionPlanRuntime.start();
+            executionPlanRuntimes.add(executionPlanRuntime);
+            inputHandlers.add(executionPlanRuntime.getInputHandler("stockStream"));
+            eventDispatchers.add(createEventDispatcher(executionPlanRuntime));
+        }
+        Event[] events = new Event[EVENT_COUNT / PLAN_COUNT];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = createEvent("IBM", i);
+        }
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        long copiedBytes = 0;
+        long sharedBytes = 0;
+        // The first round warms up both paths
+        for (int round = 0; round < 2; round++) {
+            long allocatedBytes = getAllocatedBytes(threadMXBean);
+            for (Event event : events) {
+                for (InputHandler inputHandler : inputHandlers) {
+                    // Copies the event for each plan, as the dispatchers used to
+                    inputHandler.send(event.getTimestamp(), event.getData());
+                }
+            }
+            copiedBytes = getAllocatedBytes(threadMXBean) - allocatedBytes;
+
+            allocatedBytes = getAllocatedBytes(threadMXBean);
+            for (Event event : events) {
+                for (SiddhiInputEventDispatcher eventDispatcher : eventDispatchers) {
+                    eventDispatcher.consumeEvent(event);
+                }
+            }
+            sharedBytes = getAllocatedBytes(threadMXBean) - allocatedBytes;
+        }
+        for (ExecutionPlanRuntime executionPlanRuntime : executionPlanRuntimes) {
+            executionPlanRuntime.shutdown();
+        }
+
+        log.info("Taking each event into " + PLAN_COUNT + " plans allocated " + (copiedBytes / events.length) +
+                " bytes when copied for each plan, and " + (sharedBytes / events.length) + " bytes when shared");
+    }
+
+    /**
+     * @return nanoseconds taken to dispatch {@link #EVENT_COUNT} events, received in batches of the given size
+     */
+    private long measure(int batchSize, boolean isBatched) {
+        ExecutionPlanRuntime executionPlanRuntime = new SiddhiManager().createExecutionPlanRuntime(EXECUTION_PLAN);
+        final AtomicLong receivedCount = new AtomicLong();
+        executionPlanRuntime.addCallback("highPriceStream", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                receivedCount.addAndGet(events.length);
+            }
+        });
+        executionPlanRuntime.start();
+        SiddhiInputEventDispatcher eventDispatcher = createEventDispatcher(executionPlanRuntime);
+        Event[][] batches = new Event[EVENT_COUNT / batchSize][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new Event[batchSize];
+            for (int j = 0; j < batchSize; j++) {
+                batches[i][j] = createEvent("IBM", 100 + j);
+            }
+        }
+
+        long startTime = System.nanoTime();
+        for (Event[] batch : batches) {
+            if (isBatched) {
+                eventDispatcher.consumeEvents(batch);
+            } else {
+                for (Event event : batch) {
+                    eventDispatcher.consumeEvent(event);
+                }
+            }
+        }
+        long time = System.nanoTime() - startTime;
+        executionPlanRuntime.shutdown();
+        Assert.assertEquals(EVENT_COUNT, receivedCount.get());
+        return time;
+    }
+
+    private SiddhiInputEventDispatcher createEventDispatcher(ExecutionPlanRuntime executionPlanRuntime) {
+        ExecutionPlanConfiguration executionPlanConfiguration = new ExecutionPlanConfiguration();
+        executionPlanConfiguration.setName("StockPlan");
+        return new SiddhiInputEventDispatcher("stockStream:1.0.0", executionPlanRuntime.getInputHandler("stockStream"),
+                executionPlanConfiguration, -1234);
+    }
+
+    private Event createEvent(String symbol, double price) {
+        return new Event(System.currentTimeMillis(), new Object[]{symbol, price, 100L});
+    }
+
+    /**
+     * @return bytes allocated by the current thread, or 0 if the JVM does not measure it
+     */
+    private long getAllocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
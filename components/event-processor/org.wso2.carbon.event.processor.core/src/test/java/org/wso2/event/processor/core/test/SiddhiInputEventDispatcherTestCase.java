@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
+import org.wso2.carbon.event.processor.core.internal.listener.SiddhiInputEventDispatcher;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SiddhiInputEventDispatcherTestCase {
+    private static final int EVENT_COUNT = 1000;
+    private static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "define stream stockStream (symbol string, price double, volume long);\n" +
+            "from stockStream[price > 10] select symbol, price insert into highPriceStream;";
+
+    @Test
+    public void testBatchDispatch() {
+        ExecutionPlanRuntime executionPlanRuntime = new SiddhiManager().createExecutionPlanRuntime(EXECUTION_PLAN);
+        final List<Object> symbols = Collections.synchronizedList(new ArrayList<Object>());
+        executionPlanRuntime.addCallback("highPriceStream", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                for (Event event : events) {
+                    symbols.add(event.getData(0));
+                }
+            }
+        });
+        executionPlanRuntime.start();
+        SiddhiInputEventDispatcher eventDispatcher = createEventDispatcher(executionPlanRuntime);
+
+        eventDispatcher.consumeEvents(new Event[]{createEvent("IBM", 50), createEvent("WSO2", 5),
+                createEvent("ORCL", 20)});
+        eventDispatcher.consumeEvent(createEvent("GOOG", 30));
+        executionPlanRuntime.shutdown();
+
+        Assert.assertEquals(3, symbols.size());
+        Assert.assertEquals("IBM", symbols.get(0));
+        Assert.assertEquals("ORCL", symbols.get(1));
+        Assert.assertEquals("GOOG", symbols.get(2));
+    }
+
+    @Test
+    public void testBatchesDelivered() {
+        for (int batchSize : new int[]{1, 10, 100}) {
+            ExecutionPlanRuntime executionPlanRuntime = new SiddhiManager().createExecutionPlanRuntime(EXECUTION_PLAN);
+            final AtomicLong receivedCount = new AtomicLong();
+            executionPlanRuntime.addCallback("highPriceStream", new StreamCallback() {
+                @Override
+                public void receive(Event[] events) {
+                    receivedCount.addAndGet(events.length);
+                }
+            });
+            executionPlanRuntime.start();
+            SiddhiInputEventDispatcher eventDispatcher = createEventDispatcher(executionPlanRuntime);
+            Event[] batch = new Event[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                // Every other event is filtered out
+                batch[i] = createEvent("IBM", i % 2 == 0 ? 100 : 5);
+            }
+            for (int i = 0; i < EVENT_COUNT / batchSize; i++) {
+                eventDispatcher.consumeEvents(batch);
+            }
+            executionPlanRuntime.shutdown();
+            Assert.assertEquals((EVENT_COUNT / batchSize) * ((batchSize + 1) / 2), receivedCount.get());
+        }
+    }
+
+    @Test
+    public void testSharedEventDispatch() {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        List<ExecutionPlanRuntime> executionPlanRuntimes = new ArrayList<ExecutionPlanRuntime>();
+        List<SiddhiInputEventDispatcher> eventDispatchers = new ArrayList<SiddhiInputEventDispatcher>();
+        final List<List<Object>> receivedPrices = new ArrayList<List<Object>>();
+        for (int i = 0; i < 2; i++) {
+            ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(EXECUTION_PLAN);
+            final List<Object> prices = Collections.synchronizedList(new ArrayList<Object>());
+            executionPlanRuntime.addCallback("highPriceStream", new StreamCallback() {
+                @Override
+                public void receive(Event[] events) {
+                    for (Event event : events) {
+                        prices.add(event.getData(1));
+                    }
+                }
+            });
+            executionPlanRuntime.start();
+            executionPlanRuntimes.add(executionPlanRuntime);
+            eventDispatchers.add(createEventDispatcher(executionPlanRuntime));
+            receivedPrices.add(prices);
+        }
+
+        Event[] events = new Event[]{createEvent("IBM", 50), createEvent("ORCL", 20)};
+        for (SiddhiInputEventDispatcher eventDispatcher : eventDispatchers) {
+            eventDispatcher.consumeEvents(events);
+        }
+        for (ExecutionPlanRuntime executionPlanRuntime : executionPlanRuntimes) {
+            executionPlanRuntime.shutdown();
+        }
+
+        // Each plan receives all the events of the shared batch, which is left as it was sent
+        for (List<Object> prices : receivedPrices) {
+            Assert.assertEquals(2, prices.size());
+            Assert.assertEquals(50.0, prices.get(0));
+            Assert.assertEquals(20.0, prices.get(1));
+        }
+        Assert.assertEquals(50.0, events[0].getData(1));
+        Assert.assertEquals("ORCL", events[1].getData(0));
+    }
+
+    private SiddhiInputEventDispatcher createEventDispatcher(ExecutionPlanRuntime executionPlanRuntime) {
+        ExecutionPlanConfiguration executionPlanConfiguration = new ExecutionPlanConfiguration();
+        executionPlanConfiguration.setName("StockPlan");
+        return new SiddhiInputEventDispatcher("stockStream:1.0.0", executionPlanRuntime.getInputHandler("stockStream"),
+                executionPlanConfiguration, -1234);
+    }
+
+    private Event createEvent(String symbol, double price) {
+        return new Event(System.currentTimeMillis(), new Object[]{symbol, price, 100L});
+    }
+}
@@ -25,13 +25,18 @@ import org.wso2.carbon.event.processor.core.ExecutionPlanConfiguration;
 import org.wso2.carbon.event.processor.core.StreamConfiguration;
 import org.wso2.carbon.event.processor.core.exception.StormQueryConstructionException;
 import org.wso2.carbon.event.processor.core.internal.ds.EventProcessorValueHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.HybridQueryPlan;
 import org.wso2.carbon.event.processor.core.internal.storm.util.StormQueryPlanBuilder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.StormTopologyConstructor;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyInfoHolder;
 import org.wso2.carbon.event.processor.core.internal.util.EventProcessorConstants;
 import org.wso2.siddhi.core.SiddhiManager;
 
 import javax.xml.namespace.QName;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -532,6 +537,213 @@ public class StormQueryPlanBuilderTestCase {
 
     }
 
+    @Test
+    public void testPartialAggregateMerger() throws Exception {
+        List<String> importedDefinition = new ArrayList<String>(1);
+        List<String> exportedDefinition = new ArrayList<String>(1);
+        String stockQuotes = "define stream stockQuote ( price int, symbol string, quoteTime long );";
+        String totalStockQuotes = "define stream totalStockQuote ( symbol string, total long, count long );";
+
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.addImportedStream(new StreamConfiguration("test1", "1.0.0", "stockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test2", "1.0.0", "totalStockQuote"));
+        configuration.setExecutionPlan(stockQuotes + totalStockQuotes + "@name('query1') @dist(parallel='2') " +
+                "partition with (symbol of stockQuote) begin " +
+                "from stockQuote[price > 10] select symbol, sum(price) as total, count() as count " +
+                "insert into totalStockQuote; end;");
+        importedDefinition.add(stockQuotes);
+        exportedDefinition.add(totalStockQuotes);
+
+        TopologyInfoHolder queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration,
+                importedDefinition, exportedDefinition);
+        ComponentInfoHolder processor = queryPlan.getComponent("query1");
+        ComponentInfoHolder merger = queryPlan.getComponent("query1" + EventProcessorConstants.MERGER_SUFFIX);
+        Assert.assertNotNull(merger);
+        Assert.assertTrue(processor.isHotKeySplitting());
+        Assert.assertTrue(processor.isPartialOutputStream("totalStockQuote"));
+        Assert.assertEquals("symbol", merger.getPartionenedField("totalStockQuote"));
+        Assert.assertEquals("[KEY, SUM, COUNT]", Arrays.toString(merger.getMergeFunctions()));
+        Assert.assertTrue(processor.getQuery().contains("insert all events into totalStockQuote"));
+
+        // Time windowed aggregations are merged from the partial aggregates of current and expired events
+        configuration.setExecutionPlan(stockQuotes + totalStockQuotes + "@name('query1') @dist(parallel='2') " +
+                "partition with (symbol of stockQuote) begin " +
+                "from stockQuote#window.time(1 min) select symbol, sum(price) as total, count() as count " +
+                "insert into totalStockQuote; end;");
+        queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration, importedDefinition, exportedDefinition);
+        Assert.assertNotNull(queryPlan.getComponent("query1" + EventProcessorConstants.MERGER_SUFFIX));
+        Assert.assertTrue(queryPlan.getComponent("query1").getQuery().contains("insert all events into totalStockQuote"));
+
+        // Length and external time windowed aggregations cannot be merged
+        for (String window : new String[]{"length(10)", "externalTime(quoteTime, 1 min)"}) {
+            configuration.setExecutionPlan(stockQuotes + totalStockQuotes + "@name('query1') @dist(parallel='2') " +
+                    "partition with (symbol of stockQuote) begin " +
+                    "from stockQuote#window." + window + " select symbol, sum(price) as total, count() as count " +
+                    "insert into totalStockQuote; end;");
+            queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration, importedDefinition,
+                    exportedDefinition);
+            Assert.assertNull(queryPlan.getComponent("query1" + EventProcessorConstants.MERGER_SUFFIX));
+            Assert.assertFalse(queryPlan.getComponent("query1").isHotKeySplitting());
+        }
+    }
+
+    @Test
+    public void testInferredPartitionKeys() throws Exception {
+        List<String> importedDefinition = new ArrayList<String>(2);
+        List<String> exportedDefinition = new ArrayList<String>(2);
+        String stockQuotes = "define stream stockQuote ( price int, symbol string );";
+        String newsStream = "define stream news ( symbol string, headline string );";
+        String avgStockQuotes = "define stream avgStockQuote ( symbol string, avgPrice double );";
+        String stockNews = "define stream stockNews ( symbol string, price int, headline string );";
+
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.addImportedStream(new StreamConfiguration("test1", "1.0.0", "stockQuote"));
+        configuration.addImportedStream(new StreamConfiguration("test2", "1.0.0", "news"));
+        configuration.addExportedStream(new StreamConfiguration("test3", "1.0.0", "avgStockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test4", "1.0.0", "stockNews"));
+        configuration.setExecutionPlan(stockQuotes + newsStream + avgStockQuotes + stockNews +
+                "@name('query1') @dist(parallel='4') from stockQuote#window.time(1 min) " +
+                "select symbol, avg(price) as avgPrice group by symbol insert into avgStockQuote;" +
+                "@name('query2') @dist(parallel='2') from stockQuote#window.time(1 min) as s join " +
+                "news#window.time(1 min) as n on s.symbol == n.symbol " +
+                "select s.symbol as symbol, s.price as price, n.headline as headline insert into stockNews;");
+        importedDefinition.add(stockQuotes);
+        importedDefinition.add(newsStream);
+        exportedDefinition.add(avgStockQuotes);
+        exportedDefinition.add(stockNews);
+
+        TopologyInfoHolder queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration,
+                importedDefinition, exportedDefinition);
+        ComponentInfoHolder groupByQuery = queryPlan.getComponent("query1");
+        Assert.assertEquals(4, groupByQuery.getParallelism());
+        Assert.assertFalse(groupByQuery.isEnforceParallelism());
+        Assert.assertEquals("symbol", groupByQuery.getPartionenedField("stockQuote"));
+        ComponentInfoHolder joinQuery = queryPlan.getComponent("query2");
+        Assert.assertEquals(2, joinQuery.getParallelism());
+        Assert.assertEquals("symbol", joinQuery.getPartionenedField("stockQuote"));
+        Assert.assertEquals("symbol", joinQuery.getPartionenedField("news"));
+    }
+
+    @Test
+    public void testLocalGrouping() throws Exception {
+        List<String> importedDefinition = new ArrayList<String>(1);
+        List<String> exportedDefinition = new ArrayList<String>(3);
+        String stockQuotes = "define stream stockQuote ( price int, symbol string );";
+        String highStockQuotes = "define stream highStockQuote ( price int, symbol string );";
+        String veryHighStockQuotes = "define stream veryHighStockQuote ( price int, symbol string );";
+        String lowHighStockQuotes = "define stream lowHighStockQuote ( price int, symbol string );";
+
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.addImportedStream(new StreamConfiguration("test1", "1.0.0", "stockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test2", "1.0.0", "highStockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test3", "1.0.0", "veryHighStockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test4", "1.0.0", "lowHighStockQuote"));
+        configuration.setExecutionPlan(stockQuotes + highStockQuotes + veryHighStockQuotes + lowHighStockQuotes +
+                "@name('query1') @dist(parallel='2') from stockQuote[price > 10] select price, symbol " +
+                "insert into highStockQuote;" +
+                "@name('query2') @dist(parallel='1', execGroup='group2') from highStockQuote[price > 100] " +
+                "select price, symbol insert into veryHighStockQuote;" +
+                "@name('query3') @dist(parallel='1', execGroup='group2') from highStockQuote[price < 50] " +
+                "select price, symbol insert into lowHighStockQuote;");
+        importedDefinition.add(stockQuotes);
+        exportedDefinition.add(highStockQuotes);
+        exportedDefinition.add(veryHighStockQuotes);
+        exportedDefinition.add(lowHighStockQuotes);
+
+        TopologyInfoHolder queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration,
+                importedDefinition, exportedDefinition);
+        ComponentInfoHolder receiver = queryPlan.getComponent(EventProcessorConstants.EVENT_RECEIVER_SPOUT);
+        ComponentInfoHolder query1 = queryPlan.getComponent("query1");
+        ComponentInfoHolder group2 = queryPlan.getComponent("group2");
+        // A single receiver task would only feed the query1 task of its own worker
+        Assert.assertFalse(StormTopologyConstructor.isLocalGroupingAllowed(receiver, query1));
+        Assert.assertTrue(StormTopologyConstructor.isLocalGroupingAllowed(query1, group2));
+    }
+
+    @Test(expected = StormQueryConstructionException.class)
+    public void testGroupByWithLengthWindow() throws Exception {
+        List<String> importedDefinition = new ArrayList<String>(1);
+        List<String> exportedDefinition = new ArrayList<String>(1);
+        String stockQuotes = "define stream stockQuote ( price int, symbol string );";
+        String avgStockQuotes = "define stream avgStockQuote ( symbol string, avgPrice double );";
+
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.addImportedStream(new StreamConfiguration("test1", "1.0.0", "stockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test2", "1.0.0", "avgStockQuote"));
+        configuration.setExecutionPlan(stockQuotes + avgStockQuotes +
+                "@name('query1') @dist(parallel='2') from stockQuote#window.length(10) " +
+                "select symbol, avg(price) as avgPrice group by symbol insert into avgStockQuote;");
+        importedDefinition.add(stockQuotes);
+        exportedDefinition.add(avgStockQuotes);
+        StormQueryPlanBuilder.constructStormQueryPlan(configuration, importedDefinition, exportedDefinition);
+    }
+
+    @Test
+    public void testHybridQueryPlan() throws Exception {
+        List<String> importedDefinition = new ArrayList<String>(1);
+        List<String> exportedDefinition = new ArrayList<String>(2);
+        String stockQuotes = "define stream stockQuote ( price int, symbol string );";
+        String filteredQuotes = "define stream filteredQuote ( price int, symbol string );";
+        String avgQuotes = "define stream avgQuote ( symbol string, avgPrice double );";
+        String highAvgQuotes = "define stream highAvgQuote ( symbol string, avgPrice double );";
+        String invalidQuotes = "define stream invalidQuote ( symbol string );";
+
+        ExecutionPlanConfiguration configuration = new ExecutionPlanConfiguration();
+        configuration.addImportedStream(new StreamConfiguration("test1", "1.0.0", "stockQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test2", "1.0.0", "highAvgQuote"));
+        configuration.addExportedStream(new StreamConfiguration("test3", "1.0.0", "invalidQuote"));
+        configuration.setExecutionPlan("@Plan:dist(hybrid='true') " + stockQuotes + filteredQuotes + avgQuotes +
+                highAvgQuotes + invalidQuotes +
+                "@name('query1') from stockQuote[price > 10] select price, symbol insert into filteredQuote;" +
+                "@name('query2') @dist(parallel='2') from filteredQuote#window.time(1 min) " +
+                "select symbol, avg(price) as avgPrice group by symbol insert into avgQuote;" +
+                "@name('query3') from avgQuote[avgPrice > 50] select symbol, avgPrice insert into highAvgQuote;" +
+                "@name('query4') @dist(local='false') from stockQuote[price < 0] select symbol " +
+                "insert into invalidQuote;");
+        importedDefinition.add(stockQuotes);
+        exportedDefinition.add(highAvgQuotes);
+        exportedDefinition.add(invalidQuotes);
+
+        TopologyInfoHolder queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration,
+                importedDefinition, exportedDefinition);
+        Assert.assertTrue(queryPlan.getComponent("query1").isLocal());
+        Assert.assertFalse(queryPlan.getComponent("query2").isLocal());
+        Assert.assertTrue(queryPlan.getComponent("query3").isLocal());
+        Assert.assertFalse(queryPlan.getComponent("query4").isLocal());
+
+        HybridQueryPlan hybridQueryPlan = HybridQueryPlan.split(queryPlan);
+        Assert.assertTrue(hybridQueryPlan.isHybrid());
+        Assert.assertTrue(hybridQueryPlan.hasClusterComponents());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("filteredQuote", "stockQuote")),
+                hybridQueryPlan.getClusterInputStreamIds());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("avgQuote", "invalidQuote")),
+                hybridQueryPlan.getClusterOutputStreamIds());
+
+        TopologyInfoHolder clusterPlan = hybridQueryPlan.getClusterPlan();
+        Assert.assertNull(clusterPlan.getComponent("query1"));
+        Assert.assertNull(clusterPlan.getComponent("query3"));
+        Assert.assertNotNull(clusterPlan.getComponent("query2"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("filteredQuote", "stockQuote")),
+                new HashSet<String>(Arrays.asList(clusterPlan.getComponent(EventProcessorConstants.EVENT_RECEIVER_SPOUT)
+                        .getOutputStreamIds())));
+
+        TopologyInfoHolder localPlan = hybridQueryPlan.getLocalPlan();
+        Assert.assertNotNull(localPlan.getComponent("query1"));
+        Assert.assertNull(localPlan.getComponent("query2"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("stockQuote", "avgQuote", "invalidQuote")),
+                new HashSet<String>(Arrays.asList(localPlan.getComponent(EventProcessorConstants.EVENT_RECEIVER_SPOUT)
+                        .getOutputStreamIds())));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("highAvgQuote", "invalidQuote", "filteredQuote",
+                "stockQuote")), new HashSet<String>(Arrays.asList(localPlan.getComponent(
+                EventProcessorConstants.EVENT_PUBLISHER_BOLT).getInputStreamIds())));
+
+        // Without the plan level hint all execution groups run on storm
+        configuration.setExecutionPlan(configuration.getExecutionPlan().replace("@Plan:dist(hybrid='true') ", ""));
+        queryPlan = StormQueryPlanBuilder.constructStormQueryPlan(configuration, importedDefinition, exportedDefinition);
+        Assert.assertFalse(queryPlan.getComponent("query1").isLocal());
+        Assert.assertFalse(HybridQueryPlan.split(queryPlan).isHybrid());
+    }
+
     private static List<String> getStreamDefinitions(OMElement streamsElement) {
         List<String> inputStreamDefinitions = new ArrayList<String>();
         Iterator<OMElement> inputStreamIterator = streamsElement.getChildrenWithName(new QName("stream"));
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.util.helper.StreamDefinitionExtractor;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.query.compiler.SiddhiCompiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares deriving the stream definitions of an execution plan from its query model with creating a Siddhi runtime
+ * for it. Benchmarks are excluded from the unit tests, run with -Dtest=StreamDefinitionExtractorBenchmark.
+ */
+public class StreamDefinitionExtractorBenchmark {
+    private static final Log log = LogFactory.getLog(StreamDefinitionExtractorBenchmark.class);
+
+    private static final int ITERATIONS = 200;
+    private static final String EXECUTION_PLAN = StreamDefinitionExtractorTestCase.EXECUTION_PLAN;
+
+    @Test
+    public void benchmarkExtraction() {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        // Warm up both paths
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            StreamDefinitionExtractor.extract(SiddhiCompiler.parse(EXECUTION_PLAN));
+            siddhiManager.createExecutionPlanRuntime(EXECUTION_PLAN).shutdown();
+        }
+
+        long allocatedBytes = getAllocatedBytes(threadMXBean);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            StreamDefinitionExtractor.extract(SiddhiCompiler.parse(EXECUTION_PLAN));
+        }
+        long extractionTime = System.nanoTime() - startTime;
+        long extractionAllocatedBytes = getAllocatedBytes(threadMXBean) - allocatedBytes;
+
+        allocatedBytes = getAllocatedBytes(threadMXBean);
+        startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(EXECUTION_PLAN);
+            executionPlanRuntime.getStreamDefinitionMap();
+            executionPlanRuntime.shutdown();
+        }
+        long runtimeTime = System.nanoTime() - startTime;
+        long runtimeAllocatedBytes = getAllocatedBytes(threadMXBean) - allocatedBytes;
+
+        log.info("Deriving stream definitions " + ITERATIONS + " times took " + (extractionTime / 1000000) +
+                " ms and allocated " + (extractionAllocatedBytes / 1024) + " KB from the query model, and " +
+                (runtimeTime / 1000000) + " ms and " + (runtimeAllocatedBytes / 1024) + " KB with a runtime");
+    }
+
+    /**
+     * @return bytes allocated by the current thread, or 0 if the JVM does not measure it
+     */
+    private long getAllocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
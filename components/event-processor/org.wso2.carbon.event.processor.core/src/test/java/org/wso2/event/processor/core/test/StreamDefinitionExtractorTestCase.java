@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.util.helper.StreamDefinitionExtractor;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.query.api.ExecutionPlan;
+import org.wso2.siddhi.query.api.definition.AbstractDefinition;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.compiler.SiddhiCompiler;
+
+import java.util.List;
+import java.util.Map;
+
+public class StreamDefinitionExtractorTestCase {
+    static final String EXECUTION_PLAN = "@Plan:name('StockPlan')\n" +
+            "define stream stockStream (symbol string, price float, volume long);\n" +
+            "define stream newsStream (symbol string, rating int);\n" +
+            "from stockStream[price > 100] select symbol, price * 2 as doublePrice insert into highPriceStream;\n" +
+            "from stockStream#window.time(1 min) select symbol, avg(price) as avgPrice, sum(volume) as totalVolume " +
+            "group by symbol insert into stockAverageStream;\n" +
+            "from stockStream#window.length(10) as s join newsStream#window.length(10) as n on s.symbol == n.symbol " +
+            "select s.symbol, n.rating, s.volume insert into ratedStockStream;";
+
+    @Test
+    public void testDefinitionsMatchRuntime() {
+        Map<String, AbstractDefinition> extractedDefinitions =
+                StreamDefinitionExtractor.extract(SiddhiCompiler.parse(EXECUTION_PLAN));
+        Assert.assertNotNull(extractedDefinitions);
+
+        ExecutionPlanRuntime executionPlanRuntime = new SiddhiManager().createExecutionPlanRuntime(EXECUTION_PLAN);
+        Map<String, AbstractDefinition> runtimeDefinitions = executionPlanRuntime.getStreamDefinitionMap();
+        executionPlanRuntime.shutdown();
+
+        Assert.assertEquals(runtimeDefinitions.keySet(), extractedDefinitions.keySet());
+        for (Map.Entry<String, AbstractDefinition> entry : runtimeDefinitions.entrySet()) {
+            List<Attribute> runtimeAttributes = entry.getValue().getAttributeList();
+            List<Attribute> extractedAttributes = extractedDefinitions.get(entry.getKey()).getAttributeList();
+            Assert.assertEquals(runtimeAttributes.size(), extractedAttributes.size());
+            for (int i = 0; i < runtimeAttributes.size(); i++) {
+                Assert.assertEquals(runtimeAttributes.get(i).getName(), extractedAttributes.get(i).getName());
+                Assert.assertEquals(runtimeAttributes.get(i).getType(), extractedAttributes.get(i).getType());
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedConstructs() {
+        ExecutionPlan executionPlan = SiddhiCompiler.parse("define stream stockStream (symbol string, price float);\n" +
+                "from every e1=stockStream -> e2=stockStream[price > e1.price] " +
+                "select e1.symbol, e2.price insert into risingStream;");
+        Assert.assertNull(StreamDefinitionExtractor.extract(executionPlan));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.internal.storm.util.ComponentInfoHolder;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyDiff;
+import org.wso2.carbon.event.processor.core.internal.storm.util.TopologyInfoHolder;
+
+public class TopologyDiffTestCase {
+
+    private static final String stockStream = "define stream StockStream (symbol string, price float);";
+    private static final String filteredStream = "define stream FilteredStream (symbol string, price float);";
+    private static final String query = "from StockStream[price > 100] select symbol, price insert into FilteredStream;";
+
+    @Test
+    public void testParallelismOnlyChange() {
+        TopologyInfoHolder deployed = constructTopology(2, 4, "symbol", query);
+        TopologyInfoHolder updated = constructTopology(2, 3, "symbol", query);
+
+        TopologyDiff diff = TopologyDiff.diff(deployed, updated);
+        Assert.assertFalse(diff.isShapeChanged());
+        Assert.assertEquals(1, diff.getParallelismChanges().size());
+        Assert.assertEquals(Integer.valueOf(3), diff.getParallelismChanges().get("FilterBolt"));
+    }
+
+    @Test
+    public void testUnchangedTopology() {
+        TopologyDiff diff = TopologyDiff.diff(constructTopology(2, 4, "symbol", query),
+                constructTopology(2, 4, "symbol", query));
+        Assert.assertTrue(diff.isUnchanged());
+    }
+
+    @Test
+    public void testParallelismBeyondTaskCount() {
+        TopologyDiff diff = TopologyDiff.diff(constructTopology(2, 4, "symbol", query),
+                constructTopology(2, 8, "symbol", query));
+        Assert.assertTrue(diff.isShapeChanged());
+    }
+
+    @Test
+    public void testShapeChange() {
+        TopologyInfoHolder deployed = constructTopology(2, 4, "symbol", query);
+        Assert.assertTrue(TopologyDiff.diff(deployed, constructTopology(2, 4, "price", query)).isShapeChanged());
+        Assert.assertTrue(TopologyDiff.diff(deployed, constructTopology(2, 4, "symbol",
+                "from StockStream[price > 200] select symbol, price insert into FilteredStream;")).isShapeChanged());
+    }
+
+    private TopologyInfoHolder constructTopology(int receiverParallelism, int boltParallelism, String partitionField,
+                                                 String boltQuery) {
+        TopologyInfoHolder topologyInfoHolder = new TopologyInfoHolder();
+
+        ComponentInfoHolder receiver = new ComponentInfoHolder("EventReceiverSpout",
+                ComponentInfoHolder.ComponentType.EVENT_RECEIVER_SPOUT);
+        receiver.addInputStream(stockStream);
+        receiver.addOutputStream(stockStream);
+        receiver.setParallelism(receiverParallelism);
+        receiver.setParallelismBounds(receiverParallelism, receiverParallelism);
+        receiver.setNumTasks(receiverParallelism);
+        topologyInfoHolder.addComponent(receiver);
+
+        ComponentInfoHolder bolt = new ComponentInfoHolder("FilterBolt", ComponentInfoHolder.ComponentType.SIDDHI_BOLT);
+        bolt.addInputStream(stockStream);
+        bolt.addStreamPartitioningField("StockStream", partitionField);
+        bolt.addSiddhiQuery(boltQuery);
+        bolt.addOutputStream(filteredStream);
+        bolt.setParallelism(boltParallelism);
+        bolt.setParallelismBounds(boltParallelism, boltParallelism);
+        bolt.setNumTasks(boltParallelism);
+        topologyInfoHolder.addComponent(bolt);
+
+        topologyInfoHolder.indexComponents();
+        return topologyInfoHolder;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.event.processor.core.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.wso2.carbon.event.processor.core.ExecutionPlanConfigurationFile;
+import org.wso2.carbon.event.processor.core.internal.util.WaitingExecutionPlanIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class WaitingExecutionPlanIndexTestCase {
+
+    @Test
+    public void testWaitingFilesByDependency() {
+        WaitingExecutionPlanIndex index = new WaitingExecutionPlanIndex();
+        ExecutionPlanConfigurationFile first = file("first.siddhiql",
+                ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY, "StockStream:1.0.0");
+        ExecutionPlanConfigurationFile second = file("second.siddhiql",
+                ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY, "stockStream:1.0.0");
+        ExecutionPlanConfigurationFile other = file("other.siddhiql",
+                ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY, "OtherStream:1.0.0");
+        ExecutionPlanConfigurationFile deployed = file("deployed.siddhiql",
+                ExecutionPlanConfigurationFile.Status.DEPLOYED, null);
+        index.add(first);
+        index.add(second);
+        index.add(other);
+        index.add(deployed);
+        index.remove(second);
+
+        List<ExecutionPlanConfigurationFile> waitingFiles = index.removeWaitingFiles(Arrays.asList(
+                WaitingExecutionPlanIndex.getKey(ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY,
+                        "stockstream:1.0.0"),
+                WaitingExecutionPlanIndex.getKey(ExecutionPlanConfigurationFile.Status.WAITING_FOR_OSGI_SERVICE,
+                        "OtherStream:1.0.0")));
+        Assert.assertEquals(Collections.singletonList(first), waitingFiles);
+        Assert.assertTrue(index.removeWaitingFiles(Collections.singletonList(WaitingExecutionPlanIndex.getKey(
+                ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY, "StockStream:1.0.0"))).isEmpty());
+        Assert.assertEquals(Collections.singletonList(other), index.removeWaitingFiles(Collections.singletonList(
+                WaitingExecutionPlanIndex.getKey(ExecutionPlanConfigurationFile.Status.WAITING_FOR_DEPENDENCY,
+                        "OtherStream:1.0.0"))));
+    }
+
+    private ExecutionPlanConfigurationFile file(String fileName, ExecutionPlanConfigurationFile.Status status,
+                                                String dependency) {
+        ExecutionPlanConfigurationFile file = new ExecutionPlanConfigurationFile();
+        file.setFileName(fileName);
+        file.setStatus(status);
+        file.setDependency(dependency);
+        return file;
+    }
+}